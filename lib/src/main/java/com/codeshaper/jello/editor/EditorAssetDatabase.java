@@ -85,7 +85,7 @@ public class EditorAssetDatabase extends AssetDatabase {
 				if (asset.isLoaded()) {
 					asset.getInstance().unload();
 				}
-				this.assets.remove(asset);
+				this.removeCachedAsset(asset);
 			}
 		}
 
@@ -93,6 +93,7 @@ public class EditorAssetDatabase extends AssetDatabase {
 		this.compiler.compileProject();
 		this.extensionMapping.compileProjectMappings(this.compiler);
 		this.componentList.compileProjectComponents(this.compiler);
+		this.serializer.clearCache();
 
 		Collection<File> allFiles = FileUtils.listFiles(this.assetsFolder.toFile(), null, true);
 
@@ -148,7 +149,7 @@ public class EditorAssetDatabase extends AssetDatabase {
 		if (asset.isLoaded()) {
 			asset.getInstance().unload();
 		}
-		this.assets.remove(asset);
+		this.removeCachedAsset(asset);
 
 		boolean error;
 		try {
@@ -191,7 +192,7 @@ public class EditorAssetDatabase extends AssetDatabase {
 
 		CachedAsset cachedAsset = new CachedAsset(location, assetClass);
 		cachedAsset.setInstance(instance);
-		this.assets.add(cachedAsset);
+		this.addCachedAsset(cachedAsset);
 
 		return instance;
 	}
@@ -249,7 +250,7 @@ public class EditorAssetDatabase extends AssetDatabase {
 
 		File newFile = JelloFileUtils.renameFile(location.getFile(), newName);
 		if (newFile != null) {
-			asset.location.updateLocation(this.toRelativePath(newFile.toPath()));
+			this.relocateCachedAsset(asset, this.toRelativePath(newFile.toPath()));
 			return true;
 		} else {
 			Debug.logError("[Asset Database]: Unable to rename %s to %s", location, newName);
@@ -280,9 +281,7 @@ public class EditorAssetDatabase extends AssetDatabase {
 	 * @param assetPath
 	 */
 	public void reload(AssetLocation location) {
-		if (this.isLoaded(location)) {
-			this.unload(location);
-		}
+		this.unload(location); // Also clears a previous failure to load.
 		this.getAsset(location); // Reloads the Asset.
 	}
 
@@ -21,6 +21,7 @@ import com.codeshaper.jello.editor.window.EditorSettingsWindow;
 import com.codeshaper.jello.editor.window.FileBrowserWindow;
 import com.codeshaper.jello.editor.window.HierarchyWindow;
 import com.codeshaper.jello.editor.window.InspectorWindow;
+import com.codeshaper.jello.editor.window.ProfilerWindow;
 import com.codeshaper.jello.engine.audio.SoundManager;
 import com.formdev.flatlaf.FlatDarkLaf;
 import com.formdev.flatlaf.FlatLightLaf;
@@ -71,6 +72,7 @@ public class EditorMainFrame extends JFrame {
 		new EditorSettingsWindow();
 		new AssetDatabaseViewer();
 		new AppSettingsWindow();
+		new ProfilerWindow();
 
 		RootDockingPanel root = new RootDockingPanel(this);
 		JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, root, this.sceneView);
@@ -132,6 +134,7 @@ public class EditorMainFrame extends JFrame {
 		layoutBuilder.dock("fileViewer", "hierarchy", DockingRegion.SOUTH);
 		layoutBuilder.dock("inspector", "hierarchy", DockingRegion.WEST);
 		layoutBuilder.dock("console", "fileViewer", DockingRegion.EAST);
+		layoutBuilder.dock("profiler", "console", DockingRegion.CENTER);
 
 		return layoutBuilder.build();
 	}
@@ -0,0 +1,16 @@
+package com.codeshaper.jello.editor.property.drawer;
+
+import com.codeshaper.jello.engine.rendering.LodGroup;
+
+@FieldDrawerType(LodGroup.LodLevel.class)
+public class LodLevelDrawer extends InlineClassDrawer {
+
+	public LodLevelDrawer() {
+		super("mesh", "screenHeight");
+	}
+
+	@Override
+	public Object createDefaultInstance() {
+		return new LodGroup.LodLevel();
+	}
+}
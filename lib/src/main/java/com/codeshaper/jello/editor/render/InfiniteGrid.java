@@ -5,7 +5,9 @@ import static org.lwjgl.opengl.GL20.*;
 import org.joml.Matrix4f;
 
 import com.codeshaper.jello.engine.rendering.Camera;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
 import com.codeshaper.jello.engine.rendering.GameRenderer;
+import com.codeshaper.jello.engine.rendering.shader.ShaderData.CullMode;
 import com.codeshaper.jello.engine.rendering.shader.ShaderProgram;
 import com.codeshaper.jello.engine.rendering.shader.ShaderSource;
 import com.codeshaper.jello.engine.rendering.shader.ShaderType;
@@ -32,7 +34,7 @@ public class InfiniteGrid {
 		this.shaderProgram.setUniform(NEAR, camera.getNearPlane());
 		this.shaderProgram.setUniform(FAR, camera.getFarPlane());
 
-		glDisable(GL_CULL_FACE);
+		GLStateCache.setCulling(CullMode.OFF);
 		
 		glBegin(GL_QUADS);
 		glVertex2f(-1f, -1f);
@@ -40,8 +42,6 @@ public class InfiniteGrid {
 		glVertex2f(1f, 1f);
 		glVertex2f(1f, -1f);
 		glEnd();
-		
-		glEnable(GL_CULL_FACE);
 
 		this.shaderProgram.unbind();
 	}
@@ -22,11 +22,18 @@ import com.codeshaper.jello.engine.GameObject;
 import com.codeshaper.jello.engine.JelloComponent;
 import com.codeshaper.jello.engine.Scene;
 import com.codeshaper.jello.engine.SceneManager;
+import com.codeshaper.jello.engine.database.AssetDatabase;
 import com.codeshaper.jello.engine.rendering.Camera;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
 
 public class SceneViewPanel extends JPanel {
 
 	private final int FPS = 20;
+	/**
+	 * How long may be spent finishing Assets that were loaded in the background
+	 * each frame, in nanoseconds.
+	 */
+	private final long ASSET_UPLOAD_BUDGET = 4_000_000L;
 
 	private final EditorCameraController cameraController;
 	private final SceneViewToolbar toolbar;
@@ -122,7 +129,10 @@ public class SceneViewPanel extends JPanel {
 
 			sceneCamera.perspective = toolbar.getPerspective();
 
+			AssetDatabase.getInstance().processPendingUploads(ASSET_UPLOAD_BUDGET);
+
 			Matrix4f viewMatrix = cameraController.getViewMatrix();
+			JelloEditor.instance.renderer.beginFrame();
 			JelloEditor.instance.renderer.render(JelloEditor.instance.sceneManager, sceneCamera, viewMatrix,
 					this.getWidth(), this.getHeight());
 
@@ -131,9 +141,9 @@ public class SceneViewPanel extends JPanel {
 			}
 
 			if (toolbar.isGizmosEnabled()) {
-				glDisable(GL_DEPTH_TEST);
+				GLStateCache.setDepthTest(false);
 				this.drawGizmos(sceneCamera, viewMatrix);
-				glEnable(GL_DEPTH_TEST);
+				GLStateCache.setDepthTest(true);
 			}
 
 			if (toolbar.isGridEnabled()) {
@@ -9,7 +9,6 @@ import com.codeshaper.jello.engine.Scene;
 import com.codeshaper.jello.engine.SceneManager;
 import com.codeshaper.jello.engine.database.AssetDatabase;
 import com.codeshaper.jello.engine.database.Serializer;
-import com.google.gson.JsonElement;
 
 /**
  * Provides a way to create a snapshot that captures the state of all loaded
@@ -21,6 +20,9 @@ import com.google.gson.JsonElement;
  * <p>
  * Snapshots are not tied to a specific Scene Manager, meaning a snapshot could
  * be created from one Scene Manager and restored to a different one.
+ * <p>
+ * Scenes are stored in the {@link Serializer}'s binary format, as it is much
+ * faster to write and read than Json.
  */
 public class SceneManagerSnapshot {
 
@@ -58,7 +60,7 @@ public class SceneManagerSnapshot {
 			}
 
 			// Add all GameObjects that exist in the snapshot.
-			Scene originalScene = serialize.deserialize(data.json, Scene.class);
+			Scene originalScene = serialize.deserialize(data.bytes, Scene.class);
 			for (int i = 0; i < originalScene.getRootGameObjectCount(); i++) {
 				GameObject obj = originalScene.getRootGameObject(i);
 				scene.moveGameObjectTo(obj);
@@ -76,9 +78,9 @@ public class SceneManagerSnapshot {
 		 */
 		public final Scene scene;
 		/**
-		 * Json data representing the scene.
+		 * Binary data representing the scene.
 		 */
-		public final JsonElement json;
+		public final byte[] bytes;
 
 		/**
 		 * Creates a snapshot of a scene.
@@ -91,7 +93,7 @@ public class SceneManagerSnapshot {
 				throw new IllegalArgumentException("scene may not be null");
 			}
 			this.scene = scene;
-			this.json = AssetDatabase.getInstance().serializer.serializeToJsonElement(scene);
+			this.bytes = AssetDatabase.getInstance().serializer.serializeToBytes(scene);
 		}
 	}
 }
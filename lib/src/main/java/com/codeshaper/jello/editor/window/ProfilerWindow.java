@@ -0,0 +1,239 @@
+package com.codeshaper.jello.editor.window;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JToggleButton;
+import javax.swing.JToolBar;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.table.AbstractTableModel;
+
+import com.codeshaper.jello.editor.EditorProperties;
+import com.codeshaper.jello.editor.JelloEditor;
+import com.codeshaper.jello.engine.Debug;
+import com.codeshaper.jello.engine.profiling.Profiler;
+import com.codeshaper.jello.engine.profiling.ProfilerScope;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
+
+/**
+ * Shows where the time of each frame goes while in play mode. The top half is a
+ * graph of recent frame times, the bottom is the time spent in each
+ * {@link ProfilerScope}.
+ */
+public class ProfilerWindow extends EditorWindow {
+
+	private static final String RECORD_KEY = "window.profiler.record";
+	private static final String DIVIDER_LOCATION_KEY = "window.profiler.dividerLocation";
+	/**
+	 * How often the window refreshes, in milliseconds.
+	 */
+	private static final int REFRESH_INTERVAL = 250;
+
+	private final FrameGraph frameGraph;
+	private final ScopeTableModel tableModel;
+
+	public ProfilerWindow() {
+		super("Profiler", "profiler");
+
+		EditorProperties props = JelloEditor.instance.properties;
+
+		this.setLayout(new BorderLayout());
+
+		// Toolbar.
+		JToolBar toolbar = new JToolBar();
+		toolbar.setFloatable(false);
+
+		JToggleButton toggleRecord = new JToggleButton("Record");
+		toggleRecord.addActionListener(e -> {
+			props.setBoolean(RECORD_KEY, toggleRecord.isSelected());
+			Profiler.setEnabled(toggleRecord.isSelected());
+		});
+		toggleRecord.setSelected(props.getBoolean(RECORD_KEY, true));
+		toggleRecord.setToolTipText("Toggle if frame timings are recorded.");
+		Profiler.setEnabled(toggleRecord.isSelected());
+		toolbar.add(toggleRecord);
+
+		JButton clearButton = new JButton("Clear");
+		clearButton.addActionListener(e -> {
+			Profiler.clear();
+			this.refresh();
+		});
+		toolbar.add(clearButton);
+		toolbar.addSeparator();
+
+		JButton exportButton = new JButton("Export Chrome Trace...");
+		exportButton.setToolTipText("Saves the recorded frames to a file that can be opened in chrome://tracing.");
+		exportButton.addActionListener(e -> {
+			this.exportChromeTrace();
+		});
+		toolbar.add(exportButton);
+
+		this.add(toolbar, BorderLayout.NORTH);
+
+		// Graph and table.
+		this.frameGraph = new FrameGraph();
+		this.tableModel = new ScopeTableModel();
+		JTable table = new JTable(this.tableModel);
+		table.setAutoCreateRowSorter(true);
+
+		JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, this.frameGraph, new JScrollPane(table));
+		this.add(splitPane, BorderLayout.CENTER);
+		splitPane.setDividerLocation(props.getInt(DIVIDER_LOCATION_KEY, 100));
+		splitPane.addPropertyChangeListener(JSplitPane.DIVIDER_LOCATION_PROPERTY, e -> {
+			props.setInt(DIVIDER_LOCATION_KEY, splitPane.getDividerLocation());
+		});
+
+		Timer timer = new Timer(REFRESH_INTERVAL, e -> {
+			if (this.isShowing()) {
+				this.refresh();
+			}
+		});
+		timer.start();
+	}
+
+	@Override
+	public Dimension getMinimumSize() {
+		return new Dimension(300, 50);
+	}
+
+	@Override
+	public boolean isWrappableInScrollpane() {
+		return false;
+	}
+
+	private void refresh() {
+		this.frameGraph.repaint();
+		this.tableModel.fireTableDataChanged();
+	}
+
+	private void exportChromeTrace() {
+		JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setSelectedFile(new File("trace.json"));
+		if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		try {
+			Profiler.exportChromeTrace(fileChooser.getSelectedFile().toPath());
+		} catch (IOException e) {
+			Debug.log(e);
+		}
+	}
+
+	private class FrameGraph extends JPanel {
+
+		/**
+		 * The frame times, in milliseconds, that guide lines are drawn at.
+		 */
+		private static final float[] GUIDE_LINES = new float[] { 1000f / 60, 1000f / 30 };
+
+		public FrameGraph() {
+			this.setPreferredSize(new Dimension(300, 100));
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			super.paintComponent(g);
+
+			int width = this.getWidth();
+			int height = this.getHeight();
+			int frameCount = Math.min(Profiler.getFrameCount(), width);
+
+			// Scale so the slowest frame, or the 30fps line, fits.
+			float maxMillis = GUIDE_LINES[GUIDE_LINES.length - 1];
+			for (int i = 0; i < frameCount; i++) {
+				maxMillis = Math.max(maxMillis, Profiler.getFrameNanos(i) / 1_000_000f);
+			}
+			float pixelsPerMilli = (height - 1) / (maxMillis * 1.1f);
+
+			// Newest frame on the right, one pixel per frame.
+			g.setColor(UIManager.getColor("Component.accentColor"));
+			for (int i = 0; i < frameCount; i++) {
+				int barHeight = Math.round(Profiler.getFrameNanos(i) / 1_000_000f * pixelsPerMilli);
+				int x = width - 1 - i;
+				g.drawLine(x, height - 1, x, height - 1 - barHeight);
+			}
+
+			g.setColor(Color.GRAY);
+			for (float guide : GUIDE_LINES) {
+				int y = height - 1 - Math.round(guide * pixelsPerMilli);
+				g.drawLine(0, y, width, y);
+				g.drawString(String.format("%.1f ms", guide), 2, y - 2);
+			}
+
+			if (frameCount > 0) {
+				g.setColor(this.getForeground());
+				g.drawString(String.format("Last frame: %.2f ms", Profiler.getFrameNanos(0) / 1_000_000f), 2, 12);
+				g.drawString(String.format("GL state changes: %d (%d skipped)",
+						GLStateCache.getLastFrameChangeCount(),
+						GLStateCache.getLastFrameSkipCount()), 2, 26);
+			}
+		}
+	}
+
+	private class ScopeTableModel extends AbstractTableModel {
+
+		private static final String[] COLUMN_NAMES = new String[] {
+				"Scope",
+				"Last Frame (ms)",
+				"Average (ms)",
+				"Calls" };
+
+		@Override
+		public int getRowCount() {
+			return Profiler.getAllScopes().size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMN_NAMES.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMN_NAMES[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			switch (columnIndex) {
+			case 0:
+				return String.class;
+			case 3:
+				return Integer.class;
+			default:
+				return Double.class;
+			}
+		}
+
+		@Override
+		public Object getValueAt(int rowIndex, int columnIndex) {
+			List<ProfilerScope> scopes = Profiler.getAllScopes();
+			ProfilerScope scope = scopes.get(rowIndex);
+			switch (columnIndex) {
+			case 0:
+				return scope.name;
+			case 1:
+				return Profiler.getLastFrameNanos(scope) / 1_000_000d;
+			case 2:
+				return Profiler.getAverageNanos(scope) / 1_000_000d;
+			case 3:
+				return Profiler.getLastFrameCalls(scope);
+			default:
+				return null;
+			}
+		}
+	}
+}
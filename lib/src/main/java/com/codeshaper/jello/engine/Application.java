@@ -4,7 +4,10 @@ import static org.lwjgl.glfw.GLFW.*;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.SwingUtilities;
 
@@ -18,7 +21,10 @@ import com.codeshaper.jello.editor.EditorAssetDatabase;
 import com.codeshaper.jello.editor.JelloEditor;
 import com.codeshaper.jello.engine.audio.SoundManager;
 import com.codeshaper.jello.engine.database.AssetDatabase;
+import com.codeshaper.jello.engine.profiling.Profiler;
+import com.codeshaper.jello.engine.profiling.ProfilerScope;
 import com.codeshaper.jello.engine.rendering.Camera;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
 import com.codeshaper.jello.engine.rendering.GameRenderer;
 
 public class Application {
@@ -177,6 +183,7 @@ public class Application {
 	}
 
 	private void shutdown() {
+		this.renderer.cleanup();
 		this.window.cleanup();
 
 		if (!Application.isInEditor() && SoundManager.isInitialized()) {
@@ -208,91 +215,214 @@ public class Application {
 
 	private abstract class Loop implements Runnable {
 
-		protected long initialTime;
-
-		protected float timeU;
-		protected float timeR;
-		protected float deltaUpdate;
-		protected float deltaFps;
-		protected long updateTime;
+		/**
+		 * The most updates that will be run in a single iteration to catch up. If the
+		 * simulation falls further behind than this, the rest of the time is dropped
+		 * so the Application doesn't spend all of it's time updating.
+		 */
+		private static final int MAX_UPDATES_PER_ITERATION = 5;
+		/**
+		 * When waiting for the next iteration, the thread is parked until this close
+		 * to the wake time, and then yields until it's reached. Parking is not precise
+		 * enough to rely on for the entire wait.
+		 */
+		private static final long SPIN_THRESHOLD_NANOS = 1_000_000L;
+
+		private static final ProfilerScope UPDATE_SCOPE = Profiler.createScope("Update");
+		private static final ProfilerScope POLL_EVENTS_SCOPE = Profiler.createScope("Poll Events");
+		private static final ProfilerScope ON_START_SCOPE = Profiler.createScope("onStart");
+		private static final ProfilerScope ON_UPDATE_SCOPE = Profiler.createScope("onUpdate");
+		private static final ProfilerScope ASSET_UPLOADS_SCOPE = Profiler.createScope("Asset Uploads");
+		private static final ProfilerScope RENDER_SCOPE = Profiler.createScope("Render");
+		private static final ProfilerScope SWAP_SCOPE = Profiler.createScope("Swap Buffers");
+
+		/**
+		 * The fixed amount of time between updates, in nanoseconds.
+		 */
+		protected final long updateInterval;
+		/**
+		 * The amount of time between frames, in nanoseconds. 0 if the frame rate is
+		 * not capped.
+		 */
+		protected final long frameInterval;
+		protected long previousTime;
+		/**
+		 * How much time has passed that has not yet been simulated, in nanoseconds.
+		 */
+		protected long updateAccumulator;
+		protected long nextFrameTime;
+		/**
+		 * How long may be spent finishing Assets that were loaded in the background
+		 * each frame, in nanoseconds.
+		 */
+		private final long assetUploadBudget;
+		private final Matrix4f viewMatrix;
+		/**
+		 * The profiler scope of each Camera, by the name of its GameObject. Scopes
+		 * can't be removed from the Profiler, so they are reused by name rather than
+		 * made for every Camera, and no reference to a destroyed Camera is kept.
+		 */
+		private final Map<String, ProfilerScope> cameraScopes;
 
 		public Loop() {
-			this.initialTime = System.currentTimeMillis();
-
-			this.timeU = 1000.0f / appSettings.targetUps;
-			this.timeR = appSettings.targetFps > 0 ? 1000.0f / appSettings.targetFps : 0;
-			this.deltaUpdate = 0;
-			this.deltaFps = 0;
-			this.updateTime = initialTime;
+			int targetUps = appSettings.targetUps;
+			if (targetUps <= 0) {
+				Debug.logWarning("targetUps must be greater than 0, but is %d. 1 will be used instead.", targetUps);
+				targetUps = 1;
+			}
+			this.updateInterval = 1_000_000_000L / targetUps;
+			this.frameInterval = appSettings.targetFps > 0 ? 1_000_000_000L / appSettings.targetFps : 0;
+			this.previousTime = System.nanoTime();
+			this.updateAccumulator = 0;
+			this.nextFrameTime = this.previousTime;
+			this.assetUploadBudget = (long) (appSettings.assetUploadBudgetMillis * 1_000_000L);
+			this.viewMatrix = new Matrix4f();
+			this.cameraScopes = new HashMap<String, ProfilerScope>();
 		}
 
 		public void preformLoopIteration() {
-			long now = System.currentTimeMillis();
-			deltaUpdate += (now - initialTime) / timeU;
-			deltaFps += (now - initialTime) / timeR;
+			long now = System.nanoTime();
+			this.updateAccumulator += now - this.previousTime;
+			this.previousTime = now;
 
-			if (appSettings.targetFps <= 0 || deltaFps >= 1) {
-				// appLogic.input(window, scene, now - initialTime);
+			boolean shouldRender = this.frameInterval <= 0 || now >= this.nextFrameTime;
+			if (!shouldRender && this.updateAccumulator < this.updateInterval) {
+				return; // Nothing to do yet.
 			}
 
-			if (deltaUpdate >= 1) {
-				long diffTimeMillis = now - updateTime;
-
-				glfwPollEvents();
-				
-				// Call onStart on every component this is enabled in the scene that hasn't
-				// gotten onStart called on them yet.
-				for(int i = 0; i < sceneManager.getSceneCount(); i++) {
-					Scene scene = sceneManager.getScene(i);
-					for (GameObject rootObject : scene.getRootGameObjects()) {
-						rootObject.invokeRecursively(rootObject, (c) -> {
-							if (c.isEnabledInScene() && !c.hasOnStartBeenCalled) {
-								c.hasOnStartBeenCalled = true;
-								c.invokeOnStart();
-							}
-						});
-					}
+			Profiler.beginFrame();
+
+			int updateCount = 0;
+			while (this.updateAccumulator >= this.updateInterval) {
+				if (updateCount == MAX_UPDATES_PER_ITERATION) {
+					// Too far behind to catch up, drop the remaining time.
+					this.updateAccumulator %= this.updateInterval;
+					break;
 				}
 
-				// Call onUpdate on every component that is enabled in the scene.
-				for(int i = 0; i < sceneManager.getSceneCount(); i++) {
-					Scene scene = sceneManager.getScene(i);
-					for (GameObject rootObject : scene.getRootGameObjects()) {
-						rootObject.invokeRecursively(rootObject, (c) -> {
-							if (c.isEnabledInScene()) {
-								c.invokeOnUpdate(diffTimeMillis / 1_000f);
-							}
-						});
-					}
+				this.update(this.updateInterval / 1_000_000_000f);
+				this.updateAccumulator -= this.updateInterval;
+				updateCount++;
+			}
+
+			if (shouldRender) {
+				this.render();
+
+				this.nextFrameTime += this.frameInterval;
+				if (now - this.nextFrameTime > this.frameInterval) {
+					// Fell more than a frame behind, don't try to make up the lost frames.
+					this.nextFrameTime = now + this.frameInterval;
 				}
-				updateTime = now;
-				deltaUpdate--;
-				
-				Input.reset();
 			}
 
-			if (appSettings.targetFps <= 0 || deltaFps >= 1) {
-				for (Camera camera : Camera.getAllCameras()) {
-					// TODO sort with Camera#depth
-					if (camera.isEnabled()) {
-						
-						Matrix4f viewMatrix = camera.gameObject().getWorldMatrix();						
-						viewMatrix.invert();
-						
-						renderer.render(
-								sceneManager,
-								camera,
-								viewMatrix,
-								window.getWidth(),
-								window.getHeight());
-					}
+			Profiler.endFrame();
+		}
+
+		/**
+		 * Waits until it is time for the next update or frame, whichever comes first.
+		 * If the frame rate is not capped, this returns immediately.
+		 */
+		protected void waitForNextIteration() {
+			if (this.frameInterval <= 0) {
+				return;
+			}
+
+			long nextUpdateTime = this.previousTime + this.updateInterval - this.updateAccumulator;
+			long wakeTime = Math.min(nextUpdateTime, this.nextFrameTime);
+			long remaining;
+			while ((remaining = wakeTime - System.nanoTime()) > 0) {
+				if (remaining > SPIN_THRESHOLD_NANOS) {
+					LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+				} else {
+					Thread.yield();
 				}
+			}
+		}
 
-				deltaFps--;
-				glfwSwapBuffers(window.windowHandle);
+		private void update(float deltaTime) {
+			Profiler.begin(UPDATE_SCOPE);
+
+			Profiler.begin(POLL_EVENTS_SCOPE);
+			glfwPollEvents();
+			Profiler.end();
+
+			// Call onStart on every component that is enabled in the scene that hasn't
+			// gotten onStart called on them yet, and move them to the update list.
+			Profiler.begin(ON_START_SCOPE);
+			ComponentTickList pendingStart = ComponentTickList.PENDING_START;
+			pendingStart.lock();
+			for (int i = 0; i < pendingStart.size(); i++) {
+				JelloComponent component = pendingStart.get(i);
+				if (component != null) {
+					component.hasOnStartBeenCalled = true;
+					ComponentTickList.addToList(component);
+					component.invokeOnStart();
+				}
 			}
+			pendingStart.unlock();
+			Profiler.end();
+
+			// Call onUpdate on every component that is enabled in the scene.
+			Profiler.begin(ON_UPDATE_SCOPE);
+			ComponentTickList update = ComponentTickList.UPDATE;
+			update.lock();
+			for (int i = 0; i < update.size(); i++) {
+				JelloComponent component = update.get(i);
+				if (component != null) {
+					Profiler.begin(Profiler.getScope(component.getClass()));
+					component.invokeOnUpdate(deltaTime);
+					Profiler.end();
+				}
+			}
+			update.unlock();
+			Profiler.end();
+
+			Input.reset();
+
+			Profiler.end();
+		}
+
+		private void render() {
+			Profiler.begin(ASSET_UPLOADS_SCOPE);
+			AssetDatabase.getInstance().processPendingUploads(this.assetUploadBudget);
+			Profiler.end();
+
+			Profiler.begin(RENDER_SCOPE);
+			renderer.beginFrame();
+			for (Camera camera : Camera.getAllCameras()) {
+				// TODO sort with Camera#depth
+				if (camera.isEnabled()) {
+					Profiler.begin(this.getCameraScope(camera));
+
+					camera.gameObject().getWorldMatrix(viewMatrix).invert();
+
+					renderer.render(
+							sceneManager,
+							camera,
+							viewMatrix,
+							window.getWidth(),
+							window.getHeight());
 
-			initialTime = now;
+					Profiler.end();
+				}
+			}
+			Profiler.end();
+
+			Profiler.begin(SWAP_SCOPE);
+			glfwSwapBuffers(window.windowHandle);
+			Profiler.end();
+
+			GLStateCache.endFrame();
+		}
+
+		private ProfilerScope getCameraScope(Camera camera) {
+			String name = camera.gameObject().getName();
+			ProfilerScope scope = this.cameraScopes.get(name);
+			if (scope == null) {
+				scope = Profiler.createScope("Camera (" + name + ")");
+				this.cameraScopes.put(name, scope);
+			}
+			return scope;
 		}
 	}
 
@@ -322,6 +452,7 @@ public class Application {
 		public void run() {
 			while (running && !glfwWindowShouldClose(window.windowHandle)) {
 				this.preformLoopIteration();
+				this.waitForNextIteration();
 			}
 
 			shutdown();
@@ -7,6 +7,12 @@ import com.codeshaper.jello.engine.asset.Texture;
 public class ApplicationSettings {
 
 	public boolean compatibleProfile;
+	/**
+	 * If true, the Window asks for an OpenGL 4.3 context so the renderer can use
+	 * multi-draw indirect. If the driver can't create one, a 3.2 context is used
+	 * instead.
+	 */
+	public boolean preferModernContext;
     
     public String windowTitle;
     public Texture windowIcon;
@@ -16,9 +22,11 @@ public class ApplicationSettings {
     public boolean useVSync;    
     public int targetFps;
     public int targetUps;
+    public float assetUploadBudgetMillis;
     public Scene startingScene;
     
     public ApplicationSettings() {
+    	this.preferModernContext = true;
     	this.windowTitle = "Jello";
     	this.windowIcon = null;
     	this.fullscreen = false;
@@ -27,5 +35,6 @@ public class ApplicationSettings {
         this.useVSync = true;
         this.targetFps = 30;
         this.targetUps = 20;
+        this.assetUploadBudgetMillis = 2;
     }
 }
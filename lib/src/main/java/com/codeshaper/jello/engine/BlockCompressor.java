@@ -0,0 +1,216 @@
+package com.codeshaper.jello.engine;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Compresses RGBA8 images into the BC1 (DXT1) and BC3 (DXT5) block formats.
+ * <p>
+ * Every 4x4 block of pixels is stored as two end point colors and an index into
+ * the colors between them for every pixel. The end points are picked from the
+ * bounding box of the block's colors, slightly inset to reduce the error of the
+ * pixels in between. This is much faster than the iterative fits used by
+ * dedicated tools, and the quality is close enough for most textures.
+ */
+public final class BlockCompressor {
+
+	/**
+	 * The size of a BC1 block, and of the color half of a BC3 block, in bytes.
+	 */
+	private static final int COLOR_BLOCK_SIZE = 8;
+	private static final int ALPHA_BLOCK_SIZE = 8;
+
+	private BlockCompressor() {
+	}
+
+	/**
+	 * Gets the number of bytes an image takes once compressed.
+	 *
+	 * @param width     the width of the image in pixels
+	 * @param height    the height of the image in pixels
+	 * @param withAlpha if the image is compressed as BC3, instead of BC1
+	 * @return the size of the compressed image in bytes
+	 */
+	public static int getCompressedSize(int width, int height, boolean withAlpha) {
+		int blocks = Math.max(1, (width + 3) / 4) * Math.max(1, (height + 3) / 4);
+		return blocks * (withAlpha ? COLOR_BLOCK_SIZE + ALPHA_BLOCK_SIZE : COLOR_BLOCK_SIZE);
+	}
+
+	/**
+	 * Checks if every pixel of an image is fully opaque, so it can be compressed
+	 * as BC1 without losing anything.
+	 *
+	 * @param pixels the image, with 4 bytes per pixel
+	 * @param width  the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @return {@code true} if no pixel has an alpha below 255
+	 */
+	public static boolean isOpaque(ByteBuffer pixels, int width, int height) {
+		int end = width * height * 4;
+		for (int i = 3; i < end; i += 4) {
+			if (pixels.get(i) != (byte) 0xFF) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compresses an image.
+	 *
+	 * @param pixels    the image, with 4 bytes per pixel, in rows from bottom to
+	 *                  top
+	 * @param width     the width of the image in pixels
+	 * @param height    the height of the image in pixels
+	 * @param withAlpha if the image should be compressed as BC3, keeping its
+	 *                  alpha channel, instead of BC1
+	 * @return a new buffer with the compressed image, allocated with
+	 *         {@link MemoryUtil#memAlloc(int)}. It must be freed by the caller.
+	 * @throws IllegalArgumentException if {@code pixels} is null
+	 */
+	public static ByteBuffer compress(ByteBuffer pixels, int width, int height, boolean withAlpha) {
+		if (pixels == null) {
+			throw new IllegalArgumentException("pixels may not be null");
+		}
+
+		ByteBuffer output = MemoryUtil.memAlloc(getCompressedSize(width, height, withAlpha));
+		int[] block = new int[16 * 4];
+
+		for (int blockY = 0; blockY < height; blockY += 4) {
+			for (int blockX = 0; blockX < width; blockX += 4) {
+				// Blocks that hang off the edge repeat the last row and column.
+				for (int i = 0; i < 16; i++) {
+					int x = Math.min(blockX + (i & 3), width - 1);
+					int y = Math.min(blockY + (i >> 2), height - 1);
+					int index = (x + y * width) * 4;
+					for (int c = 0; c < 4; c++) {
+						block[i * 4 + c] = pixels.get(index + c) & 0xFF;
+					}
+				}
+
+				if (withAlpha) {
+					writeAlphaBlock(block, output);
+				}
+				writeColorBlock(block, output);
+			}
+		}
+
+		output.flip();
+		return output;
+	}
+
+	private static void writeColorBlock(int[] block, ByteBuffer output) {
+		int[] min = new int[] { 255, 255, 255 };
+		int[] max = new int[] { 0, 0, 0 };
+		for (int i = 0; i < 16; i++) {
+			for (int c = 0; c < 3; c++) {
+				int value = block[i * 4 + c];
+				min[c] = Math.min(min[c], value);
+				max[c] = Math.max(max[c], value);
+			}
+		}
+		for (int c = 0; c < 3; c++) {
+			int inset = (max[c] - min[c]) >> 4;
+			min[c] += inset;
+			max[c] -= inset;
+		}
+
+		int color0 = to565(max[0], max[1], max[2]);
+		int color1 = to565(min[0], min[1], min[2]);
+		if (color0 < color1) {
+			int temp = color0;
+			color0 = color1;
+			color1 = temp;
+		}
+
+		int indices = 0;
+		if (color0 != color1) {
+			int[] palette = new int[4 * 3];
+			from565(color0, palette, 0);
+			from565(color1, palette, 3);
+			for (int c = 0; c < 3; c++) {
+				palette[6 + c] = (2 * palette[c] + palette[3 + c]) / 3;
+				palette[9 + c] = (palette[c] + 2 * palette[3 + c]) / 3;
+			}
+
+			for (int i = 0; i < 16; i++) {
+				int best = 0;
+				int bestDistance = Integer.MAX_VALUE;
+				for (int p = 0; p < 4; p++) {
+					int distance = 0;
+					for (int c = 0; c < 3; c++) {
+						int delta = block[i * 4 + c] - palette[p * 3 + c];
+						distance += delta * delta;
+					}
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = p;
+					}
+				}
+				indices |= best << (i * 2);
+			}
+		}
+
+		output.put((byte) color0);
+		output.put((byte) (color0 >> 8));
+		output.put((byte) color1);
+		output.put((byte) (color1 >> 8));
+		for (int i = 0; i < 4; i++) {
+			output.put((byte) (indices >> (i * 8)));
+		}
+	}
+
+	private static void writeAlphaBlock(int[] block, ByteBuffer output) {
+		int min = 255;
+		int max = 0;
+		for (int i = 0; i < 16; i++) {
+			int alpha = block[i * 4 + 3];
+			min = Math.min(min, alpha);
+			max = Math.max(max, alpha);
+		}
+
+		long indices = 0;
+		if (max != min) {
+			int[] palette = new int[8];
+			palette[0] = max;
+			palette[1] = min;
+			for (int p = 1; p < 7; p++) {
+				palette[p + 1] = ((7 - p) * max + p * min) / 7;
+			}
+
+			for (int i = 0; i < 16; i++) {
+				int alpha = block[i * 4 + 3];
+				int best = 0;
+				int bestDistance = Integer.MAX_VALUE;
+				for (int p = 0; p < 8; p++) {
+					int distance = Math.abs(alpha - palette[p]);
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = p;
+					}
+				}
+				indices |= (long) best << (i * 3);
+			}
+		}
+
+		output.put((byte) max);
+		output.put((byte) min);
+		for (int i = 0; i < 6; i++) {
+			output.put((byte) (indices >> (i * 8)));
+		}
+	}
+
+	private static int to565(int r, int g, int b) {
+		return ((r * 31 + 127) / 255) << 11 | ((g * 63 + 127) / 255) << 5 | ((b * 31 + 127) / 255);
+	}
+
+	private static void from565(int color, int[] output, int offset) {
+		int r = (color >> 11) & 31;
+		int g = (color >> 5) & 63;
+		int b = color & 31;
+		output[offset] = (r << 3) | (r >> 2);
+		output[offset + 1] = (g << 2) | (g >> 4);
+		output[offset + 2] = (b << 3) | (b >> 2);
+	}
+}
@@ -0,0 +1,131 @@
+package com.codeshaper.jello.engine;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * An axis aligned bounding box and a bounding sphere that both enclose a set of
+ * points, in the points' local space. Bounds are immutable.
+ */
+public final class Bounds {
+
+	private final Vector3f min;
+	private final Vector3f max;
+	private final Vector3f center;
+	private final float radius;
+
+	/**
+	 * Creates Bounds from the corners of a box. The sphere is the smallest sphere
+	 * that encloses the box.
+	 *
+	 * @param min the corner of the box with the smallest coordinates
+	 * @param max the corner of the box with the largest coordinates
+	 * @throws IllegalArgumentException if {@code min} or {@code max} is null
+	 */
+	public Bounds(Vector3fc min, Vector3fc max) {
+		if (min == null) {
+			throw new IllegalArgumentException("min may not be null");
+		}
+		if (max == null) {
+			throw new IllegalArgumentException("max may not be null");
+		}
+
+		this.min = new Vector3f(min);
+		this.max = new Vector3f(max);
+		this.center = min.add(max, new Vector3f()).mul(0.5f);
+		this.radius = min.distance(max) / 2f;
+	}
+
+	private Bounds(Vector3f min, Vector3f max, float radius) {
+		this.min = min;
+		this.max = max;
+		this.center = min.add(max, new Vector3f()).mul(0.5f);
+		this.radius = radius;
+	}
+
+	/**
+	 * Creates Bounds that enclose a list of points. The sphere is centered on the
+	 * center of the box, and is only as large as it needs to be to enclose every
+	 * point, which is often much smaller than the sphere around the box.
+	 *
+	 * @param positions the points, stored as consecutive x, y, z values
+	 * @return the Bounds of the points. If there are no points, the Bounds are
+	 *         empty and centered on the origin.
+	 * @throws IllegalArgumentException if {@code positions} is null
+	 */
+	public static Bounds fromPositions(float[] positions) {
+		if (positions == null) {
+			throw new IllegalArgumentException("positions may not be null");
+		}
+
+		if (positions.length < 3) {
+			return new Bounds(new Vector3f(), new Vector3f(), 0);
+		}
+
+		Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+		Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+		for (int i = 0; i + 2 < positions.length; i += 3) {
+			min.x = Math.min(min.x, positions[i]);
+			min.y = Math.min(min.y, positions[i + 1]);
+			min.z = Math.min(min.z, positions[i + 2]);
+			max.x = Math.max(max.x, positions[i]);
+			max.y = Math.max(max.y, positions[i + 1]);
+			max.z = Math.max(max.z, positions[i + 2]);
+		}
+
+		// Second pass to find the point furthest from the center.
+		float centerX = (min.x + max.x) / 2f;
+		float centerY = (min.y + max.y) / 2f;
+		float centerZ = (min.z + max.z) / 2f;
+		float radiusSquared = 0;
+		for (int i = 0; i + 2 < positions.length; i += 3) {
+			float x = positions[i] - centerX;
+			float y = positions[i + 1] - centerY;
+			float z = positions[i + 2] - centerZ;
+			radiusSquared = Math.max(radiusSquared, x * x + y * y + z * z);
+		}
+
+		return new Bounds(min, max, (float) Math.sqrt(radiusSquared));
+	}
+
+	/**
+	 * Gets the corner of the box with the smallest coordinates.
+	 *
+	 * @return the minimum corner
+	 */
+	public Vector3fc getMin() {
+		return this.min;
+	}
+
+	/**
+	 * Gets the corner of the box with the largest coordinates.
+	 *
+	 * @return the maximum corner
+	 */
+	public Vector3fc getMax() {
+		return this.max;
+	}
+
+	/**
+	 * Gets the center of the box and sphere.
+	 *
+	 * @return the center
+	 */
+	public Vector3fc getCenter() {
+		return this.center;
+	}
+
+	/**
+	 * Gets the radius of the bounding sphere.
+	 *
+	 * @return the radius
+	 */
+	public float getRadius() {
+		return this.radius;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Bounds(min=%s, max=%s, radius=%s)", this.min, this.max, this.radius);
+	}
+}
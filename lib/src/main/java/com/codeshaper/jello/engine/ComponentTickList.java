@@ -0,0 +1,140 @@
+package com.codeshaper.jello.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A flat list of {@link JelloComponent}s that receive a callback every update.
+ * Components are added and removed as they become enabled and disabled in a
+ * loaded Scene, so the Application doesn't need to walk the hierarchy every
+ * update.
+ * <p>
+ * A Component is in at most one list at a time. Removal is O(1). While a list
+ * is locked with {@link ComponentTickList#lock()}, removed Components leave a
+ * {@code null} in their place so iteration is not disturbed, and the list is
+ * compacted when {@link ComponentTickList#unlock()} is called.
+ */
+final class ComponentTickList {
+
+	/**
+	 * Components that are enabled in a loaded Scene, but have not had
+	 * {@link JelloComponent#onStart()} called yet.
+	 */
+	static final ComponentTickList PENDING_START = new ComponentTickList();
+	/**
+	 * Components that are enabled in a loaded Scene and have had
+	 * {@link JelloComponent#onStart()} called.
+	 */
+	static final ComponentTickList UPDATE = new ComponentTickList();
+
+	private final List<JelloComponent> components;
+	private boolean isLocked;
+	private boolean hasHoles;
+
+	private ComponentTickList() {
+		this.components = new ArrayList<JelloComponent>();
+	}
+
+	/**
+	 * Adds a Component to the list for its current state. If the Component is
+	 * already in a list, it is removed from it first.
+	 *
+	 * @param component the Component to add
+	 */
+	static void addToList(JelloComponent component) {
+		ComponentTickList.removeFromList(component);
+
+		if (component.hasOnStartBeenCalled) {
+			ComponentTickList.UPDATE.add(component);
+		} else {
+			ComponentTickList.PENDING_START.add(component);
+		}
+	}
+
+	/**
+	 * Removes a Component from whatever list it is in. If it is not in a list,
+	 * nothing happens.
+	 *
+	 * @param component the Component to remove
+	 */
+	static void removeFromList(JelloComponent component) {
+		if (component.tickList != null) {
+			component.tickList.remove(component);
+		}
+	}
+
+	/**
+	 * Gets the size of the list. While the list is locked, this includes the
+	 * {@code null} left behind by removed Components.
+	 *
+	 * @return the size of the list
+	 */
+	int size() {
+		return this.components.size();
+	}
+
+	/**
+	 * Gets the Component at an index. This may be {@code null} while the list is
+	 * locked.
+	 *
+	 * @param index the index of the Component
+	 * @return the Component at the index
+	 */
+	JelloComponent get(int index) {
+		return this.components.get(index);
+	}
+
+	/**
+	 * Locks the list so it can be iterated over. Components may still be added
+	 * while the list is locked, they are appended to the end.
+	 */
+	void lock() {
+		this.isLocked = true;
+	}
+
+	/**
+	 * Unlocks the list, removing any holes left by Components that were removed
+	 * while it was locked.
+	 */
+	void unlock() {
+		this.isLocked = false;
+
+		if (this.hasHoles) {
+			int count = 0;
+			for (int i = 0; i < this.components.size(); i++) {
+				JelloComponent component = this.components.get(i);
+				if (component != null) {
+					component.tickListIndex = count;
+					this.components.set(count, component);
+					count++;
+				}
+			}
+			this.components.subList(count, this.components.size()).clear();
+			this.hasHoles = false;
+		}
+	}
+
+	private void add(JelloComponent component) {
+		component.tickList = this;
+		component.tickListIndex = this.components.size();
+		this.components.add(component);
+	}
+
+	private void remove(JelloComponent component) {
+		int index = component.tickListIndex;
+		if (this.isLocked) {
+			this.components.set(index, null);
+			this.hasHoles = true;
+		} else {
+			// Swap the last Component into the removed one's slot.
+			JelloComponent last = this.components.remove(this.components.size() - 1);
+			if (last != component) {
+				this.components.set(index, last);
+				last.tickListIndex = index;
+			}
+		}
+
+		component.tickList = null;
+		component.tickListIndex = -1;
+	}
+}
@@ -9,6 +9,7 @@ import javax.swing.JPanel;
 
 import org.apache.commons.lang3.StringUtils;
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
 
@@ -43,6 +44,11 @@ public final class GameObject extends JelloObject {
 	private Quaternionf localRotation;
 	private Vector3f localScale;
 	private transient Matrix4f localMatrix;
+	/**
+	 * The cached world matrix. This is only recomputed when
+	 * {@link GameObject#isWorldMatrixDirty} is set.
+	 */
+	private transient Matrix4f worldMatrix;
 	/**
 	 * The Scene the GameObject is located in.
 	 */
@@ -55,6 +61,18 @@ public final class GameObject extends JelloObject {
 	transient GameObject parent;
 
 	private transient boolean isTransformDirty = true;
+	/**
+	 * Set when the GameObject's transform, or the transform of any of it's
+	 * ancestors, has changed since {@link GameObject#worldMatrix} was computed. If
+	 * this is set, it is also set on every descendant.
+	 */
+	private transient boolean isWorldMatrixDirty = true;
+	/**
+	 * Incremented whenever the world matrix becomes dirty.
+	 * 
+	 * @see GameObject#getWorldMatrixVersion()
+	 */
+	private transient int worldMatrixVersion;
 
 	/**
 	 * Creates a new GameObject and adds it to a {@link Scene}.
@@ -196,6 +214,7 @@ public final class GameObject extends JelloObject {
 		this.localRotation = new Quaternionf();
 		this.localScale = new Vector3f(1f, 1f, 1f);
 		this.localMatrix = new Matrix4f();
+		this.worldMatrix = new Matrix4f();
 	}
 
 	@Override
@@ -265,7 +284,7 @@ public final class GameObject extends JelloObject {
 	}
 
 	public Vector3f getPosition(Vector3f vector) {
-		return this.getWorldMatrix().getTranslation(vector);
+		return this.getCachedWorldMatrix().getTranslation(vector);
 	}
 
 	public Vector3f getLocalPosition() {
@@ -278,12 +297,12 @@ public final class GameObject extends JelloObject {
 
 	public void setLocalPosition(float x, float y, float z) {
 		this.localPosition.set(x, y, z);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void setLocalPosition(Vector3f position) {
 		this.localPosition.set(position);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public Quaternionf getRotation() {
@@ -291,7 +310,7 @@ public final class GameObject extends JelloObject {
 	}
 
 	public Quaternionf getRotation(Quaternionf quaternion) {
-		return this.getWorldMatrix().getNormalizedRotation(quaternion);
+		return this.getCachedWorldMatrix().getNormalizedRotation(quaternion);
 	}
 
 	public Quaternionf getLocalRotation() {
@@ -304,7 +323,7 @@ public final class GameObject extends JelloObject {
 
 	public void setLocalRotation(Quaternionf rotation) {
 		this.localRotation.set(rotation);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public Vector3f getEulerAngles() {
@@ -317,12 +336,12 @@ public final class GameObject extends JelloObject {
 
 	public void setLocalEulerAngles(float x, float y, float z) {
 		this.localRotation.set(MathHelper.quaternionFromEulerAnglesDegrees(new Vector3f(x, y, z)));
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void setLocalEulerAngles(Vector3f eulerAnglesDegrees) {
 		this.localRotation.set(MathHelper.quaternionFromEulerAnglesDegrees(eulerAnglesDegrees));
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public Vector3f getScale() {
@@ -330,7 +349,7 @@ public final class GameObject extends JelloObject {
 	}
 
 	public Vector3f getScale(Vector3f vector) {
-		return this.getWorldMatrix().getScale(vector);
+		return this.getCachedWorldMatrix().getScale(vector);
 	}
 
 	public Vector3f getLocalScale() {
@@ -343,22 +362,22 @@ public final class GameObject extends JelloObject {
 
 	public void setLocalScale(float x, float y, float z) {
 		this.localScale.set(x, y, z);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void setLocalScale(Vector3f scale) {
 		this.localScale.set(scale);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void translate(float x, float y, float z) {
 		this.localPosition.add(x, y, z);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void translate(Vector3f translation) {
 		this.localPosition.add(translation);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void rotate(float xRotation, float yRotation, float zRotation) {
@@ -366,27 +385,27 @@ public final class GameObject extends JelloObject {
 				(float) Math.toRadians(xRotation),
 				(float) Math.toRadians(yRotation),
 				(float) Math.toRadians(zRotation));
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void rotate(float angle, Vector3f axis) {
 		this.localRotation.rotateAxis(angle, axis);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void scale(float scale) {
 		this.localScale.mul(scale);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void scale(float x, float y, float z) {
 		this.localScale.mul(x, y, z);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	public void scale(Vector3f scale) {
 		this.localScale.mul(scale);
-		this.isTransformDirty = true;
+		this.markTransformDirty();
 	}
 
 	/**
@@ -439,11 +458,7 @@ public final class GameObject extends JelloObject {
 	}
 
 	public Matrix4f getLocalMatrix(Matrix4f matrix) {
-		if (this.isTransformDirty) {
-			this.localMatrix.translationRotateScale(this.localPosition, this.localRotation, this.localScale);
-			this.isTransformDirty = false;
-		}
-		return matrix.set(this.localMatrix);
+		return matrix.set(this.updateLocalMatrix());
 	}
 
 	public Matrix4f getWorldMatrix() {
@@ -451,21 +466,72 @@ public final class GameObject extends JelloObject {
 	}
 
 	public Matrix4f getWorldMatrix(Matrix4f matrix) {
-		Matrix4f localMatrix = this.getLocalMatrix(matrix);
-		this.func(localMatrix);
-		return localMatrix;
+		return matrix.set(this.getCachedWorldMatrix());
+	}
+
+	/**
+	 * Gets the GameObject's world matrix without copying it. The matrix is owned
+	 * by the GameObject and is updated in place when the GameObject or one of it's
+	 * ancestors moves, so it should not be held onto. If you need a copy, use
+	 * {@link GameObject#getWorldMatrix(Matrix4f)}.
+	 * 
+	 * @return the GameObject's world matrix
+	 */
+	public Matrix4fc getCachedWorldMatrix() {
+		if (this.isWorldMatrixDirty) {
+			if (this.parent == null) {
+				this.worldMatrix.set(this.updateLocalMatrix());
+			} else {
+				this.parent.getCachedWorldMatrix().mul(this.updateLocalMatrix(), this.worldMatrix);
+			}
+			this.isWorldMatrixDirty = false;
+		}
+		return this.worldMatrix;
 	}
 
 	public boolean isDirty() {
 		return this.isTransformDirty;
 	}
 
-	private void func(Matrix4f m) {
-		if (this.parent == null) {
-			return;
-		} else {
-			Matrix4f parentMatrix = this.parent.getLocalMatrix();
-			m.mulLocal(parentMatrix);
+	/**
+	 * Gets a number that changes every time the GameObject's world matrix does,
+	 * from it or one of it's ancestors moving. Unlike
+	 * {@link GameObject#isDirty()}, which is cleared as soon as the matrix is
+	 * recomputed, this can be stored and compared later to find out if the
+	 * GameObject has moved since.
+	 * 
+	 * @return the version of the GameObject's world matrix
+	 */
+	public int getWorldMatrixVersion() {
+		return this.worldMatrixVersion;
+	}
+
+	private Matrix4f updateLocalMatrix() {
+		if (this.isTransformDirty) {
+			this.localMatrix.translationRotateScale(this.localPosition, this.localRotation, this.localScale);
+			this.isTransformDirty = false;
+		}
+		return this.localMatrix;
+	}
+
+	private void markTransformDirty() {
+		this.isTransformDirty = true;
+		this.markWorldMatrixDirty();
+	}
+
+	/**
+	 * Marks the world matrix of the GameObject and all of it's descendants as
+	 * dirty.
+	 */
+	private void markWorldMatrixDirty() {
+		if (this.isWorldMatrixDirty) {
+			return; // Descendants are already dirty.
+		}
+
+		this.isWorldMatrixDirty = true;
+		this.worldMatrixVersion++;
+		for (int i = 0; i < this.children.size(); i++) {
+			this.children.get(i).markWorldMatrixDirty();
 		}
 	}
 
@@ -545,6 +611,9 @@ public final class GameObject extends JelloObject {
 			this.parent = parent;
 			this.parent.children.add(this);
 		}
+
+		this.markWorldMatrixDirty();
+		this.refreshComponentsInLoadedScene();
 	}
 
 	/**
@@ -697,6 +766,7 @@ public final class GameObject extends JelloObject {
 			component.owner = this;
 			component.enabled = true;
 			this.components.add(component);
+			component.setEnabledInLoadedScene(this.isActiveInLoadedScene());
 
 			if (Application.isPlaying()) {
 				component.invokeOnConstruct();
@@ -964,6 +1034,40 @@ public final class GameObject extends JelloObject {
 		} else {
 			this.isActive = active;
 		}
+
+		this.refreshComponentsInLoadedScene();
+	}
+
+	/**
+	 * Checks if the GameObject is active in it's Scene and the Scene is loaded.
+	 * 
+	 * @return {@code true} if the GameObject is active in a loaded Scene
+	 * @see GameObject#isActiveInScene()
+	 */
+	boolean isActiveInLoadedScene() {
+		return this.scene != null && this.scene.isLoaded && this.isActiveInScene();
+	}
+
+	/**
+	 * Updates the {@link JelloComponent#isEnabledInLoadedScene} flag of every
+	 * Component on this GameObject and all of it's descendants. This should be
+	 * called whenever something changes that could affect if the GameObject is
+	 * active in a loaded Scene.
+	 */
+	void refreshComponentsInLoadedScene() {
+		this.refreshComponentsInLoadedScene(this.isActiveInLoadedScene());
+	}
+
+	private void refreshComponentsInLoadedScene(boolean isActive) {
+		for (int i = 0; i < this.components.size(); i++) {
+			JelloComponent component = this.components.get(i);
+			component.setEnabledInLoadedScene(isActive && component.enabled && !component.isDestroyed());
+		}
+
+		for (int i = 0; i < this.children.size(); i++) {
+			GameObject child = this.children.get(i);
+			child.refreshComponentsInLoadedScene(isActive && child.isActive);
+		}
 	}
 
 	void invokeRecursively(GameObject obj, ILogic logic) {
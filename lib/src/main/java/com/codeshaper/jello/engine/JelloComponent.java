@@ -9,6 +9,10 @@ import com.codeshaper.jello.editor.inspector.ComponentEditor;
 import com.codeshaper.jello.editor.inspector.Editor;
 import com.codeshaper.jello.editor.property.ExposedField;
 import com.codeshaper.jello.editor.property.modifier.Button;
+import com.codeshaper.jello.engine.lighting.AbstractLight;
+import com.codeshaper.jello.engine.lighting.LightRegistry;
+import com.codeshaper.jello.engine.rendering.RenderQueue;
+import com.codeshaper.jello.engine.rendering.Renderer;
 
 /**
  * Base class for all Components that can be attached to GameObjects.
@@ -48,6 +52,24 @@ public abstract class JelloComponent extends JelloObject {
 	 * a prefab where it is disabled.
 	 */
 	transient boolean hasOnStartBeenCalled;
+	/**
+	 * Is the Component enabled, it's owner active in the Scene, and the Scene
+	 * loaded. This is kept up to date by the engine as Components, GameObjects and
+	 * Scenes change, so systems that only care about live Components (like the
+	 * {@link RenderQueue}) don't need to walk the hierarchy.
+	 * 
+	 * @see JelloComponent#setEnabledInLoadedScene(boolean)
+	 */
+	transient boolean isEnabledInLoadedScene;
+	/**
+	 * The {@link ComponentTickList} the Component is in, or {@code null} if it is
+	 * not enabled in a loaded Scene.
+	 */
+	transient ComponentTickList tickList;
+	/**
+	 * The Component's index within {@link JelloComponent#tickList}.
+	 */
+	transient int tickListIndex = -1;
 
 	/**
 	 * Gets the {@link GameObject} that owns this Component. The owning GameObject
@@ -94,6 +116,8 @@ public abstract class JelloComponent extends JelloObject {
 				this.invokeOnDisable();
 			}
 		}
+
+		this.setEnabledInLoadedScene(enabled && this.owner.isActiveInLoadedScene());
 	}
 
 	/**
@@ -139,6 +163,7 @@ public abstract class JelloComponent extends JelloObject {
 		super.destroy();
 
 		this.gameObject().removeComponent(this);
+		this.setEnabledInLoadedScene(false);
 
 		if (Application.isPlaying()) {
 			if (this.isEnabled()) {
@@ -255,11 +280,50 @@ public abstract class JelloComponent extends JelloObject {
 		}
 	}
 
+	/**
+	 * Updates the {@link JelloComponent#isEnabledInLoadedScene} flag. If it
+	 * changed, the Component is added to or removed from the engine systems that
+	 * track it.
+	 * 
+	 * @param enabledInLoadedScene is the Component enabled, with it's owner
+	 *                             active, in a loaded Scene
+	 */
+	final void setEnabledInLoadedScene(boolean enabledInLoadedScene) {
+		if (this.isEnabledInLoadedScene == enabledInLoadedScene) {
+			return; // Nothing changed.
+		}
+
+		this.isEnabledInLoadedScene = enabledInLoadedScene;
+
+		if (enabledInLoadedScene) {
+			ComponentTickList.addToList(this);
+		} else {
+			ComponentTickList.removeFromList(this);
+		}
+
+		if (this instanceof Renderer) {
+			if (enabledInLoadedScene) {
+				RenderQueue.getInstance().add((Renderer) this);
+			} else {
+				RenderQueue.getInstance().remove((Renderer) this);
+			}
+		} else if (this instanceof AbstractLight) {
+			if (enabledInLoadedScene) {
+				LightRegistry.getInstance().add((AbstractLight) this);
+			} else {
+				LightRegistry.getInstance().remove((AbstractLight) this);
+			}
+		}
+	}
+
 	// Called internally by the Editor.
 	final void invokeOnConstruct() {
 		// When Play Mode is exited and started again, this flag is never reset. Hacky
 		// temp fix right here...
 		this.hasOnStartBeenCalled = false;
+		if (this.isEnabledInLoadedScene) {
+			ComponentTickList.addToList(this); // Move it back to the pending start list.
+		}
 
 		try {
 			this.onConstruct();
@@ -19,12 +19,54 @@ public class MeshBuilder {
 
 	public final float[] verts;
 	public final float[] textCoords;
+	/**
+	 * The normal of every vertex, stored as consecutive x, y, z values. May be
+	 * null.
+	 */
+	public final float[] normals;
+	/**
+	 * The tangent of every vertex, stored as consecutive x, y, z, w values, where
+	 * w is the sign of the bitangent. May be null.
+	 */
+	public final float[] tangents;
+	/**
+	 * The color of every vertex, stored as consecutive r, g, b, a values. May be
+	 * null.
+	 */
+	public final float[] colors;
 	public final int[] indices;
+	/**
+	 * The bounds of {@link MeshBuilder#verts}.
+	 */
+	public final Bounds bounds;
 
 	public MeshBuilder(float[] vertices, float[] textCoords, int[] indices) {
+		this(vertices, textCoords, null, null, null, indices);
+	}
+
+	public MeshBuilder(float[] vertices, float[] textCoords, float[] normals, float[] tangents, float[] colors,
+			int[] indices) {
+		this(vertices, textCoords, normals, tangents, colors, indices, Bounds.fromPositions(vertices));
+	}
+
+	public MeshBuilder(float[] vertices, float[] textCoords, float[] normals, float[] tangents, float[] colors,
+			int[] indices, Bounds bounds) {
 		this.verts = vertices;
 		this.textCoords = textCoords;
+		this.normals = normals;
+		this.tangents = tangents;
+		this.colors = colors;
 		this.indices = indices;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * Gets the number of vertices.
+	 *
+	 * @return the number of vertices
+	 */
+	public int getVertexCount() {
+		return this.verts.length / 3;
 	}
 	
 	/*
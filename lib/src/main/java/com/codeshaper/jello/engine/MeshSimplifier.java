@@ -0,0 +1,355 @@
+package com.codeshaper.jello.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reduces the number of triangles in a mesh by repeatedly collapsing the edge
+ * that changes the shape of the mesh the least, measured with quadric error
+ * metrics.
+ * <p>
+ * Edges are collapsed onto one of their existing vertices, so no new vertices
+ * are made and every attribute of the kept vertices stays valid. Vertices on an
+ * open edge are never moved. This keeps the outline of open meshes, and keeps
+ * the seams where vertices are split for texture coordinates or normals from
+ * tearing apart.
+ */
+public final class MeshSimplifier {
+
+	private static final int MAX_ITERATIONS = 100;
+	/**
+	 * How quickly the error threshold grows between iterations. Higher values
+	 * finish in fewer iterations, but collapse edges in a less optimal order.
+	 */
+	private static final double AGGRESSIVENESS = 7;
+	/**
+	 * Collapses that would turn a triangle further than this, as the cosine of the
+	 * angle between its old and new normals, are rejected.
+	 */
+	private static final double MIN_NORMAL_DOT = 0.2;
+
+	private MeshSimplifier() {
+	}
+
+	/**
+	 * Simplifies a mesh.
+	 *
+	 * @param source the mesh to simplify
+	 * @param ratio  the fraction of the triangles to keep, between 0 and 1
+	 * @return a new MeshBuilder with the simplified mesh. It has the same bounds
+	 *         as {@code source}, so it is culled the same way.
+	 * @throws IllegalArgumentException if {@code source} is null
+	 */
+	public static MeshBuilder simplify(MeshBuilder source, float ratio) {
+		if (source == null) {
+			throw new IllegalArgumentException("source may not be null");
+		}
+
+		float[] positions = source.verts;
+		int vertexCount = source.getVertexCount();
+		int[] triangles = source.indices.clone();
+		int triangleCount = triangles.length / 3;
+		int targetCount = (int) (triangleCount * Math.max(0f, Math.min(1f, ratio)));
+
+		double[] quadrics = new double[vertexCount * 10];
+		for (int t = 0; t < triangleCount; t++) {
+			addPlaneQuadric(positions, quadrics, triangles[t * 3], triangles[t * 3 + 1], triangles[t * 3 + 2]);
+		}
+		boolean[] isLocked = findOpenEdgeVertices(triangles, vertexCount);
+
+		boolean[] isDeleted = new boolean[triangleCount];
+		boolean[] isDirty = new boolean[vertexCount];
+		int[] adjacencyStart = new int[vertexCount + 1];
+		int[] adjacency = new int[triangles.length];
+		int aliveCount = triangleCount;
+
+		for (int iteration = 0; iteration < MAX_ITERATIONS && aliveCount > targetCount; iteration++) {
+			buildAdjacency(triangles, isDeleted, vertexCount, adjacencyStart, adjacency);
+			Arrays.fill(isDirty, false);
+			double threshold = 0.000000001 * Math.pow(iteration + 3, AGGRESSIVENESS);
+
+			for (int t = 0; t < triangleCount && aliveCount > targetCount; t++) {
+				if (isDeleted[t]) {
+					continue;
+				}
+
+				for (int edge = 0; edge < 3; edge++) {
+					int a = triangles[t * 3 + edge];
+					int b = triangles[t * 3 + (edge + 1) % 3];
+					if (isDirty[a] || isDirty[b]) {
+						continue;
+					}
+
+					// Collapse onto whichever end gives the smallest error.
+					int from = -1;
+					int to = -1;
+					double error = Double.MAX_VALUE;
+					if (!isLocked[a]) {
+						double e = evaluate(quadrics, a, b, positions, b);
+						if (e < error) {
+							error = e;
+							from = a;
+							to = b;
+						}
+					}
+					if (!isLocked[b]) {
+						double e = evaluate(quadrics, a, b, positions, a);
+						if (e < error) {
+							error = e;
+							from = b;
+							to = a;
+						}
+					}
+					if (from == -1 || error > threshold) {
+						continue;
+					}
+					if (flips(triangles, isDeleted, adjacencyStart, adjacency, positions, from, to)) {
+						continue;
+					}
+
+					for (int i = adjacencyStart[from]; i < adjacencyStart[from + 1]; i++) {
+						int other = adjacency[i];
+						if (isDeleted[other]) {
+							continue;
+						}
+						int o = other * 3;
+						if (triangles[o] == to || triangles[o + 1] == to || triangles[o + 2] == to) {
+							isDeleted[other] = true;
+							aliveCount--;
+						} else {
+							for (int j = 0; j < 3; j++) {
+								if (triangles[o + j] == from) {
+									triangles[o + j] = to;
+								}
+							}
+						}
+					}
+					for (int i = 0; i < 10; i++) {
+						quadrics[to * 10 + i] += quadrics[from * 10 + i];
+					}
+					isDirty[from] = true;
+					isDirty[to] = true;
+					break;
+				}
+			}
+		}
+
+		return compact(source, triangles, isDeleted);
+	}
+
+	/**
+	 * Adds the quadric of a triangle's plane to each of it's vertices. The
+	 * quadric is stored as the 10 unique values of a symmetric 4x4 matrix.
+	 */
+	private static void addPlaneQuadric(float[] positions, double[] quadrics, int i0, int i1, int i2) {
+		double ax = positions[i1 * 3] - positions[i0 * 3];
+		double ay = positions[i1 * 3 + 1] - positions[i0 * 3 + 1];
+		double az = positions[i1 * 3 + 2] - positions[i0 * 3 + 2];
+		double bx = positions[i2 * 3] - positions[i0 * 3];
+		double by = positions[i2 * 3 + 1] - positions[i0 * 3 + 1];
+		double bz = positions[i2 * 3 + 2] - positions[i0 * 3 + 2];
+		double nx = ay * bz - az * by;
+		double ny = az * bx - ax * bz;
+		double nz = ax * by - ay * bx;
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length == 0) {
+			return; // Degenerate triangle, it has no plane.
+		}
+		nx /= length;
+		ny /= length;
+		nz /= length;
+		double d = -(nx * positions[i0 * 3] + ny * positions[i0 * 3 + 1] + nz * positions[i0 * 3 + 2]);
+
+		double[] plane = { nx * nx, nx * ny, nx * nz, nx * d, ny * ny, ny * nz, ny * d, nz * nz, nz * d, d * d };
+		for (int i = 0; i < 10; i++) {
+			quadrics[i0 * 10 + i] += plane[i];
+			quadrics[i1 * 10 + i] += plane[i];
+			quadrics[i2 * 10 + i] += plane[i];
+		}
+	}
+
+	/**
+	 * Evaluates the combined quadric of two vertices at the position of a third.
+	 */
+	private static double evaluate(double[] quadrics, int v0, int v1, float[] positions, int at) {
+		double x = positions[at * 3];
+		double y = positions[at * 3 + 1];
+		double z = positions[at * 3 + 2];
+		int q0 = v0 * 10;
+		int q1 = v1 * 10;
+		double[] q = quadrics;
+		return (q[q0] + q[q1]) * x * x
+				+ 2 * (q[q0 + 1] + q[q1 + 1]) * x * y
+				+ 2 * (q[q0 + 2] + q[q1 + 2]) * x * z
+				+ 2 * (q[q0 + 3] + q[q1 + 3]) * x
+				+ (q[q0 + 4] + q[q1 + 4]) * y * y
+				+ 2 * (q[q0 + 5] + q[q1 + 5]) * y * z
+				+ 2 * (q[q0 + 6] + q[q1 + 6]) * y
+				+ (q[q0 + 7] + q[q1 + 7]) * z * z
+				+ 2 * (q[q0 + 8] + q[q1 + 8]) * z
+				+ (q[q0 + 9] + q[q1 + 9]);
+	}
+
+	/**
+	 * Checks if moving {@code from} onto {@code to} would flip or squash any of
+	 * the triangles around {@code from} that are not removed by the collapse.
+	 */
+	private static boolean flips(int[] triangles, boolean[] isDeleted, int[] adjacencyStart, int[] adjacency,
+			float[] positions, int from, int to) {
+		for (int i = adjacencyStart[from]; i < adjacencyStart[from + 1]; i++) {
+			int t = adjacency[i];
+			if (isDeleted[t]) {
+				continue;
+			}
+			int o = t * 3;
+			if (triangles[o] == to || triangles[o + 1] == to || triangles[o + 2] == to) {
+				continue; // Removed by the collapse.
+			}
+
+			// The other two vertices, in winding order after from.
+			int corner = triangles[o] == from ? 0 : triangles[o + 1] == from ? 1 : 2;
+			int v1 = triangles[o + (corner + 1) % 3];
+			int v2 = triangles[o + (corner + 2) % 3];
+
+			double[] oldNormal = normal(positions, from, v1, v2);
+			double[] newNormal = normal(positions, to, v1, v2);
+			if (oldNormal == null || newNormal == null) {
+				return true;
+			}
+			double dot = oldNormal[0] * newNormal[0] + oldNormal[1] * newNormal[1] + oldNormal[2] * newNormal[2];
+			if (dot < MIN_NORMAL_DOT) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static double[] normal(float[] positions, int i0, int i1, int i2) {
+		double ax = positions[i1 * 3] - positions[i0 * 3];
+		double ay = positions[i1 * 3 + 1] - positions[i0 * 3 + 1];
+		double az = positions[i1 * 3 + 2] - positions[i0 * 3 + 2];
+		double bx = positions[i2 * 3] - positions[i0 * 3];
+		double by = positions[i2 * 3 + 1] - positions[i0 * 3 + 1];
+		double bz = positions[i2 * 3 + 2] - positions[i0 * 3 + 2];
+		double nx = ay * bz - az * by;
+		double ny = az * bx - ax * bz;
+		double nz = ax * by - ay * bx;
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length < 1e-12) {
+			return null;
+		}
+		return new double[] { nx / length, ny / length, nz / length };
+	}
+
+	/**
+	 * Finds the vertices on an edge that only one triangle uses.
+	 */
+	private static boolean[] findOpenEdgeVertices(int[] triangles, int vertexCount) {
+		Map<Long, Integer> edgeUseCounts = new HashMap<Long, Integer>();
+		for (int t = 0; t < triangles.length; t += 3) {
+			for (int edge = 0; edge < 3; edge++) {
+				edgeUseCounts.merge(edgeKey(triangles[t + edge], triangles[t + (edge + 1) % 3]), 1, Integer::sum);
+			}
+		}
+
+		boolean[] isOpen = new boolean[vertexCount];
+		for (Map.Entry<Long, Integer> entry : edgeUseCounts.entrySet()) {
+			if (entry.getValue() == 1) {
+				long key = entry.getKey();
+				isOpen[(int) (key >>> 32)] = true;
+				isOpen[(int) key] = true;
+			}
+		}
+		return isOpen;
+	}
+
+	private static long edgeKey(int a, int b) {
+		return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+	}
+
+	/**
+	 * Builds, for every vertex, the list of triangles that use it. The triangles
+	 * of vertex {@code v} are in {@code adjacency} from {@code adjacencyStart[v]}
+	 * up to {@code adjacencyStart[v + 1]}.
+	 */
+	private static void buildAdjacency(int[] triangles, boolean[] isDeleted, int vertexCount, int[] adjacencyStart,
+			int[] adjacency) {
+		Arrays.fill(adjacencyStart, 0);
+		for (int t = 0; t < isDeleted.length; t++) {
+			if (!isDeleted[t]) {
+				for (int j = 0; j < 3; j++) {
+					adjacencyStart[triangles[t * 3 + j] + 1]++;
+				}
+			}
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			adjacencyStart[v + 1] += adjacencyStart[v];
+		}
+
+		int[] cursor = adjacencyStart.clone();
+		for (int t = 0; t < isDeleted.length; t++) {
+			if (!isDeleted[t]) {
+				for (int j = 0; j < 3; j++) {
+					adjacency[cursor[triangles[t * 3 + j]]++] = t;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds a MeshBuilder from the remaining triangles, with only the vertices
+	 * they use.
+	 */
+	private static MeshBuilder compact(MeshBuilder source, int[] triangles, boolean[] isDeleted) {
+		int[] remap = new int[source.getVertexCount()];
+		Arrays.fill(remap, -1);
+		int newVertexCount = 0;
+		int newIndexCount = 0;
+		for (int t = 0; t < isDeleted.length; t++) {
+			if (isDeleted[t]) {
+				continue;
+			}
+			for (int j = 0; j < 3; j++) {
+				int v = triangles[t * 3 + j];
+				if (remap[v] == -1) {
+					remap[v] = newVertexCount++;
+				}
+			}
+			newIndexCount += 3;
+		}
+
+		int[] indices = new int[newIndexCount];
+		int pos = 0;
+		for (int t = 0; t < isDeleted.length; t++) {
+			if (!isDeleted[t]) {
+				for (int j = 0; j < 3; j++) {
+					indices[pos++] = remap[triangles[t * 3 + j]];
+				}
+			}
+		}
+
+		return new MeshBuilder(
+				copyAttribute(source.verts, 3, remap, newVertexCount),
+				copyAttribute(source.textCoords, 2, remap, newVertexCount),
+				copyAttribute(source.normals, 3, remap, newVertexCount),
+				copyAttribute(source.tangents, 4, remap, newVertexCount),
+				copyAttribute(source.colors, 4, remap, newVertexCount),
+				indices,
+				source.bounds);
+	}
+
+	private static float[] copyAttribute(float[] source, int size, int[] remap, int newVertexCount) {
+		if (source == null) {
+			return null;
+		}
+
+		float[] result = new float[newVertexCount * size];
+		for (int v = 0; v < remap.length; v++) {
+			if (remap[v] != -1 && (v + 1) * size <= source.length) {
+				System.arraycopy(source, v * size, result, remap[v] * size, size);
+			}
+		}
+		return result;
+	}
+}
@@ -10,6 +10,7 @@ import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIColor4D;
 import org.lwjgl.assimp.AIFace;
 import org.lwjgl.assimp.AIMesh;
 import org.lwjgl.assimp.AIScene;
@@ -56,6 +57,23 @@ public class ModelLoader {
 		return null;
 	}
 
+	/**
+	 * Generates lower levels of detail for a mesh with
+	 * {@link MeshSimplifier#simplify(MeshBuilder, float)}.
+	 * 
+	 * @param source the mesh to simplify
+	 * @param ratios the fraction of {@code source}'s triangles to keep in each
+	 *               level, from most to least detailed
+	 * @return a level for every ratio
+	 */
+	public static MeshBuilder[] generateLods(MeshBuilder source, float... ratios) {
+		MeshBuilder[] lods = new MeshBuilder[ratios.length];
+		for (int i = 0; i < ratios.length; i++) {
+			lods[i] = MeshSimplifier.simplify(source, ratios[i]);
+		}
+		return lods;
+	}
+
 	private static int[] processIndices(AIMesh aiMesh) {
 		List<Integer> indices = new ArrayList<>();
 		int numFaces = aiMesh.mNumFaces();
@@ -73,6 +91,9 @@ public class ModelLoader {
 	private static MeshBuilder processMesh(AIMesh aiMesh) {
 		float[] vertices = processVertices(aiMesh);
 		float[] textCoords = processTextCoords(aiMesh);
+		float[] normals = processNormals(aiMesh);
+		float[] tangents = processTangents(aiMesh);
+		float[] colors = processColors(aiMesh);
 		int[] indices = processIndices(aiMesh);
 
 		// Texture coordinates may not have been populated. We need at least the empty
@@ -82,7 +103,70 @@ public class ModelLoader {
 			textCoords = new float[numElements];
 		}
 
-		return new MeshBuilder(vertices, textCoords, indices);
+		return new MeshBuilder(vertices, textCoords, normals, tangents, colors, indices);
+	}
+
+	private static float[] processNormals(AIMesh aiMesh) {
+		AIVector3D.Buffer buffer = aiMesh.mNormals();
+		if (buffer == null) {
+			return null;
+		}
+		float[] data = new float[buffer.remaining() * 3];
+		int pos = 0;
+		while (buffer.remaining() > 0) {
+			AIVector3D normal = buffer.get();
+			data[pos++] = normal.x();
+			data[pos++] = normal.y();
+			data[pos++] = normal.z();
+		}
+		return data;
+	}
+
+	/**
+	 * Reads the tangents, and packs the direction of the bitangent into the w
+	 * component so the bitangent can be rebuilt in a shader with
+	 * {@code cross(normal, tangent.xyz) * tangent.w}.
+	 */
+	private static float[] processTangents(AIMesh aiMesh) {
+		AIVector3D.Buffer tangents = aiMesh.mTangents();
+		AIVector3D.Buffer bitangents = aiMesh.mBitangents();
+		AIVector3D.Buffer normals = aiMesh.mNormals();
+		if (tangents == null || bitangents == null || normals == null) {
+			return null;
+		}
+		float[] data = new float[tangents.remaining() * 4];
+		int pos = 0;
+		for (int i = 0; i < tangents.remaining(); i++) {
+			AIVector3D t = tangents.get(i);
+			AIVector3D b = bitangents.get(i);
+			AIVector3D n = normals.get(i);
+			// Sign of dot(cross(n, t), b).
+			float handedness = (n.y() * t.z() - n.z() * t.y()) * b.x()
+					+ (n.z() * t.x() - n.x() * t.z()) * b.y()
+					+ (n.x() * t.y() - n.y() * t.x()) * b.z();
+			data[pos++] = t.x();
+			data[pos++] = t.y();
+			data[pos++] = t.z();
+			data[pos++] = handedness < 0 ? -1 : 1;
+		}
+		return data;
+	}
+
+	private static float[] processColors(AIMesh aiMesh) {
+		AIColor4D.Buffer buffer = aiMesh.mColors(0);
+		if (buffer == null) {
+			return null;
+		}
+		float[] data = new float[buffer.remaining() * 4];
+		int pos = 0;
+		while (buffer.remaining() > 0) {
+			AIColor4D color = buffer.get();
+			data[pos++] = color.r();
+			data[pos++] = color.g();
+			data[pos++] = color.b();
+			data[pos++] = color.a();
+		}
+		return data;
 	}
 
 	private static float[] processTextCoords(AIMesh aiMesh) {
@@ -31,6 +31,10 @@ public final class Scene extends SerializedJelloObject {
 	 * will never be null, it could be empty.
 	 */
 	final List<GameObject> rootGameObjects;
+	/**
+	 * Is the Scene currently loaded in a {@link SceneManager}.
+	 */
+	transient boolean isLoaded;
 
 	public Scene(AssetLocation location) {
 		super(location);
@@ -86,6 +90,8 @@ public final class Scene extends SerializedJelloObject {
 		this.rootGameObjects.add(gameObject);
 		
 		this.recursivelySetScene(gameObject);
+
+		gameObject.refreshComponentsInLoadedScene();
 	}
 
 	/**
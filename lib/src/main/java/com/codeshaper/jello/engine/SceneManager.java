@@ -29,6 +29,10 @@ public class SceneManager {
 		}
 
 		this.loadedScenes.add(scene);
+		scene.isLoaded = true;
+		for (int i = 0; i < scene.getRootGameObjectCount(); i++) {
+			scene.getRootGameObject(i).refreshComponentsInLoadedScene();
+		}
 
 		if (Application.isPlaying()) {
 			for (int i = scene.getRootGameObjectCount() - 1; i >= 0; i--) {
@@ -61,6 +65,11 @@ public class SceneManager {
 		}
 
 		this.loadedScenes.remove(scene);
+		scene.isLoaded = false;
+		for (int i = 0; i < scene.getRootGameObjectCount(); i++) {
+			scene.getRootGameObject(i).refreshComponentsInLoadedScene();
+		}
+
 		return true;
 	}
 
@@ -0,0 +1,469 @@
+package com.codeshaper.jello.engine;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.stb.STBImage.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import com.codeshaper.jello.engine.database.AssetDatabase;
+import com.codeshaper.jello.engine.rendering.TextureCompression;
+
+/**
+ * Converts image files into the form Textures are uploaded to the GPU in, with
+ * a full chain of mipmaps and optionally block compressed with
+ * {@link BlockCompressor}.
+ * <p>
+ * Converting an image is slow, so the result is cached in a KTX file in the
+ * project's {@code importCache} folder. The cache is keyed on a checksum of the
+ * source file and the compression, so it is rebuilt whenever either changes.
+ */
+public final class TextureImporter {
+
+	/**
+	 * The folder in the root of the project that imported Textures are cached in.
+	 */
+	public static final String CACHE_FOLDER = "importCache/textures";
+
+	/**
+	 * Increment whenever the way Textures are converted changes, to rebuild every
+	 * cached file.
+	 */
+	private static final int CACHE_VERSION = 1;
+	private static final String SOURCE_KEY = "JelloSource";
+	private static final byte[] KTX_IDENTIFIER = new byte[] {
+			(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n' };
+	private static final int KTX_ENDIANNESS = 0x04030201;
+	private static final int KTX_HEADER_SIZE = 64;
+
+	private TextureImporter() {
+	}
+
+	/**
+	 * Imports an image file, reading it from the cache if it has already been
+	 * imported.
+	 *
+	 * @param location    the location of the image file
+	 * @param compression the compression to use
+	 * @param useCache    if the cache should be read and written
+	 * @return the imported Texture, or {@code null} if the file could not be read
+	 * @throws IllegalArgumentException if {@code location} or {@code compression}
+	 *                                  is null
+	 */
+	public static ImportedTexture importTexture(AssetLocation location, TextureCompression compression,
+			boolean useCache) {
+		if (location == null) {
+			throw new IllegalArgumentException("location may not be null");
+		}
+		if (compression == null) {
+			throw new IllegalArgumentException("compression may not be null");
+		}
+
+		byte[] source = readSource(location);
+		if (source == null) {
+			return null;
+		}
+
+		CRC32 checksum = new CRC32();
+		checksum.update(source);
+		String sourceKey = String.format("%s:%s:%s", CACHE_VERSION, Long.toHexString(checksum.getValue()),
+				compression);
+
+		File cacheFile = useCache ? getCacheFile(location) : null;
+		if (cacheFile != null && cacheFile.exists()) {
+			ImportedTexture cached = readKtx(cacheFile.toPath(), sourceKey);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		ImportedTexture texture = convert(source, compression);
+		if (texture != null && cacheFile != null) {
+			writeKtx(texture, cacheFile.toPath(), sourceKey);
+		}
+		return texture;
+	}
+
+	/**
+	 * Decodes an image file into uncompressed pixels, without any mipmaps.
+	 *
+	 * @param location the location of the image file
+	 * @return the image, with a single level, or {@code null} if the file could
+	 *         not be read
+	 * @throws IllegalArgumentException if {@code location} is null
+	 */
+	public static ImportedTexture decodePixels(AssetLocation location) {
+		if (location == null) {
+			throw new IllegalArgumentException("location may not be null");
+		}
+
+		byte[] source = readSource(location);
+		if (source == null) {
+			return null;
+		}
+
+		int[] size = new int[2];
+		ByteBuffer pixels = decode(source, size);
+		return pixels == null ? null : new ImportedTexture(size[0], size[1], GL_RGBA8, new ByteBuffer[] { pixels });
+	}
+
+	/**
+	 * Gets the number of mipmaps a full chain has for an image of a given size,
+	 * including the image itself.
+	 *
+	 * @param width  the width of the image
+	 * @param height the height of the image
+	 * @return the number of levels
+	 */
+	public static int getMipmapCount(int width, int height) {
+		return 32 - Integer.numberOfLeadingZeros(Math.max(1, Math.max(width, height)));
+	}
+
+	private static byte[] readSource(AssetLocation location) {
+		try (InputStream stream = location.getInputSteam()) {
+			if (stream == null) {
+				Debug.logError("Error loading Texture: %s does not exist", location);
+				return null;
+			}
+			return IOUtils.toByteArray(stream);
+		} catch (IOException e) {
+			Debug.log(e);
+			return null;
+		}
+	}
+
+	private static File getCacheFile(AssetLocation location) {
+		AssetDatabase database = AssetDatabase.getInstance();
+		if (database == null || database.assetsFolder.getParent() == null) {
+			return null;
+		}
+
+		return database.assetsFolder.getParent()
+				.resolve(CACHE_FOLDER)
+				.resolve(location.getRelativePath() + ".ktx")
+				.toFile();
+	}
+
+	private static ImportedTexture convert(byte[] source, TextureCompression compression) {
+		int[] size = new int[2];
+		ByteBuffer pixels = decode(source, size);
+		if (pixels == null) {
+			return null;
+		}
+		int width = size[0];
+		int height = size[1];
+
+		ByteBuffer[] levels = new ByteBuffer[getMipmapCount(width, height)];
+		levels[0] = pixels;
+		for (int i = 1; i < levels.length; i++) {
+			levels[i] = downsample(levels[i - 1], Math.max(1, width >> (i - 1)), Math.max(1, height >> (i - 1)));
+		}
+
+		if (compression == TextureCompression.NONE) {
+			return new ImportedTexture(width, height, GL_RGBA8, levels);
+		}
+
+		boolean withAlpha = !BlockCompressor.isOpaque(pixels, width, height);
+		for (int i = 0; i < levels.length; i++) {
+			ByteBuffer level = levels[i];
+			levels[i] = BlockCompressor.compress(level, Math.max(1, width >> i), Math.max(1, height >> i), withAlpha);
+			MemoryUtil.memFree(level);
+		}
+		return new ImportedTexture(width, height,
+				withAlpha ? GL_COMPRESSED_RGBA_S3TC_DXT5_EXT : GL_COMPRESSED_RGB_S3TC_DXT1_EXT, levels);
+	}
+
+	/**
+	 * Decodes an image with stb_image into a buffer allocated with
+	 * {@link MemoryUtil#memAlloc(int)}.
+	 */
+	private static ByteBuffer decode(byte[] source, int[] size) {
+		ByteBuffer encoded = MemoryUtil.memAlloc(source.length);
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			encoded.put(source).flip();
+
+			IntBuffer w = stack.mallocInt(1);
+			IntBuffer h = stack.mallocInt(1);
+			IntBuffer channels = stack.mallocInt(1);
+			ByteBuffer decoded = stbi_load_from_memory(encoded, w, h, channels, 4);
+			if (decoded == null) {
+				Debug.logError("Error loading Texture: " + stbi_failure_reason());
+				return null;
+			}
+
+			size[0] = w.get(0);
+			size[1] = h.get(0);
+			ByteBuffer pixels = MemoryUtil.memAlloc(decoded.remaining());
+			MemoryUtil.memCopy(decoded, pixels);
+			stbi_image_free(decoded);
+			return pixels;
+		} finally {
+			MemoryUtil.memFree(encoded);
+		}
+	}
+
+	/**
+	 * Halves the size of an image, averaging every 2x2 block of pixels.
+	 */
+	private static ByteBuffer downsample(ByteBuffer pixels, int width, int height) {
+		int newWidth = Math.max(1, width >> 1);
+		int newHeight = Math.max(1, height >> 1);
+		ByteBuffer output = MemoryUtil.memAlloc(newWidth * newHeight * 4);
+
+		for (int y = 0; y < newHeight; y++) {
+			int y0 = Math.min(y * 2, height - 1);
+			int y1 = Math.min(y * 2 + 1, height - 1);
+			for (int x = 0; x < newWidth; x++) {
+				int x0 = Math.min(x * 2, width - 1);
+				int x1 = Math.min(x * 2 + 1, width - 1);
+				for (int c = 0; c < 4; c++) {
+					int sum = (pixels.get((x0 + y0 * width) * 4 + c) & 0xFF)
+							+ (pixels.get((x1 + y0 * width) * 4 + c) & 0xFF)
+							+ (pixels.get((x0 + y1 * width) * 4 + c) & 0xFF)
+							+ (pixels.get((x1 + y1 * width) * 4 + c) & 0xFF);
+					output.put((x + y * newWidth) * 4 + c, (byte) ((sum + 2) >> 2));
+				}
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Reads a cached Texture. If the file is not current, or is truncated or
+	 * corrupt, {@code null} is returned so the source is imported again.
+	 */
+	private static ImportedTexture readKtx(Path path, String sourceKey) {
+		ByteBuffer file;
+		try {
+			file = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+		} catch (IOException e) {
+			return null;
+		}
+
+		ByteBuffer[] levels = null;
+		try {
+			if (file.remaining() < KTX_HEADER_SIZE) {
+				return null;
+			}
+			for (int i = 0; i < KTX_IDENTIFIER.length; i++) {
+				if (file.get() != KTX_IDENTIFIER[i]) {
+					return null;
+				}
+			}
+			if (file.getInt() != KTX_ENDIANNESS) {
+				return null;
+			}
+			file.getInt(); // glType
+			file.getInt(); // glTypeSize
+			file.getInt(); // glFormat
+			int internalFormat = file.getInt();
+			file.getInt(); // glBaseInternalFormat
+			int width = file.getInt();
+			int height = file.getInt();
+			file.getInt(); // pixelDepth
+			file.getInt(); // numberOfArrayElements
+			file.getInt(); // numberOfFaces
+			int levelCount = file.getInt();
+			int keyValueSize = file.getInt();
+			if (width <= 0 || height <= 0 || levelCount != getMipmapCount(width, height)
+					|| keyValueSize < 0 || keyValueSize > file.remaining()) {
+				return corrupt(path);
+			}
+
+			// Check the file was made from the current source.
+			int keyValueEnd = file.position() + keyValueSize;
+			boolean isCurrent = false;
+			while (file.position() < keyValueEnd) {
+				int pairSize = file.getInt();
+				if (pairSize < 0 || pairSize > keyValueEnd - file.position()) {
+					return corrupt(path);
+				}
+				byte[] pair = new byte[pairSize];
+				file.get(pair);
+				file.position(Math.min(keyValueEnd, file.position() + padding(pairSize)));
+				String pairString = new String(pair, StandardCharsets.UTF_8);
+				if (pairString.equals(SOURCE_KEY + '\0' + sourceKey + '\0')) {
+					isCurrent = true;
+				}
+			}
+			if (!isCurrent) {
+				return null;
+			}
+
+			levels = new ByteBuffer[levelCount];
+			for (int i = 0; i < levelCount; i++) {
+				int imageSize = file.getInt();
+				int expectedSize = getLevelSize(internalFormat, Math.max(1, width >> i), Math.max(1, height >> i));
+				if (imageSize != expectedSize || imageSize > file.remaining()) {
+					freeLevels(levels);
+					return corrupt(path);
+				}
+				ByteBuffer level = MemoryUtil.memAlloc(imageSize);
+				levels[i] = level;
+				level.put(file.array(), file.position(), imageSize).flip();
+				file.position(Math.min(file.limit(), file.position() + imageSize + padding(imageSize)));
+			}
+			return new ImportedTexture(width, height, internalFormat, levels);
+		} catch (RuntimeException e) {
+			if (levels != null) {
+				freeLevels(levels);
+			}
+			return corrupt(path);
+		}
+	}
+
+	private static ImportedTexture corrupt(Path path) {
+		Debug.logWarning("Cached Texture at %s is corrupt, importing it again", path);
+		return null;
+	}
+
+	/**
+	 * Gets the number of bytes in a level of a given size, or -1 if the format is
+	 * not one that Textures are imported in.
+	 */
+	private static int getLevelSize(int internalFormat, int width, int height) {
+		long blocks = (long) ((width + 3) / 4) * ((height + 3) / 4);
+		long size;
+		if (internalFormat == GL_RGBA8) {
+			size = (long) width * height * 4;
+		} else if (internalFormat == GL_COMPRESSED_RGB_S3TC_DXT1_EXT) {
+			size = blocks * 8;
+		} else if (internalFormat == GL_COMPRESSED_RGBA_S3TC_DXT5_EXT) {
+			size = blocks * 16;
+		} else {
+			return -1;
+		}
+		return size > Integer.MAX_VALUE ? -1 : (int) size;
+	}
+
+	private static void freeLevels(ByteBuffer[] levels) {
+		for (ByteBuffer level : levels) {
+			if (level != null) {
+				MemoryUtil.memFree(level);
+			}
+		}
+	}
+
+	private static void writeKtx(ImportedTexture texture, Path path, String sourceKey) {
+		byte[] keyValue = (SOURCE_KEY + '\0' + sourceKey + '\0').getBytes(StandardCharsets.UTF_8);
+		int keyValueSize = 4 + keyValue.length + padding(keyValue.length);
+
+		int fileSize = KTX_HEADER_SIZE + keyValueSize;
+		for (ByteBuffer level : texture.levels) {
+			fileSize += 4 + level.remaining() + padding(level.remaining());
+		}
+
+		boolean isCompressed = texture.isCompressed();
+		ByteBuffer file = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+		file.put(KTX_IDENTIFIER);
+		file.putInt(KTX_ENDIANNESS);
+		file.putInt(isCompressed ? 0 : GL_UNSIGNED_BYTE); // glType
+		file.putInt(1); // glTypeSize
+		file.putInt(isCompressed ? 0 : GL_RGBA); // glFormat
+		file.putInt(texture.internalFormat);
+		file.putInt(texture.internalFormat == GL_COMPRESSED_RGB_S3TC_DXT1_EXT ? GL_RGB : GL_RGBA);
+		file.putInt(texture.width);
+		file.putInt(texture.height);
+		file.putInt(0); // pixelDepth
+		file.putInt(0); // numberOfArrayElements
+		file.putInt(1); // numberOfFaces
+		file.putInt(texture.levels.length);
+		file.putInt(keyValueSize);
+
+		file.putInt(keyValue.length);
+		file.put(keyValue);
+		file.position(file.position() + padding(keyValue.length));
+
+		for (ByteBuffer level : texture.levels) {
+			int imageSize = level.remaining();
+			file.putInt(imageSize);
+			file.put(level.duplicate());
+			file.position(file.position() + padding(imageSize));
+		}
+
+		// Written to a temporary file first, so the cache is never left half written
+		// by a crash or by another import of the same Texture.
+		Path temp = null;
+		try {
+			Files.createDirectories(path.getParent());
+			temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+			Files.write(temp, file.array());
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Debug.logWarning("Unable to cache imported Texture at %s", path);
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException e1) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of bytes needed to pad {@code size} to a multiple of 4.
+	 */
+	private static int padding(int size) {
+		return 3 - ((size + 3) % 4);
+	}
+
+	/**
+	 * An image ready to be uploaded to the GPU. The buffers of the levels are
+	 * allocated with {@link MemoryUtil#memAlloc(int)}, and must be released with
+	 * {@link ImportedTexture#free()}.
+	 */
+	public static final class ImportedTexture {
+
+		public final int width;
+		public final int height;
+		/**
+		 * The OpenGL internal format of the levels, either {@code GL_RGBA8} or one of
+		 * the S3TC formats.
+		 */
+		public final int internalFormat;
+		/**
+		 * The image and all of its mipmaps, from largest to smallest.
+		 */
+		public final ByteBuffer[] levels;
+
+		private ImportedTexture(int width, int height, int internalFormat, ByteBuffer[] levels) {
+			this.width = width;
+			this.height = height;
+			this.internalFormat = internalFormat;
+			this.levels = levels;
+		}
+
+		/**
+		 * Checks if the levels are block compressed.
+		 *
+		 * @return {@code true} if the levels are compressed
+		 */
+		public boolean isCompressed() {
+			return this.internalFormat != GL_RGBA8;
+		}
+
+		/**
+		 * Frees the buffers of all the levels.
+		 */
+		public void free() {
+			for (ByteBuffer level : this.levels) {
+				MemoryUtil.memFree(level);
+			}
+		}
+	}
+}
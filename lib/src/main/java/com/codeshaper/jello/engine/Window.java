@@ -33,8 +33,6 @@ public final class Window {
 		glfwWindowHint(GLFW_VISIBLE, GL_FALSE);
 		glfwWindowHint(GLFW_RESIZABLE, appSettings.isResizeable ? GL_TRUE : GL_FALSE);
 
-		glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
-		glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 2);
 		if (appSettings.compatibleProfile) {
 			glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_COMPAT_PROFILE);
 		} else {
@@ -53,7 +51,17 @@ public final class Window {
 		}
 
 		long monitor = appSettings.fullscreen ? glfwGetPrimaryMonitor() : NULL;
-		this.windowHandle = glfwCreateWindow(this.width, this.height, appSettings.windowTitle, monitor, NULL);
+		long handle = NULL;
+		if (appSettings.preferModernContext) {
+			handle = this.createWindow(appSettings, monitor, 4, 3);
+			if (handle == NULL) {
+				Debug.log("Unable to create an OpenGL 4.3 context, falling back to OpenGL 3.2.");
+			}
+		}
+		if (handle == NULL) {
+			handle = this.createWindow(appSettings, monitor, 3, 2);
+		}
+		this.windowHandle = handle;
 		if (this.windowHandle == NULL) {
 			Debug.logError("Failed to create GLFW Window.  Hard crash will likely follow...");
 		}
@@ -87,6 +95,12 @@ public final class Window {
 		this.height = arrHeight[0];
 	}
 
+	private long createWindow(ApplicationSettings appSettings, long monitor, int majorVersion, int minorVersion) {
+		glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, majorVersion);
+		glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, minorVersion);
+		return glfwCreateWindow(this.width, this.height, appSettings.windowTitle, monitor, NULL);
+	}
+
 	public void cleanup() {
 		Callbacks.glfwFreeCallbacks(this.windowHandle);
 		glfwDestroyWindow(this.windowHandle);
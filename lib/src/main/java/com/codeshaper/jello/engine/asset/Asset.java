@@ -8,6 +8,7 @@ import com.codeshaper.jello.editor.inspector.AssetEditor;
 import com.codeshaper.jello.editor.inspector.Editor;
 import com.codeshaper.jello.engine.AssetLocation;
 import com.codeshaper.jello.engine.JelloObject;
+import com.codeshaper.jello.engine.database.AssetDatabase;
 
 public abstract class Asset extends JelloObject {
 
@@ -47,7 +48,17 @@ public abstract class Asset extends JelloObject {
 	}
 
 	/**
-	 * Called to load the Asset.
+	 * Called before {@link Asset#load()} to do the work of loading that doesn't
+	 * need OpenGL, like reading and decoding the providing file. When the Asset is
+	 * loaded with {@link AssetDatabase#getAssetAsync(AssetLocation)} this is called
+	 * on a worker thread, so it must not touch OpenGL or any other Asset.
+	 */
+	public void decode() {
+	}
+
+	/**
+	 * Called to load the Asset. This is always called on the thread that owns the
+	 * OpenGL context, after {@link Asset#decode()} has returned.
 	 */
 	public void load() {
 	}
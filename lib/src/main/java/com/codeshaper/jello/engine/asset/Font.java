@@ -1,12 +1,264 @@
 package com.codeshaper.jello.engine.asset;
 
+import static org.lwjgl.stb.STBTruetype.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.lwjgl.stb.STBTTFontinfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
 import com.codeshaper.jello.engine.AssetFileExtension;
 import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.Debug;
+import com.codeshaper.jello.engine.rendering.TextureAtlas;
 
+/**
+ * A TrueType font, read with stb_truetype.
+ * <p>
+ * Glyphs are rasterized the first time they are needed, as signed distance
+ * fields, into {@link TextureAtlas#getUiAtlas()}. A distance field stays sharp
+ * when scaled, so every glyph is only rasterized once, at
+ * {@link Font#BASE_SIZE}, and is shared by text of every size. As glyphs are
+ * in the same atlas as sprites, text and sprites can be drawn together.
+ */
 @AssetFileExtension(".ttf")
 public class Font extends Asset {
 
+	/**
+	 * The height, in pixels, that glyphs are rasterized at. All of the metrics of
+	 * the Font are given at this size.
+	 */
+	public static final int BASE_SIZE = 48;
+	/**
+	 * The number of pixels of distance field around each glyph's outline.
+	 */
+	private static final int SDF_PADDING = 6;
+	/**
+	 * The value of the distance field on the outline of a glyph.
+	 */
+	private static final int SDF_ON_EDGE = 128;
+
+	/**
+	 * The contents of the providing file. stb_truetype reads from this for as long
+	 * as the Font is loaded, so it must not be freed until then.
+	 */
+	private transient ByteBuffer fontData;
+	private transient STBTTFontinfo info;
+	private transient float scale;
+	private transient float ascent;
+	private transient float descent;
+	private transient float lineGap;
+	private transient Map<Integer, Glyph> glyphs;
+
 	public Font(AssetLocation location) {
 		super(location);
 	}
+
+	@Override
+	public void decode() {
+		super.decode();
+
+		byte[] source;
+		try (InputStream stream = this.location.getInputSteam()) {
+			if (stream == null) {
+				Debug.logError("Error loading Font: %s does not exist", this.location);
+				return;
+			}
+			source = IOUtils.toByteArray(stream);
+		} catch (IOException e) {
+			Debug.log(e);
+			return;
+		}
+
+		ByteBuffer data = MemoryUtil.memAlloc(source.length);
+		data.put(source).flip();
+		STBTTFontinfo info = STBTTFontinfo.create();
+		if (!stbtt_InitFont(info, data)) {
+			Debug.logError("Error loading Font: %s is not a valid TrueType font", this.location);
+			MemoryUtil.memFree(data);
+			return;
+		}
+
+		this.scale = stbtt_ScaleForPixelHeight(info, BASE_SIZE);
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			IntBuffer ascent = stack.mallocInt(1);
+			IntBuffer descent = stack.mallocInt(1);
+			IntBuffer lineGap = stack.mallocInt(1);
+			stbtt_GetFontVMetrics(info, ascent, descent, lineGap);
+			this.ascent = ascent.get(0) * this.scale;
+			this.descent = descent.get(0) * this.scale;
+			this.lineGap = lineGap.get(0) * this.scale;
+		}
+
+		this.fontData = data;
+		this.info = info;
+		this.glyphs = new HashMap<Integer, Glyph>();
+	}
+
+	/**
+	 * Frees the font file, and gives back the space the Font's glyphs took up in
+	 * the UI atlas.
+	 */
+	@Override
+	public void unload() {
+		super.unload();
+
+		if (this.glyphs != null) {
+			for (Glyph glyph : this.glyphs.values()) {
+				if (glyph.region != null) {
+					TextureAtlas.getUiAtlas().release(glyph.region);
+				}
+			}
+		}
+		if (this.fontData != null) {
+			MemoryUtil.memFree(this.fontData);
+			this.fontData = null;
+		}
+		this.info = null;
+		this.glyphs = null;
+	}
+
+	/**
+	 * Checks if the providing file could not be read. An invalid Font has no
+	 * glyphs.
+	 *
+	 * @return {@code true} if the Font is invalid
+	 */
+	public boolean isInvalid() {
+		return this.info == null;
+	}
+
+	/**
+	 * Gets a glyph, rasterizing it into the UI atlas if this is the first time it
+	 * has been asked for. This must be called on the thread that owns the OpenGL
+	 * context.
+	 *
+	 * @param codepoint the Unicode codepoint of the character
+	 * @return the glyph, or {@code null} if the Font is invalid
+	 */
+	public Glyph getGlyph(int codepoint) {
+		if (this.info == null) {
+			return null;
+		}
+
+		Glyph glyph = this.glyphs.get(codepoint);
+		if (glyph == null) {
+			glyph = this.rasterize(codepoint);
+			this.glyphs.put(codepoint, glyph);
+		}
+		return glyph;
+	}
+
+	/**
+	 * Gets the extra space to add between two characters, in pixels at
+	 * {@link Font#BASE_SIZE}.
+	 *
+	 * @param codepoint     the first character
+	 * @param nextCodepoint the character after it
+	 * @return the kerning, which is usually negative
+	 */
+	public float getKerning(int codepoint, int nextCodepoint) {
+		if (this.info == null) {
+			return 0;
+		}
+		return stbtt_GetCodepointKernAdvance(this.info, codepoint, nextCodepoint) * this.scale;
+	}
+
+	/**
+	 * Gets the distance from the baseline to the top of the tallest glyph, in
+	 * pixels at {@link Font#BASE_SIZE}.
+	 *
+	 * @return the ascent
+	 */
+	public float getAscent() {
+		return this.ascent;
+	}
+
+	/**
+	 * Gets the distance from one baseline to the next, in pixels at
+	 * {@link Font#BASE_SIZE}.
+	 *
+	 * @return the line height
+	 */
+	public float getLineHeight() {
+		return this.ascent - this.descent + this.lineGap;
+	}
+
+	private Glyph rasterize(int codepoint) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			IntBuffer advance = stack.mallocInt(1);
+			IntBuffer leftSideBearing = stack.mallocInt(1);
+			stbtt_GetCodepointHMetrics(this.info, codepoint, advance, leftSideBearing);
+
+			IntBuffer width = stack.mallocInt(1);
+			IntBuffer height = stack.mallocInt(1);
+			IntBuffer xOffset = stack.mallocInt(1);
+			IntBuffer yOffset = stack.mallocInt(1);
+			ByteBuffer sdf = stbtt_GetCodepointSDF(this.info, this.scale, codepoint, SDF_PADDING,
+					(byte) SDF_ON_EDGE, (float) SDF_ON_EDGE / SDF_PADDING, width, height, xOffset, yOffset);
+			if (sdf == null) {
+				// Characters without an outline, like spaces, only move the pen.
+				return new Glyph(advance.get(0) * this.scale, 0, 0, 0, 0, null);
+			}
+
+			int w = width.get(0);
+			int h = height.get(0);
+			ByteBuffer pixels = MemoryUtil.memAlloc(w * h * 4);
+			for (int i = 0; i < w * h; i++) {
+				pixels.put((byte) 255).put((byte) 255).put((byte) 255).put(sdf.get(i));
+			}
+			pixels.flip();
+			stbtt_FreeSDF(sdf);
+
+			TextureAtlas.Region region = TextureAtlas.getUiAtlas().add(pixels, w, h);
+			MemoryUtil.memFree(pixels);
+			if (region == null) {
+				Debug.logWarningWithContext(this, "Glyph %d could not be added to the atlas", codepoint);
+			}
+			return new Glyph(advance.get(0) * this.scale, xOffset.get(0), yOffset.get(0), w, h, region);
+		}
+	}
+
+	/**
+	 * A single character of a {@link Font}. All sizes are in pixels at
+	 * {@link Font#BASE_SIZE}.
+	 */
+	public static final class Glyph {
+
+		/**
+		 * How far to move along the line after the glyph.
+		 */
+		public final float advance;
+		/**
+		 * The offset of the glyph's top left corner from the pen, with y pointing
+		 * down.
+		 */
+		public final int xOffset, yOffset;
+		/**
+		 * The size of the glyph's distance field, including the padding around its
+		 * outline.
+		 */
+		public final int width, height;
+		/**
+		 * Where the glyph's distance field is in the UI atlas, or {@code null} if it
+		 * has no outline.
+		 */
+		public final TextureAtlas.Region region;
+
+		private Glyph(float advance, int xOffset, int yOffset, int width, int height, TextureAtlas.Region region) {
+			this.advance = advance;
+			this.xOffset = xOffset;
+			this.yOffset = yOffset;
+			this.width = width;
+			this.height = height;
+			this.region = region;
+		}
+	}
 }
@@ -0,0 +1,76 @@
+package com.codeshaper.jello.engine.asset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.Debug;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * The base class for the settings that control how an {@link Asset} is
+ * converted from its providing file when it is loaded.
+ * <p>
+ * Every Asset has its own settings, read from a Json file next to the
+ * providing file with {@link ImportSettings#EXTENSION} added to its name, ex.
+ * {@code models/tree.fbx.import}. If there is no such file, the defaults are
+ * used. The settings are read when the Asset is decoded, so Assets that are
+ * decoded at the same time on different threads never share them.
+ */
+public abstract class ImportSettings {
+
+	/**
+	 * The extension added to the name of an Asset's providing file to get the
+	 * name of the file its import settings are in.
+	 */
+	public static final String EXTENSION = ".import";
+
+	private static final Gson GSON = new Gson();
+
+	/**
+	 * Gets the location of the file that holds the import settings for an Asset.
+	 * 
+	 * @param source the location of the Asset's providing file
+	 * @return the location of the settings file
+	 * @throws IllegalArgumentException if {@code source} is null
+	 */
+	public static AssetLocation getSettingsLocation(AssetLocation source) {
+		if (source == null) {
+			throw new IllegalArgumentException("source may not be null");
+		}
+
+		Path path = source.getRelativePath();
+		return new AssetLocation(path.resolveSibling(path.getFileName() + EXTENSION));
+	}
+
+	/**
+	 * Reads the import settings for an Asset. If the settings file doesn't exist
+	 * or can't be read, the defaults are returned.
+	 */
+	static <T extends ImportSettings> T read(AssetLocation source, Class<T> cls, Supplier<T> defaults) {
+		if (source == null) {
+			return defaults.get();
+		}
+
+		AssetLocation location = getSettingsLocation(source);
+		try (InputStream stream = location.getInputSteam()) {
+			if (stream == null) {
+				return defaults.get();
+			}
+
+			Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+			T settings = GSON.fromJson(reader, cls);
+			return settings != null ? settings : defaults.get();
+		} catch (IOException | JsonParseException e) {
+			Debug.logError("Error reading import settings %s, the defaults will be used: %s", location,
+					e.getMessage());
+			return defaults.get();
+		}
+	}
+}
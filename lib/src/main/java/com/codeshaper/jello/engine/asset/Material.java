@@ -2,7 +2,9 @@ package com.codeshaper.jello.engine.asset;
 
 import static org.lwjgl.opengl.GL30.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map.Entry;
 
 import javax.swing.JPanel;
@@ -20,6 +22,7 @@ import com.codeshaper.jello.editor.property.modifier.CreateAssetEntry;
 import com.codeshaper.jello.editor.window.InspectorWindow;
 import com.codeshaper.jello.engine.AssetLocation;
 import com.codeshaper.jello.engine.Color;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
 import com.codeshaper.jello.engine.rendering.shader.ShaderProgram;
 import com.codeshaper.jello.engine.rendering.shader.Uniform;
 import com.codeshaper.jello.engine.rendering.shader.UniformType;
@@ -35,6 +38,18 @@ public class Material extends SerializedJelloObject {
 	private HashMap<String, Vector3f> vec3s = new HashMap<String, Vector3f>();
 	private HashMap<String, Vector4f> vec4s = new HashMap<String, Vector4f>();
 	private HashMap<String, Texture> textures = new HashMap<String, Texture>();
+	/**
+	 * The Material's uniform values paired with their locations in the Shader.
+	 * This is built by {@link Material#setUniforms()}, and set to null whenever a
+	 * value or the Shader changes so that it gets rebuilt.
+	 */
+	private transient UniformBinding[] bindings;
+	/**
+	 * The program {@link Material#bindings} were built for. Reloading the Shader
+	 * links a new program, which the locations don't apply to, even if it was
+	 * given the same id.
+	 */
+	private transient ShaderProgram bindingsProgram;
 
 	public Material(AssetLocation location) {
 		super(location);
@@ -59,6 +74,7 @@ public class Material extends SerializedJelloObject {
 		this.vec3s.clear();
 		this.vec4s.clear();
 		this.textures.clear();
+		this.bindings = null;
 	}
 
 	@Override
@@ -87,6 +103,7 @@ public class Material extends SerializedJelloObject {
 		}
 
 		this.shader = newShader;
+		this.bindings = null;
 
 		if (newShader != null && !newShader.isInvalid()) {
 			for (Uniform uniform : newShader.getProgram().getAllUniforms()) {
@@ -164,6 +181,7 @@ public class Material extends SerializedJelloObject {
 			return;
 		}
 		this.ints.put(uniform, value);
+		this.bindings = null;
 	}
 
 	/**
@@ -191,6 +209,7 @@ public class Material extends SerializedJelloObject {
 			return;
 		}
 		this.floats.put(uniform, value);
+		this.bindings = null;
 	}
 
 	/**
@@ -249,6 +268,7 @@ public class Material extends SerializedJelloObject {
 			return;
 		}
 		this.vec2s.put(uniform, value);
+		this.bindings = null;
 	}
 
 	/**
@@ -280,6 +300,7 @@ public class Material extends SerializedJelloObject {
 			return;
 		}
 		this.vec3s.put(uniform, value);
+		this.bindings = null;
 	}
 
 	/**
@@ -311,6 +332,7 @@ public class Material extends SerializedJelloObject {
 			return;
 		}
 		this.vec4s.put(uniform, value);
+		this.bindings = null;
 	}
 
 	/**
@@ -338,6 +360,7 @@ public class Material extends SerializedJelloObject {
 			return;
 		}
 		this.textures.put(uniform, value);
+		this.bindings = null;
 	}
 
 	/**
@@ -364,33 +387,68 @@ public class Material extends SerializedJelloObject {
 		}
 
 		ShaderProgram program = this.shader.getProgram();
+		if (this.bindings == null || this.bindingsProgram != program) {
+			this.bindings = this.createBindings(program);
+			this.bindingsProgram = program;
+		}
+
+		for (UniformBinding binding : this.bindings) {
+			switch (binding.type) {
+			case int_:
+				program.setUniform(binding.location, (Integer) binding.value);
+				break;
+			case float_:
+				program.setUniform(binding.location, (Float) binding.value);
+				break;
+			case vec2:
+				program.setUniform(binding.location, (Vector2f) binding.value);
+				break;
+			case vec3:
+				program.setUniform(binding.location, (Vector3f) binding.value);
+				break;
+			case vec4:
+				program.setUniform(binding.location, (Vector4f) binding.value);
+				break;
+			case sampler2D:
+				program.setUniform(binding.location, binding.textureUnit);
+				Texture texture = (Texture) binding.value;
+				if (texture != null) {
+					texture.bind(binding.textureUnit);
+				} else {
+					GLStateCache.bindTexture(binding.textureUnit, 0);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private UniformBinding[] createBindings(ShaderProgram program) {
+		List<UniformBinding> list = new ArrayList<UniformBinding>();
 		for (Entry<String, Integer> entry : this.ints.entrySet()) {
-			program.setUniform(entry.getKey(), entry.getValue());
+			list.add(new UniformBinding(program, entry.getKey(), UniformType.int_, entry.getValue(), 0));
 		}
 		for (Entry<String, Float> entry : this.floats.entrySet()) {
-			program.setUniform(entry.getKey(), entry.getValue());
+			list.add(new UniformBinding(program, entry.getKey(), UniformType.float_, entry.getValue(), 0));
 		}
 		for (Entry<String, Vector2f> entry : this.vec2s.entrySet()) {
-			program.setUniform(entry.getKey(), entry.getValue());
+			list.add(new UniformBinding(program, entry.getKey(), UniformType.vec2, entry.getValue(), 0));
 		}
 		for (Entry<String, Vector3f> entry : this.vec3s.entrySet()) {
-			program.setUniform(entry.getKey(), entry.getValue());
+			list.add(new UniformBinding(program, entry.getKey(), UniformType.vec3, entry.getValue(), 0));
 		}
 		for (Entry<String, Vector4f> entry : this.vec4s.entrySet()) {
-			program.setUniform(entry.getKey(), entry.getValue());
+			list.add(new UniformBinding(program, entry.getKey(), UniformType.vec4, entry.getValue(), 0));
 		}
 
-		int counter = 0;
+		int textureUnit = 0;
 		for (Entry<String, Texture> entry : this.textures.entrySet()) {
-			Texture texture = entry.getValue();
-			glActiveTexture(GL_TEXTURE0 + counter);
-			if (texture != null) {
-				texture.bind();
-			} else {
-				glBindTexture(GL_TEXTURE_2D, 0);
-			}
-			counter++;
+			list.add(new UniformBinding(program, entry.getKey(), UniformType.sampler2D, entry.getValue(), textureUnit));
+			textureUnit++;
 		}
+
+		return list.toArray(new UniformBinding[list.size()]);
 	}
 
 	private boolean shouldTreatUniformAsColor(Uniform uniform) {
@@ -401,6 +459,24 @@ public class Material extends SerializedJelloObject {
 		}
 	}
 
+	private static class UniformBinding {
+
+		public final int location;
+		public final UniformType type;
+		public final Object value;
+		/**
+		 * The texture unit to bind the value to. Only used by sampler2D uniforms.
+		 */
+		public final int textureUnit;
+
+		public UniformBinding(ShaderProgram program, String name, UniformType type, Object value, int textureUnit) {
+			this.location = program.getUniformLocation(name);
+			this.type = type;
+			this.value = value;
+			this.textureUnit = textureUnit;
+		}
+	}
+
 	public class MaterialEditor extends SerializedJelloObjectEditor<Material> {
 
 		public MaterialEditor(Material target, JPanel panel) {
@@ -1,15 +1,19 @@
 package com.codeshaper.jello.engine.asset;
 
 import org.lwjgl.opengl.GL30;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
 import com.codeshaper.jello.engine.AssetFileExtension;
 import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.Bounds;
 import com.codeshaper.jello.engine.MeshBuilder;
 import com.codeshaper.jello.engine.ModelLoader;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
+import com.codeshaper.jello.engine.rendering.VertexFormat;
 
-import java.nio.FloatBuffer;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.*;
 
 import static org.lwjgl.opengl.GL30.*;
@@ -18,72 +22,173 @@ import static org.lwjgl.opengl.GL30.*;
 @AssetFileExtension(".obj")
 @AssetFileExtension(".blend")
 public class Mesh extends Asset {
+
+	/**
+	 * The largest number of vertices a Mesh can have and still use 16-bit indices.
+	 */
+	private static final int MAX_SHORT_INDEXED_VERTICES = 1 << 16;
+
 	
 	private int numVertices;
 	private int vaoId;
 	private List<Integer> vboIdList;	
+	/**
+	 * The type of the Mesh's indices, either {@code GL_UNSIGNED_SHORT} or
+	 * {@code GL_UNSIGNED_INT}.
+	 */
+	private int indexType;
+	/**
+	 * The number of vertices in the vertex buffer.
+	 */
+	private transient int storedVertexCount;
+	private transient VertexFormat format;
+	private transient Bounds bounds;
+	/**
+	 * The Mesh's data, read from the providing file in {@link Mesh#decode()}. This
+	 * is released once the Mesh has been uploaded.
+	 */
+	private transient MeshBuilder decodedData;
+	private transient MeshBuilder[] decodedLods;
+	/**
+	 * The settings read in {@link Mesh#decode()}, that the decoded data is
+	 * uploaded with.
+	 */
+	private transient MeshImportSettings importSettings;
+	/**
+	 * Changes every time the Mesh is uploaded or unloaded.
+	 */
+	private transient int version;
+	/**
+	 * The generated lower levels of detail, from most to least detailed.
+	 */
+	private transient Mesh[] lods;
 
 	public Mesh(AssetLocation location) {
 		super(location);
 	}
 
 	public Mesh(float[] positions, float[] textCoords, int[] indices) {
+		this(new MeshBuilder(positions, textCoords, indices), VertexFormat.POSITION_TEXTURE);
+	}
+
+	/**
+	 * Creates a runtime {@link Mesh}.
+	 * 
+	 * @param data   the Mesh's vertices and indices
+	 * @param format the format to store the vertices in
+	 * @throws IllegalArgumentException if {@code data} or {@code format} is null
+	 */
+	public Mesh(MeshBuilder data, VertexFormat format) {
 		super(null);
-		
-		this.constructMesh(positions, textCoords, indices);
+
+		if (data == null) {
+			throw new IllegalArgumentException("data may not be null");
+		}
+		if (format == null) {
+			throw new IllegalArgumentException("format may not be null");
+		}
+
+		this.bounds = data.bounds;
+		this.constructMesh(data, format);
+	}
+
+	@Override
+	public void decode() {
+		this.importSettings = MeshImportSettings.read(this.location);
+		this.decodedData = ModelLoader.loadModel(location);
+		float[] lodRatios = this.importSettings.lodRatios;
+		if (this.decodedData != null && lodRatios != null && lodRatios.length > 0) {
+			this.decodedLods = ModelLoader.generateLods(this.decodedData, lodRatios);
+		}
 	}
 
 	@Override
 	public void load() {
-		MeshBuilder data = ModelLoader.loadModel(location);
-		this.constructMesh(data.verts, data.textCoords, data.indices);
+		MeshBuilder data = this.decodedData;
+		this.decodedData = null;
+		VertexFormat format = this.importSettings.getFormat();
+		this.importSettings = null;
+		this.bounds = data.bounds;
+		this.constructMesh(data, format);
+
+		MeshBuilder[] lodData = this.decodedLods;
+		this.decodedLods = null;
+		if (lodData != null) {
+			this.lods = new Mesh[lodData.length];
+			for (int i = 0; i < lodData.length; i++) {
+				this.lods[i] = new Mesh(lodData[i], format);
+			}
+		}
 	}
 	
-	private void constructMesh(float[] positions, float[] textCoords, int[] indices) {		
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			this.numVertices = indices.length;
-			vboIdList = new ArrayList<>();
-
-			vaoId = glGenVertexArrays();
-			glBindVertexArray(vaoId);
-
-			// Positions VBO
-			int vboId = glGenBuffers();
-			vboIdList.add(vboId);
-			FloatBuffer positionsBuffer = stack.callocFloat(positions.length);
-			positionsBuffer.put(0, positions);
-			glBindBuffer(GL_ARRAY_BUFFER, vboId);
-			glBufferData(GL_ARRAY_BUFFER, positionsBuffer, GL_STATIC_DRAW);
-			glEnableVertexAttribArray(0);
-			glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-
-			// Texture coordinates VBO
-			vboId = glGenBuffers();
-			vboIdList.add(vboId);
-			FloatBuffer textCoordsBuffer = stack.callocFloat(textCoords.length);
-			textCoordsBuffer.put(0, textCoords);
+	private void constructMesh(MeshBuilder data, VertexFormat format) {
+		int vertexCount = data.getVertexCount();
+		this.numVertices = data.indices.length;
+		this.storedVertexCount = vertexCount;
+		this.format = format;
+		this.vboIdList = new ArrayList<>();
+		this.version++;
+
+		this.vaoId = glGenVertexArrays();
+		GLStateCache.bindVertexArray(this.vaoId);
+
+		// Interleaved vertex VBO
+		int vboId = glGenBuffers();
+		this.vboIdList.add(vboId);
+		ByteBuffer vertexBuffer = MemoryUtil.memAlloc(vertexCount * format.getStride());
+		try {
+			format.writeVertices(data, vertexBuffer);
 			glBindBuffer(GL_ARRAY_BUFFER, vboId);
-			glBufferData(GL_ARRAY_BUFFER, textCoordsBuffer, GL_STATIC_DRAW);
-			glEnableVertexAttribArray(1);
-			glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
-
-			// Index VBO
-			vboId = glGenBuffers();
-			vboIdList.add(vboId);
-			IntBuffer indicesBuffer = stack.callocInt(indices.length);
-			indicesBuffer.put(0, indices);
-			glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
-			glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-
-			glBindBuffer(GL_ARRAY_BUFFER, 0);
-			glBindVertexArray(0);
+			glBufferData(GL_ARRAY_BUFFER, vertexBuffer, GL_STATIC_DRAW);
+			format.enableAttributes();
+		} finally {
+			MemoryUtil.memFree(vertexBuffer);
 		}
+
+		// Index VBO
+		vboId = glGenBuffers();
+		this.vboIdList.add(vboId);
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
+		if (vertexCount <= MAX_SHORT_INDEXED_VERTICES) {
+			this.indexType = GL_UNSIGNED_SHORT;
+			ShortBuffer indicesBuffer = MemoryUtil.memAllocShort(data.indices.length);
+			try {
+				for (int i = 0; i < data.indices.length; i++) {
+					indicesBuffer.put(i, (short) data.indices[i]);
+				}
+				glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+			} finally {
+				MemoryUtil.memFree(indicesBuffer);
+			}
+		} else {
+			this.indexType = GL_UNSIGNED_INT;
+			IntBuffer indicesBuffer = MemoryUtil.memAllocInt(data.indices.length);
+			try {
+				indicesBuffer.put(0, data.indices);
+				glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+			} finally {
+				MemoryUtil.memFree(indicesBuffer);
+			}
+		}
+
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		GLStateCache.bindVertexArray(0);
 	}
 
 	@Override
 	public void unload() {
 		this.vboIdList.forEach(GL30::glDeleteBuffers);
 		glDeleteVertexArrays(this.vaoId);
+		GLStateCache.invalidate(); // The id may be reused.
+		this.vaoId = 0;
+		this.version++;
+
+		if (this.lods != null) {
+			for (Mesh lod : this.lods) {
+				lod.unload();
+			}
+			this.lods = null;
+		}
 	}
 
 	/**
@@ -96,13 +201,110 @@ public class Mesh extends Asset {
 	}
 
 	/**
-	 * Gets the Mesh's Vertex Attribute Object id.
+	 * Gets the number of vertices in the Mesh's vertex buffer. Unlike
+	 * {@link Mesh#getVerticeCount()}, vertices that are shared by several
+	 * triangles are only counted once.
+	 * 
+	 * @return the number of stored vertices
+	 */
+	public int getStoredVertexCount() {
+		return this.storedVertexCount;
+	}
+
+	/**
+	 * Gets the number of lower levels of detail that were generated for the Mesh
+	 * when it was loaded.
+	 * 
+	 * @return the number of generated levels
+	 * @see MeshImportSettings#lodRatios
+	 */
+	public int getLodCount() {
+		return this.lods != null ? this.lods.length : 0;
+	}
+
+	/**
+	 * Gets a generated lower level of detail.
+	 * 
+	 * @param index the index of the level, 0 being the most detailed generated
+	 *              level
+	 * @return the level, or {@code null} if there is no level at {@code index}
+	 */
+	public Mesh getLod(int index) {
+		if (this.lods == null || index < 0 || index >= this.lods.length) {
+			return null;
+		}
+		return this.lods[index];
+	}
+
+	/**
+	 * Gets the type of the Mesh's indices, to pass to {@code glDrawElements}.
+	 * Meshes with few enough vertices use 16-bit indices.
+	 * 
+	 * @return {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}
+	 */
+	public int getIndexType() {
+		return this.indexType;
+	}
+
+	/**
+	 * Gets the format the Mesh's vertices are stored in.
+	 * 
+	 * @return the Mesh's vertex format
+	 */
+	public VertexFormat getFormat() {
+		return this.format;
+	}
+
+	/**
+	 * Gets the bounds of the Mesh's vertices, in the Mesh's local space.
+	 * 
+	 * @return the Mesh's bounds
+	 */
+	public Bounds getBounds() {
+		return this.bounds;
+	}
+
+	/**
+	 * Gets the Mesh's Vertex Attribute Object id. This is 0 once the Mesh has been
+	 * unloaded.
 	 * 
 	 * @return
 	 */
 	public final int getVaoId() {
 		return this.vaoId;
 	}
+
+	/**
+	 * Gets a number that changes every time the Mesh's data is uploaded, or the
+	 * Mesh is unloaded. Copies of the Mesh's buffers are out of date if this has
+	 * changed since they were made, even if the buffer ids are the same, as ids
+	 * are reused.
+	 * 
+	 * @return the Mesh's version
+	 */
+	public final int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Gets the id of the buffer that holds the Mesh's vertices, in the Mesh's
+	 * {@link VertexFormat}.
+	 * 
+	 * @return the vertex buffer's id
+	 */
+	public final int getVertexBufferId() {
+		return this.vboIdList.get(0);
+	}
+
+	/**
+	 * Gets the id of the buffer that holds the Mesh's indices, of the type
+	 * returned by {@link Mesh#getIndexType()}.
+	 * 
+	 * @return the index buffer's id
+	 */
+	public final int getIndexBufferId() {
+		return this.vboIdList.get(1);
+	}
 	
 	/**
 	 * Uploads the changes to the Mesh to the GPU.
@@ -0,0 +1,65 @@
+package com.codeshaper.jello.engine.asset;
+
+import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.rendering.VertexFormat;
+
+/**
+ * The settings that control how a {@link Mesh} is imported from a model file.
+ * 
+ * @see ImportSettings
+ */
+public class MeshImportSettings extends ImportSettings {
+
+	/**
+	 * Should the Mesh's normals be stored.
+	 */
+	public boolean normals;
+	/**
+	 * Should the Mesh's tangents be stored.
+	 */
+	public boolean tangents;
+	/**
+	 * Should the Mesh's vertex colors be stored.
+	 */
+	public boolean colors;
+	/**
+	 * Should texture coordinates, normals and tangents be stored with reduced
+	 * precision.
+	 * 
+	 * @see VertexFormat
+	 */
+	public boolean quantized;
+	/**
+	 * If not empty, a lower level of detail is generated for every ratio, keeping
+	 * that fraction of the Mesh's triangles. The levels are available from
+	 * {@link Mesh#getLod(int)}.
+	 */
+	public float[] lodRatios;
+
+	public MeshImportSettings() {
+		this.normals = VertexFormat.DEFAULT.hasNormals;
+		this.tangents = VertexFormat.DEFAULT.hasTangents;
+		this.colors = VertexFormat.DEFAULT.hasColors;
+		this.quantized = VertexFormat.DEFAULT.isQuantized;
+		this.lodRatios = new float[0];
+	}
+
+	/**
+	 * Reads the import settings of a Mesh.
+	 * 
+	 * @param source the location of the model file
+	 * @return the settings, or the defaults if the Mesh has no settings file
+	 */
+	public static MeshImportSettings read(AssetLocation source) {
+		return ImportSettings.read(source, MeshImportSettings.class, MeshImportSettings::new);
+	}
+
+	/**
+	 * Gets the {@link VertexFormat} that the Mesh's vertices are stored in.
+	 * 
+	 * @return the vertex format
+	 */
+	public VertexFormat getFormat() {
+		return new VertexFormat(this.normals, this.tangents, this.colors, this.quantized);
+	}
+}
@@ -30,8 +30,8 @@ public class TextAsset extends Asset {
 	}
 
 	@Override
-	public void load() {
-		super.load();
+	public void decode() {
+		super.decode();
 		
 		try(InputStream stream = this.location.getInputSteam()) {
 			this.lines = IOUtils.readLines(stream, StandardCharsets.UTF_8);
@@ -1,18 +1,15 @@
 package com.codeshaper.jello.engine.asset;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 
 import javax.swing.ImageIcon;
 import javax.swing.JPanel;
 
 import org.apache.commons.lang3.NotImplementedException;
 import org.joml.Math;
-import org.lwjgl.BufferUtils;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryUtil;
 
 import com.codeshaper.jello.editor.gui.GuiLayoutBuilder;
 import com.codeshaper.jello.editor.inspector.AssetEditor;
@@ -20,10 +17,13 @@ import com.codeshaper.jello.editor.inspector.Editor;
 import com.codeshaper.jello.engine.AssetFileExtension;
 import com.codeshaper.jello.engine.AssetLocation;
 import com.codeshaper.jello.engine.Color;
-import com.codeshaper.jello.engine.Debug;
+import com.codeshaper.jello.engine.TextureImporter;
+import com.codeshaper.jello.engine.TextureImporter.ImportedTexture;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
+import com.codeshaper.jello.engine.rendering.TextureAtlas;
+import com.codeshaper.jello.engine.rendering.TextureCompression;
 
 import static org.lwjgl.opengl.GL30.*;
-import static org.lwjgl.stb.STBImage.*;
 
 @AssetFileExtension(".png")
 @AssetFileExtension(".bmp")
@@ -31,17 +31,41 @@ import static org.lwjgl.stb.STBImage.*;
 @AssetFileExtension(".jpg")
 public class Texture extends Asset {
 
+	/**
+	 * Set once a Texture has been loaded on a GPU that doesn't support S3TC
+	 * compression, so the rest are imported uncompressed.
+	 */
+	private static volatile boolean isCompressionUnsupported;
+
 	private int textureId;
 	private int width;
 	private int height;
+	private int internalFormat;
+	private int mipmapCount;
+	/**
+	 * The Texture's pixels, with 4 bytes per pixel. This is {@code null} unless
+	 * the Texture is readable.
+	 * 
+	 * @see Texture#setReadable(boolean)
+	 */
 	public ByteBuffer pixelBuffer;
+	/**
+	 * If {@link Texture#pixelBuffer} was allocated by the Texture, and must be
+	 * freed by it.
+	 */
+	private boolean ownsPixels;
+	/**
+	 * The converted file, read in {@link Texture#decode()}. This is released once
+	 * the Texture has been uploaded.
+	 */
+	private transient ImportedTexture decodedData;
 
 	public Texture(AssetLocation location) {
 		super(location);
 	}
 
 	/**
-	 * Creates a runtime {@link Texture}.
+	 * Creates a runtime {@link Texture}. Runtime Textures are always readable.
 	 * 
 	 * @param width
 	 * @param height
@@ -62,47 +86,77 @@ public class Texture extends Asset {
 		this.height = height;
 		this.pixelBuffer = pixels;
 
-		this.generateTexture();
+		this.textureId = glGenTextures();
+		this.setSampling();
+		this.apply();
+	}
+
+	@Override
+	public void decode() {
+		super.decode();
+
+		TextureCompression compression = TextureImportSettings.read(this.location).compression;
+		if (isCompressionUnsupported) {
+			compression = TextureCompression.NONE;
+		} else if (compression == null) {
+			compression = TextureCompression.AUTO; // The settings file named an unknown compression.
+		}
+		this.decodedData = TextureImporter.importTexture(this.location, compression, true);
 	}
 
+	/**
+	 * Uploads the converted file to the GPU. The file's pixels are released
+	 * afterwards, as they are rarely needed on the CPU. Use
+	 * {@link Texture#setReadable(boolean)} to get them back.
+	 */
 	@Override
 	public void load() {
 		super.load();
 
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			IntBuffer w = stack.mallocInt(1);
-			IntBuffer h = stack.mallocInt(1);
-			IntBuffer channels = stack.mallocInt(1);
-
-			try (InputStream stream = location.getInputSteam()) {
-				//byte[] byteArray = stream.readAllBytes();
-				//ByteBuffer bytes = stack.bytes(byteArray);
-				//ByteBuffer buf = stbi_load_from_memory(bytes, w, h, channels, 0);
+		ImportedTexture data = this.decodedData;
+		this.decodedData = null;
 
-				this.pixelBuffer = stbi_load_from_memory(this.ioResourceToByteBuffer(stream, 1024), w, h, channels, 4);
+		if (data != null && data.isCompressed() && !GL.getCapabilities().GL_EXT_texture_compression_s3tc) {
+			isCompressionUnsupported = true;
+			data.free();
+			data = TextureImporter.importTexture(this.location, TextureCompression.NONE, false);
+		}
 
-				if (this.pixelBuffer == null) {
-					Debug.logError("Error loading Texture: " + stbi_failure_reason());
+		this.textureId = glGenTextures();
+		this.setSampling();
+		if (data != null) {
+			this.width = data.width;
+			this.height = data.height;
+			this.internalFormat = data.internalFormat;
+			this.mipmapCount = data.levels.length;
+
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, data.levels.length - 1);
+			for (int i = 0; i < data.levels.length; i++) {
+				int levelWidth = Math.max(1, data.width >> i);
+				int levelHeight = Math.max(1, data.height >> i);
+				if (data.isCompressed()) {
+					glCompressedTexImage2D(GL_TEXTURE_2D, i, data.internalFormat, levelWidth, levelHeight, 0,
+							data.levels[i]);
+				} else {
+					glTexImage2D(GL_TEXTURE_2D, i, data.internalFormat, levelWidth, levelHeight, 0, GL_RGBA,
+							GL_UNSIGNED_BYTE, data.levels[i]);
 				}
-
-				this.width = w.get();
-				this.height = h.get();
-
-				this.generateTexture();
-
-				//stbi_image_free(this.pixelBuffer);
-			} catch (IOException e) {
-				e.printStackTrace();
 			}
+			data.free();
+			this.setMinFilter();
 		}
 	}
 
 	/**
-	 * Deletes the texture from the GPU.
+	 * Deletes the texture from the GPU, frees the Texture's pixels, and removes it
+	 * from the UI atlas.
 	 */
 	@Override
 	public void unload() {
+		TextureAtlas.removeFromUiAtlas(this);
 		glDeleteTextures(this.textureId);
+		GLStateCache.invalidate(); // The id may be reused.
+		this.setReadable(false);
 	}
 
 	@Override
@@ -128,6 +182,68 @@ public class Texture extends Asset {
 		return this.height;
 	}
 
+	/**
+	 * Gets the number of mipmaps the {@link Texture} has on the GPU, including the
+	 * full size image.
+	 * 
+	 * @return the number of mipmaps
+	 */
+	public int getMipmapCount() {
+		return this.mipmapCount;
+	}
+
+	/**
+	 * Checks if the {@link Texture} is stored block compressed on the GPU.
+	 * 
+	 * @return {@code true} if the Texture is compressed
+	 * @see TextureImportSettings#compression
+	 */
+	public boolean isCompressed() {
+		return this.internalFormat != 0 && this.internalFormat != GL_RGBA8;
+	}
+
+	/**
+	 * Checks if the {@link Texture}'s pixels are kept on the CPU, so they can be
+	 * read and written with {@link Texture#getPixel(int, int)} and
+	 * {@link Texture#setPixel(int, int, Color)}.
+	 * 
+	 * @return {@code true} if the Texture is readable
+	 */
+	public boolean isReadable() {
+		return this.pixelBuffer != null;
+	}
+
+	/**
+	 * Sets if the {@link Texture}'s pixels are kept on the CPU. Textures loaded
+	 * from files are not readable, and making them readable decodes the providing
+	 * file again. Making a Texture unreadable frees its pixels.
+	 * 
+	 * @param readable if the Texture should be readable
+	 */
+	public void setReadable(boolean readable) {
+		if (readable == this.isReadable()) {
+			return;
+		}
+
+		if (readable) {
+			if (this.isRuntimeAsset()) {
+				return; // There is nothing to read the pixels back from.
+			}
+
+			ImportedTexture pixels = TextureImporter.decodePixels(this.location);
+			if (pixels != null) {
+				this.pixelBuffer = pixels.levels[0];
+				this.ownsPixels = true;
+			}
+		} else {
+			if (this.ownsPixels) {
+				MemoryUtil.memFree(this.pixelBuffer);
+				this.ownsPixels = false;
+			}
+			this.pixelBuffer = null;
+		}
+	}
+
 	/**
 	 * Gets a pixel from the {@link Texture} at ({@code x}, {@code y}). ({@code 0},
 	 * {@code 0}) is the bottom left, and ({@link Texture#getWidth()},
@@ -139,8 +255,11 @@ public class Texture extends Asset {
 	 * @param x
 	 * @param y
 	 * @return
+	 * @throws IllegalStateException if the Texture is not readable
 	 */
 	public Color getPixel(int x, int y) {
+		this.checkReadable();
+
 		int index = (x + (y * this.height)) * 4;
 		return new Color(
 				this.pixelBuffer.get(index),
@@ -172,9 +291,12 @@ public class Texture extends Asset {
 	 * @param x
 	 * @param y
 	 * @param color
+	 * @throws IllegalStateException if the Texture is not readable
 	 * @see Texture#apply()
 	 */
 	public void setPixel(int x, int y, Color color) {
+		this.checkReadable();
+
 		int index = (x + (y * this.height)) * 4;
 		this.pixelBuffer.put(index, (byte) (Math.round(color.r * 255f)));
 		this.pixelBuffer.put(index + 1, (byte) (Math.round(color.g * 255f)));
@@ -187,52 +309,51 @@ public class Texture extends Asset {
 	 * upload the entire texture, without checking if any changes have actually been
 	 * made. Because the entire texture is uploaded, the number of changed pixel has
 	 * no effect on performance.
+	 * <p>
+	 * The Texture is uploaded uncompressed, and its mipmaps are generated on the
+	 * GPU.
+	 * 
+	 * @throws IllegalStateException if the Texture is not readable
 	 */
 	public void apply() {
-		glBindTexture(GL_TEXTURE_2D, this.textureId);
-		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, this.width, this.height, 0, GL_RGBA, GL_UNSIGNED_BYTE, this.pixelBuffer);
+		this.checkReadable();
+
+		GLStateCache.bindTexture(0, this.textureId);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, 1000);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, this.width, this.height, 0, GL_RGBA, GL_UNSIGNED_BYTE, this.pixelBuffer);
 		glGenerateMipmap(GL_TEXTURE_2D);
+		this.internalFormat = GL_RGBA8;
+		this.mipmapCount = TextureImporter.getMipmapCount(this.width, this.height);
+		this.setMinFilter();
 	}
 
-	void bind() {
-		glBindTexture(GL_TEXTURE_2D, this.textureId);
+	void bind(int unit) {
+		GLStateCache.bindTexture(unit, this.textureId);
 	}
 
-	private void generateTexture() {
-		this.textureId = glGenTextures();
+	private void checkReadable() {
+		if (!this.isReadable()) {
+			throw new IllegalStateException("Texture is not readable");
+		}
+	}
 
-		glBindTexture(GL_TEXTURE_2D, this.textureId);
+	/**
+	 * Binds the Texture and sets up how it is sampled.
+	 */
+	private void setSampling() {
+		GLStateCache.bindTexture(0, this.textureId);
 		glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-		this.apply();
-	}
-
-	private ByteBuffer resizeBuffer(ByteBuffer buffer, int newCapacity) {
-		ByteBuffer newBuffer = BufferUtils.createByteBuffer(newCapacity);
-		buffer.flip();
-		newBuffer.put(buffer);
-		return newBuffer;
 	}
 
-	private ByteBuffer ioResourceToByteBuffer(InputStream source, int bufferSize) throws IOException {
-		ByteBuffer buffer = BufferUtils.createByteBuffer(bufferSize);
-		try {
-			byte[] buf = new byte[8192];
-			while (true) {
-				int bytes = source.read(buf, 0, buf.length);
-				if (bytes == -1)
-					break;
-				if (buffer.remaining() < bytes)
-					buffer = this.resizeBuffer(buffer,
-							Math.max(buffer.capacity() * 2, buffer.capacity() - buffer.remaining() + bytes));
-				buffer.put(buf, 0, bytes);
-			}
-			buffer.flip();
-		} finally {
-			source.close();
-		}
-		return buffer;
+	/**
+	 * Sets the minifying filter of the bound Texture to read from its mipmaps, if
+	 * it has any. Textures are point sampled, so the nearest mipmap is used.
+	 */
+	private void setMinFilter() {
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER,
+				this.mipmapCount > 1 ? GL_NEAREST_MIPMAP_NEAREST : GL_NEAREST);
 	}
 
 	private class TextureEditor extends AssetEditor<Texture> {
@@ -251,6 +372,9 @@ public class Texture extends Asset {
 			builder.label(String.format("Dimensions: %sx%s",
 					image.getIconWidth(),
 					image.getIconHeight()));
+			builder.label(String.format("GPU Format: %s, %s mipmaps",
+					this.target.isCompressed() ? "Compressed" : "Uncompressed",
+					this.target.getMipmapCount()));
 		}
 	}
 }
@@ -0,0 +1,35 @@
+package com.codeshaper.jello.engine.asset;
+
+import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.TextureImporter;
+import com.codeshaper.jello.engine.rendering.TextureCompression;
+
+/**
+ * The settings that control how a {@link Texture} is imported from an image
+ * file.
+ * 
+ * @see ImportSettings
+ */
+public class TextureImportSettings extends ImportSettings {
+
+	/**
+	 * The compression the Texture is stored in on the GPU. Imported Textures are
+	 * cached by {@link TextureImporter}, which converts the Texture again when this
+	 * changes.
+	 */
+	public TextureCompression compression;
+
+	public TextureImportSettings() {
+		this.compression = TextureCompression.AUTO;
+	}
+
+	/**
+	 * Reads the import settings of a Texture.
+	 * 
+	 * @param source the location of the image file
+	 * @return the settings, or the defaults if the Texture has no settings file
+	 */
+	public static TextureImportSettings read(AssetLocation source) {
+		return ImportSettings.read(source, TextureImportSettings.class, TextureImportSettings::new);
+	}
+}
@@ -33,10 +33,12 @@ public final class AudioSource extends JelloComponent {
 	public boolean playOnStart = false;
 
 	private transient int sourceId;
+	private transient Vector3f position;
 
 	@Override
 	protected void onConstruct() {
 		this.sourceId = alGenSources();
+		this.position = new Vector3f();
 
 		this.setPitch(this.pitch);
 		this.setGain(this.gain);
@@ -64,7 +66,7 @@ public final class AudioSource extends JelloComponent {
 	protected void onUpdate(float deltaTime) {
 		super.onUpdate(deltaTime);
 
-		Vector3f position = this.gameObject().getPosition();
+		Vector3f position = this.gameObject().getPosition(this.position);
 		alSource3f(sourceId, AL_POSITION, position.x, position.y, position.z);
 	}
 
@@ -12,6 +12,13 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableModel;
@@ -49,9 +56,34 @@ public class AssetDatabase {
 	 */
 	public final Path assetsFolder;
 
+	/**
+	 * All of the Assets in the database, in the order they were added. Use
+	 * {@link AssetDatabase#addCachedAsset(CachedAsset)} and
+	 * {@link AssetDatabase#removeCachedAsset(CachedAsset)} to modify this so the
+	 * lookup indices stay in sync.
+	 */
 	protected final List<CachedAsset> assets;
+	/**
+	 * Index of all Assets by their location, so lookups don't need to scan
+	 * {@link AssetDatabase#assets}.
+	 */
+	private final Map<AssetLocation, CachedAsset> assetsByLocation;
+	/**
+	 * Index of all Assets by their providing class.
+	 */
+	private final Map<Class<? extends Asset>, Set<CachedAsset>> assetsByType;
 	protected final ExtensionMapping extensionMapping;
 	protected final ComponentList componentList;
+	/**
+	 * The threads that decode Assets requested with
+	 * {@link AssetDatabase#getAssetAsync(AssetLocation)}.
+	 */
+	private final ExecutorService loadingExecutor;
+	/**
+	 * Assets that have been decoded and are waiting to be uploaded by
+	 * {@link AssetDatabase#processPendingUploads(long)}.
+	 */
+	private final ConcurrentLinkedQueue<AssetLoadJob> pendingUploads;
 
 	public Serializer serializer;
 
@@ -77,10 +109,20 @@ public class AssetDatabase {
 
 		this.assetsFolder = projectFolder;
 		this.assets = new ArrayList<CachedAsset>();
+		this.assetsByLocation = new ConcurrentHashMap<AssetLocation, CachedAsset>();
+		this.assetsByType = new ConcurrentHashMap<Class<? extends Asset>, Set<CachedAsset>>();
 
 		this.extensionMapping = new ExtensionMapping();
 		this.componentList = new ComponentList();
 
+		int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		this.loadingExecutor = Executors.newFixedThreadPool(threadCount, (runnable) -> {
+			Thread thread = new Thread(runnable, "Asset Loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.pendingUploads = new ConcurrentLinkedQueue<AssetLoadJob>();
+
 		this.serializer = new Serializer(this);
 
 		// Add the builtin Assets to the list.
@@ -158,6 +200,82 @@ public class AssetDatabase {
 		}
 	}
 
+	/**
+	 * Finds an Asset, loading it in the background if it has not yet been loaded.
+	 * The providing file is read and decoded on a worker thread, and the Asset is
+	 * finished on the thread that calls
+	 * {@link AssetDatabase#processPendingUploads(long)}. Requests for an Asset that
+	 * is already loading share the same future.
+	 * <p>
+	 * If the Asset doesn't exist, an error is logged and the returned future is
+	 * completed with {@code null}. If the Asset fails to load, the future is
+	 * completed with {@code null}.
+	 * 
+	 * @param location the location of the Asset
+	 * @return a future that is completed with the Asset once it is loaded
+	 * @throws IllegalArgumentException if location is {@code null}
+	 */
+	public CompletableFuture<Asset> getAssetAsync(AssetLocation location) {
+		if (location == null) {
+			throw new IllegalArgumentException("location may not be null");
+		}
+
+		CachedAsset cachedAsset = this.getCachedAsset(location);
+		if (cachedAsset == null) {
+			this.logMissingAssetError(location);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		AssetLoadJob job;
+		synchronized (cachedAsset) {
+			switch (cachedAsset.getLoadState()) {
+			case LOADED:
+				return CompletableFuture.completedFuture(cachedAsset.getInstance());
+			case FAILED:
+				return CompletableFuture.completedFuture(null);
+			case LOADING:
+				return cachedAsset.getLoadJob().future;
+			default:
+				job = this.startLoading(cachedAsset);
+				if (job == null) {
+					return CompletableFuture.completedFuture(null);
+				}
+			}
+		}
+
+		this.loadingExecutor.execute(() -> {
+			job.decode();
+			this.pendingUploads.add(job);
+		});
+
+		return job.future;
+	}
+
+	/**
+	 * Finishes loading Assets that were requested with
+	 * {@link AssetDatabase#getAssetAsync(AssetLocation)} and have been decoded.
+	 * This must be called on the thread that owns the OpenGL context, once per
+	 * frame. At least one Asset is finished every call, and then more until
+	 * {@code budgetNanos} has been used up, so a large number of Assets finishing
+	 * at once doesn't cause a long frame.
+	 * 
+	 * @param budgetNanos how long may be spent finishing Assets, in nanoseconds
+	 * @return the number of Assets that were finished
+	 */
+	public int processPendingUploads(long budgetNanos) {
+		long startTime = System.nanoTime();
+		int count = 0;
+		AssetLoadJob job;
+		while ((job = this.pendingUploads.poll()) != null) {
+			this.finishLoading(job);
+			count++;
+			if (System.nanoTime() - startTime >= budgetNanos) {
+				break;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * Gets a list of {@link AssetLocation}s pointing to all Assets of a specific
 	 * type within the project.
@@ -175,13 +293,18 @@ public class AssetDatabase {
 
 		List<AssetLocation> locations = new ArrayList<AssetLocation>();
 
-		for (CachedAsset asset : this.assets) {
-			if (includeSubClasses) {
-				if (assetType.equals(asset.getProvidingClass())) {
-					locations.add(asset.location);
+		if (includeSubClasses) {
+			for (Map.Entry<Class<? extends Asset>, Set<CachedAsset>> entry : this.assetsByType.entrySet()) {
+				if (assetType.isAssignableFrom(entry.getKey())) {
+					for (CachedAsset asset : entry.getValue()) {
+						locations.add(asset.location);
+					}
 				}
-			} else {
-				if (assetType.isAssignableFrom(asset.getProvidingClass())) {
+			}
+		} else {
+			Set<CachedAsset> assetsOfType = this.assetsByType.get(assetType);
+			if (assetsOfType != null) {
+				for (CachedAsset asset : assetsOfType) {
 					locations.add(asset.location);
 				}
 			}
@@ -194,6 +317,9 @@ public class AssetDatabase {
 	 * Unloads an Asset. This will request that the Asset releases any native
 	 * objects and frees up as much memory as it can by calling
 	 * {@link Asset#unload()}.
+	 * <p>
+	 * If the Asset previously failed to load, it is reset so the next request will
+	 * try to load it again. An Asset that is still loading can't be unloaded.
 	 * 
 	 * @param location the location of the Asset
 	 * @return {@code true} if the Asset was unloaded, {@code false} if either the
@@ -210,12 +336,19 @@ public class AssetDatabase {
 			this.logMissingAssetError(location);
 			return false;
 		} else {
-			if (asset.isLoaded()) {
-				asset.getInstance().unload();
-				asset.setInstance(null);
-				return true;
+			synchronized (asset) {
+				switch (asset.getLoadState()) {
+				case LOADED:
+					asset.getInstance().unload();
+					asset.setInstance(null);
+					return true;
+				case FAILED:
+					asset.setInstance(null);
+					return false;
+				default:
+					return false;
+				}
 			}
-			return false;
 		}
 	}
 
@@ -268,10 +401,56 @@ public class AssetDatabase {
 		}
 
 		CachedAsset cachedAsset = new CachedAsset(location, this.getProvidingClass(location));
-		this.assets.add(cachedAsset);
+		this.addCachedAsset(cachedAsset);
 		return cachedAsset;
 	}
 
+	/**
+	 * Adds a {@link CachedAsset} to the database and it's lookup indices. No check
+	 * is done to see if an Asset already exists at the same location.
+	 * 
+	 * @param cachedAsset the {@link CachedAsset} to add
+	 */
+	protected void addCachedAsset(CachedAsset cachedAsset) {
+		this.assets.add(cachedAsset);
+		this.assetsByLocation.put(cachedAsset.location, cachedAsset);
+		this.assetsByType
+				.computeIfAbsent(cachedAsset.getProvidingClass(), (cls) -> ConcurrentHashMap.newKeySet())
+				.add(cachedAsset);
+	}
+
+	/**
+	 * Removes a {@link CachedAsset} from the database and it's lookup indices. The
+	 * Asset is not unloaded.
+	 * 
+	 * @param cachedAsset the {@link CachedAsset} to remove
+	 * @return {@code true} if the Asset was in the database
+	 */
+	protected boolean removeCachedAsset(CachedAsset cachedAsset) {
+		this.assetsByLocation.remove(cachedAsset.location, cachedAsset);
+		Set<CachedAsset> assetsOfType = this.assetsByType.get(cachedAsset.getProvidingClass());
+		if (assetsOfType != null) {
+			assetsOfType.remove(cachedAsset);
+		}
+		return this.assets.remove(cachedAsset);
+	}
+
+	/**
+	 * Moves a {@link CachedAsset} to a new location, updating the lookup indices.
+	 * The Asset's {@link AssetLocation} is updated in place, so all existing
+	 * references to it will see the new location.
+	 * 
+	 * @param cachedAsset     the {@link CachedAsset} to move
+	 * @param newRelativePath the Asset's new path, relative to the /assets folder
+	 */
+	protected void relocateCachedAsset(CachedAsset cachedAsset, Path newRelativePath) {
+		// The location is the key in the index, so it must be removed before it's
+		// hash code changes.
+		this.assetsByLocation.remove(cachedAsset.location, cachedAsset);
+		cachedAsset.location.updateLocation(newRelativePath);
+		this.assetsByLocation.put(cachedAsset.location, cachedAsset);
+	}
+
 	/**
 	 * Gets the {@link CachedAsset} for an Asset at location.
 	 * 
@@ -284,14 +463,7 @@ public class AssetDatabase {
 			throw new IllegalArgumentException("location may not be null");
 		}
 
-		CachedAsset asset;
-		for (int i = 0; i < this.assets.size(); i++) {
-			asset = this.assets.get(i);
-			if (asset.location.equals(location)) {
-				return asset;
-			}
-		}
-		return null;
+		return this.assetsByLocation.get(location);
 	}
 
 	protected Asset instantiateAsset(Class<? extends Asset> clazz, AssetLocation location) {
@@ -374,36 +546,98 @@ public class AssetDatabase {
 			return null;
 		}
 		
-		if (cachedAsset.isLoaded()) {
-			return cachedAsset.getInstance();
-		} else {
-			// Asset has not been loaded, instantiate the asset.
-			Asset newInstance;
-			Class<? extends Asset> providingClass = cachedAsset.getProvidingClass();
-			if (SerializedJelloObject.class.isAssignableFrom(providingClass)) {
-				@SuppressWarnings("unchecked")
-				Class<SerializedJelloObject> cls = (Class<SerializedJelloObject>) providingClass;
-				try {
-					newInstance = this.serializer.deserialize(location, cls);
-				} catch (IOException e) {
-					Debug.log(e);
-					newInstance = null;
+		AssetLoadJob job;
+		synchronized (cachedAsset) {
+			switch (cachedAsset.getLoadState()) {
+			case LOADED:
+				return cachedAsset.getInstance();
+			case FAILED:
+				return null;
+			case LOADING:
+				// Already loading in the background, finish it now.
+				job = cachedAsset.getLoadJob();
+				break;
+			default:
+				job = this.startLoading(cachedAsset);
+				if (job == null) {
+					return null;
 				}
-			} else {
-				newInstance = this.instantiateAsset(providingClass, location);
-				if (newInstance != null) {
+			}
+		}
+
+		return this.finishLoading(job);
+	}
+
+	/**
+	 * Marks an Asset as loading and creates the job that will load it. If the
+	 * Asset can't be instantiated, it is marked as failed and {@code null} is
+	 * returned.
+	 * 
+	 * @param cachedAsset the Asset to load
+	 * @return the job loading the Asset
+	 */
+	private AssetLoadJob startLoading(CachedAsset cachedAsset) {
+		Class<? extends Asset> providingClass = cachedAsset.getProvidingClass();
+		Asset newInstance = null;
+		if (!SerializedJelloObject.class.isAssignableFrom(providingClass)) {
+			newInstance = this.instantiateAsset(providingClass, cachedAsset.location);
+			if (newInstance == null) {
+				cachedAsset.setFailed();
+				Debug.logWarning("[AssetDatabase]: Error constructing Asset."); // TODO explain the error.
+				return null;
+			}
+		}
+
+		AssetLoadJob job = new AssetLoadJob(cachedAsset, newInstance);
+		cachedAsset.setLoading(job);
+		return job;
+	}
+
+	/**
+	 * Finishes loading an Asset. If the Asset has not been decoded yet, it is
+	 * decoded on the calling thread. This must be called on the thread that owns
+	 * the OpenGL context. If the job has already been finished, nothing happens.
+	 * 
+	 * @param job the job loading the Asset
+	 * @return the loaded Asset, or {@code null} if it could not be loaded
+	 */
+	private Asset finishLoading(AssetLoadJob job) {
+		if (job.future.isDone()) {
+			return job.future.getNow(null);
+		}
+
+		job.decode();
+
+		CachedAsset cachedAsset = job.cachedAsset;
+		Asset newInstance = null;
+		if (!job.hasFailed()) {
+			Class<? extends Asset> providingClass = cachedAsset.getProvidingClass();
+			try {
+				if (job.instance == null) {
+					@SuppressWarnings("unchecked")
+					Class<SerializedJelloObject> cls = (Class<SerializedJelloObject>) providingClass;
+					newInstance = this.serializer.deserialize(cachedAsset.location, cls);
+				} else {
+					newInstance = job.instance;
 					newInstance.load();
 				}
+			} catch (IOException | RuntimeException e) {
+				Debug.log(e);
+				newInstance = null;
 			}
+		}
 
+		synchronized (cachedAsset) {
 			if (newInstance != null) {
 				cachedAsset.setInstance(newInstance);
-				return newInstance;
 			} else {
+				cachedAsset.setFailed();
 				Debug.logWarning("[AssetDatabase]: Error constructing Asset."); // TODO explain the error.
-				return null;
 			}
 		}
+
+		job.future.complete(newInstance);
+		return newInstance;
 	}
 	
 
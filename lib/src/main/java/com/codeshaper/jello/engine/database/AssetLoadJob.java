@@ -0,0 +1,72 @@
+package com.codeshaper.jello.engine.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.codeshaper.jello.engine.Debug;
+import com.codeshaper.jello.engine.asset.Asset;
+
+/**
+ * Tracks an Asset while it is being loaded. Loading happens in two steps, the
+ * Asset is decoded with {@link Asset#decode()}, normally on one of the
+ * {@link AssetDatabase}'s worker threads, and is then finished with
+ * {@link Asset#load()} on the thread that owns the OpenGL context. Every request
+ * for the Asset while it is loading shares the same job.
+ */
+final class AssetLoadJob {
+
+	final CachedAsset cachedAsset;
+	/**
+	 * The instance being loaded. For Assets that are deserialized this is
+	 * {@code null}, as the instance is created by the {@link Serializer}.
+	 */
+	final Asset instance;
+	/**
+	 * Completed with the Asset once it has been loaded, or with {@code null} if it
+	 * could not be loaded.
+	 */
+	final CompletableFuture<Asset> future;
+
+	private final AtomicBoolean hasDecodeStarted;
+	private final CompletableFuture<Void> decoded;
+	private volatile boolean hasFailed;
+
+	AssetLoadJob(CachedAsset cachedAsset, Asset instance) {
+		this.cachedAsset = cachedAsset;
+		this.instance = instance;
+		this.future = new CompletableFuture<Asset>();
+		this.hasDecodeStarted = new AtomicBoolean();
+		this.decoded = new CompletableFuture<Void>();
+	}
+
+	/**
+	 * Decodes the Asset on the calling thread. If the Asset is already being
+	 * decoded on another thread, this waits for it to finish instead.
+	 */
+	void decode() {
+		if (!this.hasDecodeStarted.compareAndSet(false, true)) {
+			this.decoded.join();
+			return;
+		}
+
+		try {
+			if (this.instance != null) {
+				this.instance.decode();
+			}
+		} catch (Exception e) {
+			Debug.log(e);
+			this.hasFailed = true;
+		} finally {
+			this.decoded.complete(null);
+		}
+	}
+
+	/**
+	 * Checks if there was an exception while decoding the Asset.
+	 * 
+	 * @return {@code true} if decoding failed
+	 */
+	boolean hasFailed() {
+		return this.hasFailed;
+	}
+}
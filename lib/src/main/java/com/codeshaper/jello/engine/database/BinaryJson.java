@@ -0,0 +1,53 @@
+package com.codeshaper.jello.engine.database;
+
+/**
+ * Constants describing the binary format written by {@link BinaryJsonWriter} and
+ * read by {@link BinaryJsonReader}. The format stores the same structure as
+ * Json, but as a stream of tagged values. Every string, including object member
+ * names, is written in full the first time it appears, and afterwards only by
+ * its index, so the field and class names that make up most of a Scene are only
+ * stored once.
+ * <p>
+ * Data starts with {@link BinaryJson#MAGIC} and {@link BinaryJson#VERSION},
+ * followed by a single value. Integers and string lengths are stored as
+ * variable length integers.
+ */
+final class BinaryJson {
+
+	/**
+	 * The bytes that start all binary data, used to tell it apart from Json.
+	 */
+	static final byte[] MAGIC = new byte[] { 'J', 'B', 'I', 'N' };
+	static final byte VERSION = 1;
+
+	static final byte BEGIN_OBJECT = 1;
+	static final byte END_OBJECT = 2;
+	static final byte BEGIN_ARRAY = 3;
+	static final byte END_ARRAY = 4;
+	static final byte NULL = 5;
+	static final byte TRUE = 6;
+	static final byte FALSE = 7;
+	/**
+	 * A zigzag encoded variable length integer follows.
+	 */
+	static final byte INTEGER = 8;
+	static final byte FLOAT = 9;
+	static final byte DOUBLE = 10;
+	/**
+	 * A number that doesn't fit in any of the other number types, stored as a
+	 * string.
+	 */
+	static final byte BIG_NUMBER = 11;
+	/**
+	 * A string that has not been seen before follows, as its length and UTF-8
+	 * bytes.
+	 */
+	static final byte STRING = 12;
+	/**
+	 * The index of a string that has already been written follows.
+	 */
+	static final byte STRING_REFERENCE = 13;
+
+	private BinaryJson() {
+	}
+}
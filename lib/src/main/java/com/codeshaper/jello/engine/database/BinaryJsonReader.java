@@ -0,0 +1,522 @@
+package com.codeshaper.jello.engine.database;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * A {@link JsonReader} that reads the binary format described in
+ * {@link BinaryJson} instead of text. Because it is a JsonReader, Gson's type
+ * adapters read from it directly, and no intermediate Json tree is created.
+ * The data is read in a single pass, without any of the tokenizing or number
+ * parsing that reading Json text needs.
+ * <p>
+ * Gson reads the keys of {@link Map}s through a method that only works on its
+ * own readers, so a Gson reading from this must have
+ * {@link BinaryJsonReader#MAP_ADAPTER_FACTORY} registered.
+ */
+final class BinaryJsonReader extends JsonReader {
+
+	/**
+	 * Reads {@link Map}s from a BinaryJsonReader by reading the Map into a Json
+	 * tree first, and then reading the tree with Gson's own Map adapter. Only the
+	 * Map is read into a tree, the rest of the data is still streamed.
+	 */
+	static final TypeAdapterFactory MAP_ADAPTER_FACTORY = new TypeAdapterFactory() {
+
+		@Override
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			if (!Map.class.isAssignableFrom(type.getRawType())) {
+				return null;
+			}
+
+			TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+			TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
+			return new TypeAdapter<T>() {
+
+				@Override
+				public void write(JsonWriter out, T value) throws IOException {
+					delegate.write(out, value);
+				}
+
+				@Override
+				public T read(JsonReader in) throws IOException {
+					if (in instanceof BinaryJsonReader) {
+						return delegate.fromJsonTree(elementAdapter.read(in));
+					} else {
+						return delegate.read(in);
+					}
+				}
+			};
+		}
+	};
+
+	private static final Reader UNREADABLE_READER = new Reader() {
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			throw new AssertionError();
+		}
+
+		@Override
+		public void close() {
+			throw new AssertionError();
+		}
+	};
+
+	private static final int NO_TAG = -1;
+
+	/**
+	 * The single value in the data has not been read yet.
+	 */
+	private static final int SCOPE_DOCUMENT = 0;
+	/**
+	 * The single value in the data has been read.
+	 */
+	private static final int SCOPE_DOCUMENT_DONE = 1;
+	/**
+	 * In an object, where the next thing is a member name or the end of the
+	 * object.
+	 */
+	private static final int SCOPE_OBJECT_NAME = 2;
+	/**
+	 * In an object, where the next thing is the value of a member.
+	 */
+	private static final int SCOPE_OBJECT_VALUE = 3;
+	private static final int SCOPE_ARRAY = 4;
+
+	private final DataInputStream in;
+	private final List<String> strings;
+	private int[] scopes;
+	private int scopeCount;
+	/**
+	 * The tag that has been read by {@link BinaryJsonReader#peek()}, but not
+	 * consumed, or {@link BinaryJsonReader#NO_TAG}.
+	 */
+	private int peekedTag;
+
+	/**
+	 * Creates a reader, reading and checking the header of the data.
+	 *
+	 * @param in the stream to read from
+	 * @throws IOException if an I/O error occurs, or the stream does not contain
+	 *                     binary data of a supported version
+	 */
+	BinaryJsonReader(InputStream in) throws IOException {
+		super(UNREADABLE_READER);
+
+		this.in = new DataInputStream(in);
+		this.strings = new ArrayList<String>();
+		this.scopes = new int[32];
+		this.scopes[0] = SCOPE_DOCUMENT;
+		this.scopeCount = 1;
+		this.peekedTag = NO_TAG;
+
+		byte[] magic = new byte[BinaryJson.MAGIC.length];
+		this.in.readFully(magic);
+		if (!Arrays.equals(magic, BinaryJson.MAGIC)) {
+			throw new IOException("Data is not in the binary format.");
+		}
+		byte version = this.in.readByte();
+		if (version != BinaryJson.VERSION) {
+			throw new IOException("Unsupported binary format version " + version);
+		}
+	}
+
+	/**
+	 * Checks if a stream starts with the binary format's header. The stream is
+	 * reset to where it was before this was called.
+	 *
+	 * @param in the stream to check, which must support
+	 *           {@link InputStream#mark(int)}
+	 * @return {@code true} if the stream contains binary data
+	 * @throws IOException if an I/O error occurs
+	 */
+	static boolean isBinary(InputStream in) throws IOException {
+		in.mark(BinaryJson.MAGIC.length);
+		byte[] magic = in.readNBytes(BinaryJson.MAGIC.length);
+		in.reset();
+		return Arrays.equals(magic, BinaryJson.MAGIC);
+	}
+
+	@Override
+	public JsonToken peek() throws IOException {
+		int scope = this.scopes[this.scopeCount - 1];
+		if (scope == SCOPE_DOCUMENT_DONE) {
+			return JsonToken.END_DOCUMENT;
+		}
+
+		int tag = this.peekTag();
+		if (scope == SCOPE_OBJECT_NAME) {
+			if (tag == BinaryJson.END_OBJECT) {
+				return JsonToken.END_OBJECT;
+			} else if (tag == BinaryJson.STRING || tag == BinaryJson.STRING_REFERENCE) {
+				return JsonToken.NAME;
+			}
+			throw new MalformedJsonException("Expected a member name in binary data, found tag " + tag);
+		}
+
+		switch (tag) {
+		case BinaryJson.BEGIN_OBJECT:
+			return JsonToken.BEGIN_OBJECT;
+		case BinaryJson.BEGIN_ARRAY:
+			return JsonToken.BEGIN_ARRAY;
+		case BinaryJson.END_ARRAY:
+			if (scope == SCOPE_ARRAY) {
+				return JsonToken.END_ARRAY;
+			}
+			break;
+		case BinaryJson.NULL:
+			return JsonToken.NULL;
+		case BinaryJson.TRUE:
+		case BinaryJson.FALSE:
+			return JsonToken.BOOLEAN;
+		case BinaryJson.INTEGER:
+		case BinaryJson.FLOAT:
+		case BinaryJson.DOUBLE:
+		case BinaryJson.BIG_NUMBER:
+			return JsonToken.NUMBER;
+		case BinaryJson.STRING:
+		case BinaryJson.STRING_REFERENCE:
+			return JsonToken.STRING;
+		}
+		throw new MalformedJsonException("Unexpected tag " + tag + " in binary data.");
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		JsonToken token = this.peek();
+		return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+	}
+
+	@Override
+	public void beginArray() throws IOException {
+		this.expect(JsonToken.BEGIN_ARRAY);
+		this.peekedTag = NO_TAG;
+		this.pushScope(SCOPE_ARRAY);
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		this.expect(JsonToken.END_ARRAY);
+		this.peekedTag = NO_TAG;
+		this.scopeCount--;
+		this.afterValue();
+	}
+
+	@Override
+	public void beginObject() throws IOException {
+		this.expect(JsonToken.BEGIN_OBJECT);
+		this.peekedTag = NO_TAG;
+		this.pushScope(SCOPE_OBJECT_NAME);
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		this.expect(JsonToken.END_OBJECT);
+		this.peekedTag = NO_TAG;
+		this.scopeCount--;
+		this.afterValue();
+	}
+
+	@Override
+	public String nextName() throws IOException {
+		this.expect(JsonToken.NAME);
+		String name = this.readString(this.takeTag());
+		this.scopes[this.scopeCount - 1] = SCOPE_OBJECT_VALUE;
+		return name;
+	}
+
+	/**
+	 * Reads the next value as a string. Numbers are read as their text, the same
+	 * as {@link JsonReader#nextString()} does.
+	 */
+	@Override
+	public String nextString() throws IOException {
+		JsonToken token = this.peek();
+		if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+			throw this.unexpected(JsonToken.STRING, token);
+		}
+
+		String value;
+		int tag = this.takeTag();
+		switch (tag) {
+		case BinaryJson.INTEGER:
+			value = Long.toString(this.readInteger());
+			break;
+		case BinaryJson.FLOAT:
+			value = Float.toString(this.in.readFloat());
+			break;
+		case BinaryJson.DOUBLE:
+			value = Double.toString(this.in.readDouble());
+			break;
+		case BinaryJson.BIG_NUMBER:
+			value = this.readString(this.in.readByte());
+			break;
+		default:
+			value = this.readString(tag);
+			break;
+		}
+		this.afterValue();
+		return value;
+	}
+
+	@Override
+	public boolean nextBoolean() throws IOException {
+		this.expect(JsonToken.BOOLEAN);
+		boolean value = this.takeTag() == BinaryJson.TRUE;
+		this.afterValue();
+		return value;
+	}
+
+	@Override
+	public void nextNull() throws IOException {
+		this.expect(JsonToken.NULL);
+		this.takeTag();
+		this.afterValue();
+	}
+
+	@Override
+	public double nextDouble() throws IOException {
+		JsonToken token = this.peek();
+		if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+			throw this.unexpected(JsonToken.NUMBER, token);
+		}
+
+		double value;
+		int tag = this.takeTag();
+		switch (tag) {
+		case BinaryJson.INTEGER:
+			value = this.readInteger();
+			break;
+		case BinaryJson.FLOAT:
+			value = this.in.readFloat();
+			break;
+		case BinaryJson.DOUBLE:
+			value = this.in.readDouble();
+			break;
+		case BinaryJson.BIG_NUMBER:
+			value = Double.parseDouble(this.readString(this.in.readByte()));
+			break;
+		default:
+			value = Double.parseDouble(this.readString(tag));
+			break;
+		}
+		this.afterValue();
+		return value;
+	}
+
+	@Override
+	public long nextLong() throws IOException {
+		JsonToken token = this.peek();
+		if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+			throw this.unexpected(JsonToken.NUMBER, token);
+		}
+
+		long value;
+		int tag = this.takeTag();
+		switch (tag) {
+		case BinaryJson.INTEGER:
+			value = this.readInteger();
+			break;
+		case BinaryJson.FLOAT:
+			value = this.toLong(this.in.readFloat());
+			break;
+		case BinaryJson.DOUBLE:
+			value = this.toLong(this.in.readDouble());
+			break;
+		case BinaryJson.BIG_NUMBER:
+			value = this.parseLong(this.readString(this.in.readByte()));
+			break;
+		default:
+			value = this.parseLong(this.readString(tag));
+			break;
+		}
+		this.afterValue();
+		return value;
+	}
+
+	@Override
+	public int nextInt() throws IOException {
+		long value = this.nextLong();
+		if (value != (int) value) {
+			throw new NumberFormatException("Expected an int but was " + value);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Skips the next value, including everything in it if it's an object or an
+	 * array. If the next token is a member name, only the name is skipped. Strings
+	 * in the skipped value are still remembered, as later data may refer to them.
+	 */
+	@Override
+	public void skipValue() throws IOException {
+		switch (this.peek()) {
+		case BEGIN_OBJECT:
+			this.beginObject();
+			while (this.hasNext()) {
+				this.nextName();
+				this.skipValue();
+			}
+			this.endObject();
+			break;
+		case BEGIN_ARRAY:
+			this.beginArray();
+			while (this.hasNext()) {
+				this.skipValue();
+			}
+			this.endArray();
+			break;
+		case END_OBJECT:
+			this.endObject();
+			break;
+		case END_ARRAY:
+			this.endArray();
+			break;
+		case NAME:
+			this.nextName();
+			break;
+		case STRING:
+		case NUMBER:
+			this.nextString();
+			break;
+		case BOOLEAN:
+			this.nextBoolean();
+			break;
+		case NULL:
+			this.nextNull();
+			break;
+		case END_DOCUMENT:
+			break;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	@Override
+	public String toString() {
+		return "BinaryJsonReader";
+	}
+
+	private int peekTag() throws IOException {
+		if (this.peekedTag == NO_TAG) {
+			this.peekedTag = this.in.readByte();
+		}
+		return this.peekedTag;
+	}
+
+	private int takeTag() throws IOException {
+		int tag = this.peekTag();
+		this.peekedTag = NO_TAG;
+		return tag;
+	}
+
+	private void expect(JsonToken expected) throws IOException {
+		JsonToken token = this.peek();
+		if (token != expected) {
+			throw this.unexpected(expected, token);
+		}
+	}
+
+	private IllegalStateException unexpected(JsonToken expected, JsonToken found) {
+		return new IllegalStateException("Expected " + expected + " but was " + found + " in binary data.");
+	}
+
+	private void pushScope(int scope) {
+		if (this.scopeCount == this.scopes.length) {
+			this.scopes = Arrays.copyOf(this.scopes, this.scopes.length * 2);
+		}
+		this.scopes[this.scopeCount++] = scope;
+	}
+
+	/**
+	 * Updates the current scope after a whole value has been read.
+	 */
+	private void afterValue() {
+		int scope = this.scopes[this.scopeCount - 1];
+		if (scope == SCOPE_OBJECT_VALUE) {
+			this.scopes[this.scopeCount - 1] = SCOPE_OBJECT_NAME;
+		} else if (scope == SCOPE_DOCUMENT) {
+			this.scopes[this.scopeCount - 1] = SCOPE_DOCUMENT_DONE;
+		}
+	}
+
+	private long toLong(double value) {
+		long result = (long) value;
+		if (result != value) {
+			throw new NumberFormatException("Expected a long but was " + value);
+		}
+		return result;
+	}
+
+	private long parseLong(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return this.toLong(Double.parseDouble(value));
+		}
+	}
+
+	private long readInteger() throws IOException {
+		long zigzag = this.readVarLong();
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private String readString(int tag) throws IOException {
+		if (tag == BinaryJson.STRING_REFERENCE) {
+			long index = this.readVarLong();
+			if (index < 0 || index >= this.strings.size()) {
+				throw new MalformedJsonException("String reference " + index + " is out of range.");
+			}
+			return this.strings.get((int) index);
+		} else if (tag == BinaryJson.STRING) {
+			long length = this.readVarLong();
+			if (length < 0 || length > Integer.MAX_VALUE) {
+				throw new MalformedJsonException("String length " + length + " is out of range.");
+			}
+			byte[] bytes = this.in.readNBytes((int) length);
+			if (bytes.length != length) {
+				throw new MalformedJsonException("Binary data ended in the middle of a string.");
+			}
+			String string = new String(bytes, StandardCharsets.UTF_8);
+			this.strings.add(string);
+			return string;
+		} else {
+			throw new MalformedJsonException("Expected a string in binary data, found tag " + tag);
+		}
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (shift >= 64) {
+				throw new MalformedJsonException("Malformed variable length integer in binary data.");
+			}
+			b = this.in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
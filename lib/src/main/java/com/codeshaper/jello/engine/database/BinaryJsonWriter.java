@@ -0,0 +1,247 @@
+package com.codeshaper.jello.engine.database;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A {@link JsonWriter} that writes the binary format described in
+ * {@link BinaryJson} instead of text. Because it is a JsonWriter, Gson's type
+ * adapters write to it directly and no intermediate Json tree or string is
+ * created.
+ */
+final class BinaryJsonWriter extends JsonWriter {
+
+	private static final Writer UNWRITABLE_WRITER = new Writer() {
+		@Override
+		public void write(char[] buffer, int offset, int counter) {
+			throw new AssertionError();
+		}
+
+		@Override
+		public void flush() {
+			throw new AssertionError();
+		}
+
+		@Override
+		public void close() {
+			throw new AssertionError();
+		}
+	};
+
+	private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+
+	private final DataOutputStream out;
+	private final Map<String, Integer> stringIndices;
+	/**
+	 * The name of the object member that is being written. Names are not written
+	 * until their value is, so members with a {@code null} value can be skipped if
+	 * nulls are not being serialized.
+	 */
+	private String deferredName;
+
+	BinaryJsonWriter(OutputStream out) throws IOException {
+		super(UNWRITABLE_WRITER);
+
+		this.out = new DataOutputStream(out);
+		this.stringIndices = new HashMap<String, Integer>();
+
+		this.out.write(BinaryJson.MAGIC);
+		this.out.writeByte(BinaryJson.VERSION);
+	}
+
+	@Override
+	public JsonWriter beginArray() throws IOException {
+		this.writeDeferredName();
+		this.out.writeByte(BinaryJson.BEGIN_ARRAY);
+		return this;
+	}
+
+	@Override
+	public JsonWriter endArray() throws IOException {
+		this.out.writeByte(BinaryJson.END_ARRAY);
+		return this;
+	}
+
+	@Override
+	public JsonWriter beginObject() throws IOException {
+		this.writeDeferredName();
+		this.out.writeByte(BinaryJson.BEGIN_OBJECT);
+		return this;
+	}
+
+	@Override
+	public JsonWriter endObject() throws IOException {
+		this.out.writeByte(BinaryJson.END_OBJECT);
+		return this;
+	}
+
+	@Override
+	public JsonWriter name(String name) throws IOException {
+		if (name == null) {
+			throw new NullPointerException("name == null");
+		}
+		if (this.deferredName != null) {
+			throw new IllegalStateException("Already wrote a name, expecting a value.");
+		}
+
+		this.deferredName = name;
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) {
+			return this.nullValue();
+		}
+
+		this.writeDeferredName();
+		this.writeString(value);
+		return this;
+	}
+
+	/**
+	 * Writes raw Json by parsing it and writing the parsed tree, so it is read back
+	 * as the same values it would be if it had been written as text.
+	 */
+	@Override
+	public JsonWriter jsonValue(String value) throws IOException {
+		if (value == null) {
+			return this.nullValue();
+		}
+
+		JsonElement element;
+		try {
+			element = JsonParser.parseString(value);
+		} catch (JsonParseException e) {
+			throw new IOException("Raw Json is malformed: " + value, e);
+		}
+		ELEMENT_ADAPTER.write(this, element);
+		return this;
+	}
+
+	@Override
+	public JsonWriter nullValue() throws IOException {
+		if (this.deferredName != null && !this.getSerializeNulls()) {
+			this.deferredName = null; // Skip the member entirely.
+			return this;
+		}
+
+		this.writeDeferredName();
+		this.out.writeByte(BinaryJson.NULL);
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(boolean value) throws IOException {
+		this.writeDeferredName();
+		this.out.writeByte(value ? BinaryJson.TRUE : BinaryJson.FALSE);
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(Boolean value) throws IOException {
+		if (value == null) {
+			return this.nullValue();
+		}
+
+		return this.value(value.booleanValue());
+	}
+
+	@Override
+	public JsonWriter value(float value) throws IOException {
+		this.writeDeferredName();
+		this.out.writeByte(BinaryJson.FLOAT);
+		this.out.writeFloat(value);
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(double value) throws IOException {
+		this.writeDeferredName();
+		this.out.writeByte(BinaryJson.DOUBLE);
+		this.out.writeDouble(value);
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(long value) throws IOException {
+		this.writeDeferredName();
+		this.out.writeByte(BinaryJson.INTEGER);
+		this.writeVarLong((value << 1) ^ (value >> 63));
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(Number value) throws IOException {
+		if (value == null) {
+			return this.nullValue();
+		}
+
+		if (value instanceof Float) {
+			return this.value(value.floatValue());
+		} else if (value instanceof Double) {
+			return this.value(value.doubleValue());
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short
+				|| value instanceof Byte) {
+			return this.value(value.longValue());
+		} else {
+			// BigDecimal, BigInteger, or a lazily parsed number from a Json tree.
+			this.writeDeferredName();
+			this.out.writeByte(BinaryJson.BIG_NUMBER);
+			this.writeString(value.toString());
+			return this;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+	private void writeDeferredName() throws IOException {
+		if (this.deferredName != null) {
+			this.writeString(this.deferredName);
+			this.deferredName = null;
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		Integer index = this.stringIndices.get(value);
+		if (index != null) {
+			this.out.writeByte(BinaryJson.STRING_REFERENCE);
+			this.writeVarLong(index);
+		} else {
+			this.stringIndices.put(value, this.stringIndices.size());
+
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			this.out.writeByte(BinaryJson.STRING);
+			this.writeVarLong(bytes.length);
+			this.out.write(bytes);
+		}
+	}
+
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			this.out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.out.writeByte((int) value);
+	}
+}
@@ -7,6 +7,26 @@ import com.codeshaper.jello.engine.asset.SerializedJelloObject;
 
 public class CachedAsset {
 
+	public enum LoadState {
+		/**
+		 * The Asset has not been loaded, or has been unloaded.
+		 */
+		UNLOADED,
+		/**
+		 * The Asset is being loaded in the background.
+		 */
+		LOADING,
+		/**
+		 * The Asset is loaded and can be used.
+		 */
+		LOADED,
+		/**
+		 * The Asset could not be loaded. It will not be tried again until it is
+		 * unloaded.
+		 */
+		FAILED,
+	}
+
 	/**
 	 * The location of the Asset.
 	 */
@@ -27,10 +47,16 @@ public class CachedAsset {
 	 * The instance of the Asset. If the Asset is not loaded, this is {@code null}.
 	 */
 	private Asset instance;
+	private volatile LoadState state;
+	/**
+	 * The job loading the Asset, while it is {@link LoadState#LOADING}.
+	 */
+	private AssetLoadJob loadJob;
 
 	public CachedAsset(AssetLocation location, Class<? extends Asset> providingClass) {
 		this.location = location;
 		this.providingClass = providingClass;
+		this.state = LoadState.UNLOADED;
 	}
 
 	/**
@@ -42,17 +68,46 @@ public class CachedAsset {
 		return this.instance != null;
 	}
 
+	/**
+	 * Gets the state of the Asset.
+	 * 
+	 * @return the Asset's {@link LoadState}
+	 */
+	public LoadState getLoadState() {
+		return this.state;
+	}
+
 	public Asset getInstance() {
 		return this.instance;
 	}
 
 	public void setInstance(Asset instance) {
 		this.instance = instance;
+		this.loadJob = null;
 		if (instance != null) {
 			this.lastLoaded = System.currentTimeMillis();
+			this.state = LoadState.LOADED;
+		} else {
+			this.state = LoadState.UNLOADED;
 		}
 	}
 
+	AssetLoadJob getLoadJob() {
+		return this.loadJob;
+	}
+
+	void setLoading(AssetLoadJob loadJob) {
+		this.loadJob = loadJob;
+		this.state = LoadState.LOADING;
+	}
+
+	void setFailed() {
+		this.instance = null;
+		this.loadJob = null;
+		this.lastLoaded = System.currentTimeMillis();
+		this.state = LoadState.FAILED;
+	}
+
 	/**
 	 * Gets the class that provides the implementation of the Asset in code. For
 	 * Assets that extends @link {@link SerializedJelloObject} (e.g. Material), the
@@ -1,16 +1,25 @@
 package com.codeshaper.jello.engine.database;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.codeshaper.jello.engine.AssetLocation;
 import com.codeshaper.jello.engine.Debug;
@@ -36,15 +45,64 @@ import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
  * Provides methods for serializing and deserializing objects to and from Json.
  * All of the methods will handle saving/restoring fields that reference
  * {@link Asset}s.
+ * <p>
+ * Objects can also be serialized to a compact binary format, see
+ * {@link Serializer#serializeToBytes(Object)} and {@link Format#BINARY}. The
+ * binary format holds the same data as the Json, so anything that can be
+ * serialized to Json can be serialized to binary. Json is used for files in the
+ * project, so they can be read and merged, while binary is used where speed and
+ * size matter, like play mode snapshots and builds.
  */
 public class Serializer {
 
+	/**
+	 * The formats that a {@link SerializedJelloObject} can be saved in.
+	 */
+	public enum Format {
+		/**
+		 * Human readable Json.
+		 */
+		JSON,
+		/**
+		 * A compact binary format, that is faster to read and write.
+		 */
+		BINARY,
+	}
+
 	private final AssetDatabase database;
 	private final AssetTypeAdapterFactory assetAdapterFactory;
+	/**
+	 * The Gson used by all methods, built the first time it's needed. Use
+	 * {@link Serializer#getGson()} to get it.
+	 */
+	private volatile Gson gson;
+	/**
+	 * The types of {@link SerializedJelloObject} that have been deserialized from a
+	 * file. The Gson has an instance creator registered for each, so the new
+	 * object is constructed with its location.
+	 */
+	private final Set<Class<? extends Asset>> instanceCreatorTypes;
+	private final SerializedJelloObjectInstanceCreator instanceCreator;
+	/**
+	 * The location of the {@link SerializedJelloObject} being deserialized on the
+	 * calling thread, as Assets may be deserialized on several threads at once.
+	 */
+	private final ThreadLocal<AssetLocation> deserializingLocation;
 
 	public Serializer(AssetDatabase database) {
 		this.database = database;
 		this.assetAdapterFactory = new AssetTypeAdapterFactory();
+		this.instanceCreatorTypes = ConcurrentHashMap.newKeySet();
+		this.instanceCreator = new SerializedJelloObjectInstanceCreator();
+		this.deserializingLocation = new ThreadLocal<AssetLocation>();
+	}
+
+	/**
+	 * Clears the cached Gson instances. This must be called when the list of
+	 * {@link JelloComponent}s changes, so the new Components can be serialized.
+	 */
+	public void clearCache() {
+		this.gson = null;
 	}
 
 	/**
@@ -55,12 +113,30 @@ public class Serializer {
 	 * @return a {@link JsonElement} representing the object.
 	 */
 	public JsonElement serializeToJsonElement(Object object) {
-		Gson gson = this.createGsonBuilder().create();
+		Gson gson = this.getGson();
 		this.setupAssetAdapter(object.getClass());
 
 		return gson.toJsonTree(object);
 	}
 
+	/**
+	 * Serializes an object to the binary format. The object can be turned back
+	 * into an object with {@link Serializer#deserialize(byte[], Class)}.
+	 * 
+	 * @param object the object to serialize
+	 * @return the binary data representing the object
+	 * @throws JsonIOException if there was a problem writing the data
+	 */
+	public byte[] serializeToBytes(Object object) throws JsonIOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		try {
+			this.writeBinary(object, stream);
+		} catch (IOException e) {
+			throw new JsonIOException(e); // ByteArrayOutputStream doesn't throw.
+		}
+		return stream.toByteArray();
+	}
+
 	/**
 	 * Serializes an object to a {@link File}. To serialize
 	 * {@link SerializedJelloObject}s,
@@ -78,7 +154,7 @@ public class Serializer {
 	 * @throws JsonIOException if there was a problem writing to file
 	 */
 	public boolean serializeToFile(Object object, File file) throws IOException, JsonIOException {
-		Gson gson = this.createGsonBuilder().create();
+		Gson gson = this.getGson();
 		this.setupAssetAdapter(object.getClass());
 
 		try (FileWriter writer = new FileWriter(file)) {
@@ -89,7 +165,7 @@ public class Serializer {
 
 	/**
 	 * Serializes the current state of a {@link SerializedJelloObject} to it's
-	 * providing file. If the file does not exist, it will be created.
+	 * providing file as Json. If the file does not exist, it will be created.
 	 * 
 	 * @param object the {@link SerializedJelloObject} to save
 	 * @return {@code true} if there were no errors
@@ -97,21 +173,41 @@ public class Serializer {
 	 * @throws SecurityException
 	 */
 	public boolean serializeScriptableJelloObject(SerializedJelloObject object) throws IOException {
+		return this.serializeScriptableJelloObject(object, Format.JSON);
+	}
+
+	/**
+	 * Serializes the current state of a {@link SerializedJelloObject} to it's
+	 * providing file. If the file does not exist, it will be created.
+	 * {@link Serializer#deserialize(AssetLocation, Class)} can read either format.
+	 * 
+	 * @param object the {@link SerializedJelloObject} to save
+	 * @param format the format to write the file in
+	 * @return {@code true} if there were no errors
+	 * @throws IOException       If an I/O error occurred
+	 * @throws SecurityException
+	 */
+	public boolean serializeScriptableJelloObject(SerializedJelloObject object, Format format) throws IOException {
 		File file = object.location.getFile();
 		if (!file.exists()) {
 			file.createNewFile();
 		}
 
-		try (FileWriter writer = new FileWriter(file)) {
+		try (OutputStream stream = new FileOutputStream(file)) {
 			// Write the class name as the first line.
 			String fullClassName = object.getClass().getName();
-			writer.write(fullClassName + "\n");
-
-			Gson gson = this.createGsonBuilder().create();
-			this.setupAssetAdapter(object.getClass());
+			stream.write((fullClassName + "\n").getBytes(StandardCharsets.UTF_8));
 
 			this.safelyInvokeOnSerialize(object);
-			gson.toJson(object, writer);
+			if (format == Format.BINARY) {
+				this.writeBinary(object, stream);
+			} else {
+				Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+				Gson gson = this.getGson();
+				this.setupAssetAdapter(object.getClass());
+				gson.toJson(object, writer);
+				writer.flush();
+			}
 
 			return true;
 		} catch (IOException e) {
@@ -138,7 +234,7 @@ public class Serializer {
 	 */
 	public <T> T deserialize(File file, Class<T> cls)
 			throws JsonIOException, JsonSyntaxException, FileNotFoundException, IOException {
-		Gson gson = this.createGsonBuilder().create();
+		Gson gson = this.getGson();
 
 		try (FileReader reader = new FileReader(file)) {
 			return gson.fromJson(reader, cls);
@@ -158,13 +254,35 @@ public class Serializer {
 	 *                             object of the of {@code cls}
 	 */
 	public <T> T deserialize(JsonElement element, Class<T> cls) throws JsonSyntaxException {
-		Gson gson = this.createGsonBuilder().create();
+		Gson gson = this.getGson();
 		return gson.fromJson(element, cls);
 	}
 
 	/**
-	 * Deserializes a {@link SerializedJelloObject} from a file. After deserializing
-	 * the object, {@link SerializedJelloObject#onDeserialize()} is invoked. If the
+	 * Deserializes data created with {@link Serializer#serializeToBytes(Object)}
+	 * into an object. If the data has references to {@link Asset}s, these
+	 * references will be pointed to the respective Asset.
+	 * 
+	 * @param <T>
+	 * @param bytes the binary data
+	 * @param cls   the class of {@code T}
+	 * @return the new object
+	 * @throws JsonSyntaxException if the data is not a valid representation for an
+	 *                             object of the of {@code cls}
+	 * @throws JsonIOException     if the data is not in the binary format
+	 */
+	public <T> T deserialize(byte[] bytes, Class<T> cls) throws JsonSyntaxException, JsonIOException {
+		try (BinaryJsonReader reader = new BinaryJsonReader(new ByteArrayInputStream(bytes))) {
+			return this.getGson().fromJson(reader, cls);
+		} catch (IOException e) {
+			throw new JsonIOException(e);
+		}
+	}
+
+	/**
+	 * Deserializes a {@link SerializedJelloObject} from a file, in either of the
+	 * {@link Format}s. After deserializing the object,
+	 * {@link SerializedJelloObject#onDeserialize()} is invoked. If the
 	 * call throws an exception, the exception is swallowed and an error is logged.
 	 * 
 	 * @param location the location of the Asset to deserialize.
@@ -182,14 +300,25 @@ public class Serializer {
 			return null;
 		}
 
-		try (BufferedReader br = new BufferedReader(new InputStreamReader(stream))) {
-			br.readLine(); // Skip the first line, it states the providing class and is not valid JSON.
-
-			Gson gson = this.createGsonBuilder()
-					.registerTypeAdapter(cls, new SerializedJelloObjectInstanceCreator(cls, location))
-					.create();
+		try (BufferedInputStream bis = new BufferedInputStream(stream)) {
+			// Skip the first line, it states the providing class and is not part of the
+			// data.
+			int b;
+			while ((b = bis.read()) != '\n' && b != -1) {
+			}
 
-			T newInstance = gson.fromJson(br, cls);
+			Gson gson = this.getGson(cls);
+			T newInstance;
+			this.deserializingLocation.set(location);
+			try {
+				if (BinaryJsonReader.isBinary(bis)) {
+					newInstance = gson.fromJson(new BinaryJsonReader(bis), cls);
+				} else {
+					newInstance = gson.fromJson(new InputStreamReader(bis, StandardCharsets.UTF_8), cls);
+				}
+			} finally {
+				this.deserializingLocation.remove();
+			}
 			if (newInstance != null) {
 				this.safelyInvokeOnDeserialize(newInstance);
 			}
@@ -201,6 +330,15 @@ public class Serializer {
 		}
 	}
 
+	private void writeBinary(Object object, OutputStream stream) throws IOException {
+		Gson gson = this.getGson();
+		this.setupAssetAdapter(object.getClass());
+
+		BinaryJsonWriter writer = new BinaryJsonWriter(stream);
+		gson.toJson(object, object.getClass(), writer);
+		writer.flush();
+	}
+
 	private void setupAssetAdapter(Class<?> cls) {
 		if (Asset.class.isAssignableFrom(cls)) {
 			this.assetAdapterFactory.wroteRoot = false;
@@ -209,6 +347,36 @@ public class Serializer {
 		}
 	}
 
+	private Gson getGson() {
+		Gson gson = this.gson;
+		if (gson == null) {
+			synchronized (this) {
+				gson = this.gson;
+				if (gson == null) {
+					gson = this.createGsonBuilder().create();
+					this.gson = gson;
+				}
+			}
+		}
+		return gson;
+	}
+
+	/**
+	 * Gets the Gson, making sure it constructs {@code cls} with the location in
+	 * {@link Serializer#deserializingLocation}. The Gson is only rebuilt the first
+	 * time a type is seen.
+	 */
+	private Gson getGson(Class<? extends Asset> cls) {
+		if (!this.instanceCreatorTypes.contains(cls)) {
+			synchronized (this) {
+				if (this.instanceCreatorTypes.add(cls)) {
+					this.gson = null;
+				}
+			}
+		}
+		return this.getGson();
+	}
+
 	private GsonBuilder createGsonBuilder() {
 		GsonBuilder builder = new GsonBuilder();
 
@@ -226,6 +394,11 @@ public class Serializer {
 		builder.registerTypeAdapterFactory(this.assetAdapterFactory);
 		
 		builder.registerTypeAdapter(Method.class, new MethodSerializer());
+		builder.registerTypeAdapterFactory(BinaryJsonReader.MAP_ADAPTER_FACTORY);
+
+		for (Class<? extends Asset> cls : this.instanceCreatorTypes) {
+			builder.registerTypeAdapter(cls, this.instanceCreator);
+		}
 
 		return builder;
 	}
@@ -250,19 +423,17 @@ public class Serializer {
 		}
 	}
 
+	/**
+	 * Constructs Assets with the location in
+	 * {@link Serializer#deserializingLocation}. If nothing is being deserialized
+	 * from a file on the calling thread, the Asset is created as a runtime Asset.
+	 */
 	private class SerializedJelloObjectInstanceCreator implements InstanceCreator<Asset> {
 
-		private final Class<? extends Asset> clazz;
-		private final AssetLocation location;
-
-		public SerializedJelloObjectInstanceCreator(Class<? extends Asset> clazz, AssetLocation location) {
-			this.clazz = clazz;
-			this.location = location;
-		}
-
 		@Override
 		public Asset createInstance(Type type) {
-			return database.instantiateAsset(this.clazz, this.location);
+			Class<? extends Asset> cls = TypeToken.get(type).getRawType().asSubclass(Asset.class);
+			return database.instantiateAsset(cls, deserializingLocation.get());
 		}
 	}
 
@@ -1,11 +1,61 @@
 package com.codeshaper.jello.engine.gui;
 
+import com.codeshaper.jello.engine.AssetLocation;
 import com.codeshaper.jello.engine.ComponentIcon;
 import com.codeshaper.jello.engine.ComponentName;
-import com.codeshaper.jello.engine.JelloComponent;
+import com.codeshaper.jello.engine.asset.Material;
+import com.codeshaper.jello.engine.asset.Shader;
+import com.codeshaper.jello.engine.database.AssetDatabase;
+import com.codeshaper.jello.engine.rendering.Camera;
+import com.codeshaper.jello.engine.rendering.Renderer;
 
+/**
+ * Draws every {@link UiBase} element on its GameObject and the GameObject's
+ * descendants, in hierarchy order, with parents drawn before their children.
+ * A descendant with its own Canvas is drawn by that Canvas instead.
+ * <p>
+ * The elements' quads are kept in a single vertex buffer, which is only
+ * written again when an element changes. Elements that draw from the UI atlas
+ * are drawn together, so a Canvas takes one draw call, plus one for every
+ * element that has its own Material.
+ */
 @ComponentName("Ui/Canvas")
 @ComponentIcon("/_editor/componentIcons/canvas.png")
-public class Canvas extends JelloComponent {
+public class Canvas extends Renderer {
 
+	private static Material batchMaterial;
+
+	private transient UiBatcher batcher;
+
+	/**
+	 * Gets the Material every Canvas draws its batches with, which reads the
+	 * vertices written by {@link UiQuadBuffer} and samples the UI atlas.
+	 */
+	@Override
+	public Material getMaterial() {
+		if (Canvas.batchMaterial == null) {
+			Canvas.batchMaterial = new Material(null);
+			Canvas.batchMaterial.setShader((Shader) AssetDatabase.getInstance()
+					.getAsset(new AssetLocation("builtin/shaders/uiAtlas.shader")));
+		}
+		return Canvas.batchMaterial;
+	}
+
+	@Override
+	public void onRender(Camera camera) {
+		if (this.batcher == null) {
+			this.batcher = new UiBatcher();
+		}
+		this.batcher.render(this, camera.getWidth(), camera.getHeight());
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		if (this.batcher != null) {
+			this.batcher.dispose();
+			this.batcher = null;
+		}
+	}
 }
@@ -1,33 +1,241 @@
 package com.codeshaper.jello.engine.gui;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 import com.codeshaper.jello.editor.property.modifier.ExposeField;
 import com.codeshaper.jello.engine.Color;
 import com.codeshaper.jello.engine.ComponentIcon;
 import com.codeshaper.jello.engine.ComponentName;
 import com.codeshaper.jello.engine.asset.Font;
+import com.codeshaper.jello.engine.rendering.TextureAtlas;
 
+/**
+ * Draws a string with a {@link Font}, starting from the top left corner of the
+ * element. Lines are split on {@code '\n'}, and are not wrapped.
+ * <p>
+ * The position of every glyph is cached, and is only worked out again when the
+ * text, Font or font size changes, or the Font is unloaded, which releases its
+ * glyphs from the atlas. Glyphs are drawn from the UI atlas, so text is drawn
+ * in the same batch as the elements around it.
+ */
 @ComponentName("Ui/Element/Text")
 @ComponentIcon("/_editor/componentIcons/text.png")
 public class Text extends UiBase {
 
+	/**
+	 * The number of floats stored for each glyph in
+	 * {@link Text#glyphLayout}: x0, y0, x1, y1, u0, v0, u1, v1 and layer.
+	 */
+	private static final int GLYPH_STRIDE = 9;
+
+	private static final float[] scratchCorners = new float[12];
+
 	@ExposeField
 	private String text = "Text";
 	@ExposeField
 	private Font font = null;
-	
+	@ExposeField
+	private float fontSize = 24;
+
+	/**
+	 * The rectangle and atlas region of every visible glyph, in pixels from the
+	 * top left corner of the element with y pointing down.
+	 */
+	private transient float[] glyphLayout = new float[0];
+	/**
+	 * The atlas region of every glyph in {@link Text#glyphLayout}.
+	 */
+	private transient TextureAtlas.Region[] glyphRegions = new TextureAtlas.Region[0];
+	private transient int glyphCount;
+	private transient boolean isGlyphLayoutDirty = true;
+	private transient String cachedText;
+	private transient Font cachedFont;
+	/**
+	 * If the Font was invalid, or unloaded, when the glyphs were laid out.
+	 */
+	private transient boolean cachedFontInvalid;
+	private transient float cachedFontSize;
+
 	public String getText() {
 		return this.text;
 	}
-	
+
 	public void setText(String text) {
 		this.text = text;
+		this.isGlyphLayoutDirty = true;
+		this.markContentDirty();
 	}
-	
+
 	public Font getFont() {
 		return this.font;
 	}
-	
+
 	public void setFont(Font font) {
 		this.font = font;
+		this.isGlyphLayoutDirty = true;
+		this.markContentDirty();
+	}
+
+	/**
+	 * Gets the height of a line of text, in pixels.
+	 *
+	 * @return the font size
+	 */
+	public float getFontSize() {
+		return this.fontSize;
+	}
+
+	/**
+	 * Sets the height of a line of text, in pixels.
+	 *
+	 * @param fontSize the font size
+	 */
+	public void setFontSize(float fontSize) {
+		this.fontSize = fontSize;
+		this.isGlyphLayoutDirty = true;
+		this.markContentDirty();
+	}
+
+	@Override
+	protected boolean hasContentChanged() {
+		boolean fontInvalid = this.font != null && this.font.isInvalid();
+		boolean changed = !Objects.equals(this.text, this.cachedText)
+				|| this.font != this.cachedFont
+				|| fontInvalid != this.cachedFontInvalid
+				|| this.fontSize != this.cachedFontSize
+				|| this.hasReleasedGlyph();
+		if (changed) {
+			this.cachedText = this.text;
+			this.cachedFont = this.font;
+			this.cachedFontInvalid = fontInvalid;
+			this.cachedFontSize = this.fontSize;
+			this.isGlyphLayoutDirty = true;
+		}
+		return changed;
+	}
+
+	@Override
+	protected void buildQuads(UiQuadBuffer quads) {
+		super.buildQuads(quads);
+
+		if (this.isGlyphLayoutDirty) {
+			this.layoutGlyphs();
+			this.isGlyphLayoutDirty = false;
+		}
+		if (this.glyphCount == 0 || this.size.x == 0 || this.size.y == 0) {
+			return;
+		}
+
+		// Glyphs are placed in the element's corners, so they follow its rotation and
+		// scale.
+		float[] c = this.corners;
+		float rightX = (c[9] - c[0]) / this.size.x;
+		float rightY = (c[10] - c[1]) / this.size.x;
+		float rightZ = (c[11] - c[2]) / this.size.x;
+		float downX = (c[3] - c[0]) / this.size.y;
+		float downY = (c[4] - c[1]) / this.size.y;
+		float downZ = (c[5] - c[2]) / this.size.y;
+
+		Color color = this.color;
+		for (int i = 0; i < this.glyphCount; i++) {
+			int index = i * GLYPH_STRIDE;
+			float x0 = this.glyphLayout[index];
+			float y0 = this.glyphLayout[index + 1];
+			float x1 = this.glyphLayout[index + 2];
+			float y1 = this.glyphLayout[index + 3];
+
+			setCorner(0, c, x0, y0, rightX, rightY, rightZ, downX, downY, downZ);
+			setCorner(1, c, x0, y1, rightX, rightY, rightZ, downX, downY, downZ);
+			setCorner(2, c, x1, y1, rightX, rightY, rightZ, downX, downY, downZ);
+			setCorner(3, c, x1, y0, rightX, rightY, rightZ, downX, downY, downZ);
+			quads.addQuad(scratchCorners,
+					this.glyphLayout[index + 4],
+					this.glyphLayout[index + 5],
+					this.glyphLayout[index + 6],
+					this.glyphLayout[index + 7],
+					(int) this.glyphLayout[index + 8],
+					true,
+					color);
+		}
+	}
+
+	/**
+	 * Checks if any laid out glyph's atlas region has been released, which happens
+	 * when the Font is unloaded.
+	 */
+	private boolean hasReleasedGlyph() {
+		for (int i = 0; i < this.glyphCount; i++) {
+			if (this.glyphRegions[i].isReleased()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Works out the position of every glyph. This rasterizes any glyphs that
+	 * haven't been used before.
+	 */
+	private void layoutGlyphs() {
+		this.glyphCount = 0;
+		if (this.text == null || this.font == null || this.font.isInvalid()) {
+			return;
+		}
+
+		float factor = this.fontSize / Font.BASE_SIZE;
+		float penX = 0;
+		float baseline = this.font.getAscent() * factor;
+		int length = this.text.length();
+		for (int i = 0; i < length;) {
+			int codepoint = this.text.codePointAt(i);
+			i += Character.charCount(codepoint);
+
+			if (codepoint == '\n') {
+				penX = 0;
+				baseline += this.font.getLineHeight() * factor;
+				continue;
+			}
+
+			Font.Glyph glyph = this.font.getGlyph(codepoint);
+			if (glyph.region != null) {
+				int index = this.glyphCount * GLYPH_STRIDE;
+				if (index + GLYPH_STRIDE > this.glyphLayout.length) {
+					float[] larger = new float[Math.max(index + GLYPH_STRIDE, this.glyphLayout.length * 2)];
+					System.arraycopy(this.glyphLayout, 0, larger, 0, index);
+					this.glyphLayout = larger;
+					this.glyphRegions = Arrays.copyOf(this.glyphRegions, larger.length / GLYPH_STRIDE);
+				}
+				float x0 = penX + glyph.xOffset * factor;
+				float y0 = baseline + glyph.yOffset * factor;
+				this.glyphLayout[index] = x0;
+				this.glyphLayout[index + 1] = y0;
+				this.glyphLayout[index + 2] = x0 + glyph.width * factor;
+				this.glyphLayout[index + 3] = y0 + glyph.height * factor;
+				this.glyphLayout[index + 4] = glyph.region.u0;
+				this.glyphLayout[index + 5] = glyph.region.v0;
+				this.glyphLayout[index + 6] = glyph.region.u1;
+				this.glyphLayout[index + 7] = glyph.region.v1;
+				this.glyphLayout[index + 8] = glyph.region.layer;
+				this.glyphRegions[this.glyphCount] = glyph.region;
+				this.glyphCount++;
+			}
+
+			penX += glyph.advance * factor;
+			if (i < length) {
+				penX += this.font.getKerning(codepoint, this.text.codePointAt(i)) * factor;
+			}
+		}
+	}
+
+	/**
+	 * Sets a corner of {@link Text#scratchCorners} to a point in the element, in
+	 * pixels from its top left corner.
+	 */
+	private static void setCorner(int corner, float[] c, float x, float y, float rightX, float rightY, float rightZ,
+			float downX, float downY, float downZ) {
+		scratchCorners[corner * 3] = c[0] + rightX * x + downX * y;
+		scratchCorners[corner * 3 + 1] = c[1] + rightY * x + downY * y;
+		scratchCorners[corner * 3 + 2] = c[2] + rightZ * x + downZ * y;
 	}
 }
@@ -3,20 +3,41 @@ package com.codeshaper.jello.engine.gui;
 import static org.lwjgl.opengl.GL30.*;
 
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
 
 import com.codeshaper.jello.editor.property.modifier.Space;
 import com.codeshaper.jello.editor.property.modifier.ToolTip;
 import com.codeshaper.jello.engine.Color;
-import com.codeshaper.jello.engine.GameObject;
+import com.codeshaper.jello.engine.JelloComponent;
 import com.codeshaper.jello.engine.asset.Material;
 import com.codeshaper.jello.engine.asset.Mesh;
-import com.codeshaper.jello.engine.rendering.Camera;
-import com.codeshaper.jello.engine.rendering.Renderer;
+import com.codeshaper.jello.engine.asset.Texture;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
+import com.codeshaper.jello.engine.rendering.GameRenderer;
+import com.codeshaper.jello.engine.rendering.TextureAtlas;
 import com.codeshaper.jello.engine.rendering.shader.ShaderProgram;
 
-public class UiBase extends Renderer {
+/**
+ * The base class of every UI element. Elements are drawn by the nearest
+ * {@link Canvas} above them, elements outside of a Canvas are not drawn.
+ * <p>
+ * An element's layout rectangle is cached, and is only worked out again when
+ * its anchor, size, transform or parent changes. The layout doesn't depend on
+ * the size of the screen: it is kept as a point of the screen the element is
+ * anchored to, and an offset in pixels from that point. The screen's size is
+ * only applied when the element is drawn, so Cameras of different sizes can
+ * draw the same layout.
+ */
+public class UiBase extends JelloComponent {
+
+	private static final float[] CORNERS = new float[] {
+			-0.5f, 0.5f,
+			-0.5f, -0.5f,
+			0.5f, -0.5f,
+			0.5f, 0.5f, };
 
 	@ToolTip("The size of the UI Element in pixels.")
 	public Vector2f size = new Vector2f(100, 100);
@@ -27,105 +48,302 @@ public class UiBase extends Renderer {
 	@Space
 
 	public Color color = Color.white;
+	@ToolTip("If no Material is set, the sprite is drawn from the shared UI atlas.")
+	public Texture sprite;
 	public Material material;
 
-	@Override
-	public Material getMaterial() {
-		return this.material;
-	}
+	/**
+	 * The element that this element is anchored in, set by the {@link Canvas}
+	 * every frame. If {@code null}, the element is anchored in the screen.
+	 */
+	transient UiBase parentElement;
+	/**
+	 * The point of the screen the element is anchored to, from its anchor or the
+	 * anchor of its topmost parent. Each is -1 at the left or bottom edge of the
+	 * screen, 0 at its center and 1 at its right or top edge.
+	 */
+	private transient float screenAnchorX, screenAnchorY;
+	/**
+	 * The offset of the element from {@link UiBase#screenAnchorX} and
+	 * {@link UiBase#screenAnchorY}, in pixels, from its anchor and the anchors of
+	 * its parents.
+	 */
+	private transient float offsetX, offsetY;
+	/**
+	 * The x, y and z of the element's corners, in pixels from the point of the
+	 * screen it is anchored to, in the order of {@link UiBase#CORNERS}.
+	 */
+	protected final transient float[] corners = new float[12];
+	/**
+	 * Incremented every time the layout changes, so children know to update
+	 * theirs.
+	 */
+	private transient int layoutVersion;
+	private transient boolean isLayoutValid;
+	private transient UiBase cachedParent;
+	private transient int cachedParentVersion;
+	private transient Anchor cachedAnchor;
+	private transient float cachedAnchorX, cachedAnchorY;
+	private transient float cachedSizeX, cachedSizeY;
+	private transient int cachedWorldMatrixVersion;
+	private transient Color cachedColor;
+	private transient Texture cachedSprite;
+	/**
+	 * The atlas region the sprite was drawn from the last time the quads were
+	 * written.
+	 */
+	private transient TextureAtlas.Region cachedSpriteRegion;
+	private transient Material cachedMaterial;
+	private transient boolean isContentDirty = true;
 
-	@Override
-	public void onRender(Camera camera) {
-		if (UiBase.uiMesh == null) {
-			UiBase.createUiMesh();
+	/**
+	 * Writes the quads that draw this element. This is only called for elements
+	 * without a {@link UiBase#material}, and only when something has changed. By
+	 * default, the {@link UiBase#sprite} is drawn stretched over the element.
+	 *
+	 * @param quads the buffer to write the quads to
+	 */
+	protected void buildQuads(UiQuadBuffer quads) {
+		this.cachedSpriteRegion = null;
+		if (this.sprite == null) {
+			return;
 		}
 
-		if (this.material == null) {
-			return;
+		TextureAtlas.Region region = TextureAtlas.getUiAtlas().getRegion(this.sprite);
+		this.cachedSpriteRegion = region;
+		if (region != null) {
+			quads.addQuad(this.corners, region, this.color);
 		}
+	}
 
-		ShaderProgram program = this.material.getShader().getProgram();
-		int width = camera.getWidth();
-		int height = camera.getHeight();
-		
-		float aspect = (float)width / height;
-		Matrix4f mat = new Matrix4f();
-		mat.setOrtho(
-				-(aspect) * height / 2, (aspect) * height / 2,
-				-height / 2, height / 2,
-				-100, 100);
-		this.applyAnchor(mat, width, height);
-
-		program.setUniform("_uiMatrix", mat);
-		program.setUniform("_uiColor", this.color.toVector4f());
-		program.setUniform("_size", new Vector3f(this.size.x, this.size.y, 0));
-
-		glBindVertexArray(UiBase.uiMesh.getVaoId());
-		glDrawElements(GL_TRIANGLES, UiBase.uiMesh.getVerticeCount(), GL_UNSIGNED_INT, 0);
+	/**
+	 * Marks the element's quads as out of date, so they are written again the next
+	 * time the element's Canvas is drawn. Subclasses should call this when
+	 * anything that changes their quads, other than the fields of UiBase, changes.
+	 */
+	protected final void markContentDirty() {
+		this.isContentDirty = true;
 	}
 
-	public void applyAnchor(Matrix4f mat, float width, float height) {
-		float w;
-		float h;
+	/**
+	 * Checks if anything that changes the element's quads, other than the fields
+	 * of UiBase, has changed since the last time this was called. This is called
+	 * once every frame, so subclasses can catch changes made without going
+	 * through a setter, like edits in the Inspector. It should be cheap.
+	 *
+	 * @return {@code true} if the quads need to be written again
+	 */
+	protected boolean hasContentChanged() {
+		return false;
+	}
 
-		GameObject parent = this.gameObject().getParent();
-		UiBase parentUiBase;
-		if (parent != null) {
-			parentUiBase = parent.getComponent(UiBase.class);
-		} else {
-			parentUiBase = null;
-		}
+	/**
+	 * Gets the x offset of the element's anchor point from the point of the screen
+	 * it is anchored to, in pixels.
+	 *
+	 * @return the x offset
+	 * @see UiBase#getScreenAnchorX()
+	 */
+	public float getOffsetX() {
+		return this.offsetX;
+	}
 
-		if (parent == null) {
-			w = width / 2;
-			h = height / 2;
-		} else { // child
-			UiBase uiBase = parent.getComponent(UiBase.class);
-			w = uiBase.size.x / 2;
-			h = uiBase.size.y / 2;
-		}
+	/**
+	 * Gets the y offset of the element's anchor point from the point of the screen
+	 * it is anchored to, in pixels.
+	 *
+	 * @return the y offset
+	 * @see UiBase#getScreenAnchorY()
+	 */
+	public float getOffsetY() {
+		return this.offsetY;
+	}
+
+	/**
+	 * Gets the x of the point of the screen the element is anchored to, from -1 at
+	 * the left edge to 1 at the right edge. The element's anchor point is
+	 * {@code getScreenAnchorX() * screenWidth / 2 + getOffsetX()} pixels from the
+	 * center of the screen.
+	 *
+	 * @return the x of the screen anchor
+	 */
+	public float getScreenAnchorX() {
+		return this.screenAnchorX;
+	}
+
+	/**
+	 * Gets the y of the point of the screen the element is anchored to, from -1 at
+	 * the bottom edge to 1 at the top edge. The element's anchor point is
+	 * {@code getScreenAnchorY() * screenHeight / 2 + getOffsetY()} pixels from the
+	 * center of the screen.
+	 *
+	 * @return the y of the screen anchor
+	 */
+	public float getScreenAnchorY() {
+		return this.screenAnchorY;
+	}
+
+	/**
+	 * Checks if the element's quads need to be written again because something
+	 * other than its layout changed, and clears the flag.
+	 */
+	boolean consumeContentChanged() {
+		// Always called, so the subclass's cache is kept up to date.
+		boolean changed = this.hasContentChanged();
+		changed |= this.isContentDirty
+				|| this.color != this.cachedColor
+				|| this.sprite != this.cachedSprite
+				|| this.material != this.cachedMaterial
+				// The sprite was unloaded, so its region may now hold another image.
+				|| (this.cachedSpriteRegion != null && this.cachedSpriteRegion.isReleased());
+		this.isContentDirty = false;
+		this.cachedColor = this.color;
+		this.cachedSprite = this.sprite;
+		this.cachedMaterial = this.material;
+		return changed;
+	}
 
-		if (parent != null) {
-			parentUiBase.applyAnchor(mat, width, height);
+	/**
+	 * Works out the element's layout, if anything it depends on has changed. The
+	 * element's parent must have been updated first.
+	 *
+	 * @return {@code true} if the layout changed
+	 */
+	boolean updateLayout() {
+		UiBase parent = this.parentElement;
+		int worldMatrixVersion = this.gameObject().getWorldMatrixVersion();
+		if (this.isLayoutValid
+				&& parent == this.cachedParent
+				&& (parent == null || parent.layoutVersion == this.cachedParentVersion)
+				&& this.anchor == this.cachedAnchor
+				&& this.anchorPosition.x == this.cachedAnchorX
+				&& this.anchorPosition.y == this.cachedAnchorY
+				&& this.size.x == this.cachedSizeX
+				&& this.size.y == this.cachedSizeY
+				&& worldMatrixVersion == this.cachedWorldMatrixVersion) {
+			return false;
 		}
 
+		this.isLayoutValid = true;
+		this.cachedParent = parent;
+		this.cachedParentVersion = parent != null ? parent.layoutVersion : 0;
+		this.cachedAnchor = this.anchor;
+		this.cachedAnchorX = this.anchorPosition.x;
+		this.cachedAnchorY = this.anchorPosition.y;
+		this.cachedSizeX = this.size.x;
+		this.cachedSizeY = this.size.y;
+		this.cachedWorldMatrixVersion = worldMatrixVersion;
+		this.layoutVersion++;
+
+		// How far the anchor is from the center of what the element is anchored in,
+		// from -1 to 1.
+		float anchorX;
+		float anchorY;
 		switch (this.anchor) {
 		case TOP_LEFT:
-			mat.translate(-w, h, 0);
+			anchorX = -1;
+			anchorY = 1;
 			break;
 		case TOP_MIDDLE:
-			mat.translate(0, h, 0);
+			anchorX = 0;
+			anchorY = 1;
 			break;
 		case TOP_RIGHT:
-			mat.translate(w, h, 0);
+			anchorX = 1;
+			anchorY = 1;
 			break;
 		case MIDDLE_LEFT:
-			mat.translate(-w, 0, 0);
+			anchorX = -1;
+			anchorY = 0;
 			break;
 		case MIDDLE:
-			mat.translate(0, 0, 0);
+			anchorX = 0;
+			anchorY = 0;
 			break;
 		case MIDDLE_RIGHT:
-			mat.translate(w, 0, 0);
+			anchorX = 1;
+			anchorY = 0;
 			break;
 		case BOTTOM_LEFT:
-			mat.translate(-w, -h, 0);
+			anchorX = -1;
+			anchorY = -1;
 			break;
 		case BOTTOM_MIDDLE:
-			mat.translate(0, -h, 0);
+			anchorX = 0;
+			anchorY = -1;
 			break;
 		case BOTTOM_RIGHT:
-			mat.translate(w, -h, 0);
+			anchorX = 1;
+			anchorY = -1;
 			break;
 		case CUSTOM:
-			mat.translate(-w + (w * 2 * this.anchorPosition.x), -h + (h * 2 * this.anchorPosition.y), 0);
+			anchorX = -1 + 2 * this.anchorPosition.x;
+			anchorY = -1 + 2 * this.anchorPosition.y;
 			break;
 		default:
+			anchorX = 0;
+			anchorY = 0;
 			break;
 		}
+
+		if (parent == null) {
+			// Anchored in the screen, which is only sized when drawn.
+			this.screenAnchorX = anchorX;
+			this.screenAnchorY = anchorY;
+			this.offsetX = 0;
+			this.offsetY = 0;
+		} else {
+			this.screenAnchorX = parent.screenAnchorX;
+			this.screenAnchorY = parent.screenAnchorY;
+			this.offsetX = parent.offsetX + anchorX * parent.size.x / 2;
+			this.offsetY = parent.offsetY + anchorY * parent.size.y / 2;
+		}
+
+		Matrix4fc worldMatrix = this.gameObject().getCachedWorldMatrix();
+		for (int i = 0; i < 4; i++) {
+			worldMatrix.transformPosition(
+					CORNERS[i * 2] * this.size.x,
+					CORNERS[i * 2 + 1] * this.size.y,
+					0,
+					scratchPosition);
+			this.corners[i * 3] = scratchPosition.x + this.offsetX;
+			this.corners[i * 3 + 1] = scratchPosition.y + this.offsetY;
+			this.corners[i * 3 + 2] = scratchPosition.z;
+		}
+		return true;
+	}
+
+	/**
+	 * Draws the element with its own {@link UiBase#material}, which must be bound.
+	 *
+	 * @param program        the program of the Material
+	 * @param projection     the Canvas's projection matrix
+	 * @param viewportWidth  the width of the screen in pixels
+	 * @param viewportHeight the height of the screen in pixels
+	 */
+	void drawWithMaterial(ShaderProgram program, Matrix4fc projection, int viewportWidth, int viewportHeight) {
+		if (UiBase.uiMesh == null) {
+			UiBase.createUiMesh();
+		}
+
+		scratchMatrix.set(projection).translate(
+				this.screenAnchorX * viewportWidth / 2f + this.offsetX,
+				this.screenAnchorY * viewportHeight / 2f + this.offsetY,
+				0);
+		program.setUniform("_uiMatrix", scratchMatrix);
+		program.setUniform("_uiColor", scratchColor.set(this.color.r, this.color.g, this.color.b, this.color.a));
+		program.setUniform("_size", scratchSize.set(this.size.x, this.size.y, 0));
+		program.setUniform(GameRenderer.GAME_OBJECT_MATRIX, this.gameObject().getCachedWorldMatrix());
+
+		GLStateCache.bindVertexArray(UiBase.uiMesh.getVaoId());
+		glDrawElements(GL_TRIANGLES, UiBase.uiMesh.getVerticeCount(), UiBase.uiMesh.getIndexType(), 0);
 	}
 
 	private static Mesh uiMesh;
+	private static final Vector3f scratchPosition = new Vector3f();
+	private static final Matrix4f scratchMatrix = new Matrix4f();
+	private static final Vector4f scratchColor = new Vector4f();
+	private static final Vector3f scratchSize = new Vector3f();
 
 	private static void createUiMesh() {
 		float[] positions = new float[] {
@@ -159,4 +377,4 @@ public class UiBase extends Renderer {
 		BOTTOM_RIGHT,
 		CUSTOM;
 	}
-}
\ No newline at end of file
+}
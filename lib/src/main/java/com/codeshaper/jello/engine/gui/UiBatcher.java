@@ -0,0 +1,309 @@
+package com.codeshaper.jello.engine.gui;
+
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.lwjgl.system.MemoryUtil;
+
+import com.codeshaper.jello.engine.GameObject;
+import com.codeshaper.jello.engine.JelloComponent;
+import com.codeshaper.jello.engine.asset.Material;
+import com.codeshaper.jello.engine.asset.Shader;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
+import com.codeshaper.jello.engine.rendering.TextureAtlas;
+import com.codeshaper.jello.engine.rendering.VertexFormat;
+import com.codeshaper.jello.engine.rendering.shader.ShaderProgram;
+
+/**
+ * Draws every element of a {@link Canvas} from a single vertex buffer.
+ * <p>
+ * The quads of the elements are kept between frames, and are only rebuilt and
+ * uploaded again when an element's layout or content changes, or elements are
+ * added, removed or reordered. The quads don't depend on the size of the
+ * viewport, which is only passed to the shader, so Cameras of different sizes
+ * can draw the same Canvas without rebuilding it. Consecutive elements that
+ * draw from the UI atlas are drawn with a single call. An element with its own
+ * {@link Material} is drawn on its own, splitting the batch around it.
+ */
+final class UiBatcher {
+
+	private static final int INITIAL_QUAD_CAPACITY = 64;
+
+	private final int vaoId;
+	private final int vboId;
+	private final int eboId;
+	/**
+	 * The number of quads the index buffer has indices for.
+	 */
+	private int indexCapacity;
+	/**
+	 * The number of bytes the vertex buffer has room for.
+	 */
+	private long vertexCapacity;
+
+	private final UiQuadBuffer quads;
+	/**
+	 * The Canvas's elements from the last time it was drawn, in draw order.
+	 */
+	private final List<UiBase> elements;
+	/**
+	 * Reused list the elements are gathered into every frame, to compare against
+	 * {@link UiBatcher#elements}.
+	 */
+	private final List<UiBase> gatheredElements;
+	private final List<Command> commands;
+	private int commandCount;
+	private final Matrix4f projection;
+	private final Vector2f screenSize;
+	private boolean isBuilt;
+
+	UiBatcher() {
+		this.quads = new UiQuadBuffer();
+		this.elements = new ArrayList<UiBase>();
+		this.gatheredElements = new ArrayList<UiBase>();
+		this.commands = new ArrayList<Command>();
+		this.projection = new Matrix4f();
+		this.screenSize = new Vector2f();
+
+		this.vaoId = glGenVertexArrays();
+		this.vboId = glGenBuffers();
+		this.eboId = glGenBuffers();
+
+		GLStateCache.bindVertexArray(this.vaoId);
+		glBindBuffer(GL_ARRAY_BUFFER, this.vboId);
+		glEnableVertexAttribArray(VertexFormat.POSITION_LOCATION);
+		glVertexAttribPointer(VertexFormat.POSITION_LOCATION, 3, GL_FLOAT, false, UiQuadBuffer.VERTEX_SIZE, 0);
+		glEnableVertexAttribArray(VertexFormat.TEXTURE_COORDINATE_LOCATION);
+		glVertexAttribPointer(VertexFormat.TEXTURE_COORDINATE_LOCATION, 2, GL_FLOAT, false,
+				UiQuadBuffer.VERTEX_SIZE, UiQuadBuffer.TEXTURE_COORDINATE_OFFSET);
+		glEnableVertexAttribArray(UiQuadBuffer.ATLAS_LOCATION);
+		glVertexAttribPointer(UiQuadBuffer.ATLAS_LOCATION, 2, GL_FLOAT, false, UiQuadBuffer.VERTEX_SIZE,
+				UiQuadBuffer.ATLAS_OFFSET);
+		glEnableVertexAttribArray(VertexFormat.COLOR_LOCATION);
+		glVertexAttribPointer(VertexFormat.COLOR_LOCATION, 4, GL_UNSIGNED_BYTE, true, UiQuadBuffer.VERTEX_SIZE,
+				UiQuadBuffer.COLOR_OFFSET);
+		glEnableVertexAttribArray(UiQuadBuffer.SCREEN_ANCHOR_LOCATION);
+		glVertexAttribPointer(UiQuadBuffer.SCREEN_ANCHOR_LOCATION, 2, GL_FLOAT, false, UiQuadBuffer.VERTEX_SIZE,
+				UiQuadBuffer.SCREEN_ANCHOR_OFFSET);
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.eboId);
+		this.growIndices(INITIAL_QUAD_CAPACITY);
+		GLStateCache.bindVertexArray(0);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Draws a Canvas. The program of {@code canvas}'s Material must be bound, and
+	 * is bound again before this returns.
+	 *
+	 * @param canvas the Canvas to draw
+	 * @param width  the width of the viewport in pixels
+	 * @param height the height of the viewport in pixels
+	 */
+	void render(Canvas canvas, int width, int height) {
+		this.projection.setOrtho(-width / 2f, width / 2f, -height / 2f, height / 2f, -100, 100);
+		this.screenSize.set(width, height);
+
+		boolean changed = !this.isBuilt;
+		this.gatheredElements.clear();
+		this.gatherElements(canvas.gameObject(), null, true);
+		if (!this.gatheredElements.equals(this.elements)) {
+			changed = true;
+			this.elements.clear();
+			this.elements.addAll(this.gatheredElements);
+		}
+		for (int i = 0; i < this.elements.size(); i++) {
+			UiBase element = this.elements.get(i);
+			// Both must be called, so every element's cache is up to date.
+			boolean layoutChanged = element.updateLayout();
+			boolean contentChanged = element.consumeContentChanged();
+			changed |= layoutChanged || contentChanged;
+		}
+
+		if (changed) {
+			this.rebuild();
+		}
+
+		Material material = canvas.getMaterial();
+		ShaderProgram program = material.getShader().getProgram();
+		program.setUniform("_uiMatrix", this.projection);
+		program.setUniform("_uiScreenSize", this.screenSize);
+		TextureAtlas.getUiAtlas().bind();
+		GLStateCache.bindVertexArray(this.vaoId);
+
+		boolean programChanged = false;
+		for (int i = 0; i < this.commandCount; i++) {
+			Command command = this.commands.get(i);
+			if (command.element == null) {
+				if (programChanged) {
+					program.bind();
+					GLStateCache.bindVertexArray(this.vaoId);
+					programChanged = false;
+				}
+				glDrawElements(GL_TRIANGLES, command.quadCount * 6, GL_UNSIGNED_INT,
+						(long) command.firstQuad * 6 * Integer.BYTES);
+			} else {
+				Material elementMaterial = command.element.material;
+				Shader shader = elementMaterial.getShader();
+				if (shader == null || shader.isInvalid()) {
+					continue;
+				}
+				ShaderProgram elementProgram = shader.getProgram();
+				elementProgram.bind();
+				elementMaterial.setUniforms();
+				command.element.drawWithMaterial(elementProgram, this.projection, width, height);
+				programChanged = true;
+			}
+		}
+
+		if (programChanged) {
+			program.bind();
+			material.setUniforms();
+		}
+	}
+
+	/**
+	 * Deletes the buffers.
+	 */
+	void dispose() {
+		glDeleteVertexArrays(this.vaoId);
+		glDeleteBuffers(this.vboId);
+		glDeleteBuffers(this.eboId);
+		GLStateCache.invalidate(); // The ids may be reused.
+		this.quads.free();
+		this.elements.clear();
+		this.gatheredElements.clear();
+	}
+
+	/**
+	 * Adds the enabled elements on a GameObject and its descendants to
+	 * {@link UiBatcher#gatheredElements}, parents before children. Descendants
+	 * with their own Canvas are skipped, as they draw themselves.
+	 */
+	private void gatherElements(GameObject gameObject, UiBase parentElement, boolean isCanvasObject) {
+		if (!gameObject.isActive()) {
+			return;
+		}
+
+		UiBase element = null;
+		for (int i = 0; i < gameObject.getComponentCount(); i++) {
+			JelloComponent component = gameObject.getComponentAtIndex(i);
+			if (!isCanvasObject && component instanceof Canvas) {
+				return;
+			}
+			if (element == null && component instanceof UiBase && component.isEnabled()) {
+				element = (UiBase) component;
+			}
+		}
+
+		if (element != null) {
+			element.parentElement = parentElement;
+			this.gatheredElements.add(element);
+		}
+
+		// Children of GameObjects without an element are laid out in the nearest
+		// element above them.
+		UiBase childParent = element != null ? element : parentElement;
+		for (int i = 0; i < gameObject.getChildCount(); i++) {
+			this.gatherElements(gameObject.getChild(i), childParent, false);
+		}
+	}
+
+	/**
+	 * Writes the quads of every element, splits them into draw commands and
+	 * uploads them.
+	 */
+	private void rebuild() {
+		this.quads.clear();
+		this.commandCount = 0;
+
+		int batchStart = 0;
+		for (int i = 0; i < this.elements.size(); i++) {
+			UiBase element = this.elements.get(i);
+			if (element.material != null) {
+				batchStart = this.addBatch(batchStart);
+				this.addCommand(element, 0, 0);
+			} else {
+				this.quads.setScreenAnchor(element.getScreenAnchorX(), element.getScreenAnchorY());
+				element.buildQuads(this.quads);
+			}
+		}
+		this.addBatch(batchStart);
+
+		int quadCount = this.quads.getQuadCount();
+		if (quadCount > this.indexCapacity) {
+			GLStateCache.bindVertexArray(this.vaoId);
+			this.growIndices(Math.max(quadCount, this.indexCapacity * 2));
+			GLStateCache.bindVertexArray(0);
+		}
+
+		glBindBuffer(GL_ARRAY_BUFFER, this.vboId);
+		long size = (long) quadCount * 4 * UiQuadBuffer.VERTEX_SIZE;
+		if (size > this.vertexCapacity) {
+			this.vertexCapacity = Math.max(size, this.vertexCapacity * 2);
+		}
+		// Orphan the old storage so the driver doesn't have to wait for the previous
+		// frame to finish reading it.
+		glBufferData(GL_ARRAY_BUFFER, this.vertexCapacity, GL_DYNAMIC_DRAW);
+		glBufferSubData(GL_ARRAY_BUFFER, 0, this.quads.getData());
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		this.isBuilt = true;
+	}
+
+	/**
+	 * Adds a command to draw the quads written since {@code batchStart}, if there
+	 * are any.
+	 *
+	 * @return the start of the next batch
+	 */
+	private int addBatch(int batchStart) {
+		int quadCount = this.quads.getQuadCount();
+		if (quadCount > batchStart) {
+			this.addCommand(null, batchStart, quadCount - batchStart);
+		}
+		return quadCount;
+	}
+
+	private void addCommand(UiBase element, int firstQuad, int quadCount) {
+		if (this.commandCount == this.commands.size()) {
+			this.commands.add(new Command());
+		}
+		Command command = this.commands.get(this.commandCount++);
+		command.element = element;
+		command.firstQuad = firstQuad;
+		command.quadCount = quadCount;
+	}
+
+	/**
+	 * Fills the index buffer, which must be bound, with two triangles for every
+	 * quad.
+	 */
+	private void growIndices(int quadCapacity) {
+		IntBuffer indices = MemoryUtil.memAllocInt(quadCapacity * 6);
+		for (int i = 0; i < quadCapacity; i++) {
+			int vertex = i * 4;
+			indices.put(vertex).put(vertex + 1).put(vertex + 2);
+			indices.put(vertex + 2).put(vertex + 3).put(vertex);
+		}
+		indices.flip();
+		glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+		MemoryUtil.memFree(indices);
+		this.indexCapacity = quadCapacity;
+	}
+
+	/**
+	 * Either a range of quads to draw at once, or an element with its own
+	 * Material.
+	 */
+	private static class Command {
+
+		private UiBase element;
+		private int firstQuad;
+		private int quadCount;
+	}
+}
@@ -0,0 +1,172 @@
+package com.codeshaper.jello.engine.gui;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.codeshaper.jello.engine.Color;
+import com.codeshaper.jello.engine.rendering.TextureAtlas;
+
+/**
+ * The quads of a {@link Canvas}, written by each element in
+ * {@link UiBase#buildQuads(UiQuadBuffer)}. Every quad samples a region of
+ * {@link TextureAtlas#getUiAtlas()}, so all of them can be drawn at once. A
+ * quad either samples the atlas as a sprite, or as a signed distance field, as
+ * the glyphs of a {@link com.codeshaper.jello.engine.asset.Font} are.
+ * <p>
+ * Each vertex is 40 bytes:
+ * <ul>
+ * <li>{@code layout (location=0) in vec3 inPosition;}, in pixels from the
+ * point of the screen the quad is anchored to</li>
+ * <li>{@code layout (location=1) in vec2 texCoord;}</li>
+ * <li>{@code layout (location=9) in vec2 inAtlas;}, with the layer of the
+ * atlas in {@code x} and 1 in {@code y} if the quad is a distance field</li>
+ * <li>{@code layout (location=8) in vec4 inColor;}, as normalized bytes</li>
+ * <li>{@code layout (location=10) in vec2 inScreenAnchor;}, the point of the
+ * screen the quad is anchored to, from -1 to 1 on each axis</li>
+ * </ul>
+ * The quads don't depend on the size of the screen. The shader moves each
+ * vertex by its screen anchor times half of the screen's size, which is set in
+ * the {@code _uiScreenSize} uniform.
+ */
+public final class UiQuadBuffer {
+
+	static final int VERTEX_SIZE = 40;
+	static final int TEXTURE_COORDINATE_OFFSET = 12;
+	static final int ATLAS_OFFSET = 20;
+	static final int COLOR_OFFSET = 28;
+	static final int SCREEN_ANCHOR_OFFSET = 32;
+	static final int ATLAS_LOCATION = 9;
+	static final int SCREEN_ANCHOR_LOCATION = 10;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private ByteBuffer data;
+	private int quadCount;
+	/**
+	 * The screen anchor of the element whose quads are being written.
+	 */
+	private float screenAnchorX, screenAnchorY;
+
+	UiQuadBuffer() {
+		this.data = MemoryUtil.memAlloc(INITIAL_CAPACITY * 4 * VERTEX_SIZE);
+	}
+
+	/**
+	 * Adds a quad. The corners are given in the same order as the texture
+	 * coordinates: top left, bottom left, bottom right, top right.
+	 *
+	 * @param corners the x, y and z of each corner, in pixels from the point of
+	 *                the screen the element is anchored to
+	 * @param region  the region of the atlas to draw
+	 * @param color   the color to tint the quad with
+	 * @throws IllegalArgumentException if {@code corners}, {@code region} or
+	 *                                  {@code color} is null
+	 */
+	public void addQuad(float[] corners, TextureAtlas.Region region, Color color) {
+		if (region == null) {
+			throw new IllegalArgumentException("region may not be null");
+		}
+
+		this.addQuad(corners, region.u0, region.v0, region.u1, region.v1, region.layer, false, color);
+	}
+
+	/**
+	 * Adds a quad. The corners are given in the same order as the texture
+	 * coordinates: top left, bottom left, bottom right, top right.
+	 *
+	 * @param corners       the x, y and z of each corner, in pixels from the
+	 *                      point of the screen the element is anchored to
+	 * @param u0            the left texture coordinate
+	 * @param v0            the top texture coordinate
+	 * @param u1            the right texture coordinate
+	 * @param v1            the bottom texture coordinate
+	 * @param layer         the layer of the atlas to sample
+	 * @param distanceField if the region is a signed distance field, with the
+	 *                      distance in its alpha channel
+	 * @param color         the color to tint the quad with
+	 * @throws IllegalArgumentException if {@code corners} or {@code color} is
+	 *                                  null
+	 */
+	public void addQuad(float[] corners, float u0, float v0, float u1, float v1, int layer, boolean distanceField,
+			Color color) {
+		if (corners == null) {
+			throw new IllegalArgumentException("corners may not be null");
+		}
+		if (color == null) {
+			throw new IllegalArgumentException("color may not be null");
+		}
+
+		int required = (this.quadCount + 1) * 4 * VERTEX_SIZE;
+		if (required > this.data.capacity()) {
+			this.data = MemoryUtil.memRealloc(this.data, Math.max(required, this.data.capacity() * 2));
+			this.data.clear();
+		}
+
+		float mode = distanceField ? 1f : 0f;
+		int offset = this.quadCount * 4 * VERTEX_SIZE;
+		this.putVertex(offset, corners, 0, u0, v0, layer, mode, color);
+		this.putVertex(offset + VERTEX_SIZE, corners, 3, u0, v1, layer, mode, color);
+		this.putVertex(offset + VERTEX_SIZE * 2, corners, 6, u1, v1, layer, mode, color);
+		this.putVertex(offset + VERTEX_SIZE * 3, corners, 9, u1, v0, layer, mode, color);
+		this.quadCount++;
+	}
+
+	/**
+	 * Gets the number of quads in the buffer.
+	 *
+	 * @return the number of quads
+	 */
+	public int getQuadCount() {
+		return this.quadCount;
+	}
+
+	/**
+	 * Sets the point of the screen that the quads added after this are anchored
+	 * to.
+	 */
+	void setScreenAnchor(float x, float y) {
+		this.screenAnchorX = x;
+		this.screenAnchorY = y;
+	}
+
+	void clear() {
+		this.quadCount = 0;
+		this.data.clear();
+	}
+
+	/**
+	 * Gets the vertices of every quad, ready to upload.
+	 */
+	ByteBuffer getData() {
+		this.data.position(0);
+		this.data.limit(this.quadCount * 4 * VERTEX_SIZE);
+		return this.data;
+	}
+
+	void free() {
+		MemoryUtil.memFree(this.data);
+		this.data = null;
+	}
+
+	private void putVertex(int offset, float[] corners, int corner, float u, float v, int layer, float mode,
+			Color color) {
+		this.data.putFloat(offset, corners[corner]);
+		this.data.putFloat(offset + 4, corners[corner + 1]);
+		this.data.putFloat(offset + 8, corners[corner + 2]);
+		this.data.putFloat(offset + TEXTURE_COORDINATE_OFFSET, u);
+		this.data.putFloat(offset + TEXTURE_COORDINATE_OFFSET + 4, v);
+		this.data.putFloat(offset + ATLAS_OFFSET, layer);
+		this.data.putFloat(offset + ATLAS_OFFSET + 4, mode);
+		this.data.put(offset + COLOR_OFFSET, toByte(color.r));
+		this.data.put(offset + COLOR_OFFSET + 1, toByte(color.g));
+		this.data.put(offset + COLOR_OFFSET + 2, toByte(color.b));
+		this.data.put(offset + COLOR_OFFSET + 3, toByte(color.a));
+		this.data.putFloat(offset + SCREEN_ANCHOR_OFFSET, this.screenAnchorX);
+		this.data.putFloat(offset + SCREEN_ANCHOR_OFFSET + 4, this.screenAnchorY);
+	}
+
+	private static byte toByte(float value) {
+		return (byte) Math.round(Math.max(0f, Math.min(1f, value)) * 255f);
+	}
+}
@@ -11,4 +11,10 @@ public abstract class AbstractLight extends JelloComponent {
 	public Color color = new Color(1f, 1f, 0.75f);
 	@MinValue(0f)
 	public float intensity = 1f;
+
+	/**
+	 * The light's index in the {@link LightRegistry}, or -1 if it is not in the
+	 * registry.
+	 */
+	transient int registryIndex = -1;
 }
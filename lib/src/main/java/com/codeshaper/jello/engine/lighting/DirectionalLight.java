@@ -3,6 +3,9 @@ package com.codeshaper.jello.engine.lighting;
 import org.joml.Vector3f;
 
 import com.codeshaper.jello.editor.GizmoDrawer;
+import com.codeshaper.jello.editor.property.modifier.MinValue;
+import com.codeshaper.jello.editor.property.modifier.Range;
+import com.codeshaper.jello.editor.property.modifier.Space;
 import com.codeshaper.jello.engine.ComponentIcon;
 import com.codeshaper.jello.engine.ComponentName;
 import com.codeshaper.jello.engine.GameObject;
@@ -19,6 +22,26 @@ import com.codeshaper.jello.engine.GameObject;
 @ComponentIcon("/_editor/componentIcons/light.png")
 public final class DirectionalLight extends AbstractLight {
 
+	@Space
+
+	/**
+	 * If true, the light casts shadows with cascaded shadow maps. Only the first
+	 * Directional Light that casts shadows is used.
+	 */
+	public boolean castShadows = false;
+	/**
+	 * The number of shadow maps the view is split into. More cascades keep the
+	 * shadows sharp further from the Camera.
+	 */
+	@Range(min = 1, max = 4)
+	public int cascadeCount = 4;
+	public ShadowResolution shadowResolution = ShadowResolution.HIGH;
+	/**
+	 * How far from the Camera shadows are drawn.
+	 */
+	@MinValue(0)
+	public float shadowDistance = 100f;
+
 	@Override
 	public void onDrawGizmos(GizmoDrawer gizmos, boolean isSelected) {
 		super.onDrawGizmos(gizmos, isSelected);
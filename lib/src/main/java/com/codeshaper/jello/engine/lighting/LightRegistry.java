@@ -0,0 +1,86 @@
+package com.codeshaper.jello.engine.lighting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of every light that is enabled in a loaded Scene, so the
+ * renderer can gather them each frame without walking the hierarchy. Lights
+ * are added and removed as they become enabled and disabled, in the same way
+ * Renderers are added to the
+ * {@link com.codeshaper.jello.engine.rendering.RenderQueue}.
+ */
+public final class LightRegistry {
+
+	private static final LightRegistry instance = new LightRegistry();
+
+	private final List<AbstractLight> lights;
+	private final List<AbstractLight> lightsView;
+
+	/**
+	 * Gets the LightRegistry. There is only a single LightRegistry, shared by the
+	 * Editor and the Application.
+	 *
+	 * @return the LightRegistry
+	 */
+	public static LightRegistry getInstance() {
+		return LightRegistry.instance;
+	}
+
+	private LightRegistry() {
+		this.lights = new ArrayList<AbstractLight>();
+		this.lightsView = Collections.unmodifiableList(this.lights);
+	}
+
+	/**
+	 * Adds a light to the registry. If the light is already in the registry,
+	 * nothing happens.
+	 * <p>
+	 * This is called internally when a light becomes enabled in a loaded Scene,
+	 * there should be no need to call it yourself.
+	 *
+	 * @param light the light to add
+	 */
+	public void add(AbstractLight light) {
+		if (light.registryIndex != -1) {
+			return; // Already in the registry.
+		}
+
+		light.registryIndex = this.lights.size();
+		this.lights.add(light);
+	}
+
+	/**
+	 * Removes a light from the registry. If the light is not in the registry,
+	 * nothing happens.
+	 * <p>
+	 * This is called internally when a light is disabled or destroyed, there
+	 * should be no need to call it yourself.
+	 *
+	 * @param light the light to remove
+	 */
+	public void remove(AbstractLight light) {
+		int index = light.registryIndex;
+		if (index == -1) {
+			return; // Not in the registry.
+		}
+
+		// Swap the last light into the removed one's slot.
+		AbstractLight last = this.lights.remove(this.lights.size() - 1);
+		if (last != light) {
+			this.lights.set(index, last);
+			last.registryIndex = index;
+		}
+		light.registryIndex = -1;
+	}
+
+	/**
+	 * Gets every light in the registry, in no particular order.
+	 *
+	 * @return an unmodifiable list of the lights
+	 */
+	public List<AbstractLight> getLights() {
+		return this.lightsView;
+	}
+}
@@ -0,0 +1,19 @@
+package com.codeshaper.jello.engine.lighting;
+
+/**
+ * The width and height of a light's shadow map, in texels. Higher resolutions
+ * give sharper shadows, but take more memory and time to render.
+ */
+public enum ShadowResolution {
+
+	LOW(512),
+	MEDIUM(1024),
+	HIGH(2048),
+	VERY_HIGH(4096);
+
+	public final int size;
+
+	private ShadowResolution(int size) {
+		this.size = size;
+	}
+}
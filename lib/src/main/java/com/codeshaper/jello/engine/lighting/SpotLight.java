@@ -8,6 +8,7 @@ import com.codeshaper.jello.editor.GizmoDrawer;
 import com.codeshaper.jello.editor.property.modifier.ExposeField;
 import com.codeshaper.jello.editor.property.modifier.MaxValue;
 import com.codeshaper.jello.editor.property.modifier.MinValue;
+import com.codeshaper.jello.editor.property.modifier.Space;
 import com.codeshaper.jello.engine.ComponentIcon;
 import com.codeshaper.jello.engine.ComponentName;
 import com.codeshaper.jello.engine.GameObject;
@@ -32,6 +33,14 @@ public final class SpotLight extends AbstractLight {
 	@MaxValue(360)
 	private float angle = 45f;
 
+	@Space
+
+	/**
+	 * If true, the light casts shadows with a single shadow map.
+	 */
+	public boolean castShadows = false;
+	public ShadowResolution shadowResolution = ShadowResolution.MEDIUM;
+
 	@Override
 	public void onDrawGizmos(GizmoDrawer gizmos, boolean isSelected) {
 		super.onDrawGizmos(gizmos, isSelected);
@@ -0,0 +1,354 @@
+package com.codeshaper.jello.engine.profiling;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A lightweight frame profiler. Code is timed by wrapping it in
+ * {@link Profiler#begin(ProfilerScope)} and {@link Profiler#end()} calls, which
+ * record {@link System#nanoTime()} timestamps into fixed size ring buffers.
+ * Timing is only recorded between {@link Profiler#beginFrame()} and
+ * {@link Profiler#endFrame()}, and only while the Profiler is enabled. No
+ * allocation happens while recording.
+ * <p>
+ * The Profiler is not thread-safe, it should only be used from the thread that
+ * runs the Application.
+ */
+public final class Profiler {
+
+	/**
+	 * The number of frames kept in the history.
+	 */
+	public static final int FRAME_CAPACITY = 512;
+	/**
+	 * The number of timed scopes kept in the history, across all frames.
+	 */
+	private static final int EVENT_CAPACITY = 1 << 16;
+	private static final int EVENT_MASK = EVENT_CAPACITY - 1;
+	private static final int MAX_DEPTH = 64;
+	/**
+	 * How much the average of a scope moves toward the newest frame's time.
+	 */
+	private static final double AVERAGE_WEIGHT = 0.05;
+
+	private static final ClassValue<ProfilerScope> typeScopes = new ClassValue<ProfilerScope>() {
+		@Override
+		protected ProfilerScope computeValue(Class<?> type) {
+			return Profiler.createScope(type.getSimpleName());
+		}
+	};
+
+	private static final List<ProfilerScope> scopes = new ArrayList<ProfilerScope>();
+	private static final List<ProfilerScope> scopesView = Collections.unmodifiableList(scopes);
+
+	private static boolean isEnabled;
+	private static boolean isFrameActive;
+
+	// Event ring buffer. Events are addressed by a running count, wrapped with
+	// EVENT_MASK.
+	private static final int[] eventScopes = new int[EVENT_CAPACITY];
+	private static final long[] eventStarts = new long[EVENT_CAPACITY];
+	private static final long[] eventEnds = new long[EVENT_CAPACITY];
+	private static long eventCount;
+
+	// Frame ring buffer. Frames are addressed by a running count, wrapped with
+	// FRAME_CAPACITY.
+	private static final long[] frameStarts = new long[FRAME_CAPACITY];
+	private static final long[] frameEnds = new long[FRAME_CAPACITY];
+	private static final long[] frameFirstEvents = new long[FRAME_CAPACITY];
+	private static final long[] frameEventEnds = new long[FRAME_CAPACITY];
+	private static long frameCount;
+
+	private static final long[] openEvents = new long[MAX_DEPTH];
+	private static int depth;
+
+	// Per-scope statistics, indexed by ProfilerScope#id.
+	private static long[] lastFrameNanos = new long[16];
+	private static int[] lastFrameCalls = new int[16];
+	private static double[] averageNanos = new double[16];
+
+	private Profiler() {
+	}
+
+	/**
+	 * Creates a new {@link ProfilerScope}. Scopes should be created once and
+	 * stored, not created every frame.
+	 *
+	 * @param name the name of the scope
+	 * @return the new scope
+	 * @throws IllegalArgumentException if {@code name} is null
+	 */
+	public static synchronized ProfilerScope createScope(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("name may not be null");
+		}
+
+		ProfilerScope scope = new ProfilerScope(scopes.size(), name);
+		scopes.add(scope);
+
+		if (scope.id >= lastFrameNanos.length) {
+			int newLength = lastFrameNanos.length * 2;
+			lastFrameNanos = Arrays.copyOf(lastFrameNanos, newLength);
+			lastFrameCalls = Arrays.copyOf(lastFrameCalls, newLength);
+			averageNanos = Arrays.copyOf(averageNanos, newLength);
+		}
+
+		return scope;
+	}
+
+	/**
+	 * Gets the {@link ProfilerScope} for a type, creating it the first time the
+	 * type is seen. The scope is named after the type's simple name.
+	 *
+	 * @param type the type to get the scope of
+	 * @return the scope for the type
+	 */
+	public static ProfilerScope getScope(Class<?> type) {
+		return typeScopes.get(type);
+	}
+
+	/**
+	 * Gets every {@link ProfilerScope} that has been created.
+	 *
+	 * @return an unmodifiable list of all the scopes
+	 */
+	public static List<ProfilerScope> getAllScopes() {
+		return scopesView;
+	}
+
+	/**
+	 * Checks if the Profiler is recording.
+	 *
+	 * @return {@code true} if the Profiler is recording
+	 */
+	public static boolean isEnabled() {
+		return isEnabled;
+	}
+
+	/**
+	 * Starts or stops recording. Stopping part way through a frame discards that
+	 * frame.
+	 *
+	 * @param enabled should the Profiler record
+	 */
+	public static void setEnabled(boolean enabled) {
+		isEnabled = enabled;
+		if (!enabled) {
+			isFrameActive = false;
+			depth = 0;
+		}
+	}
+
+	/**
+	 * Removes all recorded frames and resets the per-scope statistics.
+	 */
+	public static void clear() {
+		frameCount = 0;
+		eventCount = 0;
+		depth = 0;
+		isFrameActive = false;
+		Arrays.fill(lastFrameNanos, 0);
+		Arrays.fill(lastFrameCalls, 0);
+		Arrays.fill(averageNanos, 0);
+	}
+
+	/**
+	 * Marks the start of a frame. If the Profiler is not enabled, nothing happens.
+	 */
+	public static void beginFrame() {
+		if (!isEnabled) {
+			return;
+		}
+
+		int frame = (int) (frameCount % FRAME_CAPACITY);
+		frameFirstEvents[frame] = eventCount;
+		frameStarts[frame] = System.nanoTime();
+		depth = 0;
+		isFrameActive = true;
+	}
+
+	/**
+	 * Marks the end of a frame, and updates the per-scope statistics. If
+	 * {@link Profiler#beginFrame()} was not called, nothing happens.
+	 */
+	public static void endFrame() {
+		if (!isFrameActive) {
+			return;
+		}
+
+		int frame = (int) (frameCount % FRAME_CAPACITY);
+		frameEnds[frame] = System.nanoTime();
+		frameEventEnds[frame] = eventCount;
+		frameCount++;
+		isFrameActive = false;
+
+		int scopeCount = scopes.size();
+		Arrays.fill(lastFrameNanos, 0, scopeCount, 0);
+		Arrays.fill(lastFrameCalls, 0, scopeCount, 0);
+		for (long i = Math.max(frameFirstEvents[frame], eventCount - EVENT_CAPACITY); i < eventCount; i++) {
+			int index = (int) (i & EVENT_MASK);
+			int scope = eventScopes[index];
+			lastFrameNanos[scope] += eventEnds[index] - eventStarts[index];
+			lastFrameCalls[scope]++;
+		}
+		for (int i = 0; i < scopeCount; i++) {
+			averageNanos[i] += (lastFrameNanos[i] - averageNanos[i]) * AVERAGE_WEIGHT;
+		}
+	}
+
+	/**
+	 * Starts timing a scope. Every call must be matched by a call to
+	 * {@link Profiler#end()}. Scopes may be nested.
+	 *
+	 * @param scope the scope to start timing
+	 */
+	public static void begin(ProfilerScope scope) {
+		if (!isFrameActive) {
+			return;
+		}
+
+		if (depth >= MAX_DEPTH) {
+			depth++; // Too deep to record, but still count it so end() stays balanced.
+			return;
+		}
+
+		long event = eventCount++;
+		int index = (int) (event & EVENT_MASK);
+		eventScopes[index] = scope.id;
+		eventStarts[index] = System.nanoTime();
+		eventEnds[index] = eventStarts[index];
+		openEvents[depth++] = event;
+	}
+
+	/**
+	 * Stops timing the most recently started scope.
+	 */
+	public static void end() {
+		if (!isFrameActive || depth == 0) {
+			return;
+		}
+
+		depth--;
+		if (depth >= MAX_DEPTH) {
+			return;
+		}
+
+		eventEnds[(int) (openEvents[depth] & EVENT_MASK)] = System.nanoTime();
+	}
+
+	/**
+	 * Gets the number of frames in the history. This is at most
+	 * {@link Profiler#FRAME_CAPACITY}.
+	 *
+	 * @return the number of recorded frames
+	 */
+	public static int getFrameCount() {
+		return (int) Math.min(frameCount, FRAME_CAPACITY);
+	}
+
+	/**
+	 * Gets how long a recorded frame took.
+	 *
+	 * @param framesAgo how many frames back to look, 0 being the most recent frame
+	 * @return the length of the frame in nanoseconds
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 *                                   ({@code framesAgo < 0 || framesAgo >= getFrameCount()})
+	 */
+	public static long getFrameNanos(int framesAgo) {
+		if (framesAgo < 0 || framesAgo >= getFrameCount()) {
+			throw new IndexOutOfBoundsException(framesAgo);
+		}
+
+		int frame = (int) ((frameCount - 1 - framesAgo) % FRAME_CAPACITY);
+		return frameEnds[frame] - frameStarts[frame];
+	}
+
+	/**
+	 * Gets how long was spent in a scope during the most recent frame.
+	 *
+	 * @param scope the scope
+	 * @return the time spent in nanoseconds
+	 */
+	public static long getLastFrameNanos(ProfilerScope scope) {
+		return lastFrameNanos[scope.id];
+	}
+
+	/**
+	 * Gets how many times a scope was entered during the most recent frame.
+	 *
+	 * @param scope the scope
+	 * @return the number of calls
+	 */
+	public static int getLastFrameCalls(ProfilerScope scope) {
+		return lastFrameCalls[scope.id];
+	}
+
+	/**
+	 * Gets a moving average of the time spent in a scope per frame.
+	 *
+	 * @param scope the scope
+	 * @return the average time in nanoseconds
+	 */
+	public static double getAverageNanos(ProfilerScope scope) {
+		return averageNanos[scope.id];
+	}
+
+	/**
+	 * Writes every recorded frame to a file in the Chrome trace event format. The
+	 * file can be opened in {@code chrome://tracing} or
+	 * <a href="https://ui.perfetto.dev">Perfetto</a>.
+	 *
+	 * @param file the file to write to
+	 * @throws IOException if there is an error writing the file
+	 */
+	public static void exportChromeTrace(Path file) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file)) {
+			writer.write("{\"traceEvents\":[");
+
+			long firstFrame = frameCount - getFrameCount();
+			long oldestEvent = eventCount - EVENT_CAPACITY;
+			long baseTime = getFrameCount() > 0 ? frameStarts[(int) (firstFrame % FRAME_CAPACITY)] : 0;
+			boolean first = true;
+
+			for (long f = firstFrame; f < frameCount; f++) {
+				int frame = (int) (f % FRAME_CAPACITY);
+				if (frameFirstEvents[frame] < oldestEvent) {
+					continue; // The frame's events have been overwritten.
+				}
+
+				writeTraceEvent(writer, first, "Frame", "frame", frameStarts[frame] - baseTime,
+						frameEnds[frame] - frameStarts[frame]);
+				first = false;
+
+				for (long i = frameFirstEvents[frame]; i < frameEventEnds[frame]; i++) {
+					int index = (int) (i & EVENT_MASK);
+					writeTraceEvent(writer, false, scopes.get(eventScopes[index]).name, "jello",
+							eventStarts[index] - baseTime, eventEnds[index] - eventStarts[index]);
+				}
+			}
+
+			writer.write("]}");
+		}
+	}
+
+	private static void writeTraceEvent(Writer writer, boolean first, String name, String category, long start,
+			long duration) throws IOException {
+		if (!first) {
+			writer.write(',');
+		}
+		writer.write("\n{\"name\":\"");
+		writer.write(name.replace("\\", "\\\\").replace("\"", "\\\""));
+		writer.write("\",\"cat\":\"");
+		writer.write(category);
+		// Chrome traces are in microseconds.
+		writer.write(String.format(Locale.ROOT, "\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":%.3f,\"dur\":%.3f}",
+				start / 1_000d, duration / 1_000d));
+	}
+}
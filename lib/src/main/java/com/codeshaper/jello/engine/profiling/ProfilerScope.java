@@ -0,0 +1,28 @@
+package com.codeshaper.jello.engine.profiling;
+
+/**
+ * A named section of code that can be timed with the {@link Profiler}. Scopes
+ * should be created once, with {@link Profiler#createScope(String)}, and kept in
+ * a field so no allocation happens when they are used.
+ */
+public final class ProfilerScope {
+
+	/**
+	 * The index of the scope in the Profiler's per-scope arrays.
+	 */
+	final int id;
+	/**
+	 * The name of the scope, shown in the Profiler window and trace files.
+	 */
+	public final String name;
+
+	ProfilerScope(int id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
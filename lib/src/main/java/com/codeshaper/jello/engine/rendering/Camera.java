@@ -87,7 +87,18 @@ public final class Camera extends JelloComponent {
 	@MinValue(0)
 	public float fogDensity = 0;
 
+	@Space
+
+	/**
+	 * If true, Renderers that were hidden behind other geometry the last time the
+	 * Camera rendered are skipped. This helps scenes where most Renderers are
+	 * blocked from view, such as interiors, but costs a query per visible Renderer
+	 * and can make Renderers that come into view appear a frame late.
+	 */
+	public boolean occlusionCulling = false;
+
 	private transient Matrix4f projectionMatrix = new Matrix4f();
+	private transient OcclusionCuller occlusionCuller;
 	private transient float width;
 	private transient float height;
 
@@ -103,6 +114,11 @@ public final class Camera extends JelloComponent {
 		super.onDestroy();
 
 		Camera.cameras.remove(this);
+
+		if (this.occlusionCuller != null) {
+			this.occlusionCuller.dispose();
+			this.occlusionCuller = null;
+		}
 	}
 
 	@Override
@@ -214,6 +230,25 @@ public final class Camera extends JelloComponent {
 		return this.projectionMatrix;
 	}
 
+	/**
+	 * Gets the Camera's {@link OcclusionCuller}, creating it if needed, or
+	 * disposes of it if {@link Camera#occlusionCulling} has been disabled.
+	 * 
+	 * @return the Camera's OcclusionCuller, or {@code null} if occlusion culling
+	 *         is disabled
+	 */
+	OcclusionCuller getOcclusionCuller() {
+		if (this.occlusionCulling) {
+			if (this.occlusionCuller == null) {
+				this.occlusionCuller = new OcclusionCuller();
+			}
+		} else if (this.occlusionCuller != null) {
+			this.occlusionCuller.dispose();
+			this.occlusionCuller = null;
+		}
+		return this.occlusionCuller;
+	}
+
 	private void refreshPerspectiveMatric() {
 		if (this.perspective == Perspective.PERSPECTVE) {
 			this.projectionMatrix.setPerspective(Math.toRadians(this.fov), (float) this.width / this.height,
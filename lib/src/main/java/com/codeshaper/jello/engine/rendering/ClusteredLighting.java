@@ -0,0 +1,514 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL31.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.joml.Math;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import com.codeshaper.jello.engine.Color;
+import com.codeshaper.jello.engine.lighting.AbstractLight;
+import com.codeshaper.jello.engine.lighting.AmbientLight;
+import com.codeshaper.jello.engine.lighting.DirectionalLight;
+import com.codeshaper.jello.engine.lighting.LightRegistry;
+import com.codeshaper.jello.engine.lighting.PointLight;
+import com.codeshaper.jello.engine.lighting.SpotLight;
+import com.codeshaper.jello.engine.rendering.shader.UniformBlocks;
+
+/**
+ * Feeds the lights in the {@link LightRegistry} to Shaders, with clustered
+ * forward shading. The Camera's view is split into a grid of clusters, tiles on
+ * the screen that are sliced by depth, and every point and spot light is
+ * assigned to the clusters that its range touches. A fragment then only has to
+ * loop over the lights in its own cluster, instead of every light in the
+ * Scene.
+ * <p>
+ * The clusters are filled on the CPU every time a Camera renders, with each
+ * depth slice filled in parallel when there are enough lights to make it worth
+ * it. The lights, the range of each cluster's lights in the index list, and the
+ * index list itself are uploaded to buffer textures, and everything else is
+ * written to the {@link UniformBlocks#LIGHTS_BLOCK} uniform block.
+ * <p>
+ * Ambient lights are added together. Only the first
+ * {@link UniformBlocks#MAX_DIRECTIONAL_LIGHTS} directional lights are used, and
+ * only the first {@link ClusteredLighting#MAX_LOCAL_LIGHTS} point and spot
+ * lights in view. If there are no lights at all, a white ambient light is used
+ * so Scenes without lights are still visible.
+ */
+final class ClusteredLighting {
+
+	static final int GRID_X = 16;
+	static final int GRID_Y = 9;
+	static final int GRID_Z = 24;
+	private static final int TILE_COUNT = GRID_X * GRID_Y;
+	private static final int CLUSTER_COUNT = TILE_COUNT * GRID_Z;
+	/**
+	 * The largest number of point and spot lights that are used. Light indices are
+	 * stored in 16 bits, so this must be below 65536.
+	 */
+	static final int MAX_LOCAL_LIGHTS = 4096;
+	/**
+	 * The number of RGBA texels each light takes up in the light data buffer.
+	 */
+	private static final int TEXELS_PER_LIGHT = 4;
+	/**
+	 * Below this many lights, the slices are filled on the calling thread as
+	 * starting the parallel work would cost more than it saves.
+	 */
+	private static final int PARALLEL_THRESHOLD = 32;
+
+	private final ShadowRenderer shadows;
+	private final UniformBuffer uniforms;
+	private final int lightDataBufferId;
+	private final int lightDataTextureId;
+	private final int clusterBufferId;
+	private final int clusterTextureId;
+	private final int indexBufferId;
+	private final int indexTextureId;
+
+	private final FloatBuffer lightData;
+	private final IntBuffer clusterData;
+	private ShortBuffer indexData;
+
+	/**
+	 * The range of clusters each light touches, inclusive.
+	 */
+	private final int[] minTileX;
+	private final int[] maxTileX;
+	private final int[] minTileY;
+	private final int[] maxTileY;
+	private final int[] minSlice;
+	private final int[] maxSlice;
+	/**
+	 * The number of lights in each cluster.
+	 */
+	private final int[] clusterCounts;
+	/**
+	 * The offset of each cluster's lights, from the start of its slice.
+	 */
+	private final int[] clusterOffsets;
+	/**
+	 * The light indices of each slice, written by the slice's task.
+	 */
+	private final int[][] sliceIndices;
+	private final int[] sliceIndexCounts;
+	private int localLightCount;
+
+	private final Vector3f position;
+	private final Vector3f direction;
+	private final Vector3f viewPosition;
+	private final Vector4f corner;
+	private final Vector3f ambient;
+
+	/**
+	 * Creates the lighting buffers.
+	 *
+	 * @param shadows the ShadowRenderer that renders the shadows of the lights
+	 */
+	ClusteredLighting(ShadowRenderer shadows) {
+		this.shadows = shadows;
+		this.uniforms = new UniformBuffer(UniformBlocks.LIGHTS_BINDING, UniformBlocks.LIGHTS_SIZE);
+
+		this.lightDataBufferId = glGenBuffers();
+		this.lightDataTextureId = createBufferTexture(this.lightDataBufferId, GL_RGBA32F);
+		this.clusterBufferId = glGenBuffers();
+		this.clusterTextureId = createBufferTexture(this.clusterBufferId, GL_RG32UI);
+		this.indexBufferId = glGenBuffers();
+		this.indexTextureId = createBufferTexture(this.indexBufferId, GL_R16UI);
+
+		this.lightData = MemoryUtil.memAllocFloat(MAX_LOCAL_LIGHTS * TEXELS_PER_LIGHT * 4);
+		this.clusterData = MemoryUtil.memAllocInt(CLUSTER_COUNT * 2);
+		this.indexData = MemoryUtil.memAllocShort(CLUSTER_COUNT);
+
+		this.minTileX = new int[MAX_LOCAL_LIGHTS];
+		this.maxTileX = new int[MAX_LOCAL_LIGHTS];
+		this.minTileY = new int[MAX_LOCAL_LIGHTS];
+		this.maxTileY = new int[MAX_LOCAL_LIGHTS];
+		this.minSlice = new int[MAX_LOCAL_LIGHTS];
+		this.maxSlice = new int[MAX_LOCAL_LIGHTS];
+		this.clusterCounts = new int[CLUSTER_COUNT];
+		this.clusterOffsets = new int[CLUSTER_COUNT];
+		this.sliceIndices = new int[GRID_Z][TILE_COUNT];
+		this.sliceIndexCounts = new int[GRID_Z];
+
+		this.position = new Vector3f();
+		this.direction = new Vector3f();
+		this.viewPosition = new Vector3f();
+		this.corner = new Vector4f();
+		this.ambient = new Vector3f();
+	}
+
+	/**
+	 * Deletes the lighting buffers and buffer textures, and frees their data. The
+	 * ClusteredLighting must not be used after this.
+	 */
+	void dispose() {
+		this.uniforms.dispose();
+		glDeleteTextures(this.lightDataTextureId);
+		glDeleteTextures(this.clusterTextureId);
+		glDeleteTextures(this.indexTextureId);
+		glDeleteBuffers(this.lightDataBufferId);
+		glDeleteBuffers(this.clusterBufferId);
+		glDeleteBuffers(this.indexBufferId);
+		GLStateCache.invalidate(); // The ids may be reused.
+		MemoryUtil.memFree(this.lightData);
+		MemoryUtil.memFree(this.clusterData);
+		MemoryUtil.memFree(this.indexData);
+	}
+
+	/**
+	 * Gets the number of point and spot lights that were in view of the most
+	 * recent Camera.
+	 *
+	 * @return the number of lights in view
+	 */
+	int getLocalLightCount() {
+		return this.localLightCount;
+	}
+
+	/**
+	 * Gathers the lights, assigns them to the Camera's clusters, and uploads
+	 * everything so it is ready for the Camera's draws.
+	 *
+	 * @param camera         the Camera that is rendering
+	 * @param viewMatrix     the Camera's view matrix
+	 * @param viewportX      the left edge of the Camera's viewport, in pixels
+	 * @param viewportY      the bottom edge of the Camera's viewport, in pixels
+	 * @param viewportWidth  the width of the Camera's viewport, in pixels
+	 * @param viewportHeight the height of the Camera's viewport, in pixels
+	 */
+	void update(Camera camera, Matrix4f viewMatrix, float viewportX, float viewportY, float viewportWidth,
+			float viewportHeight) {
+		float near = Math.max(camera.getNearPlane(), 1e-4f);
+		float far = Math.max(camera.getFarPlane(), near * 2);
+		// slice = log(depth) * depthScale + depthBias, spacing the slices
+		// exponentially between the near and far plane.
+		float depthScale = GRID_Z / (float) java.lang.Math.log(far / near);
+		float depthBias = -(float) java.lang.Math.log(near) * depthScale;
+
+		ByteBuffer data = this.uniforms.getData();
+		this.gatherLights(camera.getProjectionMatrix(), viewMatrix, near, far, depthScale, depthBias, data);
+
+		if (this.localLightCount >= PARALLEL_THRESHOLD) {
+			IntStream.range(0, GRID_Z).parallel().forEach(this::fillSlice);
+		} else {
+			for (int z = 0; z < GRID_Z; z++) {
+				this.fillSlice(z);
+			}
+		}
+		this.packClusters();
+
+		data.putInt(UniformBlocks.LIGHTS_CLUSTER_GRID_OFFSET, GRID_X);
+		data.putInt(UniformBlocks.LIGHTS_CLUSTER_GRID_OFFSET + 4, GRID_Y);
+		data.putInt(UniformBlocks.LIGHTS_CLUSTER_GRID_OFFSET + 8, GRID_Z);
+		data.putFloat(UniformBlocks.LIGHTS_CLUSTER_DEPTH_OFFSET, depthScale);
+		data.putFloat(UniformBlocks.LIGHTS_CLUSTER_DEPTH_OFFSET + 4, depthBias);
+		data.putFloat(UniformBlocks.LIGHTS_CLUSTER_SCREEN_OFFSET, viewportX);
+		data.putFloat(UniformBlocks.LIGHTS_CLUSTER_SCREEN_OFFSET + 4, viewportY);
+		data.putFloat(UniformBlocks.LIGHTS_CLUSTER_SCREEN_OFFSET + 8, GRID_X / Math.max(viewportWidth, 1f));
+		data.putFloat(UniformBlocks.LIGHTS_CLUSTER_SCREEN_OFFSET + 12, GRID_Y / Math.max(viewportHeight, 1f));
+		this.uniforms.upload();
+
+		this.upload();
+	}
+
+	/**
+	 * Writes the ambient and directional lights to the uniform block, and the
+	 * point and spot lights that are in view to {@link ClusteredLighting#lightData}
+	 * along with the clusters they touch.
+	 */
+	private void gatherLights(Matrix4fc projectionMatrix, Matrix4fc viewMatrix, float near, float far,
+			float depthScale, float depthBias, ByteBuffer data) {
+		List<AbstractLight> lights = LightRegistry.getInstance().getLights();
+		int directionalCount = 0;
+		this.localLightCount = 0;
+		this.ambient.zero();
+		if (lights.isEmpty()) {
+			this.ambient.set(1f);
+		}
+
+		for (int i = 0; i < lights.size(); i++) {
+			AbstractLight light = lights.get(i);
+			Color color = light.color;
+			float intensity = light.intensity;
+			Matrix4fc worldMatrix = light.gameObject().getCachedWorldMatrix();
+
+			if (light instanceof AmbientLight) {
+				this.ambient.add(color.r * intensity, color.g * intensity, color.b * intensity);
+			} else if (light instanceof DirectionalLight) {
+				if (directionalCount == UniformBlocks.MAX_DIRECTIONAL_LIGHTS) {
+					continue;
+				}
+				worldMatrix.transformDirection(0, 0, 1, this.direction).normalize();
+				int offset = directionalCount * 16;
+				data.putFloat(UniformBlocks.LIGHTS_DIRECTIONAL_COLORS_OFFSET + offset, color.r * intensity);
+				data.putFloat(UniformBlocks.LIGHTS_DIRECTIONAL_COLORS_OFFSET + offset + 4, color.g * intensity);
+				data.putFloat(UniformBlocks.LIGHTS_DIRECTIONAL_COLORS_OFFSET + offset + 8, color.b * intensity);
+				this.direction.get(UniformBlocks.LIGHTS_DIRECTIONAL_DIRECTIONS_OFFSET + offset, data);
+				// w is set if the light's shadows were rendered.
+				data.putFloat(UniformBlocks.LIGHTS_DIRECTIONAL_DIRECTIONS_OFFSET + offset + 12,
+						light == this.shadows.getDirectionalLight() ? 1f : 0f);
+				directionalCount++;
+			} else if (light instanceof PointLight || light instanceof SpotLight) {
+				if (this.localLightCount == MAX_LOCAL_LIGHTS) {
+					continue;
+				}
+
+				float range;
+				float cosOuter;
+				float cosInner;
+				int shadowIndex = -1;
+				if (light instanceof SpotLight) {
+					SpotLight spotLight = (SpotLight) light;
+					range = spotLight.getRange();
+					float halfAngle = Math.toRadians(spotLight.getAngle() / 2f);
+					cosOuter = Math.cos(halfAngle);
+					cosInner = Math.cos(halfAngle * 0.9f);
+					shadowIndex = this.shadows.getSpotShadowIndex(spotLight);
+				} else {
+					range = ((PointLight) light).getRange();
+					// Every direction is inside of the cone.
+					cosOuter = -2f;
+					cosInner = -1f;
+				}
+
+				worldMatrix.getTranslation(this.position);
+				if (range <= 0 || !this.assignToClusters(this.localLightCount, projectionMatrix, viewMatrix,
+						range, near, far, depthScale, depthBias)) {
+					continue;
+				}
+
+				worldMatrix.transformDirection(0, 0, 1, this.direction).normalize();
+				int offset = this.localLightCount * TEXELS_PER_LIGHT * 4;
+				FloatBuffer lightData = this.lightData;
+				lightData.put(offset, this.position.x);
+				lightData.put(offset + 1, this.position.y);
+				lightData.put(offset + 2, this.position.z);
+				lightData.put(offset + 3, range);
+				lightData.put(offset + 4, color.r * intensity);
+				lightData.put(offset + 5, color.g * intensity);
+				lightData.put(offset + 6, color.b * intensity);
+				lightData.put(offset + 7, cosOuter);
+				lightData.put(offset + 8, this.direction.x);
+				lightData.put(offset + 9, this.direction.y);
+				lightData.put(offset + 10, this.direction.z);
+				lightData.put(offset + 11, cosInner);
+				lightData.put(offset + 12, shadowIndex);
+				lightData.put(offset + 13, 0);
+				lightData.put(offset + 14, 0);
+				lightData.put(offset + 15, 0);
+				this.localLightCount++;
+			}
+		}
+
+		this.ambient.get(UniformBlocks.LIGHTS_AMBIENT_OFFSET, data);
+		data.putInt(UniformBlocks.LIGHTS_DIRECTIONAL_COUNT_OFFSET, directionalCount);
+	}
+
+	/**
+	 * Finds the clusters that a light's bounding sphere touches, from the screen
+	 * space rectangle of the sphere's view space bounding box and the depth slices
+	 * it covers. The light's world space position must be in
+	 * {@link ClusteredLighting#position}.
+	 *
+	 * @return {@code false} if the light is out of view
+	 */
+	private boolean assignToClusters(int index, Matrix4fc projectionMatrix, Matrix4fc viewMatrix, float range,
+			float near, float far, float depthScale, float depthBias) {
+		viewMatrix.transformPosition(this.position, this.viewPosition);
+		Vector3f center = this.viewPosition;
+
+		// The camera looks down -z.
+		float minDepth = -center.z - range;
+		float maxDepth = -center.z + range;
+		if (maxDepth < near || minDepth > far) {
+			return false;
+		}
+
+		float minX = 1f;
+		float minY = 1f;
+		float maxX = -1f;
+		float maxY = -1f;
+		if (minDepth <= near) {
+			// The sphere crosses the near plane, so it can't be projected.
+			minX = -1f;
+			minY = -1f;
+			maxX = 1f;
+			maxY = 1f;
+		} else {
+			for (int i = 0; i < 8; i++) {
+				this.corner.set(
+						center.x + ((i & 1) == 0 ? -range : range),
+						center.y + ((i & 2) == 0 ? -range : range),
+						center.z + ((i & 4) == 0 ? -range : range),
+						1f);
+				projectionMatrix.transform(this.corner);
+				float x = this.corner.x / this.corner.w;
+				float y = this.corner.y / this.corner.w;
+				minX = Math.min(minX, x);
+				minY = Math.min(minY, y);
+				maxX = Math.max(maxX, x);
+				maxY = Math.max(maxY, y);
+			}
+			if (maxX < -1f || maxY < -1f || minX > 1f || minY > 1f) {
+				return false;
+			}
+		}
+
+		this.minTileX[index] = toTile(minX, GRID_X);
+		this.maxTileX[index] = toTile(maxX, GRID_X);
+		this.minTileY[index] = toTile(minY, GRID_Y);
+		this.maxTileY[index] = toTile(maxY, GRID_Y);
+		this.minSlice[index] = toSlice(Math.max(minDepth, near), depthScale, depthBias);
+		this.maxSlice[index] = toSlice(Math.min(maxDepth, far), depthScale, depthBias);
+		return true;
+	}
+
+	/**
+	 * Fills in the lights of every cluster in a depth slice. Each slice only
+	 * writes to its own clusters, so slices can be filled at the same time.
+	 *
+	 * @param z the index of the slice
+	 */
+	private void fillSlice(int z) {
+		int firstCluster = z * TILE_COUNT;
+		int[] counts = this.clusterCounts;
+		int[] offsets = this.clusterOffsets;
+
+		for (int i = 0; i < TILE_COUNT; i++) {
+			counts[firstCluster + i] = 0;
+		}
+		for (int light = 0; light < this.localLightCount; light++) {
+			if (z < this.minSlice[light] || z > this.maxSlice[light]) {
+				continue;
+			}
+			for (int y = this.minTileY[light]; y <= this.maxTileY[light]; y++) {
+				int row = firstCluster + y * GRID_X;
+				for (int x = this.minTileX[light]; x <= this.maxTileX[light]; x++) {
+					counts[row + x]++;
+				}
+			}
+		}
+
+		int total = 0;
+		for (int i = firstCluster; i < firstCluster + TILE_COUNT; i++) {
+			offsets[i] = total;
+			total += counts[i];
+			counts[i] = 0; // Reused as the write position below.
+		}
+		int[] indices = this.sliceIndices[z];
+		if (indices.length < total) {
+			indices = new int[Math.max(total, indices.length * 2)];
+			this.sliceIndices[z] = indices;
+		}
+		this.sliceIndexCounts[z] = total;
+
+		for (int light = 0; light < this.localLightCount; light++) {
+			if (z < this.minSlice[light] || z > this.maxSlice[light]) {
+				continue;
+			}
+			for (int y = this.minTileY[light]; y <= this.maxTileY[light]; y++) {
+				int row = firstCluster + y * GRID_X;
+				for (int x = this.minTileX[light]; x <= this.maxTileX[light]; x++) {
+					int cluster = row + x;
+					indices[offsets[cluster] + counts[cluster]] = light;
+					counts[cluster]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Joins the index lists of every slice into
+	 * {@link ClusteredLighting#indexData}, and writes each cluster's offset and
+	 * count to {@link ClusteredLighting#clusterData}.
+	 */
+	private void packClusters() {
+		int totalIndices = 0;
+		for (int z = 0; z < GRID_Z; z++) {
+			totalIndices += this.sliceIndexCounts[z];
+		}
+		if (this.indexData.capacity() < totalIndices) {
+			this.indexData = MemoryUtil.memRealloc(this.indexData,
+					Math.max(totalIndices, this.indexData.capacity() * 2));
+		}
+
+		int sliceStart = 0;
+		for (int z = 0; z < GRID_Z; z++) {
+			int firstCluster = z * TILE_COUNT;
+			for (int i = firstCluster; i < firstCluster + TILE_COUNT; i++) {
+				this.clusterData.put(i * 2, sliceStart + this.clusterOffsets[i]);
+				this.clusterData.put(i * 2 + 1, this.clusterCounts[i]);
+			}
+
+			int[] indices = this.sliceIndices[z];
+			int count = this.sliceIndexCounts[z];
+			for (int i = 0; i < count; i++) {
+				this.indexData.put(sliceStart + i, (short) indices[i]);
+			}
+			sliceStart += count;
+		}
+		this.indexData.limit(Math.max(totalIndices, 1));
+	}
+
+	/**
+	 * Uploads the lights, clusters and indices to their buffers, orphaning the
+	 * old storage so the upload doesn't wait on draws from the last Camera, and
+	 * binds the buffer textures to their units.
+	 */
+	private void upload() {
+		this.lightData.limit(Math.max(this.localLightCount, 1) * TEXELS_PER_LIGHT * 4);
+		glBindBuffer(GL_TEXTURE_BUFFER, this.lightDataBufferId);
+		glBufferData(GL_TEXTURE_BUFFER, this.lightData, GL_STREAM_DRAW);
+		glBindBuffer(GL_TEXTURE_BUFFER, this.clusterBufferId);
+		glBufferData(GL_TEXTURE_BUFFER, this.clusterData, GL_STREAM_DRAW);
+		glBindBuffer(GL_TEXTURE_BUFFER, this.indexBufferId);
+		glBufferData(GL_TEXTURE_BUFFER, this.indexData, GL_STREAM_DRAW);
+		glBindBuffer(GL_TEXTURE_BUFFER, 0);
+		this.lightData.clear();
+		this.indexData.clear();
+
+		GLStateCache.bindTexture(UniformBlocks.LIGHT_DATA_UNIT, GL_TEXTURE_BUFFER, this.lightDataTextureId);
+		GLStateCache.bindTexture(UniformBlocks.LIGHT_CLUSTERS_UNIT, GL_TEXTURE_BUFFER, this.clusterTextureId);
+		GLStateCache.bindTexture(UniformBlocks.LIGHT_INDICES_UNIT, GL_TEXTURE_BUFFER, this.indexTextureId);
+	}
+
+	private static int createBufferTexture(int bufferId, int format) {
+		glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+		glBufferData(GL_TEXTURE_BUFFER, 16, GL_STREAM_DRAW);
+		glBindBuffer(GL_TEXTURE_BUFFER, 0);
+
+		int textureId = glGenTextures();
+		glBindTexture(GL_TEXTURE_BUFFER, textureId);
+		glTexBuffer(GL_TEXTURE_BUFFER, format, bufferId);
+		glBindTexture(GL_TEXTURE_BUFFER, 0);
+		return textureId;
+	}
+
+	/**
+	 * Converts a normalized device coordinate to the index of the tile it is in.
+	 */
+	private static int toTile(float ndc, int tileCount) {
+		int tile = (int) Math.floor((ndc * 0.5f + 0.5f) * tileCount);
+		return Math.clamp(0, tileCount - 1, tile);
+	}
+
+	/**
+	 * Converts a distance from the Camera to the index of the depth slice it is
+	 * in.
+	 */
+	private static int toSlice(float depth, float depthScale, float depthBias) {
+		int slice = (int) Math.floor((float) java.lang.Math.log(depth) * depthScale + depthBias);
+		return Math.clamp(0, GRID_Z - 1, slice);
+	}
+}
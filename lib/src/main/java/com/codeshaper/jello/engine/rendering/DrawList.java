@@ -0,0 +1,173 @@
+package com.codeshaper.jello.engine.rendering;
+
+import java.util.Arrays;
+
+/**
+ * The {@link Renderer}s a Camera will draw in a frame, each with a 64-bit sort
+ * key. Sorting the keys puts the draws in the order they should be drawn in.
+ * <p>
+ * Keys are compared as unsigned numbers, and are packed as follows, from the
+ * most significant bit:
+ * <ul>
+ * <li>16 bits: the render order of the Material, so it always takes
+ * priority.</li>
+ * <li>1 bit: set if the Shader is transparent, so transparent draws come after
+ * opaque ones.</li>
+ * <li>For opaque draws: 11 bits of program id, 12 bits of material id, and 24
+ * bits of view depth, nearest first. Draws are grouped by state, and within a
+ * group drawn front to back so early depth testing can reject hidden
+ * pixels.</li>
+ * <li>For transparent draws: 24 bits of inverted view depth, furthest first,
+ * then 11 bits of program id and 12 bits of material id. Transparent draws must
+ * be drawn back to front to blend correctly, so depth takes priority over
+ * state.</li>
+ * </ul>
+ * Program and material ids only group draws, if two ids share the same low bits
+ * the draws are still correct.
+ */
+final class DrawList {
+
+	private static final int DEPTH_BITS = 24;
+	private static final long DEPTH_MAX = (1L << DEPTH_BITS) - 1;
+	private static final int MATERIAL_BITS = 12;
+	private static final int PROGRAM_BITS = 11;
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX_SIZE = 1 << RADIX_BITS;
+
+	private Renderer[] renderers;
+	private long[] keys;
+	private int[] order;
+	private long[] keysScratch;
+	private int[] orderScratch;
+	private final int[] counts;
+	private int size;
+
+	DrawList() {
+		this.renderers = new Renderer[64];
+		this.keys = new long[64];
+		this.order = new int[64];
+		this.keysScratch = new long[64];
+		this.orderScratch = new int[64];
+		this.counts = new int[RADIX_SIZE];
+	}
+
+	/**
+	 * Removes all draws from the list.
+	 */
+	void clear() {
+		Arrays.fill(this.renderers, 0, this.size, null);
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a draw to the list.
+	 *
+	 * @param renderer    the Renderer to draw
+	 * @param renderOrder the render order of the Renderer's Material
+	 * @param transparent is the Renderer's Shader transparent
+	 * @param programId   the id of the Shader's program
+	 * @param materialId  an id for the Renderer's Material
+	 * @param depth       the distance to the Renderer in view space, divided by
+	 *                    the Camera's far plane
+	 */
+	void add(Renderer renderer, int renderOrder, boolean transparent, int programId, int materialId,
+			float depth) {
+		if (this.size == this.keys.length) {
+			int newLength = this.size * 2;
+			this.renderers = Arrays.copyOf(this.renderers, newLength);
+			this.keys = Arrays.copyOf(this.keys, newLength);
+			this.order = Arrays.copyOf(this.order, newLength);
+			this.keysScratch = new long[newLength];
+			this.orderScratch = new int[newLength];
+		}
+
+		long biasedOrder = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, renderOrder)) - Short.MIN_VALUE;
+		long quantizedDepth = (long) (Math.max(0f, Math.min(1f, depth)) * DEPTH_MAX);
+		long program = programId & ((1L << PROGRAM_BITS) - 1);
+		long material = materialId & ((1L << MATERIAL_BITS) - 1);
+
+		long key = biasedOrder << 48;
+		if (transparent) {
+			key |= 1L << 47;
+			key |= (DEPTH_MAX - quantizedDepth) << (PROGRAM_BITS + MATERIAL_BITS);
+			key |= program << MATERIAL_BITS;
+			key |= material;
+		} else {
+			key |= program << (MATERIAL_BITS + DEPTH_BITS);
+			key |= material << DEPTH_BITS;
+			key |= quantizedDepth;
+		}
+
+		this.renderers[this.size] = renderer;
+		this.keys[this.size] = key;
+		this.order[this.size] = this.size;
+		this.size++;
+	}
+
+	/**
+	 * Gets the number of draws in the list.
+	 *
+	 * @return the number of draws
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets a draw's {@link Renderer}. After {@link DrawList#sort()}, this is in
+	 * sorted order.
+	 *
+	 * @param index the index of the draw
+	 * @return the draw's Renderer
+	 */
+	Renderer get(int index) {
+		return this.renderers[this.order[index]];
+	}
+
+	/**
+	 * Sorts the draws by their keys, with a least significant digit radix sort.
+	 * Bytes that are the same in every key, like the render order when every
+	 * Material has the same one, are skipped.
+	 */
+	void sort() {
+		long[] source = this.keys;
+		int[] sourceOrder = this.order;
+		long[] destination = this.keysScratch;
+		int[] destinationOrder = this.orderScratch;
+
+		for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+			Arrays.fill(this.counts, 0);
+			for (int i = 0; i < this.size; i++) {
+				this.counts[(int) (source[i] >>> shift) & (RADIX_SIZE - 1)]++;
+			}
+			if (this.size == 0 || this.counts[(int) (source[0] >>> shift) & (RADIX_SIZE - 1)] == this.size) {
+				continue; // Every key has the same byte, this pass wouldn't move anything.
+			}
+
+			int total = 0;
+			for (int i = 0; i < RADIX_SIZE; i++) {
+				int count = this.counts[i];
+				this.counts[i] = total;
+				total += count;
+			}
+			for (int i = 0; i < this.size; i++) {
+				long key = source[i];
+				int index = this.counts[(int) (key >>> shift) & (RADIX_SIZE - 1)]++;
+				destination[index] = key;
+				destinationOrder[index] = sourceOrder[i];
+			}
+
+			long[] keysTemp = source;
+			source = destination;
+			destination = keysTemp;
+			int[] orderTemp = sourceOrder;
+			sourceOrder = destinationOrder;
+			destinationOrder = orderTemp;
+		}
+
+		this.keys = source;
+		this.order = sourceOrder;
+		this.keysScratch = destination;
+		this.orderScratch = destinationOrder;
+	}
+}
@@ -0,0 +1,290 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL30.*;
+
+import java.util.Arrays;
+
+import com.codeshaper.jello.engine.rendering.shader.ShaderData.CullMode;
+
+/**
+ * Keeps track of the OpenGL state set through it, so calls that would not
+ * change anything can be skipped. The current program, vertex array, the
+ * texture bound to each texture unit, and the depth, cull and blend state are
+ * tracked.
+ * <p>
+ * State that is changed without going through the cache, or OpenGL objects
+ * that are deleted, leave the cache out of date. {@link GLStateCache#invalidate()}
+ * must be called after doing either, so the next call of each kind is always
+ * sent to OpenGL.
+ * <p>
+ * The cache is not thread-safe, it should only be used from the thread that
+ * owns the OpenGL context.
+ */
+public final class GLStateCache {
+
+	/**
+	 * The number of texture units that are tracked. Binding to a higher unit
+	 * always calls OpenGL.
+	 */
+	private static final int TEXTURE_UNIT_COUNT = 32;
+	/**
+	 * The value of a tracked int when the real state is not known.
+	 */
+	private static final int UNKNOWN = -1;
+
+	private static int program = UNKNOWN;
+	private static int vertexArray = UNKNOWN;
+	private static int activeTextureUnit = UNKNOWN;
+	private static final int[] textures = new int[TEXTURE_UNIT_COUNT];
+	private static int depthTest = UNKNOWN;
+	private static int depthMask = UNKNOWN;
+	private static int cullFace = UNKNOWN;
+	private static int blend = UNKNOWN;
+	private static int blendSource = UNKNOWN;
+	private static int blendDestination = UNKNOWN;
+
+	private static int changeCount;
+	private static int skipCount;
+	private static int lastFrameChangeCount;
+	private static int lastFrameSkipCount;
+
+	static {
+		Arrays.fill(textures, UNKNOWN);
+	}
+
+	private GLStateCache() {
+	}
+
+	/**
+	 * Forgets all of the tracked state.
+	 */
+	public static void invalidate() {
+		program = UNKNOWN;
+		vertexArray = UNKNOWN;
+		activeTextureUnit = UNKNOWN;
+		Arrays.fill(textures, UNKNOWN);
+		depthTest = UNKNOWN;
+		depthMask = UNKNOWN;
+		cullFace = UNKNOWN;
+		blend = UNKNOWN;
+		blendSource = UNKNOWN;
+		blendDestination = UNKNOWN;
+	}
+
+	/**
+	 * Makes a program current, with {@code glUseProgram}.
+	 *
+	 * @param programId the id of the program, or 0 for no program
+	 */
+	public static void useProgram(int programId) {
+		if (program == programId) {
+			skipCount++;
+			return;
+		}
+
+		glUseProgram(programId);
+		program = programId;
+		changeCount++;
+	}
+
+	/**
+	 * Binds a vertex array, with {@code glBindVertexArray}.
+	 *
+	 * @param vaoId the id of the vertex array, or 0 for no vertex array
+	 */
+	public static void bindVertexArray(int vaoId) {
+		if (vertexArray == vaoId) {
+			skipCount++;
+			return;
+		}
+
+		glBindVertexArray(vaoId);
+		vertexArray = vaoId;
+		changeCount++;
+	}
+
+	/**
+	 * Binds a texture to a texture unit's {@code GL_TEXTURE_2D} target. This
+	 * leaves {@code unit} as the active texture unit.
+	 *
+	 * @param unit      the texture unit, starting from 0
+	 * @param textureId the id of the texture, or 0 for no texture
+	 */
+	public static void bindTexture(int unit, int textureId) {
+		boolean isTracked = unit < TEXTURE_UNIT_COUNT;
+		if (isTracked && textures[unit] == textureId) {
+			skipCount++;
+			return;
+		}
+
+		if (activeTextureUnit != unit) {
+			glActiveTexture(GL_TEXTURE0 + unit);
+			activeTextureUnit = unit;
+			changeCount++;
+		}
+		glBindTexture(GL_TEXTURE_2D, textureId);
+		if (isTracked) {
+			textures[unit] = textureId;
+		}
+		changeCount++;
+	}
+
+	/**
+	 * Binds a texture to one of a texture unit's targets, such as
+	 * {@code GL_TEXTURE_2D_ARRAY} or {@code GL_TEXTURE_BUFFER}. Only the active
+	 * texture unit is tracked, so the bind always calls OpenGL. This leaves
+	 * {@code unit} as the active texture unit.
+	 *
+	 * @param unit      the texture unit, starting from 0
+	 * @param target    the target to bind to, which must not be
+	 *                  {@code GL_TEXTURE_2D}
+	 * @param textureId the id of the texture, or 0 for no texture
+	 */
+	public static void bindTexture(int unit, int target, int textureId) {
+		if (activeTextureUnit != unit) {
+			glActiveTexture(GL_TEXTURE0 + unit);
+			activeTextureUnit = unit;
+			changeCount++;
+		}
+		glBindTexture(target, textureId);
+		changeCount++;
+	}
+
+	/**
+	 * Enables or disables {@code GL_DEPTH_TEST}.
+	 *
+	 * @param enabled should depth testing be enabled
+	 */
+	public static void setDepthTest(boolean enabled) {
+		depthTest = setCapability(GL_DEPTH_TEST, depthTest, enabled);
+	}
+
+	/**
+	 * Sets if the depth buffer is written to, with {@code glDepthMask}.
+	 *
+	 * @param enabled should depth be written
+	 */
+	public static void setDepthMask(boolean enabled) {
+		int value = enabled ? 1 : 0;
+		if (depthMask == value) {
+			skipCount++;
+			return;
+		}
+
+		glDepthMask(enabled);
+		depthMask = value;
+		changeCount++;
+	}
+
+	/**
+	 * Sets which faces are culled. {@link CullMode#OFF} disables
+	 * {@code GL_CULL_FACE}, any other mode enables it and sets {@code glCullFace}.
+	 * A {@code null} mode is treated as {@link CullMode#BACK}.
+	 *
+	 * @param mode the faces to cull
+	 */
+	public static void setCulling(CullMode mode) {
+		int face;
+		if (mode == CullMode.OFF) {
+			face = 0;
+		} else if (mode == CullMode.FRONT) {
+			face = GL_FRONT;
+		} else if (mode == CullMode.FRONT_AND_BACK) {
+			face = GL_FRONT_AND_BACK;
+		} else {
+			face = GL_BACK;
+		}
+
+		if (cullFace == face) {
+			skipCount++;
+			return;
+		}
+
+		if (face == 0) {
+			glDisable(GL_CULL_FACE);
+		} else {
+			if (cullFace == 0 || cullFace == UNKNOWN) {
+				glEnable(GL_CULL_FACE);
+				changeCount++;
+			}
+			glCullFace(face);
+		}
+		cullFace = face;
+		changeCount++;
+	}
+
+	/**
+	 * Enables or disables {@code GL_BLEND}.
+	 *
+	 * @param enabled should blending be enabled
+	 */
+	public static void setBlend(boolean enabled) {
+		blend = setCapability(GL_BLEND, blend, enabled);
+	}
+
+	/**
+	 * Sets the blend function, with {@code glBlendFunc}.
+	 *
+	 * @param source      the source factor
+	 * @param destination the destination factor
+	 */
+	public static void setBlendFunc(int source, int destination) {
+		if (blendSource == source && blendDestination == destination) {
+			skipCount++;
+			return;
+		}
+
+		glBlendFunc(source, destination);
+		blendSource = source;
+		blendDestination = destination;
+		changeCount++;
+	}
+
+	/**
+	 * Marks the end of a frame, making the current counts available from
+	 * {@link GLStateCache#getLastFrameChangeCount()} and
+	 * {@link GLStateCache#getLastFrameSkipCount()} and resetting them.
+	 */
+	public static void endFrame() {
+		lastFrameChangeCount = changeCount;
+		lastFrameSkipCount = skipCount;
+		changeCount = 0;
+		skipCount = 0;
+	}
+
+	/**
+	 * Gets the number of OpenGL calls that were made through the cache in the last
+	 * frame.
+	 *
+	 * @return the number of state changes
+	 */
+	public static int getLastFrameChangeCount() {
+		return lastFrameChangeCount;
+	}
+
+	/**
+	 * Gets the number of OpenGL calls that were skipped by the cache in the last
+	 * frame, because they would not have changed anything.
+	 *
+	 * @return the number of skipped state changes
+	 */
+	public static int getLastFrameSkipCount() {
+		return lastFrameSkipCount;
+	}
+
+	private static int setCapability(int capability, int current, boolean enabled) {
+		int value = enabled ? 1 : 0;
+		if (current == value) {
+			skipCount++;
+			return current;
+		}
+
+		if (enabled) {
+			glEnable(capability);
+		} else {
+			glDisable(capability);
+		}
+		changeCount++;
+		return value;
+	}
+}
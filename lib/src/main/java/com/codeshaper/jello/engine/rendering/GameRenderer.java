@@ -1,66 +1,196 @@
 package com.codeshaper.jello.engine.rendering;
 
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
-import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL11.glDrawElements;
-import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL33.*;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.joml.FrustumIntersection;
 import org.joml.Math;
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 import org.joml.Vector2f;
+import org.joml.Vector3f;
 
 import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.Bounds;
 import com.codeshaper.jello.engine.Color;
-import com.codeshaper.jello.engine.GameObject;
-import com.codeshaper.jello.engine.JelloComponent;
-import com.codeshaper.jello.engine.Scene;
 import com.codeshaper.jello.engine.SceneManager;
 import com.codeshaper.jello.engine.asset.Material;
 import com.codeshaper.jello.engine.asset.Mesh;
 import com.codeshaper.jello.engine.asset.Shader;
 import com.codeshaper.jello.engine.database.AssetDatabase;
+import com.codeshaper.jello.engine.profiling.Profiler;
+import com.codeshaper.jello.engine.profiling.ProfilerScope;
+import com.codeshaper.jello.engine.rendering.RenderQueue.RenderBucket;
 import com.codeshaper.jello.engine.rendering.shader.ShaderData;
 import com.codeshaper.jello.engine.rendering.shader.ShaderProgram;
-import com.codeshaper.jello.engine.rendering.shader.ShaderData.CullMode;
+import com.codeshaper.jello.engine.rendering.shader.UniformBlocks;
 
 public class GameRenderer {
 
 	public static final String PROJECTION_MATRIX = "projectionMatrix";
 	public static final String VIEW_MATRIX = "viewMatrix";
 	public static final String GAME_OBJECT_MATRIX = "modelMatrix";
-	public static final String _FOG_COLOR = "_fog.color";
-	public static final String _FOG_DENSITY = "_fog.density";
+
+	private static final ProfilerScope CLEAR_SCOPE = Profiler.createScope("Clear");
+	private static final ProfilerScope SHADOWS_SCOPE = Profiler.createScope("Shadows");
+	private static final ProfilerScope ASSIGN_LIGHTS_SCOPE = Profiler.createScope("Assign Lights");
+	private static final ProfilerScope PREPARE_QUEUE_SCOPE = Profiler.createScope("Prepare Render Queue");
+	private static final ProfilerScope BUILD_DRAW_LIST_SCOPE = Profiler.createScope("Build Draw List");
+	private static final ProfilerScope SORT_DRAWS_SCOPE = Profiler.createScope("Sort Draws");
+	private static final ProfilerScope STATE_CHANGES_SCOPE = Profiler.createScope("State Changes");
+	private static final ProfilerScope DRAW_CALLS_SCOPE = Profiler.createScope("Draw Calls");
+	private static final ProfilerScope OCCLUSION_QUERIES_SCOPE = Profiler.createScope("Occlusion Queries");
 
 	private final Shader errorShader;
-	private final List<RenderInstruction> instructions;
+	/**
+	 * The cube the skybox is drawn on, looked up once rather than every frame.
+	 */
+	private final Mesh skyboxMesh;
+	private final RenderQueue renderQueue;
+	private final DrawList drawList;
+	private final UniformBuffer frameUniforms;
+	private final UniformBuffer cameraUniforms;
+	private final ShadowRenderer shadows;
+	private final ClusteredLighting lighting;
+	private final InstanceBuffer instanceBuffer;
+	/**
+	 * Draws instance batches with multi-draw indirect. {@code null} if the OpenGL
+	 * context doesn't support it, in which case {@link GameRenderer#instanceBuffer}
+	 * is used for every batch.
+	 */
+	private final IndirectDrawer indirectDrawer;
+	/**
+	 * The {@link MeshRenderer}s and {@link LodGroup}s in the bucket being drawn,
+	 * grouped by {@link Mesh}.
+	 * Only used if the bucket's Shader supports instancing and is not
+	 * transparent.
+	 */
+	private final Map<Mesh, List<Renderer>> instanceBatches;
+	private final List<Mesh> batchedMeshes;
+	private final List<List<Renderer>> freeBatches;
+	private final Matrix4f viewProjectionMatrix;
+	private final FrustumIntersection frustum;
+	private final Vector3f boundsMin;
+	private final Vector3f boundsMax;
+	private final Vector3f boundsCenter;
+	/**
+	 * The radius of the most recent Renderer's bounding sphere, in world space.
+	 */
+	private float boundsRadius;
+	private final Vector3f scale;
+	private final Vector3f cameraPosition;
+	private final Matrix4f skyboxMatrix;
+	private final long startTime;
+	private long previousFrameTime;
+	private int visibleCount;
+	private int culledCount;
+	private int occludedCount;
 
-	private class RenderInstruction {
+	public GameRenderer() {
+		glBlendEquation(GL_FUNC_ADD);
 
-		public final Material material;
-		public final List<Renderer> renderers;
+		this.errorShader = (Shader) AssetDatabase.getInstance()
+				.getAsset(new AssetLocation("builtin/shaders/error.shader"));
+		this.skyboxMesh = (Mesh) AssetDatabase.getInstance()
+				.getAsset(new AssetLocation("builtin/meshes/skybox.blend"));
+		this.renderQueue = RenderQueue.getInstance();
+		this.drawList = new DrawList();
+		this.frameUniforms = new UniformBuffer(UniformBlocks.FRAME_BINDING, UniformBlocks.FRAME_SIZE);
+		this.cameraUniforms = new UniformBuffer(UniformBlocks.CAMERA_BINDING, UniformBlocks.CAMERA_SIZE);
+		this.instanceBuffer = new InstanceBuffer();
+		this.shadows = new ShadowRenderer(this.instanceBuffer);
+		this.lighting = new ClusteredLighting(this.shadows);
+		this.indirectDrawer = IndirectDrawer.isSupported() ? new IndirectDrawer() : null;
+		this.instanceBatches = new HashMap<Mesh, List<Renderer>>();
+		this.batchedMeshes = new ArrayList<Mesh>();
+		this.freeBatches = new ArrayList<List<Renderer>>();
+		this.viewProjectionMatrix = new Matrix4f();
+		this.frustum = new FrustumIntersection();
+		this.boundsMin = new Vector3f();
+		this.boundsMax = new Vector3f();
+		this.boundsCenter = new Vector3f();
+		this.scale = new Vector3f();
+		this.cameraPosition = new Vector3f();
+		this.skyboxMatrix = new Matrix4f();
+		this.startTime = System.nanoTime();
+		this.previousFrameTime = this.startTime;
+	}
 
-		public RenderInstruction(Material material) {
-			this.material = material;
-			this.renderers = new ArrayList<Renderer>();
+	/**
+	 * Uploads the data in the {@link UniformBlocks#FRAME_BLOCK} uniform block, and
+	 * moves the shadow caches and indirect draw buffers on to the next frame. This
+	 * should be called once at the start of every frame, before any calls to
+	 * {@link GameRenderer#render(SceneManager, Camera, Matrix4f, int, int)}.
+	 */
+	public void beginFrame() {
+		long now = System.nanoTime();
+		ByteBuffer data = this.frameUniforms.getData();
+		data.putFloat(UniformBlocks.FRAME_TIME_OFFSET, (now - this.startTime) / 1_000_000_000f);
+		data.putFloat(UniformBlocks.FRAME_DELTA_TIME_OFFSET, (now - this.previousFrameTime) / 1_000_000_000f);
+		this.frameUniforms.upload();
+		this.previousFrameTime = now;
+
+		this.shadows.beginFrame();
+		if (this.indirectDrawer != null) {
+			this.indirectDrawer.beginFrame();
 		}
+	}
 
-		public int getRenderOrder() {
-			return this.material != null ? this.material.renderOrder : 0;
+	/**
+	 * Frees the GPU memory held by the renderer. The renderer must not be used
+	 * after this, and it must be called before the OpenGL context is destroyed.
+	 */
+	public void cleanup() {
+		this.lighting.dispose();
+		this.shadows.dispose();
+		if (this.indirectDrawer != null) {
+			this.indirectDrawer.dispose();
 		}
+		this.instanceBuffer.dispose();
+		this.frameUniforms.dispose();
+		this.cameraUniforms.dispose();
+		LineRenderer.disposeDefaultMaterial();
+		GLStateCache.invalidate(); // The ids may be reused.
 	}
 
-	public GameRenderer() {
-		glEnable(GL_BLEND);
-		glBlendEquation(GL_FUNC_ADD);
-		glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+	/**
+	 * Gets the number of {@link Renderer}s that were drawn by the most recent call
+	 * to {@link GameRenderer#render(SceneManager, Camera, Matrix4f, int, int)}.
+	 * 
+	 * @return the number of visible Renderers
+	 */
+	public int getVisibleCount() {
+		return this.visibleCount;
+	}
 
-		this.errorShader = (Shader) AssetDatabase.getInstance()
-				.getAsset(new AssetLocation("builtin/shaders/error.shader"));
-		this.instructions = new ArrayList<GameRenderer.RenderInstruction>();
+	/**
+	 * Gets the number of {@link Renderer}s that were skipped by the most recent
+	 * call to {@link GameRenderer#render(SceneManager, Camera, Matrix4f, int, int)}
+	 * because they were outside of the Camera's view.
+	 * 
+	 * @return the number of culled Renderers
+	 */
+	public int getCulledCount() {
+		return this.culledCount;
+	}
+
+	/**
+	 * Gets the number of {@link Renderer}s that were skipped by the most recent
+	 * call to {@link GameRenderer#render(SceneManager, Camera, Matrix4f, int, int)}
+	 * because they were hidden behind other geometry. This is always {@code 0} if
+	 * the Camera doesn't have {@link Camera#occlusionCulling} enabled.
+	 * 
+	 * @return the number of occluded Renderers
+	 */
+	public int getOccludedCount() {
+		return this.occludedCount;
 	}
 
 	public void render(SceneManager sceneManager, Camera camera, Matrix4f viewMatrix, int windowWidth,
@@ -69,13 +199,32 @@ public class GameRenderer {
 		Vector2f viewportSize = camera.viewportSize;
 		float viewportWidth = windowWidth * viewportSize.x;
 		float viewportHeight = windowHeight * viewportSize.y;
+		int viewportX = Math.round(viewportPos.x * windowWidth);
+		int viewportY = Math.round(viewportPos.y * windowHeight);
+		camera.setSize(viewportWidth, viewportHeight);
+
+		// Rendering the shadow maps changes the viewport, so it's done first.
+		Profiler.begin(SHADOWS_SCOPE);
+		this.shadows.render(camera, viewMatrix);
+		Profiler.end();
+
 		glViewport(
-				Math.round(viewportPos.x * windowWidth),
-				Math.round(viewportPos.y * windowHeight),
+				viewportX,
+				viewportY,
 				Math.round(viewportWidth),
 				Math.round(viewportHeight));
-		camera.setSize(viewportWidth, viewportHeight);
+		this.uploadCameraUniforms(camera, viewMatrix);
 
+		Profiler.begin(ASSIGN_LIGHTS_SCOPE);
+		this.lighting.update(camera, viewMatrix, viewportX, viewportY, viewportWidth, viewportHeight);
+		Profiler.end();
+
+		// Anything may have changed the state since the last render.
+		GLStateCache.invalidate();
+		GLStateCache.setBlend(true);
+		GLStateCache.setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+
+		Profiler.begin(CLEAR_SCOPE);
 		CameraClearMode clearMode = camera.clearMode;
 		switch (clearMode) {
 		case COLOR:
@@ -85,7 +234,7 @@ public class GameRenderer {
 			break;
 		case SKYBOX:
 			glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-			this.renderSkybox(camera, viewMatrix);;
+			this.renderSkybox(camera);
 			break;
 		case DEPTH:
 			glClear(GL_DEPTH_BUFFER_BIT);
@@ -94,29 +243,49 @@ public class GameRenderer {
 			// Don't do anything.
 			break;
 		}
+		Profiler.end();
 
-		this.instructions.clear();
+		Profiler.begin(PREPARE_QUEUE_SCOPE);
+		this.renderQueue.prepare();
+		Profiler.end();
 
-		for (int i = 0; i < sceneManager.getSceneCount(); i++) {
-			Scene scene = sceneManager.getScene(i);
-			for (GameObject obj : scene.getRootGameObjects()) {
-				this.createInstructionsRecursively(obj);
-			}
+		this.viewProjectionMatrix.set(camera.getProjectionMatrix()).mul(viewMatrix);
+		this.frustum.set(this.viewProjectionMatrix);
+		this.visibleCount = 0;
+		this.culledCount = 0;
+		this.occludedCount = 0;
+
+		OcclusionCuller occlusionCuller = camera.getOcclusionCuller();
+		if (occlusionCuller != null) {
+			occlusionCuller.beginFrame();
 		}
 
-		Collections.sort(this.instructions, (m1, m2) -> {
-			return Integer.compare(m1.getRenderOrder(), m2.getRenderOrder());
-		});
+		Profiler.begin(BUILD_DRAW_LIST_SCOPE);
+		this.buildDrawList(camera, viewMatrix, occlusionCuller);
+		Profiler.end();
+
+		Profiler.begin(SORT_DRAWS_SCOPE);
+		this.drawList.sort();
+		Profiler.end();
 
-		for (RenderInstruction c : this.instructions) {
-			this.drawRenderInstruction(c, camera, viewMatrix);
+		this.drawDrawList(camera);
+
+		if (occlusionCuller != null) {
+			Profiler.begin(OCCLUSION_QUERIES_SCOPE);
+			ShaderProgram program = this.errorShader.getProgram();
+			occlusionCuller.testBounds(program, program.getUniformLocation(GAME_OBJECT_MATRIX));
+			Profiler.end();
 		}
 
-		glBindVertexArray(0);
+		GLStateCache.bindVertexArray(0);
+		GLStateCache.useProgram(0);
 	}
 	
-	private void renderSkybox(Camera camera, Matrix4f vm) {
-		Mesh mesh = (Mesh) AssetDatabase.getInstance().getAsset(new AssetLocation("builtin/meshes/skybox.blend"));
+	private void renderSkybox(Camera camera) {
+		Mesh mesh = this.skyboxMesh;
+		if (mesh == null || mesh.getVaoId() == 0) {
+			return;
+		}
 	
 		//glDepthMask(false);
 				
@@ -126,27 +295,39 @@ public class GameRenderer {
 		ShaderProgram program = shader.getProgram();
 		program.bind();
 		
-		program.setUniform(PROJECTION_MATRIX, camera.getProjectionMatrix());
-		
-		Matrix4f viewMatrix = new Matrix4f();
-        viewMatrix.set(vm);
-        viewMatrix.m30(0);
-        viewMatrix.m31(0);
-        viewMatrix.m32(0);
-		program.setUniform(VIEW_MATRIX, viewMatrix);
+		// Keep the skybox centered on the camera, so only the camera's rotation
+		// affects it.
+		program.setUniform(GAME_OBJECT_MATRIX, this.skyboxMatrix.translation(this.cameraPosition));
 
 		if (camera.skybox != null) {
 			camera.skybox.setUniforms();
 		}
-
-		program.setUniform(GAME_OBJECT_MATRIX, new Matrix4f());
 		
-		glBindVertexArray(mesh.getVaoId());
-		glDrawElements(GL_TRIANGLES, mesh.getVerticeCount(), GL_UNSIGNED_INT, 0);
+		GLStateCache.bindVertexArray(mesh.getVaoId());
+		glDrawElements(GL_TRIANGLES, mesh.getVerticeCount(), mesh.getIndexType(), 0);
 		
 		//glDepthMask(true);
 	}
 	
+	/**
+	 * Writes the Camera's data to the {@link UniformBlocks#CAMERA_BLOCK} uniform
+	 * block, so it is shared by every Shader the Camera draws with.
+	 */
+	private void uploadCameraUniforms(Camera camera, Matrix4f viewMatrix) {
+		viewMatrix.originAffine(this.cameraPosition);
+
+		ByteBuffer data = this.cameraUniforms.getData();
+		camera.getProjectionMatrix().get(UniformBlocks.CAMERA_PROJECTION_MATRIX_OFFSET, data);
+		viewMatrix.get(UniformBlocks.CAMERA_VIEW_MATRIX_OFFSET, data);
+		Color fogColor = camera.fogColor;
+		data.putFloat(UniformBlocks.CAMERA_FOG_COLOR_OFFSET, fogColor.r);
+		data.putFloat(UniformBlocks.CAMERA_FOG_COLOR_OFFSET + 4, fogColor.g);
+		data.putFloat(UniformBlocks.CAMERA_FOG_COLOR_OFFSET + 8, fogColor.b);
+		data.putFloat(UniformBlocks.CAMERA_FOG_DENSITY_OFFSET, camera.fogDensity);
+		this.cameraPosition.get(UniformBlocks.CAMERA_POSITION_OFFSET, data);
+		this.cameraUniforms.upload();
+	}
+
 	private Shader getShaderFromMaterial(Material material) {
 		if (material != null) {
 			Shader matShader = material.getShader();
@@ -159,88 +340,217 @@ public class GameRenderer {
 	}
 	
 	private void func(ShaderData data) {
-		if (data.depth_test) {
-			glEnable(GL_DEPTH_TEST);
-		} else {
-			glDisable(GL_DEPTH_TEST);
-		}
-		
-		glDepthMask(data.enable_depth_mask);
-
-		if (data.culling == CullMode.OFF) {
-			glDisable(GL_CULL_FACE);
-		} else {
-			glEnable(GL_CULL_FACE);
-			if (data.culling == null || data.culling == CullMode.BACK) {
-				glCullFace(GL_BACK);
-			} else if (data.culling == CullMode.FRONT) {
-				glCullFace(GL_FRONT);
-			} else {
-				glCullFace(GL_FRONT_AND_BACK);
+		GLStateCache.setDepthTest(data.depth_test);
+		GLStateCache.setDepthMask(data.enable_depth_mask);
+		GLStateCache.setCulling(data.culling);
+	}
+	
+	/**
+	 * Adds every visible {@link Renderer} in the {@link RenderQueue} to
+	 * {@link GameRenderer#drawList}, with a key built from its Material, Shader
+	 * and distance from the Camera. {@link LodGroup}s pick their level here, and
+	 * are culled if they are too small to draw. If there is an OcclusionCuller,
+	 * Renderers that were hidden last frame are skipped.
+	 */
+	private void buildDrawList(Camera camera, Matrix4f viewMatrix, OcclusionCuller occlusionCuller) {
+		this.drawList.clear();
+		float nearPlane = camera.getNearPlane();
+		float inverseFarPlane = 1f / camera.getFarPlane();
+		Matrix4f projectionMatrix = camera.getProjectionMatrix();
+		boolean perspective = projectionMatrix.m23() != 0;
+		float projectionScale = projectionMatrix.m11();
+
+		List<RenderBucket> buckets = this.renderQueue.getBuckets();
+		for (int i = 0; i < buckets.size(); i++) {
+			RenderBucket bucket = buckets.get(i);
+			Shader shader = this.getShaderFromMaterial(bucket.material);
+			boolean transparent = shader.getData().transparent;
+			int programId = shader.getProgram().programId;
+			int renderOrder = bucket.getRenderOrder();
+
+			for (int j = 0; j < bucket.getRendererCount(); j++) {
+				Renderer renderer = bucket.getRenderer(j);
+				if (!this.isInFrustum(renderer)) {
+					this.culledCount++;
+					continue;
+				}
+
+				// isInFrustum() left the Renderer's center in boundsCenter.
+				Vector3f center = this.boundsCenter;
+				if (occlusionCuller != null && occlusionCuller.isOccluded(renderer, center, this.boundsRadius,
+						this.cameraPosition, nearPlane)) {
+					this.occludedCount++;
+					continue;
+				}
+				if (renderer instanceof LodGroup) {
+					// The fraction of the screen's height covered by the bounding sphere.
+					float screenHeight = this.boundsRadius * projectionScale;
+					if (perspective) {
+						screenHeight /= Math.max(center.distance(this.cameraPosition), 1e-5f);
+					}
+					if (!((LodGroup) renderer).selectLevel(screenHeight)) {
+						this.culledCount++;
+						continue;
+					}
+				}
+				this.visibleCount++;
+
+				float depth = -(viewMatrix.m02() * center.x + viewMatrix.m12() * center.y
+						+ viewMatrix.m22() * center.z + viewMatrix.m32());
+				this.drawList.add(renderer, renderOrder, transparent, programId, bucket.id, depth * inverseFarPlane);
 			}
 		}
 	}
-	
-	private void drawRenderInstruction(RenderInstruction c, Camera camera, Matrix4f viewMatrix) {
-		Material material = c.material;
-		Shader shader = this.getShaderFromMaterial(material);
-		this.func(shader.getData());
 
-		ShaderProgram program = shader.getProgram();
-		program.bind();
+	/**
+	 * Draws the {@link Renderer}s in {@link GameRenderer#drawList}, in order. The
+	 * Material's state is only set up when the bucket changes from one Renderer to
+	 * the next.
+	 */
+	private void drawDrawList(Camera camera) {
+		RenderBucket currentBucket = null;
+		ShaderProgram program = null;
+		boolean instancing = false;
+		boolean batching = false;
+		int modelMatrixLocation = -1;
+
+		Profiler.begin(DRAW_CALLS_SCOPE);
+		for (int i = 0; i < this.drawList.size(); i++) {
+			Renderer renderer = this.drawList.get(i);
+
+			if (renderer.bucket != currentBucket) {
+				if (batching) {
+					this.drawInstanceBatches();
+				}
 
-		program.setUniform(PROJECTION_MATRIX, camera.getProjectionMatrix());
-		program.setUniform(VIEW_MATRIX, viewMatrix);
-		program.setUniform(_FOG_COLOR, camera.fogColor.toVector3f());
-		program.setUniform(_FOG_DENSITY, camera.fogDensity);
+				currentBucket = renderer.bucket;
+				Shader shader = this.getShaderFromMaterial(currentBucket.material);
+				program = shader.getProgram();
+				this.bindMaterial(shader, currentBucket.material);
 
-		if (material != null) {
-			material.setUniforms();
-		}
+				instancing = shader.getData().instancing;
+				// Batching draws every instance of a Mesh at once, so it would break the
+				// back to front order that transparent draws need.
+				batching = instancing && !shader.getData().transparent;
+				modelMatrixLocation = program.getUniformLocation(GAME_OBJECT_MATRIX);
+			}
 
-		List<Renderer> renderers = c.renderers;
-		for (Renderer renderer : renderers) {
-			program.setUniform(GAME_OBJECT_MATRIX, renderer.gameObject().getWorldMatrix());
+			if (batching && renderer instanceof MeshRenderer) {
+				Mesh mesh = ((MeshRenderer) renderer).mesh;
+				if (mesh != null) {
+					this.addToInstanceBatch(mesh, renderer);
+				}
+				continue;
+			}
+			if (batching && renderer instanceof LodGroup) {
+				Mesh mesh = ((LodGroup) renderer).getCurrentMesh();
+				if (mesh != null) {
+					this.addToInstanceBatch(mesh, renderer);
+				}
+				continue;
+			}
+
+			if (instancing) {
+				InstanceBuffer.setConstant(renderer.gameObject().getCachedWorldMatrix());
+			} else {
+				program.setUniform(modelMatrixLocation, renderer.gameObject().getCachedWorldMatrix());
+			}
 
 			renderer.onRender(camera);
 		}
 
-		program.unbind();
+		if (batching) {
+			this.drawInstanceBatches();
+		}
+		Profiler.end();
 	}
 
-	private void createInstructionsRecursively(GameObject gameObject) {
-		if (!gameObject.isActive()) {
-			return;
+	private void bindMaterial(Shader shader, Material material) {
+		Profiler.begin(STATE_CHANGES_SCOPE);
+		this.func(shader.getData());
+
+		shader.getProgram().bind();
+
+		if (material != null) {
+			material.setUniforms();
 		}
+		Profiler.end();
+	}
 
-		for (JelloComponent component : gameObject.getAllComponents()) {
-			if (component.isEnabled()) {
-				if (component instanceof Renderer) {
-					Renderer renderer = (Renderer) component;
-					this.addInstruction(renderer.getMaterial(), renderer);
-				}
-			}
+	/**
+	 * Checks if a {@link Renderer} is inside of {@link GameRenderer#frustum}. The
+	 * Renderer's bounding sphere is tested first, as it is cheap, and only if it
+	 * intersects the frustum is the more accurate box tested.
+	 * <p>
+	 * The center and radius of the Renderer in world space are left in
+	 * {@link GameRenderer#boundsCenter} and {@link GameRenderer#boundsRadius}. Renderers without bounds use the position
+	 * of their GameObject, and are always considered visible.
+	 * 
+	 * @param renderer the Renderer to check
+	 * @return {@code true} if the Renderer may be visible
+	 */
+	private boolean isInFrustum(Renderer renderer) {
+		Matrix4fc worldMatrix = renderer.gameObject().getCachedWorldMatrix();
+		Bounds bounds = renderer.getBounds();
+		if (bounds == null) {
+			worldMatrix.getTranslation(this.boundsCenter);
+			this.boundsRadius = 0;
+			return true;
 		}
 
-		for (GameObject child : gameObject.getChildren()) {
-			this.createInstructionsRecursively(child);
+		worldMatrix.transformPosition(bounds.getCenter(), this.boundsCenter);
+		worldMatrix.getScale(this.scale);
+		float radius = bounds.getRadius() * Math.max(this.scale.x, Math.max(this.scale.y, this.scale.z));
+		this.boundsRadius = radius;
+
+		switch (this.frustum.intersectSphere(this.boundsCenter, radius)) {
+		case FrustumIntersection.INSIDE:
+			return true;
+		case FrustumIntersection.OUTSIDE:
+			return false;
+		default:
+			worldMatrix.transformAab(bounds.getMin(), bounds.getMax(), this.boundsMin, this.boundsMax);
+			return this.frustum.testAab(this.boundsMin, this.boundsMax);
 		}
 	}
 
-	private void addInstruction(Material material, Renderer renderer) {
-		RenderInstruction instruction = null;
-		for (RenderInstruction c1 : this.instructions) {
-			if (c1.material == material) {
-				instruction = c1;
-				break;
-			}
+	private void addToInstanceBatch(Mesh mesh, Renderer renderer) {
+		List<Renderer> batch = this.instanceBatches.get(mesh);
+		if (batch == null) {
+			int freeCount = this.freeBatches.size();
+			batch = freeCount > 0 ? this.freeBatches.remove(freeCount - 1) : new ArrayList<Renderer>();
+			this.instanceBatches.put(mesh, batch);
+			this.batchedMeshes.add(mesh);
 		}
+		batch.add(renderer);
+	}
+
+	/**
+	 * Draws every {@link Mesh} in {@link GameRenderer#instanceBatches} with a
+	 * single instanced draw call, or with {@link GameRenderer#indirectDrawer} if
+	 * there is one, and then clears the batches.
+	 */
+	private void drawInstanceBatches() {
+		for (int i = 0; i < this.batchedMeshes.size(); i++) {
+			Mesh mesh = this.batchedMeshes.get(i);
+			List<Renderer> batch = this.instanceBatches.remove(mesh);
+
+			if (this.indirectDrawer == null || !this.indirectDrawer.add(mesh, batch)) {
+				this.instanceBuffer.upload(batch);
+				GLStateCache.bindVertexArray(mesh.getVaoId());
+				this.instanceBuffer.bind();
+				glDrawElementsInstanced(GL_TRIANGLES, mesh.getVerticeCount(), mesh.getIndexType(), 0,
+						batch.size());
+				InstanceBuffer.unbindAttributes();
+			}
 
-		if (instruction == null) {
-			instruction = new RenderInstruction(material);
-			this.instructions.add(instruction);
+			batch.clear();
+			this.freeBatches.add(batch);
 		}
+		this.batchedMeshes.clear();
 
-		instruction.renderers.add(renderer);
+		if (this.indirectDrawer != null) {
+			this.indirectDrawer.flush();
+		}
 	}
 }
@@ -0,0 +1,263 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL44.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import com.codeshaper.jello.engine.asset.Mesh;
+
+/**
+ * Draws instance batches with {@code glMultiDrawElementsIndirect}, for OpenGL
+ * 4.3 contexts that also support persistent buffer mapping. The world matrices
+ * and draw commands are written straight into buffers that stay mapped for the
+ * life of the drawer, so nothing is uploaded with {@code glBufferData} and no
+ * calls are made per instance.
+ * <p>
+ * The buffers are split into three regions, and a different region is written
+ * each frame. A fence is placed after the last draw that reads a region, and
+ * the region is not written again until the fence has been passed, so the CPU
+ * never overwrites data that the GPU is still reading.
+ * <p>
+ * Meshes are not drawn from their own buffers. Instead, each Mesh is copied
+ * into a {@link MeshArena} that is shared by every Mesh with the same
+ * {@link VertexFormat} and index type, and each command's first index and base
+ * vertex point at the Mesh's copy. This means all of the commands added
+ * between two flushes are drawn with one call per arena, no matter how many
+ * different Meshes they draw. The instance matrices are read as the same
+ * per-instance attributes that {@link InstanceBuffer} provides, with each
+ * command's base instance pointing at its matrices, so Shaders work with either
+ * path.
+ * <p>
+ * The drawer holds GPU memory that must be freed with
+ * {@link IndirectDrawer#dispose()} when it is no longer needed.
+ */
+final class IndirectDrawer {
+
+	private static final int REGION_COUNT = 3;
+	private static final int MATRIX_BYTES = 16 * Float.BYTES;
+	/**
+	 * The size of a {@code DrawElementsIndirectCommand}: count, instance count,
+	 * first index, base vertex and base instance.
+	 */
+	private static final int COMMAND_BYTES = 5 * Integer.BYTES;
+	private static final int INITIAL_CAPACITY = 4096;
+	private static final int MAP_FLAGS = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+	private static final long FENCE_TIMEOUT = 1_000_000L;
+
+	private final long[] fences;
+	/**
+	 * The number of instances, and the number of commands, that fit in a region.
+	 */
+	private int capacity;
+	private int instanceVboId;
+	private int commandBufferId;
+	private ByteBuffer instanceData;
+	private ByteBuffer commandData;
+	private int region;
+	private int instanceCount;
+	private int commandCount;
+	/**
+	 * Set if a batch did not fit in the current region, so the buffers are grown
+	 * at the start of the next frame.
+	 */
+	private boolean overflowed;
+	/**
+	 * The number of commands in the current region that have been drawn. Commands
+	 * after this are waiting in their arena for the next flush.
+	 */
+	private int firstPendingCommand;
+	private final List<MeshArena> arenas;
+
+	/**
+	 * Checks if the current OpenGL context supports everything the drawer needs.
+	 *
+	 * @return {@code true} if an IndirectDrawer can be used
+	 */
+	static boolean isSupported() {
+		GLCapabilities capabilities = GL.getCapabilities();
+		return capabilities.OpenGL43 && (capabilities.OpenGL44 || capabilities.GL_ARB_buffer_storage);
+	}
+
+	IndirectDrawer() {
+		this.fences = new long[REGION_COUNT];
+		this.arenas = new ArrayList<MeshArena>();
+		this.createBuffers(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Moves on to the next region of the buffers. This must be called once at the
+	 * start of every frame, and may block if the GPU is more than two frames
+	 * behind.
+	 */
+	void beginFrame() {
+		this.fences[this.region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+
+		if (this.overflowed) {
+			for (int i = 0; i < REGION_COUNT; i++) {
+				this.waitForFence(i);
+			}
+			this.deleteBuffers();
+			this.createBuffers(this.capacity * 2);
+			this.overflowed = false;
+		}
+
+		this.region = (this.region + 1) % REGION_COUNT;
+		this.waitForFence(this.region);
+		this.instanceCount = 0;
+		this.commandCount = 0;
+		this.firstPendingCommand = 0;
+	}
+
+	/**
+	 * Writes a batch of instances of a {@link Mesh} to the current region. The
+	 * batch is not drawn until {@link IndirectDrawer#flush()} is called.
+	 *
+	 * @param mesh  the Mesh to draw
+	 * @param batch the Renderers that are drawing the Mesh
+	 * @return {@code true} if the batch was added, {@code false} if the region is
+	 *         full or the Mesh has no vertices on the GPU, and the batch must be
+	 *         drawn some other way
+	 */
+	boolean add(Mesh mesh, List<? extends Renderer> batch) {
+		if (mesh.getFormat() == null) {
+			return false;
+		}
+		if (this.instanceCount + batch.size() > this.capacity || this.commandCount == this.capacity) {
+			this.overflowed = true;
+			return false;
+		}
+
+		MeshArena arena = this.getArena(mesh.getFormat(), mesh.getIndexType());
+		if (arena.wouldRepack(mesh)) {
+			// The commands waiting in the arena point at where Meshes are now.
+			this.flush();
+		}
+		MeshArena.Slot slot = arena.getSlot(mesh);
+
+		int baseInstance = this.region * this.capacity + this.instanceCount;
+		for (int i = 0; i < batch.size(); i++) {
+			batch.get(i).gameObject().getCachedWorldMatrix().get((baseInstance + i) * MATRIX_BYTES,
+					this.instanceData);
+		}
+
+		arena.addCommand(mesh.getVerticeCount(), batch.size(), slot.firstIndex, slot.baseVertex, baseInstance);
+
+		this.instanceCount += batch.size();
+		this.commandCount++;
+		return true;
+	}
+
+	/**
+	 * Draws every command that has been added since the last flush, with one call
+	 * for each arena that has commands.
+	 */
+	void flush() {
+		if (this.commandCount == this.firstPendingCommand) {
+			return;
+		}
+
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, this.commandBufferId);
+		for (int i = 0; i < this.arenas.size(); i++) {
+			MeshArena arena = this.arenas.get(i);
+			int pendingCount = arena.getPendingCommandCount();
+			if (pendingCount == 0) {
+				continue;
+			}
+
+			int firstCommand = this.region * this.capacity + this.firstPendingCommand;
+			arena.writeCommands(this.commandData, firstCommand * COMMAND_BYTES);
+
+			GLStateCache.bindVertexArray(arena.getVaoId());
+			InstanceBuffer.bindAttributes(this.instanceVboId);
+			glMultiDrawElementsIndirect(GL_TRIANGLES, arena.indexType, (long) firstCommand * COMMAND_BYTES,
+					pendingCount, 0);
+			InstanceBuffer.unbindAttributes();
+
+			this.firstPendingCommand += pendingCount;
+		}
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+	}
+
+	/**
+	 * Frees all of the drawer's buffers and arenas. The drawer must not be used
+	 * after this.
+	 */
+	void dispose() {
+		for (int i = 0; i < REGION_COUNT; i++) {
+			if (this.fences[i] != 0) {
+				glDeleteSync(this.fences[i]);
+				this.fences[i] = 0;
+			}
+		}
+		this.deleteBuffers();
+		for (int i = 0; i < this.arenas.size(); i++) {
+			this.arenas.get(i).dispose();
+		}
+		this.arenas.clear();
+		GLStateCache.invalidate(); // The ids may be reused.
+	}
+
+	private MeshArena getArena(VertexFormat format, int indexType) {
+		for (int i = 0; i < this.arenas.size(); i++) {
+			MeshArena arena = this.arenas.get(i);
+			if (arena.indexType == indexType && arena.format.equals(format)) {
+				return arena;
+			}
+		}
+		MeshArena arena = new MeshArena(format, indexType);
+		this.arenas.add(arena);
+		return arena;
+	}
+
+	private void waitForFence(int region) {
+		long fence = this.fences[region];
+		if (fence == 0) {
+			return;
+		}
+
+		int result;
+		do {
+			result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+		} while (result == GL_TIMEOUT_EXPIRED);
+		glDeleteSync(fence);
+		this.fences[region] = 0;
+	}
+
+	private void createBuffers(int capacity) {
+		this.capacity = capacity;
+
+		long instanceBytes = (long) REGION_COUNT * capacity * MATRIX_BYTES;
+		this.instanceVboId = glGenBuffers();
+		glBindBuffer(GL_ARRAY_BUFFER, this.instanceVboId);
+		glBufferStorage(GL_ARRAY_BUFFER, instanceBytes, MAP_FLAGS);
+		this.instanceData = glMapBufferRange(GL_ARRAY_BUFFER, 0, instanceBytes, MAP_FLAGS);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		long commandBytes = (long) REGION_COUNT * capacity * COMMAND_BYTES;
+		this.commandBufferId = glGenBuffers();
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, this.commandBufferId);
+		glBufferStorage(GL_DRAW_INDIRECT_BUFFER, commandBytes, MAP_FLAGS);
+		this.commandData = glMapBufferRange(GL_DRAW_INDIRECT_BUFFER, 0, commandBytes, MAP_FLAGS);
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+	}
+
+	private void deleteBuffers() {
+		glBindBuffer(GL_ARRAY_BUFFER, this.instanceVboId);
+		glUnmapBuffer(GL_ARRAY_BUFFER);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		glDeleteBuffers(this.instanceVboId);
+
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, this.commandBufferId);
+		glUnmapBuffer(GL_DRAW_INDIRECT_BUFFER);
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+		glDeleteBuffers(this.commandBufferId);
+
+		this.instanceData = null;
+		this.commandData = null;
+	}
+}
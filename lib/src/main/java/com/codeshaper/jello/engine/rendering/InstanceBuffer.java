@@ -0,0 +1,126 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL33.*;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import org.joml.Matrix4fc;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * A dynamic vertex buffer that holds a world matrix for every instance in an
+ * instanced draw call. The matrix takes up four attribute locations, starting
+ * at {@link InstanceBuffer#MATRIX_LOCATION}, with one column in each.
+ */
+final class InstanceBuffer {
+
+	/**
+	 * The first attribute location of the per-instance world matrix. Shaders
+	 * that support instancing should declare
+	 * {@code layout (location=2) in mat4 instanceMatrix;}.
+	 */
+	static final int MATRIX_LOCATION = 2;
+
+	private static final int FLOATS_PER_INSTANCE = 16;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final int vboId;
+	private FloatBuffer data;
+
+	InstanceBuffer() {
+		this.vboId = glGenBuffers();
+		this.data = MemoryUtil.memAllocFloat(INITIAL_CAPACITY * FLOATS_PER_INSTANCE);
+	}
+
+	/**
+	 * Writes the world matrix of every {@link Renderer} to the buffer and uploads
+	 * it to the GPU.
+	 *
+	 * @param renderers the Renderers to upload
+	 */
+	void upload(List<? extends Renderer> renderers) {
+		int floatCount = renderers.size() * FLOATS_PER_INSTANCE;
+		if (floatCount > this.data.capacity()) {
+			int newCapacity = Math.max(floatCount, this.data.capacity() * 2);
+			this.data = MemoryUtil.memRealloc(this.data, newCapacity);
+		}
+
+		for (int i = 0; i < renderers.size(); i++) {
+			renderers.get(i).gameObject().getCachedWorldMatrix().get(i * FLOATS_PER_INSTANCE, this.data);
+		}
+		this.data.position(0);
+		this.data.limit(floatCount);
+
+		glBindBuffer(GL_ARRAY_BUFFER, this.vboId);
+		// Orphan the old storage so the driver doesn't have to wait for the previous
+		// draw call to finish reading it.
+		glBufferData(GL_ARRAY_BUFFER, (long) this.data.capacity() * Float.BYTES, GL_STREAM_DRAW);
+		glBufferSubData(GL_ARRAY_BUFFER, 0, this.data);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		this.data.clear();
+	}
+
+	/**
+	 * Deletes the buffer and frees its data. The InstanceBuffer must not be used
+	 * after this.
+	 */
+	void dispose() {
+		glDeleteBuffers(this.vboId);
+		MemoryUtil.memFree(this.data);
+	}
+
+	/**
+	 * Points the per-instance matrix attributes of the currently bound Vertex
+	 * Array Object at this buffer. {@link InstanceBuffer#unbindAttributes()}
+	 * must be called once the instanced draw is done.
+	 */
+	void bind() {
+		bindAttributes(this.vboId);
+	}
+
+	/**
+	 * Points the per-instance matrix attributes of the currently bound Vertex
+	 * Array Object at a buffer, laid out the same way as an InstanceBuffer.
+	 *
+	 * @param vboId the id of the buffer
+	 */
+	static void bindAttributes(int vboId) {
+		glBindBuffer(GL_ARRAY_BUFFER, vboId);
+		int stride = FLOATS_PER_INSTANCE * Float.BYTES;
+		for (int i = 0; i < 4; i++) {
+			int location = MATRIX_LOCATION + i;
+			glEnableVertexAttribArray(location);
+			glVertexAttribPointer(location, 4, GL_FLOAT, false, stride, (long) i * 4 * Float.BYTES);
+			glVertexAttribDivisor(location, 1);
+		}
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Disables the per-instance matrix attributes of the currently bound Vertex
+	 * Array Object. A Mesh's Vertex Array Object is shared by its instanced and
+	 * non-instanced draws, and while the attributes are enabled the constant set
+	 * by {@link InstanceBuffer#setConstant(Matrix4fc)} is ignored.
+	 */
+	static void unbindAttributes() {
+		for (int i = 0; i < 4; i++) {
+			glDisableVertexAttribArray(MATRIX_LOCATION + i);
+		}
+	}
+
+	/**
+	 * Sets the per-instance matrix attributes to a constant value. This is used
+	 * for Renderers that draw with their own Vertex Array Object and don't have the
+	 * instance attributes enabled.
+	 *
+	 * @param matrix the world matrix
+	 */
+	static void setConstant(Matrix4fc matrix) {
+		glVertexAttrib4f(MATRIX_LOCATION, matrix.m00(), matrix.m01(), matrix.m02(), matrix.m03());
+		glVertexAttrib4f(MATRIX_LOCATION + 1, matrix.m10(), matrix.m11(), matrix.m12(), matrix.m13());
+		glVertexAttrib4f(MATRIX_LOCATION + 2, matrix.m20(), matrix.m21(), matrix.m22(), matrix.m23());
+		glVertexAttrib4f(MATRIX_LOCATION + 3, matrix.m30(), matrix.m31(), matrix.m32(), matrix.m33());
+	}
+}
@@ -1,22 +1,529 @@
 package com.codeshaper.jello.engine.rendering;
 
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
 import org.joml.Vector3d;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
 
 import com.codeshaper.jello.editor.property.modifier.MinValue;
+import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.Bounds;
+import com.codeshaper.jello.engine.Color;
 import com.codeshaper.jello.engine.ComponentIcon;
 import com.codeshaper.jello.engine.ComponentName;
-import com.codeshaper.jello.engine.JelloComponent;
 import com.codeshaper.jello.engine.asset.Material;
+import com.codeshaper.jello.engine.asset.Shader;
+import com.codeshaper.jello.engine.asset.Texture;
+import com.codeshaper.jello.engine.database.AssetDatabase;
 
+/**
+ * Draws a line through a list of points, in the local space of the
+ * GameObject, as a ribbon that always faces the camera.
+ * <p>
+ * The ribbon is turned towards the camera in the vertex shader, so its
+ * vertices only need to be built again when the points or the shape of the
+ * line change, not when the camera moves. The vertices are kept in a dynamic
+ * vertex buffer that is reused for the life of the LineRenderer.
+ * <p>
+ * The Material's Shader must do the turning. Each vertex has the point it
+ * belongs to, the direction of the line at that point, and how far to push
+ * the vertex out across and along the line:
+ * <ul>
+ * <li>{@code layout (location=0) in vec3 inPosition;}</li>
+ * <li>{@code layout (location=1) in vec2 texCoord;}, with the distance along
+ * the line in {@code x}</li>
+ * <li>{@code layout (location=6) in vec3 inDirection;}</li>
+ * <li>{@code layout (location=7) in vec2 inOffset;}, in world units</li>
+ * <li>{@code layout (location=8) in vec3 inTurn;}, the cross product of the
+ * directions into and out of a rounded corner, or zero for vertices that are
+ * not part of one. Of the two fans that round a corner, only the one on the
+ * outside of the corner, as seen by the camera, should be drawn. The other is
+ * collapsed by moving its vertices to the line, so it doesn't draw over the
+ * segments on the inside of the corner.</li>
+ * </ul>
+ * {@code builtin/shaders/line.shader} does this, and is used if no Material is
+ * set.
+ */
 @ComponentName("Rendering/Line Renderer")
 @ComponentIcon("/_editor/componentIcons/lineRenderer.png")
-public final class LineRenderer extends JelloComponent {
+public final class LineRenderer extends Renderer {
+
+	private static final int VERTEX_SIZE = 52;
+	private static final int FLOATS_PER_VERTEX = VERTEX_SIZE / Float.BYTES;
+	private static final int TEXTURE_COORDINATE_OFFSET = 12;
+	private static final int DIRECTION_OFFSET = 20;
+	private static final int OFFSET_OFFSET = 32;
+	private static final int TURN_OFFSET = 40;
+	private static final int DIRECTION_LOCATION = VertexFormat.NORMAL_LOCATION;
+	private static final int OFFSET_LOCATION = VertexFormat.TANGENT_LOCATION;
+	private static final int TURN_LOCATION = VertexFormat.COLOR_LOCATION;
+	/**
+	 * The most a mitered corner is lengthened by, so sharp corners don't spike
+	 * out to infinity.
+	 */
+	private static final float MITER_LIMIT = 4f;
+	private static final int INITIAL_CAPACITY = 64;
 
+	private static Material defaultMaterial;
+	private static Texture defaultTexture;
+	/**
+	 * The pixels of {@link LineRenderer#defaultTexture}. A runtime Texture reads
+	 * from the buffer it was made with for as long as it is readable, and doesn't
+	 * free it, so this is freed once the Texture has been unloaded.
+	 */
+	private static ByteBuffer defaultPixels;
+
+	/**
+	 * The points of the line. If the elements of the array are changed in place,
+	 * the change is seen the next time the line is drawn.
+	 */
 	public Vector3d[] points;
 	public Material material;
 	@MinValue(0f)
-	public float width;
+	public float width = 0.1f;
+	/**
+	 * The number of extra vertices used to round each corner. If 0, corners are
+	 * mitered.
+	 */
 	public int pointVerticeCount;
+	/**
+	 * The number of extra vertices used to round each end of the line. If 0, the
+	 * ends are flat.
+	 */
 	public int endcapVerticeCount;
+	/**
+	 * If {@code true}, the last point is joined back to the first.
+	 */
 	public boolean loop;
-}
\ No newline at end of file
+
+	private transient int vaoId;
+	private transient int vboId;
+	private transient int eboId;
+	private transient FloatBuffer vertices;
+	private transient IntBuffer indices;
+	private transient int vertexCount;
+	private transient int indexCount;
+	/**
+	 * The size of the vertex and index buffers on the GPU, in bytes.
+	 */
+	private transient long vertexCapacity, indexCapacity;
+	/**
+	 * The non-null points the geometry was last built from.
+	 */
+	private transient float[] cachedPositions = new float[0];
+	private transient float cachedWidth;
+	private transient int cachedPointVerticeCount;
+	private transient int cachedEndcapVerticeCount;
+	private transient boolean cachedLoop;
+	private transient boolean isGeometryDirty = true;
+	private transient Bounds bounds;
+
+	@Override
+	public Material getMaterial() {
+		if (this.material != null) {
+			return this.material;
+		}
+
+		if (LineRenderer.defaultMaterial == null) {
+			ByteBuffer white = MemoryUtil.memAlloc(4);
+			white.put((byte) 255).put((byte) 255).put((byte) 255).put((byte) 255).flip();
+			LineRenderer.defaultPixels = white;
+			LineRenderer.defaultTexture = new Texture(1, 1, white);
+			LineRenderer.defaultMaterial = new Material(null);
+			LineRenderer.defaultMaterial.setShader((Shader) AssetDatabase.getInstance()
+					.getAsset(new AssetLocation("builtin/shaders/line.shader")));
+			LineRenderer.defaultMaterial.setTexture("mainTexture", LineRenderer.defaultTexture);
+			LineRenderer.defaultMaterial.setColor("mainColor", Color.white);
+		}
+		return LineRenderer.defaultMaterial;
+	}
+
+	/**
+	 * Unloads the Material used by LineRenderers without one, and its Texture. It
+	 * is made again the next time it's needed.
+	 */
+	static void disposeDefaultMaterial() {
+		if (LineRenderer.defaultMaterial == null) {
+			return;
+		}
+
+		LineRenderer.defaultMaterial.unload();
+		LineRenderer.defaultTexture.unload();
+		MemoryUtil.memFree(LineRenderer.defaultPixels);
+		LineRenderer.defaultMaterial = null;
+		LineRenderer.defaultTexture = null;
+		LineRenderer.defaultPixels = null;
+	}
+
+	@Override
+	public Bounds getBounds() {
+		this.checkForChanges();
+		return this.bounds;
+	}
+
+	@Override
+	public void onRender(Camera camera) {
+		this.checkForChanges();
+		if (this.vaoId == 0) {
+			this.createBuffers();
+		}
+		if (this.isGeometryDirty) {
+			this.buildGeometry();
+			this.upload();
+			this.isGeometryDirty = false;
+		}
+
+		if (this.indexCount > 0) {
+			GLStateCache.bindVertexArray(this.vaoId);
+			glDrawElements(GL_TRIANGLES, this.indexCount, GL_UNSIGNED_INT, 0);
+		}
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		if (this.vaoId != 0) {
+			glDeleteVertexArrays(this.vaoId);
+			glDeleteBuffers(this.vboId);
+			glDeleteBuffers(this.eboId);
+			GLStateCache.invalidate(); // The ids may be reused.
+			MemoryUtil.memFree(this.vertices);
+			MemoryUtil.memFree(this.indices);
+			this.vaoId = 0;
+			this.vertices = null;
+			this.indices = null;
+		}
+	}
+
+	/**
+	 * Compares the points and settings with the ones the geometry was last built
+	 * from, marking the geometry as dirty and updating the bounds if anything
+	 * changed.
+	 */
+	private void checkForChanges() {
+		boolean changed = this.width != this.cachedWidth
+				|| this.pointVerticeCount != this.cachedPointVerticeCount
+				|| this.endcapVerticeCount != this.cachedEndcapVerticeCount
+				|| this.loop != this.cachedLoop;
+		this.cachedWidth = this.width;
+		this.cachedPointVerticeCount = this.pointVerticeCount;
+		this.cachedEndcapVerticeCount = this.endcapVerticeCount;
+		this.cachedLoop = this.loop;
+
+		int pointCount = 0;
+		if (this.points != null) {
+			for (Vector3d point : this.points) {
+				if (point != null) {
+					pointCount++;
+				}
+			}
+		}
+		if (pointCount * 3 != this.cachedPositions.length) {
+			this.cachedPositions = new float[pointCount * 3];
+			changed = true;
+		}
+		if (pointCount > 0) {
+			int index = 0;
+			for (Vector3d point : this.points) {
+				if (point == null) {
+					continue;
+				}
+				float x = (float) point.x;
+				float y = (float) point.y;
+				float z = (float) point.z;
+				if (x != this.cachedPositions[index] || y != this.cachedPositions[index + 1]
+						|| z != this.cachedPositions[index + 2]) {
+					this.cachedPositions[index] = x;
+					this.cachedPositions[index + 1] = y;
+					this.cachedPositions[index + 2] = z;
+					changed = true;
+				}
+				index += 3;
+			}
+		}
+
+		if (changed || this.bounds == null) {
+			this.isGeometryDirty = true;
+			// The ribbon reaches past the points by half its width, more at mitered
+			// corners.
+			Bounds pointBounds = Bounds.fromPositions(this.cachedPositions);
+			float reach = Math.max(this.width, 0) / 2 * MITER_LIMIT;
+			this.bounds = new Bounds(
+					pointBounds.getMin().sub(reach, reach, reach, new Vector3f()),
+					pointBounds.getMax().add(reach, reach, reach, new Vector3f()));
+		}
+	}
+
+	private void createBuffers() {
+		this.vertices = MemoryUtil.memAllocFloat(INITIAL_CAPACITY * FLOATS_PER_VERTEX);
+		this.indices = MemoryUtil.memAllocInt(INITIAL_CAPACITY * 3);
+
+		this.vaoId = glGenVertexArrays();
+		this.vboId = glGenBuffers();
+		this.eboId = glGenBuffers();
+
+		GLStateCache.bindVertexArray(this.vaoId);
+		glBindBuffer(GL_ARRAY_BUFFER, this.vboId);
+		glEnableVertexAttribArray(VertexFormat.POSITION_LOCATION);
+		glVertexAttribPointer(VertexFormat.POSITION_LOCATION, 3, GL_FLOAT, false, VERTEX_SIZE, 0);
+		glEnableVertexAttribArray(VertexFormat.TEXTURE_COORDINATE_LOCATION);
+		glVertexAttribPointer(VertexFormat.TEXTURE_COORDINATE_LOCATION, 2, GL_FLOAT, false, VERTEX_SIZE,
+				TEXTURE_COORDINATE_OFFSET);
+		glEnableVertexAttribArray(DIRECTION_LOCATION);
+		glVertexAttribPointer(DIRECTION_LOCATION, 3, GL_FLOAT, false, VERTEX_SIZE, DIRECTION_OFFSET);
+		glEnableVertexAttribArray(OFFSET_LOCATION);
+		glVertexAttribPointer(OFFSET_LOCATION, 2, GL_FLOAT, false, VERTEX_SIZE, OFFSET_OFFSET);
+		glEnableVertexAttribArray(TURN_LOCATION);
+		glVertexAttribPointer(TURN_LOCATION, 3, GL_FLOAT, false, VERTEX_SIZE, TURN_OFFSET);
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.eboId);
+		GLStateCache.bindVertexArray(0);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Uploads the vertices and indices, orphaning the old storage so the driver
+	 * doesn't have to wait for the previous frame to finish reading it.
+	 */
+	private void upload() {
+		this.vertices.position(0).limit(this.vertexCount * FLOATS_PER_VERTEX);
+		this.indices.position(0).limit(this.indexCount);
+
+		long vertexSize = (long) this.vertexCount * VERTEX_SIZE;
+		long indexSize = (long) this.indexCount * Integer.BYTES;
+		if (vertexSize > this.vertexCapacity) {
+			this.vertexCapacity = Math.max(vertexSize, this.vertexCapacity * 2);
+		}
+		if (indexSize > this.indexCapacity) {
+			this.indexCapacity = Math.max(indexSize, this.indexCapacity * 2);
+		}
+
+		glBindBuffer(GL_ARRAY_BUFFER, this.vboId);
+		glBufferData(GL_ARRAY_BUFFER, this.vertexCapacity, GL_DYNAMIC_DRAW);
+		glBufferSubData(GL_ARRAY_BUFFER, 0, this.vertices);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		// The element array binding is part of the VAO's state.
+		GLStateCache.bindVertexArray(this.vaoId);
+		glBufferData(GL_ELEMENT_ARRAY_BUFFER, this.indexCapacity, GL_DYNAMIC_DRAW);
+		glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, this.indices);
+		GLStateCache.bindVertexArray(0);
+
+		this.vertices.clear();
+		this.indices.clear();
+	}
+
+	/**
+	 * Builds the ribbon from {@link LineRenderer#cachedPositions}: a quad for
+	 * every segment, and fans for rounded corners and ends.
+	 */
+	private void buildGeometry() {
+		this.vertexCount = 0;
+		this.indexCount = 0;
+
+		float[] p = this.cachedPositions;
+		int pointCount = p.length / 3;
+		float halfWidth = Math.max(this.width, 0) / 2;
+		if (pointCount < 2 || halfWidth == 0) {
+			return;
+		}
+		boolean closed = this.loop && pointCount > 2;
+		int segmentCount = closed ? pointCount : pointCount - 1;
+
+		// The direction of every segment, and the distance to the start of each.
+		float[] directions = new float[segmentCount * 3];
+		float[] distances = new float[segmentCount + 1];
+		int firstValid = -1;
+		for (int i = 0; i < segmentCount; i++) {
+			int a = i * 3;
+			int b = ((i + 1) % pointCount) * 3;
+			float dx = p[b] - p[a];
+			float dy = p[b + 1] - p[a + 1];
+			float dz = p[b + 2] - p[a + 2];
+			float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			distances[i + 1] = distances[i] + length;
+			if (length > 1e-6f) {
+				directions[a] = dx / length;
+				directions[a + 1] = dy / length;
+				directions[a + 2] = dz / length;
+				if (firstValid == -1) {
+					firstValid = i;
+				}
+			} else if (firstValid != -1) {
+				// Repeated points carry on in the direction of the segment before them.
+				System.arraycopy(directions, a - 3, directions, a, 3);
+			}
+		}
+		if (firstValid == -1) {
+			return; // Every point is in the same place.
+		}
+		for (int i = 0; i < firstValid; i++) {
+			System.arraycopy(directions, firstValid * 3, directions, i * 3, 3);
+		}
+		float totalLength = distances[segmentCount];
+
+		int cornerVertices = Math.max(0, this.pointVerticeCount);
+		if (cornerVertices == 0) {
+			// Mitered corners: one pair of vertices at every point, shared by the
+			// segments on either side of it. A closed line repeats the first pair at
+			// the end, so the texture coordinates can run from 0 to 1.
+			int rings = closed ? pointCount + 1 : pointCount;
+			for (int i = 0; i < rings; i++) {
+				int point = i % pointCount;
+				int in = closed ? (i + segmentCount - 1) % segmentCount : Math.max(i - 1, 0);
+				int out = closed ? i % segmentCount : Math.min(i, segmentCount - 1);
+				float dx = directions[in * 3] + directions[out * 3];
+				float dy = directions[in * 3 + 1] + directions[out * 3 + 1];
+				float dz = directions[in * 3 + 2] + directions[out * 3 + 2];
+				float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+				if (length < 1e-6f) {
+					// The line doubles back on itself.
+					dx = directions[in * 3];
+					dy = directions[in * 3 + 1];
+					dz = directions[in * 3 + 2];
+				} else {
+					dx /= length;
+					dy /= length;
+					dz /= length;
+				}
+				float cos = dx * directions[out * 3] + dy * directions[out * 3 + 1] + dz * directions[out * 3 + 2];
+				float miter = Math.min(1f / Math.max(cos, 1e-6f), MITER_LIMIT);
+				float u = distances[i] / totalLength;
+
+				int first = this.vertexCount;
+				this.putVertex(p, point, u, 0, dx, dy, dz, halfWidth * miter, 0);
+				this.putVertex(p, point, u, 1, dx, dy, dz, -halfWidth * miter, 0);
+				if (i > 0) {
+					this.putQuad(first - 2, first - 1, first + 1, first);
+				}
+			}
+		} else {
+			// Rounded corners: a quad for every segment, with a fan on each side of
+			// every corner to fill the gap between them. Which side is the outside of the
+			// corner depends on the camera, so the shader collapses the inside fan using
+			// the corner's turn.
+			for (int i = 0; i < segmentCount; i++) {
+				int d = i * 3;
+				float u0 = distances[i] / totalLength;
+				float u1 = distances[i + 1] / totalLength;
+				int first = this.vertexCount;
+				int end = (i + 1) % pointCount;
+				this.putVertex(p, i, u0, 0, directions[d], directions[d + 1], directions[d + 2], halfWidth, 0);
+				this.putVertex(p, i, u0, 1, directions[d], directions[d + 1], directions[d + 2], -halfWidth, 0);
+				this.putVertex(p, end, u1, 0, directions[d], directions[d + 1], directions[d + 2], halfWidth, 0);
+				this.putVertex(p, end, u1, 1, directions[d], directions[d + 1], directions[d + 2], -halfWidth, 0);
+				this.putQuad(first, first + 1, first + 3, first + 2);
+			}
+
+			int firstCorner = closed ? 0 : 1;
+			int lastCorner = closed ? pointCount - 1 : pointCount - 2;
+			for (int i = firstCorner; i <= lastCorner; i++) {
+				int in = ((i + segmentCount - 1) % segmentCount) * 3;
+				int out = (i % segmentCount) * 3;
+				float u = distances[i] / totalLength;
+				float turnX = directions[in + 1] * directions[out + 2] - directions[in + 2] * directions[out + 1];
+				float turnY = directions[in + 2] * directions[out] - directions[in] * directions[out + 2];
+				float turnZ = directions[in] * directions[out + 1] - directions[in + 1] * directions[out];
+				int center = this.vertexCount;
+				this.putVertex(p, i, u, 0.5f, directions[in], directions[in + 1], directions[in + 2], 0, 0);
+				for (int side = 1; side >= -1; side -= 2) {
+					for (int j = 0; j <= cornerVertices + 1; j++) {
+						float t = (float) j / (cornerVertices + 1);
+						float dx = directions[in] + (directions[out] - directions[in]) * t;
+						float dy = directions[in + 1] + (directions[out + 1] - directions[in + 1]) * t;
+						float dz = directions[in + 2] + (directions[out + 2] - directions[in + 2]) * t;
+						this.putVertex(p, i, u, side > 0 ? 0 : 1, dx, dy, dz, halfWidth * side, 0, turnX, turnY,
+								turnZ);
+						if (j > 0) {
+							this.putTriangle(center, this.vertexCount - 2, this.vertexCount - 1);
+						}
+					}
+				}
+			}
+		}
+
+		int capVertices = Math.max(0, this.endcapVerticeCount);
+		if (!closed && capVertices > 0) {
+			int last = (segmentCount - 1) * 3;
+			this.putCap(p, 0, 0, directions[0], directions[1], directions[2], -1, capVertices, halfWidth);
+			this.putCap(p, pointCount - 1, 1, directions[last], directions[last + 1], directions[last + 2], 1,
+					capVertices, halfWidth);
+		}
+	}
+
+	/**
+	 * Adds a half circle fan to an end of the line.
+	 *
+	 * @param outwards -1 for the start of the line, 1 for the end
+	 */
+	private void putCap(float[] p, int point, float u, float dx, float dy, float dz, int outwards, int capVertices,
+			float halfWidth) {
+		int center = this.vertexCount;
+		this.putVertex(p, point, u, 0.5f, dx, dy, dz, 0, 0);
+		for (int i = 0; i <= capVertices + 1; i++) {
+			double angle = Math.PI * i / (capVertices + 1);
+			float cos = (float) Math.cos(angle);
+			float sin = (float) Math.sin(angle);
+			this.putVertex(p, point, u, 0.5f - cos / 2, dx, dy, dz, halfWidth * cos, halfWidth * sin * outwards);
+			if (i > 0) {
+				this.putTriangle(center, this.vertexCount - 2, this.vertexCount - 1);
+			}
+		}
+	}
+
+	private void putVertex(float[] p, int point, float u, float v, float dx, float dy, float dz, float across,
+			float along) {
+		this.putVertex(p, point, u, v, dx, dy, dz, across, along, 0, 0, 0);
+	}
+
+	private void putVertex(float[] p, int point, float u, float v, float dx, float dy, float dz, float across,
+			float along, float turnX, float turnY, float turnZ) {
+		int required = (this.vertexCount + 1) * FLOATS_PER_VERTEX;
+		if (required > this.vertices.capacity()) {
+			this.vertices = MemoryUtil.memRealloc(this.vertices, Math.max(required, this.vertices.capacity() * 2));
+			this.vertices.clear();
+		}
+
+		int offset = this.vertexCount * FLOATS_PER_VERTEX;
+		this.vertices.put(offset, p[point * 3]);
+		this.vertices.put(offset + 1, p[point * 3 + 1]);
+		this.vertices.put(offset + 2, p[point * 3 + 2]);
+		this.vertices.put(offset + 3, u);
+		this.vertices.put(offset + 4, v);
+		this.vertices.put(offset + 5, dx);
+		this.vertices.put(offset + 6, dy);
+		this.vertices.put(offset + 7, dz);
+		this.vertices.put(offset + 8, across);
+		this.vertices.put(offset + 9, along);
+		this.vertices.put(offset + 10, turnX);
+		this.vertices.put(offset + 11, turnY);
+		this.vertices.put(offset + 12, turnZ);
+		this.vertexCount++;
+	}
+
+	/**
+	 * Adds two triangles, with the corners given in order around the quad.
+	 */
+	private void putQuad(int a, int b, int c, int d) {
+		this.putTriangle(a, b, c);
+		this.putTriangle(c, d, a);
+	}
+
+	private void putTriangle(int a, int b, int c) {
+		int required = this.indexCount + 3;
+		if (required > this.indices.capacity()) {
+			this.indices = MemoryUtil.memRealloc(this.indices, Math.max(required, this.indices.capacity() * 2));
+			this.indices.clear();
+		}
+
+		this.indices.put(this.indexCount, a);
+		this.indices.put(this.indexCount + 1, b);
+		this.indices.put(this.indexCount + 2, c);
+		this.indexCount += 3;
+	}
+}
@@ -0,0 +1,144 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL30.*;
+
+import com.codeshaper.jello.editor.property.modifier.Range;
+import com.codeshaper.jello.engine.Bounds;
+import com.codeshaper.jello.engine.ComponentIcon;
+import com.codeshaper.jello.engine.ComponentName;
+import com.codeshaper.jello.engine.asset.Material;
+import com.codeshaper.jello.engine.asset.Mesh;
+
+/**
+ * LodGroup components render one of several {@link Mesh}es, picking a less
+ * detailed one the smaller the object is on screen. The level is picked by
+ * every Camera, every frame, from the height of the object's bounding sphere
+ * as a fraction of the height of the screen.
+ * <p>
+ * Levels should be ordered from most to least detailed, with decreasing
+ * {@link LodLevel#screenHeight}s. The first level whose screen height the
+ * object is at least as tall as is drawn. If the object is smaller than every
+ * level's screen height, nothing is drawn.
+ */
+@ComponentName("Rendering/LOD Group")
+@ComponentIcon("/_editor/componentIcons/meshRenderer.png")
+public final class LodGroup extends Renderer {
+
+	public Material material;
+	public LodLevel[] levels;
+
+	/**
+	 * The index of the level picked for the Camera that is currently rendering,
+	 * or -1 if nothing should be drawn.
+	 */
+	private transient int currentLevel;
+
+	@Override
+	public Material getMaterial() {
+		return this.material;
+	}
+
+	/**
+	 * Gets the bounds of the most detailed level, so the LodGroup is culled the
+	 * same way no matter which level is drawn.
+	 */
+	@Override
+	public Bounds getBounds() {
+		Mesh mesh = this.getLevelMesh(0);
+		return mesh != null ? mesh.getBounds() : null;
+	}
+
+	@Override
+	public void onRender(Camera camera) {
+		Mesh mesh = this.getCurrentMesh();
+		if (mesh != null) {
+			GLStateCache.bindVertexArray(mesh.getVaoId());
+			glDrawElements(GL_TRIANGLES, mesh.getVerticeCount(), mesh.getIndexType(), 0);
+		}
+	}
+
+	/**
+	 * Gets the {@link Mesh} of a level. If the level has no Mesh set, the Mesh
+	 * that was generated for it from the first level's Mesh is used, see
+	 * {@link Mesh#getLod(int)}.
+	 *
+	 * @param index the index of the level
+	 * @return the level's Mesh, or {@code null} if it has none
+	 */
+	public Mesh getLevelMesh(int index) {
+		if (this.levels == null || index < 0 || index >= this.levels.length) {
+			return null;
+		}
+
+		LodLevel level = this.levels[index];
+		if (level != null && level.mesh != null) {
+			return level.mesh;
+		}
+		if (index > 0) {
+			Mesh baseMesh = this.getLevelMesh(0);
+			if (baseMesh != null) {
+				return baseMesh.getLod(index - 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the index of the level that was picked by the most recent Camera to
+	 * render the LodGroup.
+	 *
+	 * @return the index of the level, or -1 if the LodGroup was too small to draw
+	 */
+	public int getCurrentLevel() {
+		return this.currentLevel;
+	}
+
+	/**
+	 * Gets the {@link Mesh} of the level returned by
+	 * {@link LodGroup#getCurrentLevel()}.
+	 *
+	 * @return the current Mesh, or {@code null} if there is nothing to draw
+	 */
+	public Mesh getCurrentMesh() {
+		return this.getLevelMesh(this.currentLevel);
+	}
+
+	/**
+	 * Picks the level to draw.
+	 *
+	 * @param screenHeight the height of the LodGroup's bounding sphere, as a
+	 *                     fraction of the screen's height
+	 * @return {@code true} if a level was picked, {@code false} if the LodGroup is
+	 *         too small to draw
+	 */
+	boolean selectLevel(float screenHeight) {
+		this.currentLevel = -1;
+		if (this.levels != null) {
+			for (int i = 0; i < this.levels.length; i++) {
+				LodLevel level = this.levels[i];
+				if (level != null && screenHeight >= level.screenHeight) {
+					this.currentLevel = i;
+					break;
+				}
+			}
+		}
+		return this.currentLevel != -1;
+	}
+
+	/**
+	 * A single level of a {@link LodGroup}.
+	 */
+	public static final class LodLevel {
+
+		/**
+		 * The Mesh to draw. If {@code null}, a generated Mesh is used.
+		 */
+		public Mesh mesh;
+		/**
+		 * The smallest fraction of the screen's height the object can cover and still
+		 * use this level.
+		 */
+		@Range(min = 0, max = 1)
+		public float screenHeight;
+	}
+}
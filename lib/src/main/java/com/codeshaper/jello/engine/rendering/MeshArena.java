@@ -0,0 +1,264 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL31.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.codeshaper.jello.engine.asset.Mesh;
+
+/**
+ * One vertex buffer and one index buffer shared by many {@link Mesh}es with the
+ * same {@link VertexFormat} and index type, behind a single Vertex Array
+ * Object. Each Mesh's data is copied in on the GPU the first time it is drawn
+ * from the arena, and is drawn with a base vertex and first index that point at
+ * its copy. As every Mesh in the arena shares the same vertex state, they can
+ * all be drawn by a single {@code glMultiDrawElementsIndirect} call.
+ * <p>
+ * Space is never freed on its own. When a Mesh doesn't fit, the arena is
+ * repacked into larger buffers, dropping the Meshes that have been unloaded. A
+ * Mesh that has been reloaded since it was copied in is copied in again, and
+ * its old copy is left until the next repack.
+ */
+final class MeshArena {
+
+	private static final int INITIAL_VERTEX_BYTES = 1 << 20;
+	private static final int INITIAL_INDEX_BYTES = 1 << 19;
+	/**
+	 * The number of ints in a {@code DrawElementsIndirectCommand}.
+	 */
+	private static final int COMMAND_INTS = 5;
+
+	final VertexFormat format;
+	final int indexType;
+	private final int indexSize;
+	private final Map<Mesh, Slot> slots;
+	private int vaoId;
+	private int vertexBufferId;
+	private int indexBufferId;
+	private long vertexCapacity;
+	private long indexCapacity;
+	private long vertexBytesUsed;
+	private long indexBytesUsed;
+	/**
+	 * The commands that have been added since they were last written, packed
+	 * {@link MeshArena#COMMAND_INTS} ints at a time.
+	 */
+	private int[] pendingCommands;
+	private int pendingCommandCount;
+
+	MeshArena(VertexFormat format, int indexType) {
+		this.format = format;
+		this.indexType = indexType;
+		this.indexSize = indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+		this.slots = new HashMap<Mesh, Slot>();
+		this.pendingCommands = new int[COMMAND_INTS * 64];
+	}
+
+	/**
+	 * Gets where a Mesh is in the arena, copying it in if it isn't already. If
+	 * {@link MeshArena#wouldRepack(Mesh)} is {@code true} for the Mesh, every
+	 * other Mesh is moved, and slots that were gotten before must not be used.
+	 *
+	 * @param mesh the Mesh
+	 * @return the Mesh's slot
+	 */
+	Slot getSlot(Mesh mesh) {
+		Slot slot = this.slots.get(mesh);
+		if (slot != null) {
+			if (slot.meshVersion == mesh.getVersion()) {
+				return slot;
+			}
+			this.slots.remove(mesh); // The Mesh has been reloaded, so copy it in again.
+		}
+
+		long vertexBytes = (long) mesh.getStoredVertexCount() * this.format.getStride();
+		long indexBytes = (long) mesh.getVerticeCount() * this.indexSize;
+		if (this.vertexBytesUsed + vertexBytes > this.vertexCapacity
+				|| this.indexBytesUsed + indexBytes > this.indexCapacity) {
+			this.repack(vertexBytes, indexBytes);
+		}
+
+		slot = this.copyIn(mesh, vertexBytes, indexBytes);
+		this.slots.put(mesh, slot);
+		return slot;
+	}
+
+	/**
+	 * Checks if getting the slot of a Mesh would repack the arena.
+	 *
+	 * @param mesh the Mesh
+	 * @return {@code true} if the arena would be repacked
+	 */
+	boolean wouldRepack(Mesh mesh) {
+		Slot slot = this.slots.get(mesh);
+		if (slot != null && slot.meshVersion == mesh.getVersion()) {
+			return false;
+		}
+		return this.vertexBytesUsed + (long) mesh.getStoredVertexCount() * this.format.getStride() > this.vertexCapacity
+				|| this.indexBytesUsed + (long) mesh.getVerticeCount() * this.indexSize > this.indexCapacity;
+	}
+
+	int getVaoId() {
+		return this.vaoId;
+	}
+
+	/**
+	 * Adds a command to draw from the arena. It is drawn the next time the
+	 * commands are written with {@link MeshArena#writeCommands(ByteBuffer, int)}.
+	 */
+	void addCommand(int count, int instanceCount, int firstIndex, int baseVertex, int baseInstance) {
+		int index = this.pendingCommandCount * COMMAND_INTS;
+		if (index + COMMAND_INTS > this.pendingCommands.length) {
+			this.pendingCommands = Arrays.copyOf(this.pendingCommands, this.pendingCommands.length * 2);
+		}
+		this.pendingCommands[index] = count;
+		this.pendingCommands[index + 1] = instanceCount;
+		this.pendingCommands[index + 2] = firstIndex;
+		this.pendingCommands[index + 3] = baseVertex;
+		this.pendingCommands[index + 4] = baseInstance;
+		this.pendingCommandCount++;
+	}
+
+	int getPendingCommandCount() {
+		return this.pendingCommandCount;
+	}
+
+	/**
+	 * Writes the pending commands one after another, and then forgets them.
+	 *
+	 * @param buffer the buffer to write to
+	 * @param offset the byte offset of the first command
+	 */
+	void writeCommands(ByteBuffer buffer, int offset) {
+		int length = this.pendingCommandCount * COMMAND_INTS;
+		for (int i = 0; i < length; i++) {
+			buffer.putInt(offset + i * Integer.BYTES, this.pendingCommands[i]);
+		}
+		this.pendingCommandCount = 0;
+	}
+
+	/**
+	 * Deletes the arena's buffers and Vertex Array Object.
+	 */
+	void dispose() {
+		this.deleteBuffers();
+		this.slots.clear();
+		this.pendingCommandCount = 0;
+		this.vertexCapacity = 0;
+		this.indexCapacity = 0;
+		this.vertexBytesUsed = 0;
+		this.indexBytesUsed = 0;
+	}
+
+	/**
+	 * Moves every Mesh that is still loaded into new buffers, with room for at
+	 * least one more Mesh of the given size.
+	 */
+	private void repack(long extraVertexBytes, long extraIndexBytes) {
+		List<Mesh> liveMeshes = new ArrayList<Mesh>(this.slots.size());
+		long liveVertexBytes = 0;
+		long liveIndexBytes = 0;
+		for (Mesh mesh : this.slots.keySet()) {
+			// A reloaded Mesh may no longer belong in this arena.
+			if (mesh.getVaoId() != 0 && mesh.getIndexType() == this.indexType && this.format.equals(mesh.getFormat())) {
+				liveMeshes.add(mesh);
+				liveVertexBytes += (long) mesh.getStoredVertexCount() * this.format.getStride();
+				liveIndexBytes += (long) mesh.getVerticeCount() * this.indexSize;
+			}
+		}
+
+		long vertexCapacity = Math.max(INITIAL_VERTEX_BYTES,
+				Math.max(this.vertexCapacity * 2, liveVertexBytes + extraVertexBytes));
+		long indexCapacity = Math.max(INITIAL_INDEX_BYTES,
+				Math.max(this.indexCapacity * 2, liveIndexBytes + extraIndexBytes));
+
+		this.deleteBuffers();
+		this.slots.clear();
+		this.vertexCapacity = vertexCapacity;
+		this.indexCapacity = indexCapacity;
+		this.vertexBytesUsed = 0;
+		this.indexBytesUsed = 0;
+
+		this.vaoId = glGenVertexArrays();
+		this.vertexBufferId = glGenBuffers();
+		this.indexBufferId = glGenBuffers();
+		GLStateCache.bindVertexArray(this.vaoId);
+		glBindBuffer(GL_ARRAY_BUFFER, this.vertexBufferId);
+		glBufferData(GL_ARRAY_BUFFER, vertexCapacity, GL_STATIC_DRAW);
+		this.format.enableAttributes();
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.indexBufferId);
+		glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexCapacity, GL_STATIC_DRAW);
+		GLStateCache.bindVertexArray(0);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		for (int i = 0; i < liveMeshes.size(); i++) {
+			Mesh mesh = liveMeshes.get(i);
+			long vertexBytes = (long) mesh.getStoredVertexCount() * this.format.getStride();
+			long indexBytes = (long) mesh.getVerticeCount() * this.indexSize;
+			this.slots.put(mesh, this.copyIn(mesh, vertexBytes, indexBytes));
+		}
+	}
+
+	private Slot copyIn(Mesh mesh, long vertexBytes, long indexBytes) {
+		Slot slot = new Slot(
+				(int) (this.indexBytesUsed / this.indexSize),
+				(int) (this.vertexBytesUsed / this.format.getStride()),
+				mesh.getVersion());
+
+		glBindBuffer(GL_COPY_READ_BUFFER, mesh.getVertexBufferId());
+		glBindBuffer(GL_COPY_WRITE_BUFFER, this.vertexBufferId);
+		glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, this.vertexBytesUsed, vertexBytes);
+		glBindBuffer(GL_COPY_READ_BUFFER, mesh.getIndexBufferId());
+		glBindBuffer(GL_COPY_WRITE_BUFFER, this.indexBufferId);
+		glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, this.indexBytesUsed, indexBytes);
+		glBindBuffer(GL_COPY_READ_BUFFER, 0);
+		glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+
+		this.vertexBytesUsed += vertexBytes;
+		this.indexBytesUsed += indexBytes;
+		return slot;
+	}
+
+	private void deleteBuffers() {
+		if (this.vaoId != 0) {
+			glDeleteVertexArrays(this.vaoId);
+			glDeleteBuffers(this.vertexBufferId);
+			glDeleteBuffers(this.indexBufferId);
+			GLStateCache.invalidate(); // The ids may be reused.
+			this.vaoId = 0;
+			this.vertexBufferId = 0;
+			this.indexBufferId = 0;
+		}
+	}
+
+	/**
+	 * Where a Mesh's copy is in the arena.
+	 */
+	static final class Slot {
+
+		/**
+		 * The index of the Mesh's first index in the index buffer.
+		 */
+		final int firstIndex;
+		/**
+		 * The index of the Mesh's first vertex in the vertex buffer, which is added
+		 * to every index.
+		 */
+		final int baseVertex;
+		/**
+		 * The {@link Mesh#getVersion()} of the Mesh when it was copied in.
+		 */
+		final int meshVersion;
+
+		private Slot(int firstIndex, int baseVertex, int meshVersion) {
+			this.firstIndex = firstIndex;
+			this.baseVertex = baseVertex;
+			this.meshVersion = meshVersion;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package com.codeshaper.jello.engine.rendering;
 
 import static org.lwjgl.opengl.GL30.*;
 
+import com.codeshaper.jello.engine.Bounds;
 import com.codeshaper.jello.engine.ComponentIcon;
 import com.codeshaper.jello.engine.ComponentName;
 import com.codeshaper.jello.engine.asset.Material;
@@ -21,12 +22,17 @@ public final class MeshRenderer extends Renderer {
 	public Material getMaterial() {
 		return this.material;
 	}
+
+	@Override
+	public Bounds getBounds() {
+		return this.mesh != null ? this.mesh.getBounds() : null;
+	}
 	
 	@Override
 	public void onRender(Camera camera) {
 		if (this.mesh != null) {
-			glBindVertexArray(mesh.getVaoId());
-			glDrawElements(GL_TRIANGLES, mesh.getVerticeCount(), GL_UNSIGNED_INT, 0);
+			GLStateCache.bindVertexArray(mesh.getVaoId());
+			glDrawElements(GL_TRIANGLES, mesh.getVerticeCount(), mesh.getIndexType(), 0);
 		}
 	}
 }
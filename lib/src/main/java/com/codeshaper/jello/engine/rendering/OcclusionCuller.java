@@ -0,0 +1,245 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL30.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import com.codeshaper.jello.engine.Bounds;
+import com.codeshaper.jello.engine.asset.Mesh;
+import com.codeshaper.jello.engine.rendering.shader.ShaderData.CullMode;
+import com.codeshaper.jello.engine.rendering.shader.ShaderProgram;
+
+/**
+ * Skips {@link Renderer}s that are hidden behind other geometry, with OpenGL
+ * occlusion queries. Every Camera with {@link Camera#occlusionCulling} enabled
+ * has its own OcclusionCuller.
+ * <p>
+ * After a Camera has drawn everything, the bounding box of every Renderer that
+ * passed the frustum test is drawn against the depth buffer, without writing
+ * color or depth, inside of a query. The results are read the next time the
+ * Camera renders, so the CPU never waits on the GPU, and Renderers whose box
+ * had no visible samples are skipped. As the boxes of skipped Renderers are
+ * still tested, a Renderer that comes back into view is drawn again one frame
+ * late.
+ * <p>
+ * Renderers without bounds, and Renderers that the Camera is close to or
+ * inside of, are never skipped, as their box would be clipped by the near
+ * plane.
+ * <p>
+ * A Renderer's box often lies exactly on the surface the Renderer drew, so the
+ * boxes are grown slightly and tested with {@code GL_LEQUAL}. Otherwise, faces
+ * of the box that are coplanar with depth that has already been written would
+ * fail the test, and the Renderer would flicker.
+ */
+final class OcclusionCuller {
+
+	/**
+	 * The positions of a unit cube, centered on the origin.
+	 */
+	private static final float[] CUBE_POSITIONS = new float[] {
+			-0.5f, -0.5f, -0.5f,
+			0.5f, -0.5f, -0.5f,
+			0.5f, 0.5f, -0.5f,
+			-0.5f, 0.5f, -0.5f,
+			-0.5f, -0.5f, 0.5f,
+			0.5f, -0.5f, 0.5f,
+			0.5f, 0.5f, 0.5f,
+			-0.5f, 0.5f, 0.5f, };
+	private static final int[] CUBE_INDICES = new int[] {
+			0, 2, 1, 0, 3, 2, // Back
+			4, 5, 6, 4, 6, 7, // Front
+			0, 1, 5, 0, 5, 4, // Bottom
+			3, 6, 2, 3, 7, 6, // Top
+			0, 4, 7, 0, 7, 3, // Left
+			1, 2, 6, 1, 6, 5, // Right
+	};
+
+	/**
+	 * The fraction of its size that a bounding box is grown by on each side.
+	 */
+	private static final float BOX_INFLATION = 0.01f;
+	/**
+	 * The distance, in the Renderer's local space, that a bounding box is grown by
+	 * on each side, so flat boxes still have some thickness.
+	 */
+	private static final float BOX_PADDING = 0.001f;
+
+	private static Mesh proxyMesh;
+
+	private final Map<Renderer, Query> queries;
+	/**
+	 * The Renderers that passed the frustum test this frame, and should have their
+	 * bounding box tested.
+	 */
+	private final List<Renderer> tested;
+	private final List<Integer> freeQueryIds;
+	private final Matrix4f boxMatrix;
+	private final Vector3f size;
+	private int frame;
+
+	OcclusionCuller() {
+		this.queries = new HashMap<Renderer, Query>();
+		this.tested = new ArrayList<Renderer>();
+		this.freeQueryIds = new ArrayList<Integer>();
+		this.boxMatrix = new Matrix4f();
+		this.size = new Vector3f();
+	}
+
+	/**
+	 * Starts a new frame. This must be called before any calls to
+	 * {@link OcclusionCuller#isOccluded(Renderer, Vector3fc, float, Vector3fc, float)}.
+	 */
+	void beginFrame() {
+		this.frame++;
+		this.tested.clear();
+	}
+
+	/**
+	 * Checks if a {@link Renderer} was hidden the last time its bounding box was
+	 * tested, and queues its box to be tested again this frame.
+	 *
+	 * @param renderer       the Renderer to check, which must have passed the
+	 *                       frustum test
+	 * @param center         the center of the Renderer's bounding sphere, in
+	 *                       world space
+	 * @param radius         the radius of the Renderer's bounding sphere, in
+	 *                       world space
+	 * @param cameraPosition the position of the Camera
+	 * @param nearPlane      the distance of the Camera's near plane
+	 * @return {@code true} if the Renderer should be skipped
+	 */
+	boolean isOccluded(Renderer renderer, Vector3fc center, float radius, Vector3fc cameraPosition,
+			float nearPlane) {
+		if (renderer.getBounds() == null) {
+			return false;
+		}
+
+		Query query = this.queries.get(renderer);
+		if (query == null) {
+			query = new Query(this.obtainQueryId());
+			this.queries.put(renderer, query);
+		}
+		query.lastFrame = this.frame;
+		this.tested.add(renderer);
+
+		if (query.pending && glGetQueryObjecti(query.id, GL_QUERY_RESULT_AVAILABLE) != GL_FALSE) {
+			query.visible = glGetQueryObjecti(query.id, GL_QUERY_RESULT) != 0;
+			query.pending = false;
+		}
+
+		float nearDistance = radius + nearPlane * 2;
+		if (center.distanceSquared(cameraPosition) < nearDistance * nearDistance) {
+			query.visible = true;
+			return false;
+		}
+		return !query.visible;
+	}
+
+	/**
+	 * Tests the bounding box of every {@link Renderer} that was checked this frame
+	 * against the depth buffer, and deletes the queries of Renderers that weren't
+	 * checked. This should be called once the Camera has drawn everything.
+	 *
+	 * @param program             the program to draw the boxes with
+	 * @param modelMatrixLocation the location of the program's model matrix
+	 *                            uniform
+	 */
+	void testBounds(ShaderProgram program, int modelMatrixLocation) {
+		if (proxyMesh == null) {
+			proxyMesh = new Mesh(CUBE_POSITIONS, new float[CUBE_POSITIONS.length / 3 * 2], CUBE_INDICES);
+		}
+
+		program.bind();
+		GLStateCache.setDepthTest(true);
+		GLStateCache.setDepthMask(false);
+		GLStateCache.setCulling(CullMode.OFF);
+		GLStateCache.bindVertexArray(proxyMesh.getVaoId());
+		glColorMask(false, false, false, false);
+		glDepthFunc(GL_LEQUAL);
+
+		for (int i = 0; i < this.tested.size(); i++) {
+			Renderer renderer = this.tested.get(i);
+			Query query = this.queries.get(renderer);
+			if (query.pending) {
+				continue; // The last result hasn't arrived yet.
+			}
+
+			Bounds bounds = renderer.getBounds();
+			if (bounds == null) {
+				continue;
+			}
+			bounds.getMax().sub(bounds.getMin(), this.size);
+			this.size.mul(1 + BOX_INFLATION * 2).add(BOX_PADDING * 2, BOX_PADDING * 2, BOX_PADDING * 2);
+			this.boxMatrix.set(renderer.gameObject().getCachedWorldMatrix())
+					.translate(bounds.getCenter())
+					.scale(this.size);
+			program.setUniform(modelMatrixLocation, this.boxMatrix);
+
+			glBeginQuery(GL_SAMPLES_PASSED, query.id);
+			glDrawElements(GL_TRIANGLES, proxyMesh.getVerticeCount(), proxyMesh.getIndexType(), 0);
+			glEndQuery(GL_SAMPLES_PASSED);
+			query.pending = true;
+		}
+
+		glDepthFunc(GL_LESS);
+		glColorMask(true, true, true, true);
+
+		Iterator<Query> iterator = this.queries.values().iterator();
+		while (iterator.hasNext()) {
+			Query query = iterator.next();
+			if (query.lastFrame != this.frame) {
+				this.freeQueryIds.add(query.id);
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Deletes all of the OpenGL queries.
+	 */
+	void dispose() {
+		for (Query query : this.queries.values()) {
+			glDeleteQueries(query.id);
+		}
+		for (int i = 0; i < this.freeQueryIds.size(); i++) {
+			glDeleteQueries(this.freeQueryIds.get(i));
+		}
+		this.queries.clear();
+		this.freeQueryIds.clear();
+		this.tested.clear();
+	}
+
+	private int obtainQueryId() {
+		int freeCount = this.freeQueryIds.size();
+		return freeCount > 0 ? this.freeQueryIds.remove(freeCount - 1) : glGenQueries();
+	}
+
+	private static class Query {
+
+		private final int id;
+		/**
+		 * The frame the Renderer was last checked in.
+		 */
+		private int lastFrame;
+		/**
+		 * Set while a query has been issued and its result hasn't been read.
+		 */
+		private boolean pending;
+		/**
+		 * The result of the last query. Renderers are visible until proven otherwise.
+		 */
+		private boolean visible = true;
+
+		private Query(int id) {
+			this.id = id;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package com.codeshaper.jello.engine.rendering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.codeshaper.jello.engine.asset.Material;
+import com.codeshaper.jello.engine.profiling.Profiler;
+import com.codeshaper.jello.engine.profiling.ProfilerScope;
+
+/**
+ * The RenderQueue keeps track of every {@link Renderer} that is enabled in a
+ * loaded Scene, grouped into {@link RenderBucket}s by {@link Material}.
+ * Renderers are added when they become enabled and removed when they are
+ * disabled or destroyed, so drawing a frame only needs to go through the
+ * buckets, not the entire Scene hierarchy.
+ * <p>
+ * Buckets are kept in no particular order, {@link GameRenderer} sorts the
+ * individual draws itself.
+ */
+public final class RenderQueue {
+
+	private static final RenderQueue instance = new RenderQueue();
+
+	private static final ProfilerScope REBUCKET_SCOPE = Profiler.createScope("Rebucket Renderers");
+
+	private final Map<Material, RenderBucket> buckets;
+	private final List<RenderBucket> bucketList;
+	private final List<RenderBucket> bucketListView;
+	/**
+	 * Reused list of Renderers that need to be moved to a different bucket because
+	 * their Material changed.
+	 */
+	private final List<Renderer> movedRenderers;
+	private int rendererCount;
+	private int nextBucketId;
+
+	/**
+	 * Gets the RenderQueue. There is only a single RenderQueue, shared by the
+	 * Editor and the Application.
+	 *
+	 * @return the RenderQueue
+	 */
+	public static RenderQueue getInstance() {
+		return RenderQueue.instance;
+	}
+
+	private RenderQueue() {
+		this.buckets = new HashMap<Material, RenderBucket>();
+		this.bucketList = new ArrayList<RenderBucket>();
+		this.bucketListView = Collections.unmodifiableList(this.bucketList);
+		this.movedRenderers = new ArrayList<Renderer>();
+	}
+
+	/**
+	 * Adds a {@link Renderer} to the queue. If the Renderer is already in the
+	 * queue, nothing happens.
+	 * <p>
+	 * This is called internally when a Renderer becomes enabled in a loaded Scene,
+	 * there should be no need to call it yourself.
+	 *
+	 * @param renderer the Renderer to add
+	 */
+	public void add(Renderer renderer) {
+		if (renderer.bucket != null) {
+			return; // Already in the queue.
+		}
+
+		Material material = renderer.getMaterial();
+		RenderBucket bucket = this.buckets.get(material);
+		if (bucket == null) {
+			bucket = new RenderBucket(material, this.nextBucketId++);
+			this.buckets.put(material, bucket);
+			this.bucketList.add(bucket);
+		}
+
+		bucket.add(renderer);
+		this.rendererCount++;
+	}
+
+	/**
+	 * Removes a {@link Renderer} from the queue. If the Renderer is not in the
+	 * queue, nothing happens.
+	 * <p>
+	 * This is called internally when a Renderer is disabled or destroyed, there
+	 * should be no need to call it yourself.
+	 *
+	 * @param renderer the Renderer to remove
+	 */
+	public void remove(Renderer renderer) {
+		RenderBucket bucket = renderer.bucket;
+		if (bucket == null) {
+			return; // Not in the queue.
+		}
+
+		bucket.remove(renderer);
+		this.rendererCount--;
+
+		if (bucket.getRendererCount() == 0) {
+			this.buckets.remove(bucket.material);
+			this.bucketList.remove(bucket);
+		}
+	}
+
+	/**
+	 * Gets the number of {@link Renderer}s in the queue.
+	 *
+	 * @return the number of Renderers in the queue
+	 */
+	public int getRendererCount() {
+		return this.rendererCount;
+	}
+
+	/**
+	 * Gets all of the {@link RenderBucket}s, in no particular order.
+	 *
+	 * @return an unmodifiable list of all the buckets
+	 */
+	public List<RenderBucket> getBuckets() {
+		return this.bucketListView;
+	}
+
+	/**
+	 * Gets the queue ready for drawing. Renderers whose {@link Material} has
+	 * changed since they were added are moved to the correct bucket.
+	 */
+	public void prepare() {
+		Profiler.begin(REBUCKET_SCOPE);
+		for (int i = 0; i < this.bucketList.size(); i++) {
+			RenderBucket bucket = this.bucketList.get(i);
+			for (int j = 0; j < bucket.renderers.size(); j++) {
+				Renderer renderer = bucket.renderers.get(j);
+				if (renderer.getMaterial() != bucket.material) {
+					this.movedRenderers.add(renderer);
+				}
+			}
+		}
+
+		for (int i = 0; i < this.movedRenderers.size(); i++) {
+			Renderer renderer = this.movedRenderers.get(i);
+			this.remove(renderer);
+			this.add(renderer);
+		}
+		this.movedRenderers.clear();
+		Profiler.end();
+	}
+
+	/**
+	 * A RenderBucket holds all of the {@link Renderer}s that share the same
+	 * {@link Material}.
+	 */
+	public static final class RenderBucket {
+
+		/**
+		 * The Material that every Renderer in this bucket uses. May be {@code null}.
+		 */
+		public final Material material;
+		/**
+		 * A number that identifies the bucket. Ids are never reused, so they can be
+		 * used to group draws that share a Material.
+		 */
+		public final int id;
+		private final List<Renderer> renderers;
+
+		private RenderBucket(Material material, int id) {
+			this.material = material;
+			this.id = id;
+			this.renderers = new ArrayList<Renderer>();
+		}
+
+		/**
+		 * Gets the render order of the bucket's {@link Material}. If the bucket has no
+		 * Material, {@code 0} is returned.
+		 *
+		 * @return the render order
+		 */
+		public int getRenderOrder() {
+			return this.material != null ? this.material.renderOrder : 0;
+		}
+
+		/**
+		 * Gets the number of {@link Renderer}s in the bucket.
+		 *
+		 * @return the number of Renderers
+		 */
+		public int getRendererCount() {
+			return this.renderers.size();
+		}
+
+		/**
+		 * Gets the {@link Renderer} at an index.
+		 *
+		 * @param index the index of the Renderer
+		 * @return the Renderer at the index
+		 * @throws IndexOutOfBoundsException if the index is out of range
+		 *                                   ({@code index < 0 || index >= getRendererCount()})
+		 */
+		public Renderer getRenderer(int index) {
+			return this.renderers.get(index);
+		}
+
+		private void add(Renderer renderer) {
+			renderer.bucket = this;
+			renderer.bucketIndex = this.renderers.size();
+			this.renderers.add(renderer);
+		}
+
+		private void remove(Renderer renderer) {
+			// Swap the last Renderer into the removed one's slot so removal is O(1).
+			int index = renderer.bucketIndex;
+			Renderer last = this.renderers.remove(this.renderers.size() - 1);
+			if (last != renderer) {
+				this.renderers.set(index, last);
+				last.bucketIndex = index;
+			}
+
+			renderer.bucket = null;
+			renderer.bucketIndex = -1;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.codeshaper.jello.engine.rendering;
 
+import com.codeshaper.jello.engine.Bounds;
+import com.codeshaper.jello.engine.GameObject;
 import com.codeshaper.jello.engine.JelloComponent;
 import com.codeshaper.jello.engine.asset.Material;
 
@@ -8,6 +10,16 @@ import com.codeshaper.jello.engine.asset.Material;
  */
 public abstract class Renderer extends JelloComponent {
 
+	/**
+	 * The {@link RenderQueue.RenderBucket} this Renderer is in, or {@code null} if
+	 * it is not in the {@link RenderQueue}.
+	 */
+	transient RenderQueue.RenderBucket bucket;
+	/**
+	 * The Renderer's index within {@link Renderer#bucket}.
+	 */
+	transient int bucketIndex = -1;
+
 	/**
 	 * Gets the {@link Material} to render this object with. If no material is
 	 * returned, this object will not get rendered and {@link Renderer#onRender()}
@@ -17,6 +29,18 @@ public abstract class Renderer extends JelloComponent {
 	 */
 	public abstract Material getMaterial();
 
+	/**
+	 * Gets the bounds of what this Renderer draws, in the local space of it's
+	 * {@link GameObject}. The bounds are used to skip drawing the Renderer when
+	 * it's outside of a {@link Camera}'s view. If {@code null} is returned, the
+	 * Renderer is always drawn.
+	 * 
+	 * @return the bounds of the Renderer, or {@code null}
+	 */
+	public Bounds getBounds() {
+		return null;
+	}
+
 	/**
 	 * Called to render this Component. Implementing classes will define this
 	 * behavior. In situations where there are multiple Cameras, this method will be
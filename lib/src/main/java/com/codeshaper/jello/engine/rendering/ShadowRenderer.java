@@ -0,0 +1,768 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL33.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.joml.FrustumIntersection;
+import org.joml.Math;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+
+import com.codeshaper.jello.engine.AssetLocation;
+import com.codeshaper.jello.engine.Bounds;
+import com.codeshaper.jello.engine.Debug;
+import com.codeshaper.jello.engine.asset.Mesh;
+import com.codeshaper.jello.engine.asset.Shader;
+import com.codeshaper.jello.engine.database.AssetDatabase;
+import com.codeshaper.jello.engine.lighting.AbstractLight;
+import com.codeshaper.jello.engine.lighting.DirectionalLight;
+import com.codeshaper.jello.engine.lighting.LightRegistry;
+import com.codeshaper.jello.engine.lighting.SpotLight;
+import com.codeshaper.jello.engine.rendering.RenderQueue.RenderBucket;
+import com.codeshaper.jello.engine.rendering.shader.ShaderData.CullMode;
+import com.codeshaper.jello.engine.rendering.shader.ShaderProgram;
+import com.codeshaper.jello.engine.rendering.shader.UniformBlocks;
+
+/**
+ * Renders the shadow maps of the lights in the {@link LightRegistry} that cast
+ * shadows. The first {@link DirectionalLight} that casts shadows gets cascaded
+ * shadow maps, with the Camera's view split into up to
+ * {@link UniformBlocks#MAX_CASCADES} ranges that each get their own map. Up to
+ * {@link UniformBlocks#MAX_SPOT_SHADOWS} {@link SpotLight}s get a single map
+ * each.
+ * <p>
+ * A shadow map is only rendered again when something that affects it changes.
+ * Casters whose {@link com.codeshaper.jello.engine.GameObject#getWorldMatrixVersion()}
+ * hasn't changed for {@link ShadowRenderer#STATIC_FRAMES} frames are static,
+ * and the rest are dynamic. Every map has a second layer that holds the depth
+ * of only the static casters, which is rendered again when the map's matrix or
+ * the static casters inside of it change. The static layer is then copied into
+ * the map and the dynamic casters are drawn on top, so a moving caster only
+ * costs drawing itself rather than every caster around it. The cascades are
+ * snapped to whole texels, so their matrices only change when the Camera moves
+ * far enough.
+ * <p>
+ * The cascades follow the Camera, so every Camera has its own cascaded shadow
+ * maps, and several Cameras don't render each other's maps out of date. The
+ * maps of a Camera that didn't render in the last frame are deleted.
+ * <p>
+ * {@link ShadowRenderer#dispose()} must be called to free the shadow maps.
+ * <p>
+ * Only {@link MeshRenderer}s and {@link LodGroup}s with opaque Shaders cast
+ * shadows.
+ */
+final class ShadowRenderer {
+
+	/**
+	 * Blends between evenly spaced cascades at 0 and logarithmically spaced
+	 * cascades at 1.
+	 */
+	private static final float CASCADE_SPLIT_LAMBDA = 0.75f;
+	/**
+	 * How far behind a cascade, towards the light, casters are still included.
+	 */
+	private static final float CASTER_DISTANCE = 100f;
+	private static final float SPOT_NEAR_PLANE = 0.05f;
+	private static final String LIGHT_MATRIX = "lightViewProjection";
+	/**
+	 * The number of frames a caster must stay still for before it is drawn into
+	 * the static layer of the shadow maps.
+	 */
+	private static final int STATIC_FRAMES = 30;
+
+	private final Shader casterShader;
+	private final InstanceBuffer instanceBuffer;
+	private final UniformBuffer uniforms;
+	private final int framebufferId;
+	/**
+	 * The framebuffer that static layers are read from, when they are copied into
+	 * a shadow map.
+	 */
+	private final int readFramebufferId;
+	/**
+	 * The cascaded shadow maps of every Camera that has rendered recently.
+	 */
+	private final Map<Camera, ShadowMapArray> cascadeMaps;
+	private final ShadowMapArray spotMaps;
+
+	/**
+	 * Every Renderer that can cast a shadow, and the Mesh it casts with, split
+	 * into the casters that are static and those that have moved recently.
+	 */
+	private final List<Renderer> staticCasters;
+	private final List<Mesh> staticCasterMeshes;
+	private final List<Renderer> dynamicCasters;
+	private final List<Mesh> dynamicCasterMeshes;
+	/**
+	 * When every caster last moved, so they can be sorted into static and dynamic
+	 * casters.
+	 */
+	private final Map<Renderer, CasterState> casterStates;
+	private final CasterBatches staticBatches;
+	private final CasterBatches dynamicBatches;
+	private int frame;
+
+	private DirectionalLight directionalLight;
+	private final SpotLight[] spotLights;
+	private int spotLightCount;
+
+	private final FrustumIntersection frustum;
+	private final Matrix4f inverseViewProjection;
+	private final Matrix4f lightView;
+	private final Matrix4f lightProjection;
+	private final Matrix4f lightViewProjection;
+	private final Matrix4f shadowMatrix;
+	private final Vector3f[] nearCorners;
+	private final Vector3f[] farCorners;
+	private final Vector3f corner;
+	private final Vector3f center;
+	private final Vector3f position;
+	private final Vector3f direction;
+	private final Vector3f up;
+	private final Vector3f scale;
+
+	ShadowRenderer(InstanceBuffer instanceBuffer) {
+		this.casterShader = (Shader) AssetDatabase.getInstance()
+				.getAsset(new AssetLocation("builtin/shaders/shadowCaster.shader"));
+		this.instanceBuffer = instanceBuffer;
+		this.uniforms = new UniformBuffer(UniformBlocks.SHADOWS_BINDING, UniformBlocks.SHADOWS_SIZE);
+
+		this.framebufferId = glGenFramebuffers();
+		glBindFramebuffer(GL_FRAMEBUFFER, this.framebufferId);
+		glDrawBuffer(GL_NONE);
+		glReadBuffer(GL_NONE);
+		this.readFramebufferId = glGenFramebuffers();
+		glBindFramebuffer(GL_FRAMEBUFFER, this.readFramebufferId);
+		glDrawBuffer(GL_NONE);
+		glReadBuffer(GL_NONE);
+		glBindFramebuffer(GL_FRAMEBUFFER, 0);
+
+		this.cascadeMaps = new HashMap<Camera, ShadowMapArray>();
+		this.spotMaps = new ShadowMapArray(UniformBlocks.SPOT_SHADOW_MAP_UNIT);
+
+		this.staticCasters = new ArrayList<Renderer>();
+		this.staticCasterMeshes = new ArrayList<Mesh>();
+		this.dynamicCasters = new ArrayList<Renderer>();
+		this.dynamicCasterMeshes = new ArrayList<Mesh>();
+		this.casterStates = new HashMap<Renderer, CasterState>();
+		this.staticBatches = new CasterBatches();
+		this.dynamicBatches = new CasterBatches();
+		this.spotLights = new SpotLight[UniformBlocks.MAX_SPOT_SHADOWS];
+
+		this.frustum = new FrustumIntersection();
+		this.inverseViewProjection = new Matrix4f();
+		this.lightView = new Matrix4f();
+		this.lightProjection = new Matrix4f();
+		this.lightViewProjection = new Matrix4f();
+		this.shadowMatrix = new Matrix4f();
+		this.nearCorners = new Vector3f[4];
+		this.farCorners = new Vector3f[4];
+		for (int i = 0; i < 4; i++) {
+			this.nearCorners[i] = new Vector3f();
+			this.farCorners[i] = new Vector3f();
+		}
+		this.corner = new Vector3f();
+		this.center = new Vector3f();
+		this.position = new Vector3f();
+		this.direction = new Vector3f();
+		this.up = new Vector3f();
+		this.scale = new Vector3f();
+	}
+
+	/**
+	 * Starts a new frame. Casters and cascaded shadow maps that weren't used in
+	 * the last frame are forgotten. This must be called once at the start of
+	 * every frame.
+	 */
+	void beginFrame() {
+		Iterator<CasterState> states = this.casterStates.values().iterator();
+		while (states.hasNext()) {
+			if (states.next().lastSeenFrame != this.frame) {
+				states.remove();
+			}
+		}
+
+		Iterator<ShadowMapArray> maps = this.cascadeMaps.values().iterator();
+		while (maps.hasNext()) {
+			ShadowMapArray array = maps.next();
+			if (array.lastUsedFrame != this.frame) {
+				array.dispose();
+				maps.remove();
+			}
+		}
+
+		this.frame++;
+	}
+
+	/**
+	 * Deletes the shadow maps, framebuffers and uniform buffer. The ShadowRenderer
+	 * must not be used after this.
+	 */
+	void dispose() {
+		this.uniforms.dispose();
+		for (ShadowMapArray maps : this.cascadeMaps.values()) {
+			maps.dispose();
+		}
+		this.cascadeMaps.clear();
+		this.spotMaps.dispose();
+		glDeleteFramebuffers(this.framebufferId);
+		glDeleteFramebuffers(this.readFramebufferId);
+		GLStateCache.invalidate(); // The ids may be reused.
+	}
+
+	/**
+	 * Gets the directional light that had its shadows rendered by the most recent
+	 * call to {@link ShadowRenderer#render(Camera, Matrix4f)}.
+	 *
+	 * @return the shadowed directional light, or {@code null} if there is none
+	 */
+	DirectionalLight getDirectionalLight() {
+		return this.directionalLight;
+	}
+
+	/**
+	 * Gets the layer of the spot shadow map that a {@link SpotLight}'s shadows
+	 * were rendered to.
+	 *
+	 * @param light the light
+	 * @return the index of the light's shadow map, or -1 if it has none
+	 */
+	int getSpotShadowIndex(SpotLight light) {
+		for (int i = 0; i < this.spotLightCount; i++) {
+			if (this.spotLights[i] == light) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Renders every shadow map that is out of date for a Camera, uploads the
+	 * {@link UniformBlocks#SHADOWS_BLOCK} uniform block, and binds the maps to
+	 * their texture units. This binds the default framebuffer and changes its
+	 * viewport, which must be set again afterwards.
+	 *
+	 * @param camera     the Camera that is about to render
+	 * @param viewMatrix the Camera's view matrix
+	 */
+	void render(Camera camera, Matrix4f viewMatrix) {
+		this.findLights();
+
+		ByteBuffer data = this.uniforms.getData();
+		data.putInt(UniformBlocks.SHADOWS_CASCADE_COUNT_OFFSET, 0);
+
+		ShadowMapArray cascades = null;
+		if (this.directionalLight != null) {
+			cascades = this.cascadeMaps.get(camera);
+			if (cascades == null) {
+				cascades = new ShadowMapArray(UniformBlocks.DIRECTIONAL_SHADOW_MAP_UNIT);
+				this.cascadeMaps.put(camera, cascades);
+			}
+			cascades.lastUsedFrame = this.frame;
+		}
+
+		if (this.directionalLight != null || this.spotLightCount > 0) {
+			this.findCasters();
+
+			glBindFramebuffer(GL_FRAMEBUFFER, this.framebufferId);
+			GLStateCache.setDepthTest(true);
+			GLStateCache.setDepthMask(true);
+			GLStateCache.setCulling(CullMode.OFF);
+			GLStateCache.setBlend(false);
+			glEnable(GL_POLYGON_OFFSET_FILL);
+			glPolygonOffset(2f, 4f);
+
+			ShaderProgram program = this.casterShader.getProgram();
+			program.bind();
+			int matrixLocation = program.getUniformLocation(LIGHT_MATRIX);
+
+			if (this.directionalLight != null) {
+				this.renderCascades(camera, viewMatrix, cascades, program, matrixLocation, data);
+			}
+			if (this.spotLightCount > 0) {
+				this.renderSpotLights(program, matrixLocation, data);
+			}
+
+			glDisable(GL_POLYGON_OFFSET_FILL);
+			glBindFramebuffer(GL_FRAMEBUFFER, 0);
+			this.staticCasters.clear();
+			this.staticCasterMeshes.clear();
+			this.dynamicCasters.clear();
+			this.dynamicCasterMeshes.clear();
+		}
+
+		this.uniforms.upload();
+		if (cascades != null) {
+			cascades.bind();
+		}
+		this.spotMaps.bind();
+	}
+
+	private void findLights() {
+		this.directionalLight = null;
+		this.spotLightCount = 0;
+		for (int i = 0; i < this.spotLights.length; i++) {
+			this.spotLights[i] = null;
+		}
+		if (this.casterShader.isInvalid()) {
+			return; // Without the Shader no maps can be rendered, so no light is shadowed.
+		}
+
+		List<AbstractLight> lights = LightRegistry.getInstance().getLights();
+		for (int i = 0; i < lights.size(); i++) {
+			AbstractLight light = lights.get(i);
+			if (light instanceof DirectionalLight) {
+				DirectionalLight directionalLight = (DirectionalLight) light;
+				if (directionalLight.castShadows && this.directionalLight == null) {
+					this.directionalLight = directionalLight;
+				}
+			} else if (light instanceof SpotLight) {
+				SpotLight spotLight = (SpotLight) light;
+				if (spotLight.castShadows && this.spotLightCount < this.spotLights.length) {
+					this.spotLights[this.spotLightCount++] = spotLight;
+				}
+			}
+		}
+	}
+
+	private void findCasters() {
+		List<RenderBucket> buckets = RenderQueue.getInstance().getBuckets();
+		for (int i = 0; i < buckets.size(); i++) {
+			RenderBucket bucket = buckets.get(i);
+			Shader shader = bucket.material != null ? bucket.material.getShader() : null;
+			if (shader != null && !shader.isInvalid() && shader.getData().transparent) {
+				continue;
+			}
+
+			for (int j = 0; j < bucket.getRendererCount(); j++) {
+				Renderer renderer = bucket.getRenderer(j);
+				Mesh mesh = null;
+				if (renderer instanceof MeshRenderer) {
+					mesh = ((MeshRenderer) renderer).mesh;
+				} else if (renderer instanceof LodGroup) {
+					LodGroup lodGroup = (LodGroup) renderer;
+					mesh = lodGroup.getCurrentMesh();
+					if (mesh == null) {
+						mesh = lodGroup.getLevelMesh(0);
+					}
+				}
+
+				if (mesh != null) {
+					if (this.isStatic(renderer)) {
+						this.staticCasters.add(renderer);
+						this.staticCasterMeshes.add(mesh);
+					} else {
+						this.dynamicCasters.add(renderer);
+						this.dynamicCasterMeshes.add(mesh);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a caster hasn't moved for {@link ShadowRenderer#STATIC_FRAMES}
+	 * frames.
+	 */
+	private boolean isStatic(Renderer renderer) {
+		int version = renderer.gameObject().getWorldMatrixVersion();
+		CasterState state = this.casterStates.get(renderer);
+		if (state == null) {
+			state = new CasterState();
+			state.version = version;
+			// Casters start out static, so a Scene that was just loaded is cached.
+			state.lastMovedFrame = this.frame - STATIC_FRAMES;
+			this.casterStates.put(renderer, state);
+		} else if (state.version != version) {
+			state.version = version;
+			state.lastMovedFrame = this.frame;
+		}
+		state.lastSeenFrame = this.frame;
+		return this.frame - state.lastMovedFrame >= STATIC_FRAMES;
+	}
+
+	private void renderCascades(Camera camera, Matrix4f viewMatrix, ShadowMapArray maps, ShaderProgram program,
+			int matrixLocation, ByteBuffer data) {
+		DirectionalLight light = this.directionalLight;
+		int cascadeCount = Math.clamp(1, UniformBlocks.MAX_CASCADES, light.cascadeCount);
+		int resolution = light.shadowResolution.size;
+		maps.setSize(resolution, cascadeCount);
+
+		light.gameObject().getCachedWorldMatrix().transformDirection(0, 0, 1, this.direction).normalize();
+		if (Math.abs(this.direction.y) > 0.99f) {
+			this.up.set(0, 0, 1);
+		} else {
+			this.up.set(0, 1, 0);
+		}
+		this.lightView.setLookAlong(this.direction, this.up);
+
+		// The corners of the Camera's whole view, in world space.
+		float cameraNear = camera.getNearPlane();
+		float cameraFar = camera.getFarPlane();
+		this.inverseViewProjection.set(camera.getProjectionMatrix()).mul(viewMatrix).invert();
+		for (int i = 0; i < 4; i++) {
+			float x = (i & 1) == 0 ? -1 : 1;
+			float y = (i & 2) == 0 ? -1 : 1;
+			this.inverseViewProjection.transformProject(x, y, -1, this.nearCorners[i]);
+			this.inverseViewProjection.transformProject(x, y, 1, this.farCorners[i]);
+		}
+
+		float shadowFar = Math.min(cameraFar, Math.max(light.shadowDistance, cameraNear * 2));
+		float sliceNear = cameraNear;
+		for (int cascade = 0; cascade < cascadeCount; cascade++) {
+			float fraction = (cascade + 1) / (float) cascadeCount;
+			float uniformSplit = cameraNear + (shadowFar - cameraNear) * fraction;
+			float logSplit = cameraNear * (float) java.lang.Math.pow(shadowFar / cameraNear, fraction);
+			float sliceFar = Math.lerp(uniformSplit, logSplit, CASCADE_SPLIT_LAMBDA);
+
+			this.fitCascade(sliceNear, sliceFar, cameraNear, cameraFar, resolution);
+			if (!this.renderMap(maps, cascade, resolution, program, matrixLocation)) {
+				this.directionalLight = null;
+				return;
+			}
+
+			this.shadowMatrix.translation(0.5f, 0.5f, 0.5f).scale(0.5f).mul(this.lightViewProjection);
+			this.shadowMatrix.get(UniformBlocks.SHADOWS_CASCADE_MATRICES_OFFSET + cascade * 64, data);
+			data.putFloat(UniformBlocks.SHADOWS_CASCADE_SPLITS_OFFSET + cascade * 4, sliceFar);
+			sliceNear = sliceFar;
+		}
+		data.putInt(UniformBlocks.SHADOWS_CASCADE_COUNT_OFFSET, cascadeCount);
+	}
+
+	/**
+	 * Sets {@link ShadowRenderer#lightViewProjection} to an orthographic
+	 * projection that covers the bounding sphere of a slice of the Camera's view.
+	 * A sphere is used so the projection's size doesn't change as the Camera
+	 * rotates, and its position is snapped to whole texels so the shadows don't
+	 * shimmer as the Camera moves.
+	 */
+	private void fitCascade(float sliceNear, float sliceFar, float cameraNear, float cameraFar, int resolution) {
+		float depthRange = cameraFar - cameraNear;
+		float t0 = (sliceNear - cameraNear) / depthRange;
+		float t1 = (sliceFar - cameraNear) / depthRange;
+
+		this.center.zero();
+		for (int i = 0; i < 4; i++) {
+			this.center.add(this.nearCorners[i].lerp(this.farCorners[i], t0, this.corner));
+			this.center.add(this.nearCorners[i].lerp(this.farCorners[i], t1, this.corner));
+		}
+		this.center.div(8);
+
+		float radius = 0;
+		for (int i = 0; i < 4; i++) {
+			radius = Math.max(radius, this.nearCorners[i].lerp(this.farCorners[i], t0, this.corner).distance(this.center));
+			radius = Math.max(radius, this.nearCorners[i].lerp(this.farCorners[i], t1, this.corner).distance(this.center));
+		}
+		radius = (float) Math.ceil(radius * 16f) / 16f;
+
+		float texelSize = radius * 2 / resolution;
+		this.lightView.transformPosition(this.center);
+		float x = (float) Math.floor(this.center.x / texelSize) * texelSize;
+		float y = (float) Math.floor(this.center.y / texelSize) * texelSize;
+		float z = (float) Math.floor(this.center.z / texelSize) * texelSize;
+
+		// The light looks down -z.
+		this.lightProjection.setOrtho(x - radius, x + radius, y - radius, y + radius,
+				-z - radius - CASTER_DISTANCE, -z + radius);
+		this.lightProjection.mul(this.lightView, this.lightViewProjection);
+	}
+
+	private void renderSpotLights(ShaderProgram program, int matrixLocation, ByteBuffer data) {
+		int mapSize = 1;
+		for (int i = 0; i < this.spotLightCount; i++) {
+			mapSize = Math.max(mapSize, this.spotLights[i].shadowResolution.size);
+		}
+		this.spotMaps.setSize(mapSize, this.spotLightCount);
+
+		for (int i = 0; i < this.spotLightCount; i++) {
+			SpotLight light = this.spotLights[i];
+			int resolution = light.shadowResolution.size;
+
+			Matrix4fc worldMatrix = light.gameObject().getCachedWorldMatrix();
+			worldMatrix.getTranslation(this.position);
+			worldMatrix.transformDirection(0, 0, 1, this.direction).normalize();
+			if (Math.abs(this.direction.y) > 0.99f) {
+				this.up.set(0, 0, 1);
+			} else {
+				this.up.set(0, 1, 0);
+			}
+
+			// A perspective projection can't cover more than 180 degrees.
+			float angle = Math.clamp(1f, 179f, light.getAngle());
+			this.lightView.setLookAt(this.position, this.center.set(this.position).add(this.direction), this.up);
+			this.lightProjection.setPerspective(Math.toRadians(angle), 1f, SPOT_NEAR_PLANE,
+					Math.max(light.getRange(), SPOT_NEAR_PLANE * 2));
+			this.lightProjection.mul(this.lightView, this.lightViewProjection);
+			if (!this.renderMap(this.spotMaps, i, resolution, program, matrixLocation)) {
+				this.spotLightCount = 0;
+				return;
+			}
+
+			// Lights with a lower resolution only use the corner of their layer.
+			float uvScale = resolution / (float) mapSize;
+			this.shadowMatrix.translation(0.5f * uvScale, 0.5f * uvScale, 0.5f)
+					.scale(0.5f * uvScale, 0.5f * uvScale, 0.5f)
+					.mul(this.lightViewProjection);
+			this.shadowMatrix.get(UniformBlocks.SHADOWS_SPOT_MATRICES_OFFSET + i * 64, data);
+		}
+	}
+
+	/**
+	 * Renders the casters inside of {@link ShadowRenderer#lightViewProjection} to
+	 * a layer of a shadow map. The static casters are only rendered again if they
+	 * or the matrix have changed since the layer was last rendered, and the
+	 * dynamic casters are only rendered again if they have changed too.
+	 *
+	 * @return {@code false} if the map can't be rendered to
+	 */
+	private boolean renderMap(ShadowMapArray maps, int layer, int resolution, ShaderProgram program,
+			int matrixLocation) {
+		this.frustum.set(this.lightViewProjection);
+		long staticSignature = this.batchVisibleCasters(this.staticCasters, this.staticCasterMeshes,
+				this.staticBatches, resolution);
+		long dynamicSignature = this.batchVisibleCasters(this.dynamicCasters, this.dynamicCasterMeshes,
+				this.dynamicBatches, resolution);
+
+		boolean isStaticCached = maps.isStaticCached(layer, this.lightViewProjection, staticSignature);
+		if (isStaticCached && maps.dynamicSignatures[layer] == dynamicSignature) {
+			this.staticBatches.clear();
+			this.dynamicBatches.clear();
+			return true;
+		}
+
+		glViewport(0, 0, resolution, resolution);
+		program.setUniform(matrixLocation, this.lightViewProjection);
+
+		if (!isStaticCached) {
+			glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, maps.staticTextureId, 0, layer);
+			if (!this.checkFramebuffer(maps)) {
+				this.staticBatches.clear();
+				this.dynamicBatches.clear();
+				return false;
+			}
+			glClear(GL_DEPTH_BUFFER_BIT);
+			this.staticBatches.draw(this.instanceBuffer);
+		}
+
+		// Start the map from the static casters, and draw the dynamic ones on top.
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, this.readFramebufferId);
+		glFramebufferTextureLayer(GL_READ_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, maps.staticTextureId, 0, layer);
+		glFramebufferTextureLayer(GL_DRAW_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, maps.textureId, 0, layer);
+		glBlitFramebuffer(0, 0, resolution, resolution, 0, 0, resolution, resolution, GL_DEPTH_BUFFER_BIT,
+				GL_NEAREST);
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, this.framebufferId);
+		this.dynamicBatches.draw(this.instanceBuffer);
+
+		this.staticBatches.clear();
+		this.dynamicBatches.clear();
+		maps.setCached(layer, this.lightViewProjection, staticSignature, dynamicSignature);
+		return true;
+	}
+
+	/**
+	 * Adds the casters that are inside of {@link ShadowRenderer#frustum} to a set
+	 * of batches.
+	 *
+	 * @return a hash of the casters that were added and their positions
+	 */
+	private long batchVisibleCasters(List<Renderer> casters, List<Mesh> meshes, CasterBatches batches,
+			int resolution) {
+		long signature = resolution;
+		for (int i = 0; i < casters.size(); i++) {
+			Renderer renderer = casters.get(i);
+			Mesh mesh = meshes.get(i);
+			Matrix4fc worldMatrix = renderer.gameObject().getCachedWorldMatrix();
+			Bounds bounds = mesh.getBounds();
+			if (bounds != null) {
+				worldMatrix.transformPosition(bounds.getCenter(), this.corner);
+				worldMatrix.getScale(this.scale);
+				float radius = bounds.getRadius() * Math.max(this.scale.x, Math.max(this.scale.y, this.scale.z));
+				if (!this.frustum.testSphere(this.corner, radius)) {
+					continue;
+				}
+			}
+
+			signature = signature * 31 + System.identityHashCode(renderer);
+			signature = signature * 31 + System.identityHashCode(mesh);
+			signature = signature * 31 + renderer.gameObject().getWorldMatrixVersion();
+			batches.add(mesh, renderer);
+		}
+		return signature;
+	}
+
+	/**
+	 * Checks that the framebuffer is complete the first time one of a
+	 * ShadowMapArray's layers is attached to it.
+	 */
+	private boolean checkFramebuffer(ShadowMapArray maps) {
+		if (maps.framebufferStatus == 0) {
+			maps.framebufferStatus = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+			if (maps.framebufferStatus != GL_FRAMEBUFFER_COMPLETE) {
+				Debug.logError("Shadow map framebuffer is incomplete (status 0x%X), shadows will not be drawn",
+						maps.framebufferStatus);
+			}
+		}
+		return maps.framebufferStatus == GL_FRAMEBUFFER_COMPLETE;
+	}
+
+	/**
+	 * Instance batches of shadow casters, grouped by {@link Mesh}.
+	 */
+	private static class CasterBatches {
+
+		private final Map<Mesh, List<Renderer>> batches;
+		private final List<Mesh> batchedMeshes;
+		private final List<List<Renderer>> freeBatches;
+
+		private CasterBatches() {
+			this.batches = new HashMap<Mesh, List<Renderer>>();
+			this.batchedMeshes = new ArrayList<Mesh>();
+			this.freeBatches = new ArrayList<List<Renderer>>();
+		}
+
+		private void add(Mesh mesh, Renderer renderer) {
+			List<Renderer> batch = this.batches.get(mesh);
+			if (batch == null) {
+				int freeCount = this.freeBatches.size();
+				batch = freeCount > 0 ? this.freeBatches.remove(freeCount - 1) : new ArrayList<Renderer>();
+				this.batches.put(mesh, batch);
+				this.batchedMeshes.add(mesh);
+			}
+			batch.add(renderer);
+		}
+
+		private void draw(InstanceBuffer instanceBuffer) {
+			for (int i = 0; i < this.batchedMeshes.size(); i++) {
+				Mesh mesh = this.batchedMeshes.get(i);
+				List<Renderer> batch = this.batches.get(mesh);
+				instanceBuffer.upload(batch);
+				GLStateCache.bindVertexArray(mesh.getVaoId());
+				instanceBuffer.bind();
+				glDrawElementsInstanced(GL_TRIANGLES, mesh.getVerticeCount(), mesh.getIndexType(), 0,
+						batch.size());
+				InstanceBuffer.unbindAttributes();
+			}
+		}
+
+		private void clear() {
+			for (int i = 0; i < this.batchedMeshes.size(); i++) {
+				List<Renderer> batch = this.batches.remove(this.batchedMeshes.get(i));
+				batch.clear();
+				this.freeBatches.add(batch);
+			}
+			this.batchedMeshes.clear();
+		}
+	}
+
+	private static class CasterState {
+
+		private int version;
+		private int lastMovedFrame;
+		private int lastSeenFrame;
+	}
+
+	/**
+	 * A depth texture array holding one shadow map per layer, a second array
+	 * holding the depth of only the static casters in each map, and what each
+	 * layer was last rendered with.
+	 */
+	private static class ShadowMapArray {
+
+		private final int unit;
+		private final int textureId;
+		private final int staticTextureId;
+		private int size;
+		private int layerCount;
+		private Matrix4f[] matrices;
+		private long[] staticSignatures;
+		private long[] dynamicSignatures;
+		private boolean[] isValid;
+		/**
+		 * The result of {@code glCheckFramebufferStatus} with a layer attached, or 0
+		 * if it hasn't been checked since the texture was allocated.
+		 */
+		private int framebufferStatus;
+		private int lastUsedFrame;
+
+		private ShadowMapArray(int unit) {
+			this.unit = unit;
+			this.textureId = glGenTextures();
+			this.staticTextureId = glGenTextures();
+
+			GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, this.textureId);
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
+			// Everything outside of the map is lit.
+			glTexParameterfv(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_BORDER_COLOR, new float[] { 1, 1, 1, 1 });
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_COMPARE_MODE, GL_COMPARE_REF_TO_TEXTURE);
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_COMPARE_FUNC, GL_LEQUAL);
+
+			// The static layers are only ever copied from, never sampled.
+			GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, this.staticTextureId);
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+			this.setSize(1, 1);
+		}
+
+		/**
+		 * Reallocates the textures if their size or number of layers has changed,
+		 * which clears every layer.
+		 */
+		private void setSize(int size, int layerCount) {
+			if (this.size == size && this.layerCount == layerCount) {
+				return;
+			}
+
+			this.size = size;
+			this.layerCount = layerCount;
+			this.matrices = new Matrix4f[layerCount];
+			this.staticSignatures = new long[layerCount];
+			this.dynamicSignatures = new long[layerCount];
+			this.isValid = new boolean[layerCount];
+			for (int i = 0; i < layerCount; i++) {
+				this.matrices[i] = new Matrix4f();
+			}
+			this.framebufferStatus = 0;
+
+			GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, this.textureId);
+			glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_DEPTH_COMPONENT24, size, size, layerCount, 0,
+					GL_DEPTH_COMPONENT, GL_FLOAT, (ByteBuffer) null);
+			GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, this.staticTextureId);
+			glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_DEPTH_COMPONENT24, size, size, layerCount, 0,
+					GL_DEPTH_COMPONENT, GL_FLOAT, (ByteBuffer) null);
+		}
+
+		private boolean isStaticCached(int layer, Matrix4fc matrix, long staticSignature) {
+			return this.isValid[layer]
+					&& this.staticSignatures[layer] == staticSignature
+					&& this.matrices[layer].equals(matrix);
+		}
+
+		private void setCached(int layer, Matrix4fc matrix, long staticSignature, long dynamicSignature) {
+			this.isValid[layer] = true;
+			this.staticSignatures[layer] = staticSignature;
+			this.dynamicSignatures[layer] = dynamicSignature;
+			this.matrices[layer].set(matrix);
+		}
+
+		private void bind() {
+			GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, this.textureId);
+		}
+
+		private void dispose() {
+			glDeleteTextures(this.textureId);
+			glDeleteTextures(this.staticTextureId);
+			GLStateCache.invalidate(); // The ids may be reused.
+		}
+	}
+}
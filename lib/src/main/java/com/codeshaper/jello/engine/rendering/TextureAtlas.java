@@ -0,0 +1,485 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.codeshaper.jello.engine.Debug;
+import com.codeshaper.jello.engine.TextureImporter;
+import com.codeshaper.jello.engine.TextureImporter.ImportedTexture;
+import com.codeshaper.jello.engine.asset.Texture;
+import com.codeshaper.jello.engine.rendering.shader.UniformBlocks;
+
+/**
+ * Packs many small images into the layers of a single
+ * {@code GL_TEXTURE_2D_ARRAY}, so everything drawn from them can share one
+ * texture binding. Each layer is called a page, and images are packed into the
+ * pages in shelves: rows that are as tall as the tallest image in them.
+ * Whenever every page is full a new one is added, growing the array.
+ * <p>
+ * Images are copied into the atlas, so changes made to a {@link Texture} after
+ * it has been added are not seen until it is removed and added again. When an
+ * image is released its space on the shelf is reused by later images that fit
+ * in it, and a page that has nothing left on it is emptied. Textures are
+ * removed from the UI atlas when they are unloaded.
+ * <p>
+ * An atlas never has more than {@link TextureAtlas#MAX_PAGES} pages, which
+ * keeps it to 64 MB of video memory.
+ */
+public final class TextureAtlas {
+
+	/**
+	 * The width and height of every page, in pixels.
+	 */
+	public static final int PAGE_SIZE = 2048;
+	/**
+	 * The most pages an atlas may have.
+	 */
+	public static final int MAX_PAGES = 4;
+	/**
+	 * The space left around every image, so neighbours never bleed into each
+	 * other. The edges of the image are repeated into it, so filtering at the
+	 * edge of an image only reads the image.
+	 */
+	private static final int PADDING = 1;
+
+	private static TextureAtlas uiAtlas;
+
+	private final int unit;
+	private final List<Page> pages;
+	private final Map<Texture, Region> regions;
+	/**
+	 * Textures that could not be added, so the warning is only logged once.
+	 */
+	private final Set<Texture> rejected;
+	private int textureId;
+	/**
+	 * The number of layers {@link TextureAtlas#textureId} has room for.
+	 */
+	private int capacity;
+
+	/**
+	 * Gets the atlas that UI elements with a
+	 * {@link com.codeshaper.jello.engine.gui.UiBase#sprite} are drawn from. It is
+	 * bound to {@link UniformBlocks#UI_ATLAS_UNIT}.
+	 *
+	 * @return the UI atlas
+	 */
+	public static TextureAtlas getUiAtlas() {
+		if (uiAtlas == null) {
+			uiAtlas = new TextureAtlas(UniformBlocks.UI_ATLAS_UNIT);
+		}
+		return uiAtlas;
+	}
+
+	/**
+	 * Creates an empty atlas. No OpenGL texture is made until the first image is
+	 * added.
+	 *
+	 * @param unit the texture unit the atlas is bound to
+	 */
+	public TextureAtlas(int unit) {
+		this.unit = unit;
+		this.pages = new ArrayList<Page>();
+		this.regions = new HashMap<Texture, Region>();
+		this.rejected = new HashSet<Texture>();
+	}
+
+	/**
+	 * Gets the region of the atlas a {@link Texture} is in, adding it if it isn't
+	 * already. Adding a Texture that was loaded from a file decodes the file
+	 * again, unless the Texture is readable.
+	 *
+	 * @param texture the Texture to get
+	 * @return the Texture's region, or {@code null} if it could not be added
+	 *         because it is too large, or its pixels could not be read
+	 * @throws IllegalArgumentException if {@code texture} is null
+	 */
+	public Region getRegion(Texture texture) {
+		if (texture == null) {
+			throw new IllegalArgumentException("texture may not be null");
+		}
+
+		Region region = this.regions.get(texture);
+		if (region != null || this.rejected.contains(texture)) {
+			return region;
+		}
+
+		if (texture.isReadable()) {
+			region = this.add(texture.pixelBuffer, texture.getWidth(), texture.getHeight());
+		} else if (!texture.isRuntimeAsset()) {
+			ImportedTexture pixels = TextureImporter.decodePixels(texture.location);
+			if (pixels != null) {
+				region = this.add(pixels.levels[0], pixels.width, pixels.height);
+				pixels.free();
+			}
+		}
+
+		if (region != null) {
+			this.regions.put(texture, region);
+		} else {
+			this.rejected.add(texture);
+			Debug.logWarningWithContext(texture, "Texture could not be added to the atlas");
+		}
+		return region;
+	}
+
+	/**
+	 * Removes a {@link Texture} from the UI atlas, giving back its space. This is
+	 * called when a Texture is unloaded, and does nothing if the UI atlas hasn't
+	 * been made.
+	 *
+	 * @param texture the Texture to remove
+	 */
+	public static void removeFromUiAtlas(Texture texture) {
+		if (uiAtlas != null) {
+			uiAtlas.remove(texture);
+		}
+	}
+
+	/**
+	 * Adds an image to the atlas. The image's space is given back by
+	 * {@link TextureAtlas#release(Region)}.
+	 *
+	 * @param pixels the image, with 4 bytes per pixel
+	 * @param width  the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @return the region the image was put in, or {@code null} if the image is
+	 *         larger than a page or every page is full
+	 * @throws IllegalArgumentException if {@code pixels} is null
+	 */
+	public Region add(ByteBuffer pixels, int width, int height) {
+		if (pixels == null) {
+			throw new IllegalArgumentException("pixels may not be null");
+		}
+
+		int paddedWidth = width + PADDING * 2;
+		int paddedHeight = height + PADDING * 2;
+		if (paddedWidth > PAGE_SIZE || paddedHeight > PAGE_SIZE) {
+			return null;
+		}
+
+		int layer = -1;
+		Shelf shelf = null;
+		for (int i = 0; i < this.pages.size() && shelf == null; i++) {
+			shelf = this.pages.get(i).findShelf(paddedWidth, paddedHeight);
+			layer = i;
+		}
+		if (shelf == null) {
+			if (this.pages.size() == MAX_PAGES) {
+				return null;
+			}
+			Page page = new Page();
+			this.pages.add(page);
+			layer = this.pages.size() - 1;
+			shelf = page.findShelf(paddedWidth, paddedHeight);
+		}
+
+		Page page = this.pages.get(layer);
+		int x = shelf.take(paddedWidth) + PADDING;
+		int y = shelf.y + PADDING;
+		page.regionCount++;
+
+		if (layer >= this.capacity) {
+			this.grow(Math.min(MAX_PAGES, Math.max(1, this.capacity * 2)));
+		}
+
+		GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, this.textureId);
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+		glPixelStorei(GL_UNPACK_ROW_LENGTH, width);
+		glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, x, y, layer, width, height, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+		// Repeat the edges into the padding.
+		glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, x, y - 1, layer, width, 1, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+		glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, x - 1, y, layer, 1, height, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+		glPixelStorei(GL_UNPACK_SKIP_ROWS, height - 1);
+		glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, x, y + height, layer, width, 1, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+		glPixelStorei(GL_UNPACK_SKIP_ROWS, 0);
+		glPixelStorei(GL_UNPACK_SKIP_PIXELS, width - 1);
+		glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, x + width, y, layer, 1, height, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+		glPixelStorei(GL_UNPACK_SKIP_PIXELS, 0);
+		glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
+
+		return new Region(layer, x, y, width, height, page, shelf);
+	}
+
+	/**
+	 * Gives back the space of an image that was added with
+	 * {@link TextureAtlas#add(ByteBuffer, int, int)}, so other images can be put
+	 * in it. The region must not be drawn from afterwards. Releasing a region more
+	 * than once, or after the atlas has been cleared, does nothing.
+	 *
+	 * @param region the region to release
+	 * @throws IllegalArgumentException if {@code region} is null
+	 */
+	public void release(Region region) {
+		if (region == null) {
+			throw new IllegalArgumentException("region may not be null");
+		}
+		if (region.isReleased || region.layer >= this.pages.size() || this.pages.get(region.layer) != region.page) {
+			return;
+		}
+
+		region.isReleased = true;
+		region.shelf.give(region.x - PADDING, region.width + PADDING * 2);
+		region.page.regionCount--;
+		if (region.page.regionCount == 0) {
+			region.page.empty();
+		}
+	}
+
+	/**
+	 * Removes a {@link Texture} from the atlas, giving back its space, so the next
+	 * call to {@link TextureAtlas#getRegion(Texture)} adds it again.
+	 *
+	 * @param texture the Texture to remove
+	 */
+	public void remove(Texture texture) {
+		Region region = this.regions.remove(texture);
+		if (region != null) {
+			this.release(region);
+		}
+		this.rejected.remove(texture);
+	}
+
+	/**
+	 * Removes everything from the atlas, and deletes its OpenGL texture.
+	 */
+	public void clear() {
+		if (this.textureId != 0) {
+			glDeleteTextures(this.textureId);
+			GLStateCache.invalidate(); // The id may be reused.
+		}
+		this.textureId = 0;
+		this.capacity = 0;
+		for (int i = 0; i < this.pages.size(); i++) {
+			this.pages.get(i).isCleared = true;
+		}
+		this.pages.clear();
+		this.regions.clear();
+		this.rejected.clear();
+	}
+
+	/**
+	 * Binds the atlas to its texture unit. Adding images also binds the atlas, so
+	 * this is only needed if something else may have used the unit.
+	 */
+	public void bind() {
+		if (this.textureId != 0) {
+			GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, this.textureId);
+		}
+	}
+
+	/**
+	 * Gets the number of pages that have something in them.
+	 *
+	 * @return the number of pages
+	 */
+	public int getPageCount() {
+		return this.pages.size();
+	}
+
+	/**
+	 * Replaces the atlas's texture with a larger one, copying the pages over on the
+	 * GPU.
+	 */
+	private void grow(int newCapacity) {
+		int newTextureId = glGenTextures();
+		GLStateCache.bindTexture(this.unit, GL_TEXTURE_2D_ARRAY, newTextureId);
+		glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, PAGE_SIZE, PAGE_SIZE, newCapacity, 0, GL_RGBA,
+				GL_UNSIGNED_BYTE, (ByteBuffer) null);
+		// Linear filtering is needed for distance fields to scale smoothly.
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+
+		if (this.textureId != 0) {
+			int previousFramebuffer = glGetInteger(GL_READ_FRAMEBUFFER_BINDING);
+			int framebufferId = glGenFramebuffers();
+			glBindFramebuffer(GL_READ_FRAMEBUFFER, framebufferId);
+			for (int layer = 0; layer < this.capacity; layer++) {
+				glFramebufferTextureLayer(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, this.textureId, 0, layer);
+				glCopyTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, 0, 0, PAGE_SIZE, PAGE_SIZE);
+			}
+			glBindFramebuffer(GL_READ_FRAMEBUFFER, previousFramebuffer);
+			glDeleteFramebuffers(framebufferId);
+			glDeleteTextures(this.textureId);
+			GLStateCache.invalidate(); // The id may be reused.
+		}
+
+		this.textureId = newTextureId;
+		this.capacity = newCapacity;
+	}
+
+	/**
+	 * The area of the atlas an image was put in.
+	 */
+	public static final class Region {
+
+		/**
+		 * The page, or layer of the array texture, the image is on.
+		 */
+		public final int layer;
+		/**
+		 * The position and size of the image on its page, in pixels.
+		 */
+		public final int x, y, width, height;
+		/**
+		 * The texture coordinates of the image's corners. (u0, v0) is the corner of
+		 * the first pixel of the image.
+		 */
+		public final float u0, v0, u1, v1;
+		private final Page page;
+		private final Shelf shelf;
+		private boolean isReleased;
+
+		private Region(int layer, int x, int y, int width, int height, Page page, Shelf shelf) {
+			this.layer = layer;
+			this.page = page;
+			this.shelf = shelf;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.u0 = (float) x / PAGE_SIZE;
+			this.v0 = (float) y / PAGE_SIZE;
+			this.u1 = (float) (x + width) / PAGE_SIZE;
+			this.v1 = (float) (y + height) / PAGE_SIZE;
+		}
+
+		/**
+		 * Checks if the region's space has been given back, either by
+		 * {@link TextureAtlas#release(Region)} or by clearing the atlas. A released
+		 * region may have been given to another image, so anything drawn from it
+		 * must get a new region.
+		 *
+		 * @return {@code true} if the region has been released
+		 */
+		public boolean isReleased() {
+			return this.isReleased || this.page.isCleared;
+		}
+	}
+
+	private static class Page {
+
+		private final List<Shelf> shelves = new ArrayList<Shelf>();
+		/**
+		 * The top of the highest shelf, where the next shelf goes.
+		 */
+		private int nextShelfY;
+		/**
+		 * The number of regions on the page that haven't been released.
+		 */
+		private int regionCount;
+		/**
+		 * If the atlas was cleared, which releases every region on the page.
+		 */
+		private boolean isCleared;
+
+		/**
+		 * Finds the shelf an image fits in with the least wasted height, making a new
+		 * one if none fit.
+		 *
+		 * @return the shelf, or {@code null} if the page is full
+		 */
+		private Shelf findShelf(int width, int height) {
+			Shelf best = null;
+			for (int i = 0; i < this.shelves.size(); i++) {
+				Shelf shelf = this.shelves.get(i);
+				if (shelf.height >= height && shelf.canFit(width)
+						&& (best == null || shelf.height < best.height)) {
+					best = shelf;
+				}
+			}
+
+			if (best == null && this.nextShelfY + height <= PAGE_SIZE) {
+				best = new Shelf(this.nextShelfY, height);
+				this.shelves.add(best);
+				this.nextShelfY += height;
+			}
+			return best;
+		}
+
+		/**
+		 * Removes every shelf, once everything on the page has been released.
+		 */
+		private void empty() {
+			this.shelves.clear();
+			this.nextShelfY = 0;
+		}
+	}
+
+	private static class Shelf {
+
+		private final int y;
+		private final int height;
+		/**
+		 * The left edge of the free space at the end of the shelf.
+		 */
+		private int x;
+		/**
+		 * The space given back by released regions, as pairs of x and width.
+		 */
+		private final List<int[]> freeSpans;
+
+		private Shelf(int y, int height) {
+			this.y = y;
+			this.height = height;
+			this.freeSpans = new ArrayList<int[]>();
+		}
+
+		private boolean canFit(int width) {
+			if (this.x + width <= PAGE_SIZE) {
+				return true;
+			}
+			for (int i = 0; i < this.freeSpans.size(); i++) {
+				if (this.freeSpans.get(i)[1] >= width) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Takes space for an image, from the first released span it fits in or from
+		 * the end of the shelf.
+		 *
+		 * @return the left edge of the space
+		 */
+		private int take(int width) {
+			for (int i = 0; i < this.freeSpans.size(); i++) {
+				int[] span = this.freeSpans.get(i);
+				if (span[1] >= width) {
+					int spanX = span[0];
+					span[0] += width;
+					span[1] -= width;
+					if (span[1] == 0) {
+						this.freeSpans.remove(i);
+					}
+					return spanX;
+				}
+			}
+
+			int spanX = this.x;
+			this.x += width;
+			return spanX;
+		}
+
+		/**
+		 * Gives back the space of a released region.
+		 */
+		private void give(int x, int width) {
+			if (x + width == this.x) {
+				this.x = x;
+			} else {
+				this.freeSpans.add(new int[] { x, width });
+			}
+		}
+	}
+}
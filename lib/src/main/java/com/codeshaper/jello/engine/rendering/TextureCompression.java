@@ -0,0 +1,21 @@
+package com.codeshaper.jello.engine.rendering;
+
+/**
+ * The block compressed formats Textures loaded from files can be stored in on
+ * the GPU. Compressed Textures take 4 to 8 times less memory than uncompressed
+ * ones, at the cost of some quality.
+ */
+public enum TextureCompression {
+
+	/**
+	 * Textures are stored uncompressed, with 8 bits per channel.
+	 */
+	NONE,
+	/**
+	 * Textures without any transparent pixels are stored as BC1 (DXT1), using 4
+	 * bits per pixel, and Textures with transparent pixels are stored as BC3
+	 * (DXT5), using 8 bits per pixel. If the GPU doesn't support S3TC
+	 * compression, Textures are stored uncompressed.
+	 */
+	AUTO;
+}
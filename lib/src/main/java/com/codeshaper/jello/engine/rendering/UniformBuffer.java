@@ -0,0 +1,66 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL31.*;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.codeshaper.jello.engine.rendering.shader.UniformBlocks;
+
+/**
+ * A uniform buffer that backs one of the blocks in {@link UniformBlocks}. The
+ * data is written to {@link UniformBuffer#getData()} with the block's std140
+ * offsets, and then sent to the GPU with {@link UniformBuffer#upload()}.
+ */
+final class UniformBuffer {
+
+	private final int uboId;
+	private final int binding;
+	private final ByteBuffer data;
+
+	/**
+	 * Creates a uniform buffer.
+	 *
+	 * @param binding the binding point the buffer is bound to
+	 * @param size    the size of the block, in bytes
+	 */
+	UniformBuffer(int binding, int size) {
+		this.uboId = glGenBuffers();
+		this.binding = binding;
+		this.data = MemoryUtil.memCalloc(size);
+
+		glBindBuffer(GL_UNIFORM_BUFFER, this.uboId);
+		glBufferData(GL_UNIFORM_BUFFER, size, GL_DYNAMIC_DRAW);
+		glBindBuffer(GL_UNIFORM_BUFFER, 0);
+	}
+
+	/**
+	 * Gets the buffer's data on the CPU. The buffer is in native byte order, and
+	 * should be written to with absolute puts.
+	 *
+	 * @return the buffer's data
+	 */
+	ByteBuffer getData() {
+		return this.data;
+	}
+
+	/**
+	 * Uploads the data to the GPU and binds the buffer to its binding point.
+	 */
+	void upload() {
+		glBindBuffer(GL_UNIFORM_BUFFER, this.uboId);
+		glBufferSubData(GL_UNIFORM_BUFFER, 0, this.data);
+		glBindBuffer(GL_UNIFORM_BUFFER, 0);
+		glBindBufferBase(GL_UNIFORM_BUFFER, this.binding, this.uboId);
+	}
+
+	/**
+	 * Deletes the buffer and frees its data. The UniformBuffer must not be used
+	 * after this.
+	 */
+	void dispose() {
+		glDeleteBuffers(this.uboId);
+		MemoryUtil.memFree(this.data);
+	}
+}
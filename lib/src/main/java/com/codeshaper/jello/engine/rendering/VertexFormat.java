@@ -0,0 +1,266 @@
+package com.codeshaper.jello.engine.rendering;
+
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.ByteBuffer;
+
+import com.codeshaper.jello.engine.MeshBuilder;
+
+/**
+ * Describes how the vertices of a Mesh are stored on the GPU. Every attribute
+ * is interleaved into a single buffer, so all of a vertex's data is fetched
+ * together. Positions and texture coordinates are always stored, normals,
+ * tangents and colors are optional.
+ * <p>
+ * Shaders read the attributes from fixed locations:
+ * <ul>
+ * <li>{@code layout (location=0) in vec3 inPosition;}</li>
+ * <li>{@code layout (location=1) in vec2 texCoord;}</li>
+ * <li>{@code layout (location=6) in vec3 inNormal;}</li>
+ * <li>{@code layout (location=7) in vec4 inTangent;}, with the sign of the
+ * bitangent in {@code w}</li>
+ * <li>{@code layout (location=8) in vec4 inColor;}</li>
+ * </ul>
+ * Locations 2 through 5 are left free for the per-instance matrix.
+ * <p>
+ * A quantized format stores texture coordinates as half floats and normals and
+ * tangents as normalized bytes, which more than halves the size of a vertex at
+ * the cost of some precision. Colors are always stored as normalized bytes.
+ */
+public final class VertexFormat {
+
+	public static final int POSITION_LOCATION = 0;
+	public static final int TEXTURE_COORDINATE_LOCATION = 1;
+	public static final int NORMAL_LOCATION = 6;
+	public static final int TANGENT_LOCATION = 7;
+	public static final int COLOR_LOCATION = 8;
+
+	/**
+	 * A format with only positions and texture coordinates.
+	 */
+	public static final VertexFormat POSITION_TEXTURE = new VertexFormat(false, false, false, false);
+	/**
+	 * A format with positions, texture coordinates, normals and tangents.
+	 */
+	public static final VertexFormat DEFAULT = new VertexFormat(true, true, false, false);
+
+	public final boolean hasNormals;
+	public final boolean hasTangents;
+	public final boolean hasColors;
+	public final boolean isQuantized;
+	private final int textureCoordinateOffset;
+	private final int normalOffset;
+	private final int tangentOffset;
+	private final int colorOffset;
+	private final int stride;
+
+	/**
+	 * Creates a VertexFormat.
+	 *
+	 * @param normals   should normals be stored
+	 * @param tangents  should tangents be stored
+	 * @param colors    should colors be stored
+	 * @param quantized should texture coordinates, normals and tangents be stored
+	 *                  with reduced precision
+	 */
+	public VertexFormat(boolean normals, boolean tangents, boolean colors, boolean quantized) {
+		this.hasNormals = normals;
+		this.hasTangents = tangents;
+		this.hasColors = colors;
+		this.isQuantized = quantized;
+
+		int offset = 3 * Float.BYTES;
+		this.textureCoordinateOffset = offset;
+		offset += quantized ? 2 * Short.BYTES : 2 * Float.BYTES;
+		this.normalOffset = offset;
+		if (normals) {
+			offset += quantized ? 4 : 3 * Float.BYTES;
+		}
+		this.tangentOffset = offset;
+		if (tangents) {
+			offset += quantized ? 4 : 4 * Float.BYTES;
+		}
+		this.colorOffset = offset;
+		if (colors) {
+			offset += 4;
+		}
+		this.stride = offset;
+	}
+
+	/**
+	 * Gets the size of a single vertex, in bytes.
+	 *
+	 * @return the size of a vertex
+	 */
+	public int getStride() {
+		return this.stride;
+	}
+
+	/**
+	 * Writes the vertices in a {@link MeshBuilder} to a buffer in this format.
+	 * Attributes that the format stores but the MeshBuilder doesn't have are
+	 * filled with zeros, except for colors which are filled with white.
+	 *
+	 * @param data   the vertices to write
+	 * @param buffer the buffer to write to, with room for at least
+	 *               {@code getStride()} bytes per vertex. The buffer must be in
+	 *               native byte order.
+	 */
+	public void writeVertices(MeshBuilder data, ByteBuffer buffer) {
+		int vertexCount = data.verts.length / 3;
+		for (int i = 0; i < vertexCount; i++) {
+			int vertex = i * this.stride;
+
+			buffer.putFloat(vertex, data.verts[i * 3]);
+			buffer.putFloat(vertex + 4, data.verts[i * 3 + 1]);
+			buffer.putFloat(vertex + 8, data.verts[i * 3 + 2]);
+
+			int offset = vertex + this.textureCoordinateOffset;
+			float u = get(data.textCoords, i * 2, 0);
+			float v = get(data.textCoords, i * 2 + 1, 0);
+			if (this.isQuantized) {
+				buffer.putShort(offset, toHalfFloat(u));
+				buffer.putShort(offset + 2, toHalfFloat(v));
+			} else {
+				buffer.putFloat(offset, u);
+				buffer.putFloat(offset + 4, v);
+			}
+
+			if (this.hasNormals) {
+				offset = vertex + this.normalOffset;
+				for (int j = 0; j < 3; j++) {
+					float value = get(data.normals, i * 3 + j, 0);
+					if (this.isQuantized) {
+						buffer.put(offset + j, toNormalizedByte(value));
+					} else {
+						buffer.putFloat(offset + j * 4, value);
+					}
+				}
+				if (this.isQuantized) {
+					buffer.put(offset + 3, (byte) 0);
+				}
+			}
+
+			if (this.hasTangents) {
+				offset = vertex + this.tangentOffset;
+				for (int j = 0; j < 4; j++) {
+					float value = get(data.tangents, i * 4 + j, 0);
+					if (this.isQuantized) {
+						buffer.put(offset + j, toNormalizedByte(value));
+					} else {
+						buffer.putFloat(offset + j * 4, value);
+					}
+				}
+			}
+
+			if (this.hasColors) {
+				offset = vertex + this.colorOffset;
+				for (int j = 0; j < 4; j++) {
+					float value = Math.max(0f, Math.min(1f, get(data.colors, i * 4 + j, 1)));
+					buffer.put(offset + j, (byte) Math.round(value * 255f));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Points the vertex attributes of the currently bound Vertex Array Object at
+	 * the buffer bound to {@code GL_ARRAY_BUFFER}, and enables them.
+	 */
+	public void enableAttributes() {
+		glEnableVertexAttribArray(POSITION_LOCATION);
+		glVertexAttribPointer(POSITION_LOCATION, 3, GL_FLOAT, false, this.stride, 0);
+
+		glEnableVertexAttribArray(TEXTURE_COORDINATE_LOCATION);
+		if (this.isQuantized) {
+			glVertexAttribPointer(TEXTURE_COORDINATE_LOCATION, 2, GL_HALF_FLOAT, false, this.stride,
+					this.textureCoordinateOffset);
+		} else {
+			glVertexAttribPointer(TEXTURE_COORDINATE_LOCATION, 2, GL_FLOAT, false, this.stride,
+					this.textureCoordinateOffset);
+		}
+
+		if (this.hasNormals) {
+			glEnableVertexAttribArray(NORMAL_LOCATION);
+			if (this.isQuantized) {
+				glVertexAttribPointer(NORMAL_LOCATION, 3, GL_BYTE, true, this.stride, this.normalOffset);
+			} else {
+				glVertexAttribPointer(NORMAL_LOCATION, 3, GL_FLOAT, false, this.stride, this.normalOffset);
+			}
+		}
+
+		if (this.hasTangents) {
+			glEnableVertexAttribArray(TANGENT_LOCATION);
+			if (this.isQuantized) {
+				glVertexAttribPointer(TANGENT_LOCATION, 4, GL_BYTE, true, this.stride, this.tangentOffset);
+			} else {
+				glVertexAttribPointer(TANGENT_LOCATION, 4, GL_FLOAT, false, this.stride, this.tangentOffset);
+			}
+		}
+
+		if (this.hasColors) {
+			glEnableVertexAttribArray(COLOR_LOCATION);
+			glVertexAttribPointer(COLOR_LOCATION, 4, GL_UNSIGNED_BYTE, true, this.stride, this.colorOffset);
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof VertexFormat)) {
+			return false;
+		}
+		VertexFormat other = (VertexFormat) obj;
+		return this.hasNormals == other.hasNormals
+				&& this.hasTangents == other.hasTangents
+				&& this.hasColors == other.hasColors
+				&& this.isQuantized == other.isQuantized;
+	}
+
+	@Override
+	public int hashCode() {
+		return (this.hasNormals ? 1 : 0)
+				| (this.hasTangents ? 2 : 0)
+				| (this.hasColors ? 4 : 0)
+				| (this.isQuantized ? 8 : 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("VertexFormat(normals=%s, tangents=%s, colors=%s, quantized=%s, stride=%s)",
+				this.hasNormals, this.hasTangents, this.hasColors, this.isQuantized, this.stride);
+	}
+
+	private static float get(float[] array, int index, float defaultValue) {
+		return array != null && index < array.length ? array[index] : defaultValue;
+	}
+
+	private static byte toNormalizedByte(float value) {
+		return (byte) Math.round(Math.max(-1f, Math.min(1f, value)) * 127f);
+	}
+
+	/**
+	 * Converts a float to the bits of a 16-bit half float, rounding to the nearest
+	 * value.
+	 */
+	private static short toHalfFloat(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+		int mantissa = bits & 0x7FFFFF;
+
+		if (exponent >= 31) {
+			boolean isNaN = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+			return (short) (sign | (isNaN ? 0x7E00 : 0x7C00)); // NaN or infinity.
+		}
+		if (exponent <= 0) {
+			if (exponent < -10) {
+				return (short) sign; // Too small, rounds to zero.
+			}
+			// Subnormal, shift in the implicit leading bit.
+			mantissa = (mantissa | 0x800000) >> (1 - exponent);
+			return (short) (sign | ((mantissa + 0x1000) >> 13));
+		}
+		// Adding, not or-ing, lets rounding carry into the exponent.
+		return (short) (sign | ((exponent << 10) + ((mantissa + 0x1000) >> 13)));
+	}
+}
@@ -10,6 +10,18 @@ public class ShaderData {
 	public boolean depth_test = true;
 	public boolean enable_depth_mask = true;
 	public CullMode culling = CullMode.BACK;
+	/**
+	 * If true, MeshRenderers that share a Mesh and Material are drawn together
+	 * with a single instanced draw call. Instead of the {@code modelMatrix}
+	 * uniform, the vertex shader gets the world matrix from a per-instance
+	 * attribute, {@code layout (location=2) in mat4 instanceMatrix;}.
+	 */
+	public boolean instancing = false;
+	/**
+	 * If true, the Shader blends with what is behind it. Transparent Renderers are
+	 * drawn after opaque ones with the same render order, from back to front.
+	 */
+	public boolean transparent = false;
 	
 	public ShaderSource[] shaders = new ShaderSource[] {};
 
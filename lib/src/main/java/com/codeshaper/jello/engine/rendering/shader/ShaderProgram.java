@@ -6,9 +6,11 @@ import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
@@ -17,14 +19,21 @@ import org.lwjgl.opengl.GL41;
 import org.lwjgl.system.MemoryStack;
 
 import com.codeshaper.jello.engine.Debug;
+import com.codeshaper.jello.engine.rendering.GLStateCache;
 
 public class ShaderProgram {
 
 	public final int programId;
 	public final List<Uniform> uniforms;
+	/**
+	 * All of the active uniforms, mapped by name. Array uniforms are in here twice,
+	 * once with the {@code [0]} suffix that OpenGL reports and once without it.
+	 */
+	private final Map<String, Uniform> uniformsByName;
 
 	public ShaderProgram(ShaderSource... shaders) {
 		this.uniforms = new ArrayList<Uniform>();
+		this.uniformsByName = new HashMap<String, Uniform>();
 
 		this.programId = glCreateProgram();
 		if (this.programId == 0) {
@@ -40,54 +49,111 @@ public class ShaderProgram {
 		}
 
 		this.link(shaderModules);
+		UniformBlocks.linkBlocks(this.programId);
 
 		IntBuffer b0 = BufferUtils.createIntBuffer(1);
 		IntBuffer b1 = BufferUtils.createIntBuffer(1);
 		glGetProgramiv(this.programId, GL_ACTIVE_UNIFORMS, b0);
 		int uniformCount = b0.get(0);
 		for (int id = 0; id < uniformCount; id++) {
+			if (glGetActiveUniformsi(this.programId, id, GL_UNIFORM_BLOCK_INDEX) != -1) {
+				continue; // Uniforms in a block are set through the block's buffer.
+			}
+
 			String uniformName = glGetActiveUniform(this.programId, id, b0, b1);
-			this.uniforms.add(new Uniform(id, uniformName, b1.get(0), b0.get(0)));
+			int location = glGetUniformLocation(this.programId, uniformName);
+			Uniform uniform = new Uniform(id, location, uniformName, b1.get(0), b0.get(0));
+			this.uniforms.add(uniform);
+			this.uniformsByName.put(uniformName, uniform);
+			if (uniformName.endsWith("[0]")) {
+				this.uniformsByName.put(uniformName.substring(0, uniformName.length() - 3), uniform);
+			}
 		}
 	}
 
 	public void bind() {
-		glUseProgram(programId);
+		GLStateCache.useProgram(this.programId);
 	}
 
 	public void unbind() {
-		glUseProgram(0);
+		GLStateCache.useProgram(0);
 	}
 
 	public void setUniform(String uniformName, int value) {
-		glUniform1i(this.getUniformLocation(uniformName), value);
+		this.setUniform(this.getUniformLocation(uniformName), value);
 	}
 
 	public void setUniform(String uniformName, float value) {
-		glUniform1f(this.getUniformLocation(uniformName), value);
+		this.setUniform(this.getUniformLocation(uniformName), value);
 	}
 
 	public void setUniform(String uniformName, Vector2f value) {
-		glUniform2f(this.getUniformLocation(uniformName), value.x, value.y);
+		this.setUniform(this.getUniformLocation(uniformName), value);
 	}
 
 	public void setUniform(String uniformName, Vector3f value) {
-		glUniform3f(this.getUniformLocation(uniformName), value.x, value.y, value.z);
+		this.setUniform(this.getUniformLocation(uniformName), value);
 	}
 
 	public void setUniform(String uniformName, Vector4f value) {
-		if (!doesUniformExist(uniformName)) {
-			return;
-		}
-		glUniform4f(this.getUniformLocation(uniformName), value.x, value.y, value.z, value.w);
+		this.setUniform(this.getUniformLocation(uniformName), value);
+	}
+
+	public void setUniform(String uniformName, Matrix4fc value) {
+		this.setUniform(this.getUniformLocation(uniformName), value);
 	}
 
-	public void setUniform(String uniformName, Matrix4f value) {
+	/**
+	 * Sets the value of a uniform by its location. Locations can be looked up
+	 * ahead of time with {@link ShaderProgram#getUniformLocation(String)}. If the
+	 * location is -1, nothing happens.
+	 * 
+	 * @param location the location of the uniform.
+	 * @param value    the new value.
+	 */
+	public void setUniform(int location, int value) {
+		glUniform1i(location, value);
+	}
+
+	/**
+	 * @see ShaderProgram#setUniform(int, int)
+	 */
+	public void setUniform(int location, float value) {
+		glUniform1f(location, value);
+	}
+
+	/**
+	 * @see ShaderProgram#setUniform(int, int)
+	 */
+	public void setUniform(int location, Vector2f value) {
+		glUniform2f(location, value.x, value.y);
+	}
+
+	/**
+	 * @see ShaderProgram#setUniform(int, int)
+	 */
+	public void setUniform(int location, Vector3f value) {
+		glUniform3f(location, value.x, value.y, value.z);
+	}
+
+	/**
+	 * @see ShaderProgram#setUniform(int, int)
+	 */
+	public void setUniform(int location, Vector4f value) {
+		glUniform4f(location, value.x, value.y, value.z, value.w);
+	}
+
+	/**
+	 * @see ShaderProgram#setUniform(int, int)
+	 */
+	public void setUniform(int location, Matrix4fc value) {
+		if (location < 0) {
+			return;
+		}
 		try (MemoryStack stack = MemoryStack.stackPush()) {
-			glUniformMatrix4fv(this.getUniformLocation(uniformName), false, value.get(stack.mallocFloat(16)));
+			glUniformMatrix4fv(location, false, value.get(stack.mallocFloat(16)));
 		}
 	}
-	
 
 	/**
 	 * Checks if a uniform exists in the program.
@@ -103,14 +169,35 @@ public class ShaderProgram {
 		return Collections.unmodifiableCollection(this.uniforms);
 	}
 	
+	/**
+	 * Gets the location of a uniform. Locations are resolved when the program is
+	 * linked, so this does not query OpenGL.
+	 * 
+	 * @param uniform the name of the uniform.
+	 * @return the location of the uniform, or -1 if the program has no active
+	 *         uniform with that name.
+	 */
 	public int getUniformLocation(String uniform) {
-		return glGetUniformLocation(this.programId, uniform);
+		Uniform u = this.uniformsByName.get(uniform);
+		return u != null ? u.location : -1;
+	}
+
+	/**
+	 * Gets a uniform by name.
+	 * 
+	 * @param uniform the name of the uniform.
+	 * @return the uniform, or null if the program has no active uniform with that
+	 *         name.
+	 */
+	public Uniform getUniform(String uniform) {
+		return this.uniformsByName.get(uniform);
 	}
 
 	public void deleteProgram() {
 		this.unbind();
 		if (this.programId != 0) {
 			glDeleteProgram(this.programId);
+			GLStateCache.invalidate(); // The id may be reused.
 		}
 		
 	}
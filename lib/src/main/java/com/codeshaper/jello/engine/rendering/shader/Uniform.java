@@ -3,9 +3,14 @@ package com.codeshaper.jello.engine.rendering.shader;
 public class Uniform {
 
 	/**
-	 * The index of the uniform.
+	 * The index of the uniform. This is the uniform's index in the list of active
+	 * uniforms, not its location.
 	 */
 	public final int index;
+	/**
+	 * The location of the uniform, used to set its value.
+	 */
+	public final int location;
 	/**
 	 * The type of the uniform, or null if the type is unknown.
 	 */
@@ -20,8 +25,9 @@ public class Uniform {
 	 */
 	public final int size;
 
-	public Uniform(int id, String name, int type, int size) {
+	public Uniform(int id, int location, String name, int type, int size) {
 		this.index = id;
+		this.location = location;
 		this.type = UniformType.from(type);
 		this.name = name;
 		this.size = size;
@@ -29,6 +35,6 @@ public class Uniform {
 
 	@Override
 	public String toString() {
-		return String.format("Uniform {id: %s, name: %s, type: %s}", this.index, this.name, this.type);
+		return String.format("Uniform {id: %s, location: %s, name: %s, type: %s}", this.index, this.location, this.name, this.type);
 	}
 }
@@ -0,0 +1,212 @@
+package com.codeshaper.jello.engine.rendering.shader;
+
+import static org.lwjgl.opengl.GL31.*;
+
+import com.codeshaper.jello.engine.rendering.GLStateCache;
+
+/**
+ * The uniform blocks that the engine fills in for every Shader. Instead of
+ * being set on each program, the data is written once to a uniform buffer that
+ * is bound to a fixed binding point, and every {@link ShaderProgram} links its
+ * blocks to those binding points.
+ * <p>
+ * Shaders use the data by declaring the blocks with the std140 layout, exactly
+ * as below. A block must be declared the same way in every stage that uses it.
+ *
+ * <pre>
+ * struct Fog {
+ *     vec3 color;
+ *     float density;
+ * };
+ *
+ * layout (std140) uniform JelloFrame {
+ *     float _time;
+ *     float _deltaTime;
+ * };
+ *
+ * layout (std140) uniform JelloCamera {
+ *     mat4 projectionMatrix;
+ *     mat4 viewMatrix;
+ *     Fog _fog;
+ *     vec3 _cameraPosition;
+ * };
+ *
+ * layout (std140) uniform JelloLights {
+ *     vec4 _ambientLight;
+ *     vec4 _directionalLightColors[4];
+ *     vec4 _directionalLightDirections[4];
+ *     int _directionalLightCount;
+ *     uvec4 _clusterGrid;
+ *     vec4 _clusterDepth;
+ *     vec4 _clusterScreen;
+ * };
+ *
+ * uniform samplerBuffer _lightData;
+ * uniform usamplerBuffer _lightClusters;
+ * uniform usamplerBuffer _lightIndices;
+ *
+ * layout (std140) uniform JelloShadows {
+ *     mat4 _cascadeMatrices[4];
+ *     mat4 _spotShadowMatrices[4];
+ *     vec4 _cascadeSplits;
+ *     int _cascadeCount;
+ * };
+ *
+ * uniform sampler2DArrayShadow _directionalShadowMap;
+ * uniform sampler2DArrayShadow _spotShadowMap;
+ *
+ * uniform sampler2DArray _uiAtlas;
+ * </pre>
+ *
+ * The three buffer textures hold the point and spot lights, and which of them
+ * touch each cluster of the Camera's view. They, the shadow maps and the UI
+ * atlas are bound to fixed texture units, which every program's samplers are
+ * pointed at when it is linked.
+ */
+public final class UniformBlocks {
+
+	/**
+	 * The name of the block holding data that changes once a frame.
+	 */
+	public static final String FRAME_BLOCK = "JelloFrame";
+	/**
+	 * The binding point of {@link UniformBlocks#FRAME_BLOCK}.
+	 */
+	public static final int FRAME_BINDING = 0;
+	/**
+	 * The size of {@link UniformBlocks#FRAME_BLOCK}, in bytes.
+	 */
+	public static final int FRAME_SIZE = 16;
+	public static final int FRAME_TIME_OFFSET = 0;
+	public static final int FRAME_DELTA_TIME_OFFSET = 4;
+
+	/**
+	 * The name of the block holding data that changes for every Camera.
+	 */
+	public static final String CAMERA_BLOCK = "JelloCamera";
+	/**
+	 * The binding point of {@link UniformBlocks#CAMERA_BLOCK}.
+	 */
+	public static final int CAMERA_BINDING = 1;
+	/**
+	 * The size of {@link UniformBlocks#CAMERA_BLOCK}, in bytes.
+	 */
+	public static final int CAMERA_SIZE = 160;
+	public static final int CAMERA_PROJECTION_MATRIX_OFFSET = 0;
+	public static final int CAMERA_VIEW_MATRIX_OFFSET = 64;
+	public static final int CAMERA_FOG_COLOR_OFFSET = 128;
+	public static final int CAMERA_FOG_DENSITY_OFFSET = 140;
+	public static final int CAMERA_POSITION_OFFSET = 144;
+
+	/**
+	 * The name of the block holding the lights that affect the Camera.
+	 */
+	public static final String LIGHTS_BLOCK = "JelloLights";
+	/**
+	 * The binding point of {@link UniformBlocks#LIGHTS_BLOCK}.
+	 */
+	public static final int LIGHTS_BINDING = 2;
+	/**
+	 * The size of {@link UniformBlocks#LIGHTS_BLOCK}, in bytes.
+	 */
+	public static final int LIGHTS_SIZE = 208;
+	/**
+	 * The largest number of directional lights the block holds.
+	 */
+	public static final int MAX_DIRECTIONAL_LIGHTS = 4;
+	public static final int LIGHTS_AMBIENT_OFFSET = 0;
+	public static final int LIGHTS_DIRECTIONAL_COLORS_OFFSET = 16;
+	public static final int LIGHTS_DIRECTIONAL_DIRECTIONS_OFFSET = 80;
+	public static final int LIGHTS_DIRECTIONAL_COUNT_OFFSET = 144;
+	public static final int LIGHTS_CLUSTER_GRID_OFFSET = 160;
+	public static final int LIGHTS_CLUSTER_DEPTH_OFFSET = 176;
+	public static final int LIGHTS_CLUSTER_SCREEN_OFFSET = 192;
+
+	public static final String LIGHT_DATA_SAMPLER = "_lightData";
+	public static final String LIGHT_CLUSTERS_SAMPLER = "_lightClusters";
+	public static final String LIGHT_INDICES_SAMPLER = "_lightIndices";
+	/**
+	 * The texture units the light buffer textures are bound to. These are above
+	 * the units that Materials use.
+	 */
+	public static final int LIGHT_DATA_UNIT = 29;
+	public static final int LIGHT_CLUSTERS_UNIT = 30;
+	public static final int LIGHT_INDICES_UNIT = 31;
+
+	/**
+	 * The name of the block holding the matrices of the shadow maps.
+	 */
+	public static final String SHADOWS_BLOCK = "JelloShadows";
+	/**
+	 * The binding point of {@link UniformBlocks#SHADOWS_BLOCK}.
+	 */
+	public static final int SHADOWS_BINDING = 3;
+	/**
+	 * The size of {@link UniformBlocks#SHADOWS_BLOCK}, in bytes.
+	 */
+	public static final int SHADOWS_SIZE = 544;
+	/**
+	 * The largest number of cascades a directional light's shadows are split
+	 * into.
+	 */
+	public static final int MAX_CASCADES = 4;
+	/**
+	 * The largest number of spot lights that cast shadows at once.
+	 */
+	public static final int MAX_SPOT_SHADOWS = 4;
+	public static final int SHADOWS_CASCADE_MATRICES_OFFSET = 0;
+	public static final int SHADOWS_SPOT_MATRICES_OFFSET = 256;
+	public static final int SHADOWS_CASCADE_SPLITS_OFFSET = 512;
+	public static final int SHADOWS_CASCADE_COUNT_OFFSET = 528;
+
+	public static final String DIRECTIONAL_SHADOW_MAP_SAMPLER = "_directionalShadowMap";
+	public static final String SPOT_SHADOW_MAP_SAMPLER = "_spotShadowMap";
+	public static final int DIRECTIONAL_SHADOW_MAP_UNIT = 27;
+	public static final int SPOT_SHADOW_MAP_UNIT = 28;
+
+	/**
+	 * The sampler of the atlas returned by
+	 * {@link com.codeshaper.jello.engine.rendering.TextureAtlas#getUiAtlas()}.
+	 */
+	public static final String UI_ATLAS_SAMPLER = "_uiAtlas";
+	public static final int UI_ATLAS_UNIT = 26;
+
+	private UniformBlocks() {
+	}
+
+	/**
+	 * Links the engine's uniform blocks in a program to their binding points, and
+	 * points the engine's samplers at their texture units. Blocks and samplers
+	 * that the program doesn't use are skipped.
+	 *
+	 * @param programId the id of the linked program
+	 */
+	static void linkBlocks(int programId) {
+		linkBlock(programId, FRAME_BLOCK, FRAME_BINDING);
+		linkBlock(programId, CAMERA_BLOCK, CAMERA_BINDING);
+		linkBlock(programId, LIGHTS_BLOCK, LIGHTS_BINDING);
+		linkBlock(programId, SHADOWS_BLOCK, SHADOWS_BINDING);
+
+		GLStateCache.useProgram(programId);
+		linkSampler(programId, LIGHT_DATA_SAMPLER, LIGHT_DATA_UNIT);
+		linkSampler(programId, LIGHT_CLUSTERS_SAMPLER, LIGHT_CLUSTERS_UNIT);
+		linkSampler(programId, LIGHT_INDICES_SAMPLER, LIGHT_INDICES_UNIT);
+		linkSampler(programId, DIRECTIONAL_SHADOW_MAP_SAMPLER, DIRECTIONAL_SHADOW_MAP_UNIT);
+		linkSampler(programId, SPOT_SHADOW_MAP_SAMPLER, SPOT_SHADOW_MAP_UNIT);
+		linkSampler(programId, UI_ATLAS_SAMPLER, UI_ATLAS_UNIT);
+	}
+
+	private static void linkBlock(int programId, String blockName, int binding) {
+		int index = glGetUniformBlockIndex(programId, blockName);
+		if (index != GL_INVALID_INDEX) {
+			glUniformBlockBinding(programId, index, binding);
+		}
+	}
+
+	private static void linkSampler(int programId, String samplerName, int unit) {
+		int location = glGetUniformLocation(programId, samplerName);
+		if (location != -1) {
+			glUniform1i(location, unit);
+		}
+	}
+}
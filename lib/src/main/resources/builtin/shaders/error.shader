@@ -10,8 +10,18 @@
 		
 		out vec2 outTextCoord;
 		
-		uniform mat4 projectionMatrix;
-		uniform mat4 viewMatrix;
+		struct Fog {
+		    vec3 color;
+		    float density;
+		};
+		
+		layout (std140) uniform JelloCamera {
+		    mat4 projectionMatrix;
+		    mat4 viewMatrix;
+		    Fog _fog;
+		    vec3 _cameraPosition;
+		};
+		
 		uniform mat4 modelMatrix;
 		
 		void main() {
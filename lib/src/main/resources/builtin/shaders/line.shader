@@ -0,0 +1,108 @@
+{
+  "transparent": true,
+  "culling": "off",
+  "shaders": [
+    {
+      "type": "vertex",
+      "source": "
+		#version 330
+		
+		layout (location=0) in vec3 inPosition;
+		layout (location=1) in vec2 texCoord;
+		layout (location=6) in vec3 inDirection;
+		layout (location=7) in vec2 inOffset;
+		layout (location=8) in vec3 inTurn;
+		
+		out vec3 outPosition;
+		out vec2 outTextCoord;
+		
+		struct Fog {
+		    vec3 color;
+		    float density;
+		};
+		
+		layout (std140) uniform JelloCamera {
+		    mat4 projectionMatrix;
+		    mat4 viewMatrix;
+		    Fog _fog;
+		    vec3 _cameraPosition;
+		};
+		
+		uniform mat4 modelMatrix;
+		
+		void main() {
+		    vec3 worldPosition = (modelMatrix * vec4(inPosition, 1.0)).xyz;
+		    vec3 toCamera = _cameraPosition - worldPosition;
+		    vec2 offset = inOffset;
+		    
+		    // Each rounded corner has a fan on both sides, and only the one on the
+		    // outside of the corner, as seen by the camera, is kept. The other is
+		    // collapsed onto the line, so it doesn't draw over the segments on the
+		    // inside of the corner.
+		    if (inTurn != vec3(0.0)) {
+		        mat3 model = mat3(modelMatrix);
+		        vec3 turn = determinant(model) * (transpose(inverse(model)) * inTurn);
+		        if (sign(offset.x) != sign(dot(turn, toCamera))) {
+		            offset = vec2(0.0);
+		        }
+		    }
+		    
+		    // Turn the ribbon to face the camera, by pushing the vertex out across the
+		    // line, perpendicular to both the line and the view direction.
+		    vec3 along = mat3(modelMatrix) * inDirection;
+		    along = length(along) > 0.0 ? normalize(along) : vec3(0.0);
+		    vec3 across = cross(along, toCamera);
+		    across = length(across) > 0.0 ? normalize(across) : vec3(0.0);
+		    worldPosition += across * offset.x + along * offset.y;
+		    
+		    vec4 mvPosition = viewMatrix * vec4(worldPosition, 1.0);
+		    gl_Position = projectionMatrix * mvPosition;
+		    outPosition = mvPosition.xyz;
+		    outTextCoord = texCoord;
+		}
+	  "
+    },
+    {
+      "type": "fragment",
+      "source": "
+		#version 330
+		
+		in vec3 outPosition;
+		in vec2 outTextCoord;
+		
+		out vec4 fragColor;
+		
+		struct Fog {
+		    vec3 color;
+		    float density;
+		};
+		
+		layout (std140) uniform JelloCamera {
+		    mat4 projectionMatrix;
+		    mat4 viewMatrix;
+		    Fog _fog;
+		    vec3 _cameraPosition;
+		};
+		
+		uniform sampler2D mainTexture;
+		uniform vec4 mainColor;
+		
+		vec4 applyFog(vec3 pos, vec4 color) {
+		    float fogDistance = length(pos);
+		    float fogFactor = 1.0 / exp((fogDistance * _fog.density) * (fogDistance * _fog.density));
+		    fogFactor = clamp(fogFactor, 0.0, 1.0);
+		    
+		    vec3 resultColor = mix(_fog.color, color.xyz, fogFactor);
+		    return vec4(resultColor.xyz, color.w);
+		}
+		
+		void main() {
+		    fragColor = mainColor * texture(mainTexture, outTextCoord);
+		    if (_fog.density > 0) {
+		        fragColor = applyFog(outPosition, fragColor);
+		    }
+		}
+	  "
+    }
+  ]
+}
@@ -0,0 +1,30 @@
+{
+  "instancing": true,
+  "culling": "off",
+  "shaders": [
+    {
+      "type": "vertex",
+      "source": "
+		#version 330
+		
+		layout (location=0) in vec3 inPosition;
+		layout (location=2) in mat4 instanceMatrix;
+		
+		uniform mat4 lightViewProjection;
+		
+		void main() {
+		    gl_Position = lightViewProjection * instanceMatrix * vec4(inPosition, 1.0);
+		}
+	  "
+    },
+    {
+      "type": "fragment",
+      "source": "
+		#version 330
+		
+		void main() {
+		}
+	  "
+    }
+  ]
+}
@@ -1,4 +1,5 @@
 {
+  "instancing": true,
   "shaders": [
     {
       "type": "vertex",
@@ -7,16 +8,34 @@
 		
 		layout (location=0) in vec3 inPosition;
 		layout (location=1) in vec2 texCoord;
+		layout (location=2) in mat4 instanceMatrix;
+		layout (location=6) in vec3 inNormal;
 		
 		out vec2 outTextCoord;
+		out vec3 outWorldPosition;
+		out vec3 outWorldNormal;
+		out float outViewDepth;
 		
-		uniform mat4 projectionMatrix;
-		uniform mat4 viewMatrix;
-		uniform mat4 modelMatrix;
+		struct Fog {
+		    vec3 color;
+		    float density;
+		};
+		
+		layout (std140) uniform JelloCamera {
+		    mat4 projectionMatrix;
+		    mat4 viewMatrix;
+		    Fog _fog;
+		    vec3 _cameraPosition;
+		};
 		
 		void main() {
-		    gl_Position = projectionMatrix * viewMatrix * modelMatrix * vec4(inPosition, 1.0);
+		    vec4 worldPosition = instanceMatrix * vec4(inPosition, 1.0);
+		    vec4 viewPosition = viewMatrix * worldPosition;
+		    gl_Position = projectionMatrix * viewPosition;
 		    outTextCoord = texCoord;
+		    outWorldPosition = worldPosition.xyz;
+		    outWorldNormal = mat3(instanceMatrix) * inNormal;
+		    outViewDepth = -viewPosition.z;
 		}
 	  "
     },
@@ -26,14 +45,99 @@
 		#version 330
 		
 		in vec2 outTextCoord;
+		in vec3 outWorldPosition;
+		in vec3 outWorldNormal;
+		in float outViewDepth;
 		
 		out vec4 fragColor;
 		
+		layout (std140) uniform JelloLights {
+		    vec4 _ambientLight;
+		    vec4 _directionalLightColors[4];
+		    vec4 _directionalLightDirections[4];
+		    int _directionalLightCount;
+		    uvec4 _clusterGrid;
+		    vec4 _clusterDepth;
+		    vec4 _clusterScreen;
+		};
+		
+		uniform samplerBuffer _lightData;
+		uniform usamplerBuffer _lightClusters;
+		uniform usamplerBuffer _lightIndices;
+		
+		layout (std140) uniform JelloShadows {
+		    mat4 _cascadeMatrices[4];
+		    mat4 _spotShadowMatrices[4];
+		    vec4 _cascadeSplits;
+		    int _cascadeCount;
+		};
+		
+		uniform sampler2DArrayShadow _directionalShadowMap;
+		uniform sampler2DArrayShadow _spotShadowMap;
+		
 		uniform sampler2D mainTexture;
 		uniform vec4 mainColor;
 		
+		float directionalShadow() {
+		    int cascade = 0;
+		    while (cascade < _cascadeCount && outViewDepth > _cascadeSplits[cascade]) {
+		        cascade++;
+		    }
+		    if (cascade == _cascadeCount) {
+		        return 1.0; // Further than the shadow distance.
+		    }
+		    vec4 coord = _cascadeMatrices[cascade] * vec4(outWorldPosition, 1.0);
+		    return texture(_directionalShadowMap, vec4(coord.xy, float(cascade), coord.z - 0.001));
+		}
+		
+		float spotShadow(int index) {
+		    vec4 coord = _spotShadowMatrices[index] * vec4(outWorldPosition, 1.0);
+		    coord.xyz /= coord.w;
+		    return texture(_spotShadowMap, vec4(coord.xy, float(index), coord.z - 0.0005));
+		}
+		
+		vec3 computeLighting(vec3 normal) {
+		    vec3 light = _ambientLight.rgb;
+		
+		    for (int i = 0; i < _directionalLightCount; i++) {
+		        vec4 direction = _directionalLightDirections[i];
+		        float shadow = direction.w > 0.5 ? directionalShadow() : 1.0;
+		        light += _directionalLightColors[i].rgb * max(dot(normal, -direction.xyz), 0.0) * shadow;
+		    }
+		
+		    uvec3 cluster;
+		    cluster.xy = uvec2(max((gl_FragCoord.xy - _clusterScreen.xy) * _clusterScreen.zw, vec2(0.0)));
+		    cluster.z = uint(max(log(outViewDepth) * _clusterDepth.x + _clusterDepth.y, 0.0));
+		    cluster = min(cluster, _clusterGrid.xyz - uvec3(1u));
+		    int clusterIndex = int(cluster.x + (cluster.y + cluster.z * _clusterGrid.y) * _clusterGrid.x);
+		    uvec2 range = texelFetch(_lightClusters, clusterIndex).xy;
+		
+		    for (uint i = 0u; i < range.y; i++) {
+		        int lightIndex = int(texelFetch(_lightIndices, int(range.x + i)).r) * 4;
+		        vec4 positionRange = texelFetch(_lightData, lightIndex);
+		        vec4 colorCosOuter = texelFetch(_lightData, lightIndex + 1);
+		        vec4 directionCosInner = texelFetch(_lightData, lightIndex + 2);
+		        int shadowIndex = int(texelFetch(_lightData, lightIndex + 3).x);
+		
+		        vec3 toLight = positionRange.xyz - outWorldPosition;
+		        float lightDistance = length(toLight);
+		        vec3 lightDirection = toLight / max(lightDistance, 0.0001);
+		        float falloff = clamp(1.0 - (lightDistance * lightDistance) / (positionRange.w * positionRange.w), 0.0, 1.0);
+		        float cone = smoothstep(colorCosOuter.w, directionCosInner.w, dot(-lightDirection, directionCosInner.xyz));
+		        float shadow = shadowIndex >= 0 ? spotShadow(shadowIndex) : 1.0;
+		        light += colorCosOuter.rgb * max(dot(normal, lightDirection), 0.0) * falloff * falloff * cone * shadow;
+		    }
+		
+		    return light;
+		}
+		
 		void main() {
-		    fragColor = mainColor * texture(mainTexture, outTextCoord);
+		    vec4 color = mainColor * texture(mainTexture, outTextCoord);
+		    // Meshes without normals are drawn unlit.
+		    if (dot(outWorldNormal, outWorldNormal) > 0.00000001) {
+		        color.rgb *= computeLighting(normalize(outWorldNormal));
+		    }
+		    fragColor = color;
 		}
 	  "
     }
@@ -1,4 +1,5 @@
 {
+  "transparent": true,
   "shaders": [
     {
       "type": "vertex",
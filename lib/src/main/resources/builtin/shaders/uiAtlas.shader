@@ -0,0 +1,60 @@
+{
+  "transparent": true,
+  "shaders": [
+    {
+      "type": "vertex",
+      "source": "
+      	#version 330
+
+		layout (location=0) in vec3 inPosition;
+		layout (location=1) in vec2 texCoord;
+		layout (location=8) in vec4 inColor;
+		layout (location=9) in vec2 inAtlas;
+		layout (location=10) in vec2 inScreenAnchor;
+		
+		out vec3 outTextCoord;
+		out vec4 outColor;
+		out float outDistanceField;
+
+		uniform mat4 _uiMatrix;
+		uniform vec2 _uiScreenSize;
+
+		void main() {
+	    	// The quads are laid out from the point of the screen they're anchored to.
+	    	vec2 position = inPosition.xy + inScreenAnchor * _uiScreenSize * 0.5;
+	    	gl_Position = _uiMatrix * vec4(position, inPosition.z, 1);
+	    	outTextCoord = vec3(texCoord, inAtlas.x);
+	    	outColor = inColor;
+	    	outDistanceField = inAtlas.y;
+		}
+      "
+    },
+    {
+      "type": "fragment",
+      "source": "
+      	#version 330
+
+		in vec3 outTextCoord;
+		in vec4 outColor;
+		in float outDistanceField;
+		
+		out vec4 fragColor;
+		
+		uniform sampler2DArray _uiAtlas;
+				
+		void main() {
+	    	vec4 texel = texture(_uiAtlas, outTextCoord);
+	    	if (outDistanceField > 0.5) {
+	    		// The edge of the glyph is where the distance crosses 0.5.
+	    		float fieldDistance = texel.a;
+	    		float smoothing = max(fwidth(fieldDistance), 0.0001);
+	    		float coverage = smoothstep(0.5 - smoothing, 0.5 + smoothing, fieldDistance);
+	    		fragColor = vec4(outColor.rgb, outColor.a * coverage);
+	    	} else {
+	    		fragColor = texel * outColor;
+	    	}
+		}
+      "
+    }
+  ]
+}
@@ -11,8 +11,18 @@
 		out vec3 outPosition;
 		out vec2 outTextCoord;
 		
-		uniform mat4 projectionMatrix;
-		uniform mat4 viewMatrix;
+		struct Fog {
+		    vec3 color;
+		    float density;
+		};
+		
+		layout (std140) uniform JelloCamera {
+		    mat4 projectionMatrix;
+		    mat4 viewMatrix;
+		    Fog _fog;
+		    vec3 _cameraPosition;
+		};
+		
 		uniform mat4 modelMatrix;
 		
 		void main() {
@@ -38,10 +48,16 @@
 		    vec3 color;
 		    float density;
 		};
+		
+		layout (std140) uniform JelloCamera {
+		    mat4 projectionMatrix;
+		    mat4 viewMatrix;
+		    Fog _fog;
+		    vec3 _cameraPosition;
+		};
 				
 		uniform sampler2D mainTexture;
 		uniform vec4 mainColor;
-		uniform Fog _fog;
 		
 		vec4 applyFog(vec3 pos, vec4 color) {
    			float distance = length(pos);